@@ -3,7 +3,12 @@
  */
 package com.facebook.swift.codec;
 
+import com.facebook.swift.codec.internal.ByteBufferChunkPool;
 import com.facebook.swift.codec.internal.EnumThriftCodec;
+import com.facebook.swift.codec.internal.IncrementalThriftDecoder;
+import com.facebook.swift.codec.internal.TByteBufferOutputTransport;
+import com.facebook.swift.codec.internal.TCountingOutputTransport;
+import com.facebook.swift.codec.internal.TMemoryOutputTransport;
 import com.facebook.swift.codec.internal.TProtocolReader;
 import com.facebook.swift.codec.internal.TProtocolWriter;
 import com.facebook.swift.codec.internal.ThriftCodecFactory;
@@ -11,29 +16,55 @@ import com.facebook.swift.codec.internal.builtin.BooleanThriftCodec;
 import com.facebook.swift.codec.internal.builtin.ByteBufferThriftCodec;
 import com.facebook.swift.codec.internal.builtin.ByteThriftCodec;
 import com.facebook.swift.codec.internal.builtin.DoubleThriftCodec;
+import com.facebook.swift.codec.internal.builtin.IntDoubleMapThriftCodec;
 import com.facebook.swift.codec.internal.builtin.IntegerThriftCodec;
 import com.facebook.swift.codec.internal.builtin.ListThriftCodec;
+import com.facebook.swift.codec.internal.builtin.LongLongMapThriftCodec;
 import com.facebook.swift.codec.internal.builtin.LongThriftCodec;
 import com.facebook.swift.codec.internal.builtin.MapThriftCodec;
+import com.facebook.swift.codec.internal.builtin.InternedStringThriftCodec;
+import com.facebook.swift.codec.internal.builtin.PackedListThriftCodec;
 import com.facebook.swift.codec.internal.builtin.SetThriftCodec;
 import com.facebook.swift.codec.internal.builtin.ShortThriftCodec;
 import com.facebook.swift.codec.internal.builtin.VoidThriftCodec;
 import com.facebook.swift.codec.internal.coercion.CoercionThriftCodec;
 import com.facebook.swift.codec.internal.compiler.CompilerThriftCodecFactory;
+import com.facebook.swift.codec.internal.methodhandle.ColumnarListThriftCodec;
+import com.facebook.swift.codec.io.ParallelListEncoder;
 import com.facebook.swift.codec.metadata.ThriftCatalog;
+import com.facebook.swift.codec.metadata.ThriftEnumMetadata;
+import com.facebook.swift.codec.metadata.ThriftFieldMetadata;
 import com.facebook.swift.codec.metadata.ThriftType;
 import com.facebook.swift.codec.metadata.TypeCoercion;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.reflect.TypeToken;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TMap;
 import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TSet;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.transport.TMemoryInputTransport;
 
+import javax.annotation.concurrent.NotThreadSafe;
 import javax.annotation.concurrent.ThreadSafe;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ThriftCodecManager contains an index of all known ThriftCodec and can create codecs for
@@ -42,8 +73,57 @@ import java.util.concurrent.ExecutionException;
  */
 @ThreadSafe
 public class ThriftCodecManager {
+  private static final int PARALLEL_WRITE_RANGE_SIZE = 4096;
+  private static final int PARALLEL_WRITE_CHUNK_SIZE = 64 * 1024;
+  private static final int PARALLEL_WRITE_MAX_POOLED_CHUNKS = 256;
+
+  // largest output buffer kept by a per-thread serialization context between calls
+  private static final int MAX_RETAINED_OUTPUT_CAPACITY = 1024 * 1024;
+
+  private final ThriftCodecFactory factory;
   private final ThriftCatalog catalog;
-  private final LoadingCache<ThriftType, ThriftCodec<?>> typeCodecs;
+
+  // Each codec is created exactly once by the first thread to install a task for the type, and
+  // other threads wait only for the task of the type they need.  Since struct references can not
+  // be circular, the tasks form a DAG, so waiting on a task can not deadlock.
+  private final ConcurrentMap<ThriftType, FutureTask<ThriftCodec<?>>> typeCodecs =
+      new ConcurrentHashMap<>();
+
+  // Types being created by the current thread, used to detect a codec depending on itself
+  private final ThreadLocal<Set<ThriftType>> typesInProgress = new ThreadLocal<Set<ThriftType>>() {
+    @Override
+    protected Set<ThriftType> initialValue() {
+      return new HashSet<>();
+    }
+  };
+
+  // Fast path from a Java type directly to the codec, which avoids resolving the ThriftType (and
+  // hashing it) on every lookup.  This is cleared whenever a codec is added or replaced.
+  private final ConcurrentMap<Type, ThriftCodec<?>> javaTypeCodecs = new ConcurrentHashMap<>();
+
+  // Incremented after a codec is installed and before javaTypeCodecs is cleared, so a lookup
+  // that raced with the install can tell that the codec it resolved may be stale
+  private final AtomicInteger codecGeneration = new AtomicInteger();
+
+  // Types with a codec supplied by the user, whose encoding is not described by the metadata
+  private final Set<ThriftType> addedCodecTypes =
+      Collections.newSetFromMap(new ConcurrentHashMap<ThriftType, Boolean>());
+
+  // Buffers used by writeListParallel; chunks are only allocated when first used
+  private final ByteBufferChunkPool parallelWriteChunkPool = new ByteBufferChunkPool(
+      PARALLEL_WRITE_CHUNK_SIZE,
+      PARALLEL_WRITE_MAX_POOLED_CHUNKS
+  );
+
+  // Per thread transports, protocols, readers and writers used by serialize and deserialize,
+  // indexed by protocol kind ordinal
+  private final ThreadLocal<SerializationContext[]> serializationContexts =
+      new ThreadLocal<SerializationContext[]>() {
+        @Override
+        protected SerializationContext[] initialValue() {
+          return new SerializationContext[ThriftProtocolKind.values().length];
+        }
+      };
 
   public ThriftCodecManager(ThriftCodec<?>... codecs) {
     this(new CompilerThriftCodecFactory(), codecs);
@@ -54,61 +134,26 @@ public class ThriftCodecManager {
   }
 
   public ThriftCodecManager(
-      final ThriftCodecFactory factory,
-      final ThriftCatalog catalog,
+      ThriftCodecFactory factory,
+      ThriftCatalog catalog,
       ThriftCodec<?>... codecs
   ) {
     Preconditions.checkNotNull(factory, "factory is null");
     Preconditions.checkNotNull(catalog, "catalog is null");
 
+    this.factory = factory;
     this.catalog = catalog;
 
-    typeCodecs = CacheBuilder.newBuilder().build(
-        new CacheLoader<ThriftType, ThriftCodec<?>>() {
-          public ThriftCodec<?> load(ThriftType type) throws Exception {
-            switch (type.getProtocolType()) {
-              case STRUCT: {
-                return factory.generateThriftTypeCodec(
-                    ThriftCodecManager.this,
-                    type.getStructMetadata()
-                );
-              }
-              case MAP: {
-                ThriftCodec<?> keyCodec = typeCodecs.get(type.getKeyType());
-                ThriftCodec<?> valueCodec = typeCodecs.get(type.getValueType());
-                return new MapThriftCodec<>(type, keyCodec, valueCodec);
-              }
-              case SET: {
-                ThriftCodec<?> elementCodec = typeCodecs.get(type.getValueType());
-                return new SetThriftCodec<>(type, elementCodec);
-              }
-              case LIST: {
-                ThriftCodec<?> elementCodec = typeCodecs.get(type.getValueType());
-                return new ListThriftCodec<>(type, elementCodec);
-              }
-              case ENUM: {
-                return new EnumThriftCodec<>(type);
-              }
-              default:
-                if (type.isCoerced()) {
-                  ThriftCodec<?> codec = getCodec(type.getUncoercedType());
-                  TypeCoercion coercion = catalog.getDefaultCoercion(type.getJavaType());
-                  return new CoercionThriftCodec<>(codec, coercion);
-                }
-                throw new IllegalArgumentException("Unsupported Thrift type " + type);
-            }
-          }
-        }
-    );
-
-    addCodec(new BooleanThriftCodec());
-    addCodec(new ByteThriftCodec());
-    addCodec(new ShortThriftCodec());
-    addCodec(new IntegerThriftCodec());
-    addCodec(new LongThriftCodec());
-    addCodec(new DoubleThriftCodec());
-    addCodec(new ByteBufferThriftCodec());
-    addCodec(new VoidThriftCodec());
+    installCodec(new BooleanThriftCodec());
+    installCodec(new ByteThriftCodec());
+    installCodec(new ShortThriftCodec());
+    installCodec(new IntegerThriftCodec());
+    installCodec(new LongThriftCodec());
+    installCodec(new DoubleThriftCodec());
+    installCodec(new ByteBufferThriftCodec());
+    installCodec(new VoidThriftCodec());
+    installCodec(new LongLongMapThriftCodec());
+    installCodec(new IntDoubleMapThriftCodec());
 
     for (ThriftCodec<?> codec : codecs) {
       addCodec(codec);
@@ -116,23 +161,113 @@ public class ThriftCodecManager {
   }
 
   public ThriftCodec<?> getCodec(Type javaType) {
-    ThriftType thriftType = catalog.getThriftType(javaType);
-    Preconditions.checkArgument(thriftType != null, "Unsupported java type %s", javaType);
-    return getCodec(thriftType);
+    ThriftCodec<?> codec = javaTypeCodecs.get(javaType);
+    if (codec == null) {
+      int generation = codecGeneration.get();
+      ThriftType thriftType = catalog.getThriftType(javaType);
+      Preconditions.checkArgument(thriftType != null, "Unsupported java type %s", javaType);
+      codec = getCodec(thriftType);
+      javaTypeCodecs.put(javaType, codec);
+      if (codecGeneration.get() != generation) {
+        // a codec was installed meanwhile, and its clear may have run before the put
+        javaTypeCodecs.remove(javaType, codec);
+      }
+    }
+    return codec;
   }
 
   public <T> ThriftCodec<T> getCodec(Class<T> javaType) {
-    ThriftType thriftType = catalog.getThriftType(javaType);
-    Preconditions.checkArgument(thriftType != null, "Unsupported java type %s", javaType.getName());
-    return (ThriftCodec<T>) getCodec(thriftType);
+    return (ThriftCodec<T>) getCodec((Type) javaType);
   }
 
-  public ThriftCodec<?> getCodec(ThriftType type) {
+  public ThriftCodec<?> getCodec(final ThriftType type) {
+    FutureTask<ThriftCodec<?>> task = typeCodecs.get(type);
+    if (task == null) {
+      FutureTask<ThriftCodec<?>> newTask = new FutureTask<>(
+          new Callable<ThriftCodec<?>>() {
+            @Override
+            public ThriftCodec<?> call() throws Exception {
+              return createCodec(type);
+            }
+          }
+      );
+      task = typeCodecs.putIfAbsent(type, newTask);
+      if (task == null) {
+        task = newTask;
+        runCodecTask(type, newTask);
+      }
+    } else if (!task.isDone()) {
+      Preconditions.checkState(
+          !typesInProgress.get().contains(type),
+          "Codec for %s depends on itself",
+          type
+      );
+    }
+
     try {
-      ThriftCodec<?> thriftCodec = typeCodecs.get(type);
-      return thriftCodec;
-    } catch (ExecutionException e) {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
       throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private void runCodecTask(ThriftType type, FutureTask<ThriftCodec<?>> task) {
+    Set<ThriftType> inProgress = typesInProgress.get();
+    inProgress.add(type);
+    try {
+      task.run();
+    } finally {
+      inProgress.remove(type);
+    }
+
+    // failures are not cached, so the codec creation is retried on the next request
+    try {
+      task.get();
+    } catch (InterruptedException | ExecutionException e) {
+      typeCodecs.remove(type, task);
+    }
+  }
+
+  private ThriftCodec<?> createCodec(ThriftType type) {
+    switch (type.getProtocolType()) {
+      case STRUCT: {
+        return factory.generateThriftTypeCodec(this, type.getStructMetadata());
+      }
+      case MAP: {
+        ThriftCodec<?> keyCodec = getCodec(type.getKeyType());
+        ThriftCodec<?> valueCodec = getCodec(type.getValueType());
+        return new MapThriftCodec<>(type, keyCodec, valueCodec);
+      }
+      case SET: {
+        ThriftCodec<?> elementCodec = getCodec(type.getValueType());
+        return new SetThriftCodec<>(type, elementCodec);
+      }
+      case LIST: {
+        ThriftCodec<?> elementCodec = getCodec(type.getValueType());
+        return new ListThriftCodec<>(type, elementCodec);
+      }
+      case ENUM: {
+        return new EnumThriftCodec<>(type);
+      }
+      default:
+        if (type.getPacking() == ThriftPacking.COLUMNAR) {
+          return new ColumnarListThriftCodec<>(this, type);
+        }
+        if (type.isPacked()) {
+          return new PackedListThriftCodec<>(type);
+        }
+        if (type.isInterned()) {
+          return new InternedStringThriftCodec(type);
+        }
+        if (type.isCoerced()) {
+          ThriftCodec<?> codec = getCodec(type.getUncoercedType());
+          TypeCoercion coercion = catalog.getDefaultCoercion(type.getJavaType());
+          return new CoercionThriftCodec<>(codec, coercion);
+        }
+        throw new IllegalArgumentException("Unsupported Thrift type " + type);
     }
   }
 
@@ -145,13 +280,321 @@ public class ThriftCodecManager {
    * replace any current users of the existing codec associated with the type.
    */
   public void addCodec(ThriftCodec<?> codec) {
-    typeCodecs.put(codec.getType(), codec);
+    addedCodecTypes.add(codec.getType());
+    installCodec(codec);
+  }
+
+  /**
+   * Does the specified type use a codec added with {@link #addCodec}?
+   */
+  boolean isAddedCodecType(ThriftType type) {
+    return addedCodecTypes.contains(type);
+  }
+
+  private void installCodec(final ThriftCodec<?> codec) {
+    FutureTask<ThriftCodec<?>> task = new FutureTask<ThriftCodec<?>>(
+        new Callable<ThriftCodec<?>>() {
+          @Override
+          public ThriftCodec<?> call() {
+            return codec;
+          }
+        }
+    );
+    task.run();
+    typeCodecs.put(codec.getType(), task);
+    codecGeneration.incrementAndGet();
+    javaTypeCodecs.clear();
   }
 
   public ThriftCatalog getCatalog() {
     return catalog;
   }
 
+  /**
+   * Eagerly builds the metadata and codecs for the specified Java types and every type reachable
+   * from them, using a temporary pool with one thread per processor.
+   *
+   * @see #precompileThriftTypes
+   */
+  public void precompile(Collection<? extends Type> javaTypes) {
+    ForkJoinPool pool = new ForkJoinPool();
+    try {
+      precompile(javaTypes, pool, 0);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Eagerly builds the metadata and codecs for the specified Java types and every type reachable
+   * from them.  The metadata of each Java type is resolved in a separate task on the pool.
+   *
+   * @see #precompileThriftTypes
+   */
+  public void precompile(
+      Collection<? extends Type> javaTypes,
+      ForkJoinPool pool,
+      int warmUpRounds
+  ) {
+    Preconditions.checkNotNull(javaTypes, "javaTypes is null");
+    Preconditions.checkNotNull(pool, "pool is null");
+    Preconditions.checkArgument(warmUpRounds >= 0, "warmUpRounds is negative");
+
+    Set<ThriftType> visitedTypes = Collections.newSetFromMap(
+        new ConcurrentHashMap<ThriftType, Boolean>()
+    );
+    List<PrecompileTask> tasks = new ArrayList<>(javaTypes.size());
+    for (Type javaType : javaTypes) {
+      tasks.add(new PrecompileTask(javaType, null, visitedTypes, warmUpRounds));
+    }
+    runAll(pool, tasks);
+  }
+
+  /**
+   * Eagerly builds the codecs for the specified types and every type reachable from them through
+   * struct fields and container elements.  Each type is handled by a separate task on the pool,
+   * which forks the tasks for the types reachable from it before building its own codec, so the
+   * cost of reflection and code generation is paid at startup instead of on the first request
+   * for a type.
+   * <p/>
+   * If warmUpRounds is positive, each struct codec is also exercised with the specified number of
+   * read and write rounds for each protocol, which gives the JIT a chance to compile the codec.
+   * The first round reads a synthetic encoding of the struct in which every field is set, so all
+   * field read and write paths are exercised.  Warm up fails if a struct rejects the synthetic
+   * field values; such structs must be precompiled without warm up rounds.
+   */
+  public void precompileThriftTypes(
+      Collection<ThriftType> types,
+      ForkJoinPool pool,
+      int warmUpRounds
+  ) {
+    Preconditions.checkNotNull(types, "types is null");
+    Preconditions.checkNotNull(pool, "pool is null");
+    Preconditions.checkArgument(warmUpRounds >= 0, "warmUpRounds is negative");
+
+    Set<ThriftType> visitedTypes = Collections.newSetFromMap(
+        new ConcurrentHashMap<ThriftType, Boolean>()
+    );
+    List<PrecompileTask> tasks = new ArrayList<>(types.size());
+    for (ThriftType type : types) {
+      tasks.add(new PrecompileTask(null, type, visitedTypes, warmUpRounds));
+    }
+    runAll(pool, tasks);
+  }
+
+  private static void runAll(ForkJoinPool pool, final List<PrecompileTask> tasks) {
+    pool.invoke(
+        new RecursiveAction() {
+          @Override
+          protected void compute() {
+            invokeAll(tasks);
+          }
+        }
+    );
+  }
+
+  /**
+   * Is the codec for the type already built?
+   */
+  boolean isCodecCreated(ThriftType type) {
+    FutureTask<ThriftCodec<?>> task = typeCodecs.get(type);
+    return task != null && task.isDone();
+  }
+
+  /**
+   * Resolves the Thrift type of a Java type when needed, forks a task for each type reachable
+   * from it, and then builds and warms up its codec.
+   */
+  private class PrecompileTask extends RecursiveAction {
+    private static final long serialVersionUID = 1;
+
+    private final Type javaType;
+    private final ThriftType type;
+    private final Set<ThriftType> visitedTypes;
+    private final int warmUpRounds;
+
+    private PrecompileTask(
+        Type javaType,
+        ThriftType type,
+        Set<ThriftType> visitedTypes,
+        int warmUpRounds
+    ) {
+      this.javaType = javaType;
+      this.type = type;
+      this.visitedTypes = visitedTypes;
+      this.warmUpRounds = warmUpRounds;
+    }
+
+    @Override
+    protected void compute() {
+      ThriftType type = this.type;
+      if (javaType != null) {
+        type = catalog.getThriftType(javaType);
+        Preconditions.checkArgument(type != null, "Unsupported java type %s", javaType);
+      }
+
+      if (!visitedTypes.add(type)) {
+        return;
+      }
+
+      List<PrecompileTask> tasks = new ArrayList<>();
+      for (ThriftType reachableType : getReachableTypes(type)) {
+        tasks.add(new PrecompileTask(null, reachableType, visitedTypes, warmUpRounds));
+      }
+      for (PrecompileTask task : tasks) {
+        task.fork();
+      }
+
+      ThriftCodec<?> codec = getCodec(type);
+      if (type.getProtocolType() == ThriftProtocolType.STRUCT && type != ThriftType.VOID) {
+        warmUp(type, codec, warmUpRounds);
+      }
+
+      for (PrecompileTask task : tasks) {
+        task.join();
+      }
+    }
+  }
+
+  private static List<ThriftType> getReachableTypes(ThriftType type) {
+    List<ThriftType> reachableTypes = new ArrayList<>();
+    switch (type.getProtocolType()) {
+      case STRUCT:
+        if (type != ThriftType.VOID) {
+          for (ThriftFieldMetadata field : type.getStructMetadata().getFields()) {
+            reachableTypes.add(field.getType());
+          }
+        }
+        break;
+      case MAP:
+        reachableTypes.add(type.getKeyType());
+        reachableTypes.add(type.getValueType());
+        break;
+      case SET:
+      case LIST:
+        reachableTypes.add(type.getValueType());
+        break;
+      default:
+        break;
+    }
+    return reachableTypes;
+  }
+
+  private <T> void warmUp(ThriftType type, ThriftCodec<T> codec, int rounds) {
+    if (rounds == 0) {
+      return;
+    }
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      SerializationContext context = getSerializationContext(protocolKind);
+      try {
+        byte[] bytes = createSyntheticValue(type, protocolKind);
+        for (int round = 0; round < rounds; round++) {
+          context.inputTransport.reset(bytes);
+          context.inputProtocol.reset();
+          T value = codec.read(context.reader);
+
+          context.outputTransport.reset();
+          context.outputProtocol.reset();
+          codec.write(value, context.writer);
+          bytes = context.outputTransport.toByteArray();
+        }
+        context.outputTransport.reset(MAX_RETAINED_OUTPUT_CAPACITY);
+      } catch (Exception e) {
+        discardSerializationContext(protocolKind);
+        throw new IllegalArgumentException("Warm up of the codec for " + type + " failed", e);
+      } finally {
+        context.inputTransport.clear();
+      }
+    }
+  }
+
+  /**
+   * Encodes a value of the type with every struct field set and one element in every container.
+   * Packed fields are left out, since their encoding is specific to the packing.
+   */
+  private static byte[] createSyntheticValue(ThriftType type, ThriftProtocolKind protocolKind)
+      throws Exception {
+    TMemoryOutputTransport transport = new TMemoryOutputTransport();
+    writeSyntheticValue(type, protocolKind.createProtocol(transport));
+    return transport.toByteArray();
+  }
+
+  private static void writeSyntheticValue(ThriftType type, TProtocol protocol) throws Exception {
+    switch (type.getProtocolType()) {
+      case BOOL:
+        protocol.writeBool(true);
+        break;
+      case BYTE:
+        protocol.writeByte((byte) 1);
+        break;
+      case I16:
+        protocol.writeI16((short) 1);
+        break;
+      case I32:
+        protocol.writeI32(1);
+        break;
+      case I64:
+        protocol.writeI64(1);
+        break;
+      case DOUBLE:
+        protocol.writeDouble(1);
+        break;
+      case STRING:
+        protocol.writeString("warm up");
+        break;
+      case ENUM:
+        protocol.writeI32(getFirstEnumValue(type.getEnumMetadata()));
+        break;
+      case STRUCT:
+        protocol.writeStructBegin(new TStruct());
+        if (type != ThriftType.VOID) {
+          for (ThriftFieldMetadata field : type.getStructMetadata().getFields()) {
+            ThriftType fieldType = field.getType();
+            if (fieldType.isPacked() || fieldType == ThriftType.VOID) {
+              continue;
+            }
+            protocol.writeFieldBegin(
+                new TField(field.getName(), fieldType.getProtocolType().getType(), field.getId())
+            );
+            writeSyntheticValue(fieldType, protocol);
+            protocol.writeFieldEnd();
+          }
+        }
+        protocol.writeFieldStop();
+        protocol.writeStructEnd();
+        break;
+      case MAP:
+        protocol.writeMapBegin(
+            new TMap(
+                type.getKeyType().getProtocolType().getType(),
+                type.getValueType().getProtocolType().getType(),
+                1
+            )
+        );
+        writeSyntheticValue(type.getKeyType(), protocol);
+        writeSyntheticValue(type.getValueType(), protocol);
+        protocol.writeMapEnd();
+        break;
+      case SET:
+        protocol.writeSetBegin(new TSet(type.getValueType().getProtocolType().getType(), 1));
+        writeSyntheticValue(type.getValueType(), protocol);
+        protocol.writeSetEnd();
+        break;
+      case LIST:
+        protocol.writeListBegin(new TList(type.getValueType().getProtocolType().getType(), 1));
+        writeSyntheticValue(type.getValueType(), protocol);
+        protocol.writeListEnd();
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported Thrift type " + type);
+    }
+  }
+
+  private static <T extends Enum<T>> int getFirstEnumValue(ThriftEnumMetadata<T> enumMetadata) {
+    T[] constants = enumMetadata.getEnumClass().getEnumConstants();
+    return constants.length == 0 ? 0 : enumMetadata.getEnumValue(constants[0]);
+  }
+
   public <T> T read(Class<T> type, TProtocol protocol) throws Exception {
     return getCodec(type).read(new TProtocolReader(protocol));
   }
@@ -169,4 +612,259 @@ public class ThriftCodecManager {
     ThriftCodec<Object> codec = (ThriftCodec<Object>) getCodec(type);
     codec.write(value, new TProtocolWriter(protocol));
   }
+
+  /**
+   * Writes a list by encoding ranges of elements concurrently on the pool into separate buffers,
+   * which are then written in order behind a single list header.  The protocol must be a binary
+   * or compact protocol.  Lists with fewer elements than a single range are written directly.
+   */
+  public <E> void writeListParallel(
+      Class<E> elementType,
+      List<E> elements,
+      TProtocol protocol,
+      ForkJoinPool pool
+  ) throws Exception {
+    ParallelListEncoder<E> encoder = new ParallelListEncoder<>(
+        getCodec(elementType),
+        ThriftProtocolKind.fromProtocol(protocol),
+        pool,
+        parallelWriteChunkPool,
+        PARALLEL_WRITE_RANGE_SIZE
+    );
+    encoder.write(elements, protocol);
+  }
+
+  /**
+   * Serializes the value to a new byte array using a reusable per-thread transport and protocol.
+   */
+  public <T> byte[] serialize(Class<T> type, T value, ThriftProtocolKind protocolKind)
+      throws Exception {
+    ThriftCodec<T> codec = getCodec(type);
+    SerializationContext context = getSerializationContext(protocolKind);
+    try {
+      context.outputTransport.reset();
+      context.outputProtocol.reset();
+      codec.write(value, context.writer);
+      byte[] bytes = context.outputTransport.toByteArray();
+      context.outputTransport.reset(MAX_RETAINED_OUTPUT_CAPACITY);
+      return bytes;
+    } catch (Exception e) {
+      discardSerializationContext(protocolKind);
+      throw e;
+    }
+  }
+
+  /**
+   * Serializes the value directly into the buffer starting at the buffer position, and advances
+   * the position past the written data.  If the buffer does not have enough space remaining, a
+   * BufferOverflowException is thrown and the buffer position is left unchanged.
+   */
+  public <T> void serializeTo(
+      Class<T> type,
+      T value,
+      ThriftProtocolKind protocolKind,
+      ByteBuffer buffer
+  ) throws Exception {
+    Preconditions.checkNotNull(buffer, "buffer is null");
+
+    ThriftCodec<T> codec = getCodec(type);
+    SerializationContext context = getSerializationContext(protocolKind);
+    int position = buffer.position();
+    try {
+      context.bufferTransport.reset(buffer);
+      context.bufferProtocol.reset();
+      codec.write(value, context.bufferWriter);
+    } catch (Exception e) {
+      buffer.position(position);
+      discardSerializationContext(protocolKind);
+      throw e;
+    } finally {
+      context.bufferTransport.clear();
+    }
+  }
+
+  /**
+   * Computes the exact number of bytes {@link #serialize} would produce for the value without
+   * encoding it.  The size is computed from the struct metadata, so this can be used to allocate
+   * a right sized buffer, write a frame length up front or to enforce a message size limit before
+   * spending any time on encoding.  Values of types with a codec added with {@link #addCodec} and
+   * columnar lists are the exception; they are measured by encoding them.
+   */
+  public <T> long serializedSize(Class<T> type, T value, ThriftProtocolKind protocolKind)
+      throws Exception {
+    Preconditions.checkNotNull(value, "value is null");
+
+    ThriftType thriftType = getCodec(type).getType();
+    SerializationContext context = getSerializationContext(protocolKind);
+    try {
+      return context.sizeCalculator.sizeOf(thriftType, value);
+    } catch (Exception e) {
+      discardSerializationContext(protocolKind);
+      throw e;
+    }
+  }
+
+  public <T> T deserialize(Class<T> type, byte[] bytes, ThriftProtocolKind protocolKind)
+      throws Exception {
+    return deserialize(type, bytes, 0, bytes.length, protocolKind);
+  }
+
+  /**
+   * Deserializes a value from the specified range of the array using a reusable per-thread
+   * transport and protocol.  Binary values in the result may share the supplied array.
+   */
+  public <T> T deserialize(
+      Class<T> type,
+      byte[] bytes,
+      int offset,
+      int length,
+      ThriftProtocolKind protocolKind
+  ) throws Exception {
+    return deserialize(type, bytes, offset, length, protocolKind, false);
+  }
+
+  /**
+   * Deserializes a value from the specified range of the array using a reusable per-thread
+   * transport and protocol.  If sliceBinaryValues is set, binary values in the result are
+   * returned as read-only slices of the supplied array instead of copies, so the array must not
+   * be modified while the result is in use.
+   */
+  public <T> T deserialize(
+      Class<T> type,
+      byte[] bytes,
+      int offset,
+      int length,
+      ThriftProtocolKind protocolKind,
+      boolean sliceBinaryValues
+  ) throws Exception {
+    Preconditions.checkNotNull(bytes, "bytes is null");
+    Preconditions.checkPositionIndexes(offset, offset + length, bytes.length);
+
+    ThriftCodec<T> codec = getCodec(type);
+    SerializationContext context = getSerializationContext(protocolKind);
+    try {
+      context.inputTransport.reset(bytes, offset, length);
+      context.inputProtocol.reset();
+      if (sliceBinaryValues) {
+        return codec.read(context.slicingReader);
+      }
+      return codec.read(context.reader);
+    } catch (Exception e) {
+      discardSerializationContext(protocolKind);
+      throw e;
+    } finally {
+      context.inputTransport.clear();
+    }
+  }
+
+  /**
+   * Deserializes a value into an existing instance, reusing the instance and any nested structs
+   * and collections it holds.  The type must be a mutable struct.
+   *
+   * @return the value; this is the target unless the target could not be reused
+   */
+  public <T> T deserializeInto(
+      Class<T> type,
+      T target,
+      byte[] bytes,
+      int offset,
+      int length,
+      ThriftProtocolKind protocolKind
+  ) throws Exception {
+    Preconditions.checkNotNull(target, "target is null");
+    Preconditions.checkNotNull(bytes, "bytes is null");
+    Preconditions.checkPositionIndexes(offset, offset + length, bytes.length);
+
+    ThriftCodec<T> codec = getCodec(type);
+    Preconditions.checkArgument(
+        codec instanceof ThriftReusableCodec,
+        "%s can not be read into an existing instance",
+        type.getName()
+    );
+
+    SerializationContext context = getSerializationContext(protocolKind);
+    try {
+      context.inputTransport.reset(bytes, offset, length);
+      context.inputProtocol.reset();
+      return ((ThriftReusableCodec<T>) codec).readInto(target, context.reader);
+    } catch (Exception e) {
+      discardSerializationContext(protocolKind);
+      throw e;
+    } finally {
+      context.inputTransport.clear();
+    }
+  }
+
+  /**
+   * Creates a decoder for a stream of values of the specified type that arrives in chunks.  The
+   * returned decoder is not thread safe.
+   */
+  public <T> IncrementalThriftDecoder<T> createIncrementalDecoder(
+      Class<T> type,
+      ThriftProtocolKind protocolKind
+  ) {
+    return new IncrementalThriftDecoder<>(getCodec(type), protocolKind);
+  }
+
+  private SerializationContext getSerializationContext(ThriftProtocolKind protocolKind) {
+    Preconditions.checkNotNull(protocolKind, "protocolKind is null");
+    SerializationContext[] contexts = serializationContexts.get();
+    SerializationContext context = contexts[protocolKind.ordinal()];
+    if (context == null) {
+      context = new SerializationContext(this, protocolKind);
+      contexts[protocolKind.ordinal()] = context;
+    }
+    return context;
+  }
+
+  /**
+   * A failed read or write can leave the protocol or reader in an unknown state, so the context is
+   * replaced instead of reused.
+   */
+  private void discardSerializationContext(ThriftProtocolKind protocolKind) {
+    serializationContexts.get()[protocolKind.ordinal()] = null;
+  }
+
+  @NotThreadSafe
+  private static class SerializationContext {
+    private final TMemoryInputTransport inputTransport = new TMemoryInputTransport();
+    private final TProtocol inputProtocol;
+    private final TProtocolReader reader;
+    private final TProtocolReader slicingReader;
+
+    private final TMemoryOutputTransport outputTransport = new TMemoryOutputTransport();
+    private final TProtocol outputProtocol;
+    private final TProtocolWriter writer;
+
+    private final TByteBufferOutputTransport bufferTransport = new TByteBufferOutputTransport();
+    private final TProtocol bufferProtocol;
+    private final TProtocolWriter bufferWriter;
+
+    private final TCountingOutputTransport countingTransport = new TCountingOutputTransport();
+    private final TProtocol countingProtocol;
+    private final TProtocolWriter countingWriter;
+    private final ThriftSizeCalculator sizeCalculator;
+
+    private SerializationContext(ThriftCodecManager codecManager, ThriftProtocolKind protocolKind) {
+      inputProtocol = protocolKind.createProtocol(inputTransport);
+      reader = new TProtocolReader(inputProtocol);
+      slicingReader = new TProtocolReader(inputProtocol, true);
+
+      outputProtocol = protocolKind.createProtocol(outputTransport);
+      writer = new TProtocolWriter(outputProtocol);
+
+      bufferProtocol = protocolKind.createProtocol(bufferTransport);
+      bufferWriter = new TProtocolWriter(bufferProtocol);
+
+      countingProtocol = protocolKind.createProtocol(countingTransport);
+      countingWriter = new TProtocolWriter(countingProtocol);
+      sizeCalculator = new ThriftSizeCalculator(
+          codecManager,
+          protocolKind,
+          countingTransport,
+          countingProtocol,
+          countingWriter
+      );
+    }
+  }
 }
@@ -24,4 +24,25 @@ public @interface ThriftField {
   String name() default "";
 
   boolean required() default false;
+
+  /**
+   * If set, the field is not written when it has the Java default value (zero or false), and a
+   * missing field is read as the Java default.  This is only supported for fields with a
+   * primitive Java type.
+   */
+  boolean omitDefault() default false;
+
+  /**
+   * Writes a list as a single binary field using the specified packing instead of as a Thrift
+   * list.  Lists of structs can only use {@link ThriftPacking#COLUMNAR}, and lists of Integer,
+   * Long or enum values can use any other packing.
+   */
+  ThriftPacking packing() default ThriftPacking.NONE;
+
+  /**
+   * If set, decoded values are resolved through a bounded table of recently read strings, so
+   * fields with few distinct values share String instances instead of allocating a new String
+   * for every value.  This is only supported for String fields.
+   */
+  boolean intern() default false;
 }
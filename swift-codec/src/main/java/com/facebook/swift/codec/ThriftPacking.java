@@ -0,0 +1,44 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec;
+
+/**
+ * Compact encodings for lists.  A packed list is written as a single binary field, so it is still
+ * a legal Thrift field, but it can only be read by a reader using the same packing.  All packings
+ * except {@link #COLUMNAR} are for lists of Integer, Long or enum values, and contain the number
+ * of values followed by the encoded values.
+ */
+public enum ThriftPacking {
+  /**
+   * The list is written as a normal Thrift list.
+   */
+  NONE,
+
+  /**
+   * Each value is written as a zigzag varint of the difference from the previous value.  This is
+   * the smallest encoding for sorted values, such as timestamps.
+   */
+  DELTA,
+
+  /**
+   * Each value is written as a zigzag varint, so values close to zero, including negative
+   * values, use few bytes.
+   */
+  ZIGZAG,
+
+  /**
+   * All values are zigzag encoded and written with the number of bits needed for the largest
+   * value, and at least one bit.  This is the smallest encoding for enums and codes with a small
+   * range.
+   */
+  BIT_PACKED,
+
+  /**
+   * A list of structs is written column by column: all values of the first field, then all values
+   * of the second field, and so on.  Integral fields are packed, and strings with few distinct
+   * values are written with a dictionary.  This is the smallest encoding for large lists of
+   * similar records.
+   */
+  COLUMNAR
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec;
+
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TTransport;
+
+/**
+ * The Thrift wire encodings supported by the ThriftCodecManager serialize and deserialize methods.
+ */
+public enum ThriftProtocolKind {
+  BINARY {
+    @Override
+    public TProtocol createProtocol(TTransport transport) {
+      return new TBinaryProtocol(transport);
+    }
+  },
+  COMPACT {
+    @Override
+    public TProtocol createProtocol(TTransport transport) {
+      return new TCompactProtocol(transport);
+    }
+  };
+
+  public abstract TProtocol createProtocol(TTransport transport);
+
+  /**
+   * Gets the kind of the specified protocol instance.
+   *
+   * @throws IllegalArgumentException if the protocol is not a binary or compact protocol
+   */
+  public static ThriftProtocolKind fromProtocol(TProtocol protocol) {
+    if (protocol instanceof TCompactProtocol) {
+      return COMPACT;
+    }
+    if (protocol instanceof TBinaryProtocol) {
+      return BINARY;
+    }
+    throw new IllegalArgumentException("Unsupported protocol " + protocol.getClass().getName());
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec;
+
+import com.facebook.swift.codec.internal.TProtocolReader;
+
+/**
+ * A codec that can read a value into an existing instance instead of allocating a new one.
+ * This allows tight decode loops to reuse a fixed set of objects for every message.
+ * <p/>
+ * Struct codecs implement this interface when the struct is mutable; that is, it is created with
+ * a no argument constructor and all fields are injected with fields or setter methods.  List,
+ * set and map codecs implement this interface to refill existing mutable collections.
+ *
+ * @param <T> the type this codec supports
+ */
+public interface ThriftReusableCodec<T> extends ThriftCodec<T> {
+  /**
+   * Reads a value from the supplied Thrift protocol reader into the target instance.  Any
+   * state in the target that is not present in the protocol is reset to the Java default.
+   * Nested structs and collections held by the target are reused when possible.
+   *
+   * @param target   the instance to populate; not null
+   * @param protocol the protocol to read from
+   * @return the value; this is the target if it could be reused, otherwise a new instance
+   * @throws Exception if any problems occurred when reading or coercing the value
+   */
+  public T readInto(T target, TProtocolReader protocol)
+      throws Exception;
+}
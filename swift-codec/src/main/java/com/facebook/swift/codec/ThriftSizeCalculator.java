@@ -0,0 +1,368 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec;
+
+import com.facebook.swift.codec.internal.TCountingOutputTransport;
+import com.facebook.swift.codec.internal.TProtocolWriter;
+import com.facebook.swift.codec.internal.builtin.PackedListThriftCodec;
+import com.facebook.swift.codec.metadata.ThriftEnumMetadata;
+import com.facebook.swift.codec.metadata.ThriftExtraction;
+import com.facebook.swift.codec.metadata.ThriftFieldExtractor;
+import com.facebook.swift.codec.metadata.ThriftFieldMetadata;
+import com.facebook.swift.codec.metadata.ThriftMethodExtractor;
+import com.facebook.swift.codec.metadata.ThriftStructMetadata;
+import com.facebook.swift.codec.metadata.ThriftType;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.primitives.Primitives;
+import org.apache.thrift.protocol.TProtocol;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Computes the encoded size of a value from its ThriftType and struct metadata without encoding
+ * it.  Field headers, varints and length prefixes are sized with the rules of the binary or
+ * compact protocol, and containers and structs are sized recursively.
+ * <p/>
+ * Values whose encoding is not described by the metadata (types with a codec added to the codec
+ * manager, and columnar lists, whose layout depends on the column contents) are measured by
+ * writing them with their codec to a counting transport.
+ */
+@NotThreadSafe
+class ThriftSizeCalculator {
+  // encoded size of the primitive types in the binary protocol
+  private static final Map<ThriftProtocolType, Integer> BINARY_SIZES =
+      ImmutableMap.<ThriftProtocolType, Integer>builder()
+          .put(ThriftProtocolType.BOOL, 1)
+          .put(ThriftProtocolType.BYTE, 1)
+          .put(ThriftProtocolType.I16, 2)
+          .put(ThriftProtocolType.I32, 4)
+          .put(ThriftProtocolType.ENUM, 4)
+          .put(ThriftProtocolType.I64, 8)
+          .put(ThriftProtocolType.DOUBLE, 8)
+          .build();
+
+  // encoded size of the fixed size primitive types in the compact protocol
+  private static final Map<ThriftProtocolType, Integer> COMPACT_SIZES =
+      ImmutableMap.<ThriftProtocolType, Integer>builder()
+          .put(ThriftProtocolType.BOOL, 1)
+          .put(ThriftProtocolType.BYTE, 1)
+          .put(ThriftProtocolType.DOUBLE, 8)
+          .build();
+
+  private final ThriftCodecManager codecManager;
+  private final boolean compact;
+  private final TCountingOutputTransport countingTransport;
+  private final TProtocol countingProtocol;
+  private final TProtocolWriter countingWriter;
+
+  ThriftSizeCalculator(
+      ThriftCodecManager codecManager,
+      ThriftProtocolKind protocolKind,
+      TCountingOutputTransport countingTransport,
+      TProtocol countingProtocol,
+      TProtocolWriter countingWriter
+  ) {
+    this.codecManager = codecManager;
+    this.compact = protocolKind == ThriftProtocolKind.COMPACT;
+    this.countingTransport = countingTransport;
+    this.countingProtocol = countingProtocol;
+    this.countingWriter = countingWriter;
+  }
+
+  public long sizeOf(ThriftType type, Object value) throws Exception {
+    if (isMeasured(type)) {
+      return measure(type, value);
+    }
+
+    // convert coerced values to the protocol representation
+    if (type.isCoerced() && !isProtocolValue(type, value)) {
+      Object thriftValue = invoke(
+          codecManager.getCatalog().getDefaultCoercion(type.getJavaType()).getToThrift(),
+          null,
+          value
+      );
+      return sizeOf(type.getUncoercedType(), thriftValue);
+    }
+
+    if (type.isPacked()) {
+      PackedListThriftCodec<?> codec = (PackedListThriftCodec<?>) codecManager.getCodec(type);
+      return binarySize(codec.encodedSize((Iterable<?>) value));
+    }
+
+    switch (type.getProtocolType()) {
+      case BOOL:
+      case BYTE:
+      case DOUBLE:
+        return BINARY_SIZES.get(type.getProtocolType());
+      case I16:
+      case I32:
+        return compact ? varintSize(zigzag(((Number) value).intValue())) :
+            BINARY_SIZES.get(type.getProtocolType());
+      case I64:
+        return compact ? varintSize(zigzag(((Number) value).longValue())) : 8;
+      case ENUM:
+        return compact ? varintSize(zigzag(getEnumValue(type.getEnumMetadata(), value))) : 4;
+      case STRING:
+        if (value instanceof String) {
+          return binarySize(utf8Length((String) value));
+        }
+        return binarySize(((ByteBuffer) value).remaining());
+      case STRUCT:
+        return structSize(type.getStructMetadata(), value);
+      case SET:
+      case LIST:
+        return listSize(type.getValueType(), (Iterable<?>) value);
+      case MAP:
+        return mapSize(type.getKeyType(), type.getValueType(), (Map<?, ?>) value);
+      default:
+        throw new IllegalArgumentException("Unsupported Thrift type " + type);
+    }
+  }
+
+  private long structSize(ThriftStructMetadata<?> metadata, Object struct) throws Exception {
+    long size = 1; // field stop
+    short lastFieldId = 0;
+    for (ThriftFieldMetadata field : metadata.getFields()) {
+      if (field.isReadOnly()) {
+        continue;
+      }
+
+      Object value = getFieldValue(field.getExtraction(), struct);
+      if (field.isOmitDefault() && isJavaDefault(value)) {
+        continue;
+      }
+      if (value == null) {
+        continue;
+      }
+
+      ThriftType type = field.getType();
+      if (type.isCoerced() && !isProtocolValue(type, value) && !isMeasured(type)) {
+        // coerced values that convert to null are not written
+        value = invoke(field.getCoercion().getToThrift(), null, value);
+        if (value == null) {
+          continue;
+        }
+        type = type.getUncoercedType();
+      }
+
+      size += fieldHeaderSize(field.getId(), lastFieldId);
+      lastFieldId = field.getId();
+
+      // the compact protocol stores the value of a boolean field in the field header
+      if (!compact || type.getProtocolType() != ThriftProtocolType.BOOL || isMeasured(type)) {
+        size += sizeOf(type, value);
+      }
+    }
+    return size;
+  }
+
+  private long fieldHeaderSize(short id, short lastFieldId) {
+    if (!compact) {
+      // type byte and i16 id
+      return 3;
+    }
+    // small positive deltas are packed into the type byte, otherwise the id follows as a varint
+    if (id > lastFieldId && id - lastFieldId <= 15) {
+      return 1;
+    }
+    return 1 + varintSize(zigzag(id));
+  }
+
+  private long listSize(ThriftType elementType, Iterable<?> elements) throws Exception {
+    int count;
+    if (elements instanceof Collection) {
+      count = ((Collection<?>) elements).size();
+    } else {
+      count = Iterables.size(elements);
+    }
+
+    long size;
+    if (compact) {
+      size = count <= 14 ? 1 : 1 + varintSize(count);
+    } else {
+      size = 1 + 4;
+    }
+
+    Integer elementSize = getFixedSize(elementType);
+    if (elementSize != null) {
+      return size + (long) count * elementSize;
+    }
+    for (Object element : elements) {
+      size += sizeOf(elementType, element);
+    }
+    return size;
+  }
+
+  private long mapSize(ThriftType keyType, ThriftType valueType, Map<?, ?> map)
+      throws Exception {
+    int count = map.size();
+    long size;
+    if (compact) {
+      size = count == 0 ? 1 : varintSize(count) + 1;
+    } else {
+      size = 1 + 1 + 4;
+    }
+
+    Integer keySize = getFixedSize(keyType);
+    Integer valueSize = getFixedSize(valueType);
+    if (keySize != null && valueSize != null) {
+      return size + (long) count * (keySize + valueSize);
+    }
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      size += keySize != null ? keySize : sizeOf(keyType, entry.getKey());
+      size += valueSize != null ? valueSize : sizeOf(valueType, entry.getValue());
+    }
+    return size;
+  }
+
+  private long binarySize(long length) {
+    return (compact ? varintSize(length) : 4) + length;
+  }
+
+  /**
+   * Gets the size of every value of the type, or null if the size depends on the value.
+   */
+  private Integer getFixedSize(ThriftType type) {
+    if (type.isPacked() || isMeasured(type)) {
+      return null;
+    }
+    // boxed primitives are the only coerced values with a known size
+    if (type.isCoerced() && !Primitives.allWrapperTypes().contains(type.getJavaType())) {
+      return null;
+    }
+    return (compact ? COMPACT_SIZES : BINARY_SIZES).get(type.getProtocolType());
+  }
+
+  /**
+   * Is the value of a coerced type already in the protocol representation?  This is the case for
+   * strings and boxed primitives, which are written without calling the coercion.
+   */
+  private static boolean isProtocolValue(ThriftType type, Object value) {
+    switch (type.getProtocolType()) {
+      case STRING:
+        return value instanceof String || value instanceof ByteBuffer;
+      case BOOL:
+      case BYTE:
+      case I16:
+      case I32:
+      case I64:
+      case DOUBLE:
+        return Primitives.unwrap(value.getClass()) == type.getUncoercedType().getJavaType();
+      default:
+        return false;
+    }
+  }
+
+  private boolean isMeasured(ThriftType type) {
+    return type.getPacking() == ThriftPacking.COLUMNAR ||
+        type == ThriftType.VOID ||
+        codecManager.isAddedCodecType(type);
+  }
+
+  private long measure(ThriftType type, Object value) throws Exception {
+    ThriftCodec<Object> codec = getCodec(type);
+    countingTransport.reset();
+    countingProtocol.reset();
+    codec.write(value, countingWriter);
+    return countingTransport.getCount();
+  }
+
+  @SuppressWarnings("unchecked")
+  private ThriftCodec<Object> getCodec(ThriftType type) {
+    return (ThriftCodec<Object>) codecManager.getCodec(type);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends Enum<T>> int getEnumValue(
+      ThriftEnumMetadata<T> enumMetadata,
+      Object value
+  ) {
+    return enumMetadata.getEnumValue((T) value);
+  }
+
+  private static Object getFieldValue(ThriftExtraction extraction, Object struct)
+      throws Exception {
+    if (extraction instanceof ThriftFieldExtractor) {
+      return ((ThriftFieldExtractor) extraction).getField().get(struct);
+    }
+    return invoke(((ThriftMethodExtractor) extraction).getMethod(), struct);
+  }
+
+  private static Object invoke(java.lang.reflect.Method method, Object target, Object... args)
+      throws Exception {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      if (e.getTargetException() != null) {
+        Throwables.propagateIfInstanceOf(e.getTargetException(), Exception.class);
+      }
+      throw e;
+    }
+  }
+
+  private static boolean isJavaDefault(Object value) {
+    if (value instanceof Boolean) {
+      return !((Boolean) value);
+    }
+    if (value instanceof Double) {
+      // -0.0 is written, since it is not equal to the default
+      return Double.doubleToRawLongBits((Double) value) == 0;
+    }
+    return value instanceof Number && ((Number) value).longValue() == 0;
+  }
+
+  /**
+   * Computes the length of the string when encoded as UTF-8.  Unpaired surrogates are replaced
+   * with a single byte by the encoder.
+   */
+  static long utf8Length(String value) {
+    int count = value.length();
+    long length = count;
+    for (int i = 0; i < count; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        continue;
+      }
+      if (c < 0x800) {
+        length += 1;
+      } else if (Character.isHighSurrogate(c) &&
+          i + 1 < count &&
+          Character.isLowSurrogate(value.charAt(i + 1))) {
+        // a surrogate pair is two chars encoded as four bytes
+        length += 2;
+        i++;
+      } else if (!Character.isSurrogate(c)) {
+        length += 2;
+      }
+    }
+    return length;
+  }
+
+  private static int zigzag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static int varintSize(int value) {
+    return varintSize(value & 0xFFFFFFFFL);
+  }
+
+  private static int varintSize(long value) {
+    int size = 1;
+    while ((value & ~0x7FL) != 0) {
+      size++;
+      value >>>= 7;
+    }
+    return size;
+  }
+}
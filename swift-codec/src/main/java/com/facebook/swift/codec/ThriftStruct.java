@@ -17,4 +17,10 @@ public @interface ThriftStruct {
   String value() default "";
 
   Class<?> builder() default void.class;
+
+  /**
+   * If set, all fields with a primitive Java type are written as if annotated with
+   * {@link ThriftField#omitDefault()}.
+   */
+  boolean omitDefaults() default false;
 }
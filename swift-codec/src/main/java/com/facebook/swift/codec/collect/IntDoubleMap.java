@@ -0,0 +1,349 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.collect;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map from int to double that stores keys and values in primitive arrays using open addressing
+ * with linear probing.  An entry costs 12 bytes of array space, instead of the roughly 80 bytes
+ * of an entry in a boxed HashMap.
+ * <p/>
+ * The primitive methods never box.  The Map methods are provided for interoperability and box
+ * keys and values on every call.  Null keys and values are not supported, and iterators over the
+ * Map views do not support removal.  Thrift encodes this type as a map&lt;i32, double&gt;.
+ */
+@NotThreadSafe
+public class IntDoubleMap extends AbstractMap<Integer, Double> {
+  private static final int DEFAULT_EXPECTED_SIZE = 16;
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  // a zero key marks a free slot, so the zero key is stored separately
+  private int[] keys;
+  private double[] values;
+  private int mask;
+  private int assigned;
+  private int resizeAt;
+
+  private boolean hasZeroKey;
+  private double zeroValue;
+
+  public IntDoubleMap() {
+    this(DEFAULT_EXPECTED_SIZE);
+  }
+
+  public IntDoubleMap(int expectedSize) {
+    Preconditions.checkArgument(expectedSize >= 0, "expectedSize is negative");
+    allocate(tableSize(expectedSize));
+  }
+
+  @Override
+  public int size() {
+    return assigned + (hasZeroKey ? 1 : 0);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public boolean containsKey(int key) {
+    if (key == 0) {
+      return hasZeroKey;
+    }
+    return findSlot(key) >= 0;
+  }
+
+  /**
+   * Returns the value for the key, or the default value if the key is not present.
+   */
+  public double get(int key, double defaultValue) {
+    if (key == 0) {
+      return hasZeroKey ? zeroValue : defaultValue;
+    }
+    int slot = findSlot(key);
+    return slot >= 0 ? values[slot] : defaultValue;
+  }
+
+  /**
+   * Associates the value with the key.
+   *
+   * @return the previous value, or 0 if the key was not present
+   */
+  public double put(int key, double value) {
+    if (key == 0) {
+      double previous = zeroValue;
+      hasZeroKey = true;
+      zeroValue = value;
+      return previous;
+    }
+
+    int slot = findSlot(key);
+    if (slot >= 0) {
+      double previous = values[slot];
+      values[slot] = value;
+      return previous;
+    }
+
+    slot = ~slot;
+    keys[slot] = key;
+    values[slot] = value;
+    assigned++;
+    if (assigned >= resizeAt) {
+      rehash(keys.length * 2);
+    }
+    return 0;
+  }
+
+  /**
+   * Adds the delta to the value for the key, treating a missing key as zero.
+   *
+   * @return the new value
+   */
+  public double addTo(int key, double delta) {
+    double value = get(key, 0) + delta;
+    put(key, value);
+    return value;
+  }
+
+  /**
+   * Removes the key.
+   *
+   * @return the removed value, or 0 if the key was not present
+   */
+  public double remove(int key) {
+    if (key == 0) {
+      double previous = zeroValue;
+      hasZeroKey = false;
+      zeroValue = 0;
+      return previous;
+    }
+
+    int slot = findSlot(key);
+    if (slot < 0) {
+      return 0;
+    }
+    double previous = values[slot];
+    shiftConflictingKeys(slot);
+    assigned--;
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(keys, 0);
+    Arrays.fill(values, 0);
+    assigned = 0;
+    hasZeroKey = false;
+    zeroValue = 0;
+  }
+
+  /**
+   * Returns a cursor over the entries of this map, which does not box.  The map must not be
+   * modified while the cursor is in use.
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof Integer && containsKey(((Integer) key).intValue());
+  }
+
+  @Override
+  public Double get(Object key) {
+    if (!containsKey(key)) {
+      return null;
+    }
+    return get(((Integer) key).intValue(), 0);
+  }
+
+  @Override
+  public Double put(Integer key, Double value) {
+    Preconditions.checkNotNull(key, "key is null");
+    Preconditions.checkNotNull(value, "value is null");
+    boolean present = containsKey(key.intValue());
+    double previous = put(key.intValue(), value.doubleValue());
+    return present ? previous : null;
+  }
+
+  @Override
+  public Double remove(Object key) {
+    if (!containsKey(key)) {
+      return null;
+    }
+    return remove(((Integer) key).intValue());
+  }
+
+  @Override
+  public Set<Entry<Integer, Double>> entrySet() {
+    return new AbstractSet<Entry<Integer, Double>>() {
+      @Override
+      public Iterator<Entry<Integer, Double>> iterator() {
+        final Cursor cursor = cursor();
+        return new Iterator<Entry<Integer, Double>>() {
+          private boolean ready;
+          private boolean hasNext;
+
+          @Override
+          public boolean hasNext() {
+            if (!ready) {
+              hasNext = cursor.next();
+              ready = true;
+            }
+            return hasNext;
+          }
+
+          @Override
+          public Entry<Integer, Double> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            ready = false;
+            return new SimpleImmutableEntry<>(cursor.getKey(), cursor.getValue());
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return IntDoubleMap.this.size();
+      }
+    };
+  }
+
+  /**
+   * Returns the slot containing the key, or the bitwise complement of the free slot where the
+   * key would be inserted.
+   */
+  private int findSlot(int key) {
+    int slot = hash(key) & mask;
+    while (keys[slot] != 0) {
+      if (keys[slot] == key) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return ~slot;
+  }
+
+  /**
+   * Removes the entry in the gap slot by shifting back later entries of the same probe run, so
+   * lookups never need tombstones.
+   */
+  private void shiftConflictingKeys(int gap) {
+    int slot = gap;
+    while (true) {
+      slot = (slot + 1) & mask;
+      int key = keys[slot];
+      if (key == 0) {
+        break;
+      }
+      // the key may move into the gap unless its home slot lies between the gap and the slot
+      int home = hash(key) & mask;
+      if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+        keys[gap] = key;
+        values[gap] = values[slot];
+        gap = slot;
+      }
+    }
+    keys[gap] = 0;
+    values[gap] = 0;
+  }
+
+  private void rehash(int capacity) {
+    Preconditions.checkState(capacity <= MAX_CAPACITY, "map is too large");
+    int[] oldKeys = keys;
+    double[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      int key = oldKeys[i];
+      if (key != 0) {
+        int slot = ~findSlot(key);
+        keys[slot] = key;
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new double[capacity];
+    mask = capacity - 1;
+    // keep the load factor at or below 3/4 so probe runs stay short
+    resizeAt = capacity - (capacity >>> 2);
+  }
+
+  private static int tableSize(int expectedSize) {
+    long minimumCapacity = (expectedSize * 4L) / 3 + 1;
+    if (minimumCapacity >= MAX_CAPACITY) {
+      return MAX_CAPACITY;
+    }
+    return Math.max(4, Integer.highestOneBit((int) minimumCapacity - 1) << 1);
+  }
+
+  private static int hash(int key) {
+    // murmur3 finalizer, so sequential keys spread over the table
+    key ^= key >>> 16;
+    key *= 0x85ebca6b;
+    key ^= key >>> 13;
+    key *= 0xc2b2ae35;
+    key ^= key >>> 16;
+    return key;
+  }
+
+  /**
+   * Iterates over the entries of the map without boxing.
+   */
+  public class Cursor {
+    private boolean zeroKeyPending = hasZeroKey;
+    private int slot = -1;
+    private int key;
+    private double value;
+
+    /**
+     * Advances to the next entry.
+     *
+     * @return false if there are no more entries
+     */
+    public boolean next() {
+      if (zeroKeyPending) {
+        zeroKeyPending = false;
+        key = 0;
+        value = zeroValue;
+        return true;
+      }
+      while (++slot < keys.length) {
+        if (keys[slot] != 0) {
+          key = keys[slot];
+          value = values[slot];
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public int getKey() {
+      return key;
+    }
+
+    public double getValue() {
+      return value;
+    }
+  }
+}
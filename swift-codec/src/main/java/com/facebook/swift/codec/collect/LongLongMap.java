@@ -0,0 +1,349 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.collect;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map from long to long that stores keys and values in primitive arrays using open addressing
+ * with linear probing.  An entry costs 16 bytes of array space, instead of the roughly 80 bytes
+ * of an entry in a boxed HashMap.
+ * <p/>
+ * The primitive methods never box.  The Map methods are provided for interoperability and box
+ * keys and values on every call.  Null keys and values are not supported, and iterators over the
+ * Map views do not support removal.  Thrift encodes this type as a map&lt;i64, i64&gt;.
+ */
+@NotThreadSafe
+public class LongLongMap extends AbstractMap<Long, Long> {
+  private static final int DEFAULT_EXPECTED_SIZE = 16;
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  // a zero key marks a free slot, so the zero key is stored separately
+  private long[] keys;
+  private long[] values;
+  private int mask;
+  private int assigned;
+  private int resizeAt;
+
+  private boolean hasZeroKey;
+  private long zeroValue;
+
+  public LongLongMap() {
+    this(DEFAULT_EXPECTED_SIZE);
+  }
+
+  public LongLongMap(int expectedSize) {
+    Preconditions.checkArgument(expectedSize >= 0, "expectedSize is negative");
+    allocate(tableSize(expectedSize));
+  }
+
+  @Override
+  public int size() {
+    return assigned + (hasZeroKey ? 1 : 0);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public boolean containsKey(long key) {
+    if (key == 0) {
+      return hasZeroKey;
+    }
+    return findSlot(key) >= 0;
+  }
+
+  /**
+   * Returns the value for the key, or the default value if the key is not present.
+   */
+  public long get(long key, long defaultValue) {
+    if (key == 0) {
+      return hasZeroKey ? zeroValue : defaultValue;
+    }
+    int slot = findSlot(key);
+    return slot >= 0 ? values[slot] : defaultValue;
+  }
+
+  /**
+   * Associates the value with the key.
+   *
+   * @return the previous value, or 0 if the key was not present
+   */
+  public long put(long key, long value) {
+    if (key == 0) {
+      long previous = zeroValue;
+      hasZeroKey = true;
+      zeroValue = value;
+      return previous;
+    }
+
+    int slot = findSlot(key);
+    if (slot >= 0) {
+      long previous = values[slot];
+      values[slot] = value;
+      return previous;
+    }
+
+    slot = ~slot;
+    keys[slot] = key;
+    values[slot] = value;
+    assigned++;
+    if (assigned >= resizeAt) {
+      rehash(keys.length * 2);
+    }
+    return 0;
+  }
+
+  /**
+   * Adds the delta to the value for the key, treating a missing key as zero.
+   *
+   * @return the new value
+   */
+  public long addTo(long key, long delta) {
+    long value = get(key, 0) + delta;
+    put(key, value);
+    return value;
+  }
+
+  /**
+   * Removes the key.
+   *
+   * @return the removed value, or 0 if the key was not present
+   */
+  public long remove(long key) {
+    if (key == 0) {
+      long previous = zeroValue;
+      hasZeroKey = false;
+      zeroValue = 0;
+      return previous;
+    }
+
+    int slot = findSlot(key);
+    if (slot < 0) {
+      return 0;
+    }
+    long previous = values[slot];
+    shiftConflictingKeys(slot);
+    assigned--;
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(keys, 0);
+    Arrays.fill(values, 0);
+    assigned = 0;
+    hasZeroKey = false;
+    zeroValue = 0;
+  }
+
+  /**
+   * Returns a cursor over the entries of this map, which does not box.  The map must not be
+   * modified while the cursor is in use.
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof Long && containsKey(((Long) key).longValue());
+  }
+
+  @Override
+  public Long get(Object key) {
+    if (!containsKey(key)) {
+      return null;
+    }
+    return get(((Long) key).longValue(), 0);
+  }
+
+  @Override
+  public Long put(Long key, Long value) {
+    Preconditions.checkNotNull(key, "key is null");
+    Preconditions.checkNotNull(value, "value is null");
+    boolean present = containsKey(key.longValue());
+    long previous = put(key.longValue(), value.longValue());
+    return present ? previous : null;
+  }
+
+  @Override
+  public Long remove(Object key) {
+    if (!containsKey(key)) {
+      return null;
+    }
+    return remove(((Long) key).longValue());
+  }
+
+  @Override
+  public Set<Entry<Long, Long>> entrySet() {
+    return new AbstractSet<Entry<Long, Long>>() {
+      @Override
+      public Iterator<Entry<Long, Long>> iterator() {
+        final Cursor cursor = cursor();
+        return new Iterator<Entry<Long, Long>>() {
+          private boolean ready;
+          private boolean hasNext;
+
+          @Override
+          public boolean hasNext() {
+            if (!ready) {
+              hasNext = cursor.next();
+              ready = true;
+            }
+            return hasNext;
+          }
+
+          @Override
+          public Entry<Long, Long> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            ready = false;
+            return new SimpleImmutableEntry<>(cursor.getKey(), cursor.getValue());
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return LongLongMap.this.size();
+      }
+    };
+  }
+
+  /**
+   * Returns the slot containing the key, or the bitwise complement of the free slot where the
+   * key would be inserted.
+   */
+  private int findSlot(long key) {
+    int slot = hash(key) & mask;
+    while (keys[slot] != 0) {
+      if (keys[slot] == key) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return ~slot;
+  }
+
+  /**
+   * Removes the entry in the gap slot by shifting back later entries of the same probe run, so
+   * lookups never need tombstones.
+   */
+  private void shiftConflictingKeys(int gap) {
+    int slot = gap;
+    while (true) {
+      slot = (slot + 1) & mask;
+      long key = keys[slot];
+      if (key == 0) {
+        break;
+      }
+      // the key may move into the gap unless its home slot lies between the gap and the slot
+      int home = hash(key) & mask;
+      if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+        keys[gap] = key;
+        values[gap] = values[slot];
+        gap = slot;
+      }
+    }
+    keys[gap] = 0;
+    values[gap] = 0;
+  }
+
+  private void rehash(int capacity) {
+    Preconditions.checkState(capacity <= MAX_CAPACITY, "map is too large");
+    long[] oldKeys = keys;
+    long[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      long key = oldKeys[i];
+      if (key != 0) {
+        int slot = ~findSlot(key);
+        keys[slot] = key;
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new long[capacity];
+    mask = capacity - 1;
+    // keep the load factor at or below 3/4 so probe runs stay short
+    resizeAt = capacity - (capacity >>> 2);
+  }
+
+  private static int tableSize(int expectedSize) {
+    long minimumCapacity = (expectedSize * 4L) / 3 + 1;
+    if (minimumCapacity >= MAX_CAPACITY) {
+      return MAX_CAPACITY;
+    }
+    return Math.max(4, Integer.highestOneBit((int) minimumCapacity - 1) << 1);
+  }
+
+  private static int hash(long key) {
+    // murmur3 finalizer, so sequential keys spread over the table
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  /**
+   * Iterates over the entries of the map without boxing.
+   */
+  public class Cursor {
+    private boolean zeroKeyPending = hasZeroKey;
+    private int slot = -1;
+    private long key;
+    private long value;
+
+    /**
+     * Advances to the next entry.
+     *
+     * @return false if there are no more entries
+     */
+    public boolean next() {
+      if (zeroKeyPending) {
+        zeroKeyPending = false;
+        key = 0;
+        value = zeroValue;
+        return true;
+      }
+      while (++slot < keys.length) {
+        if (keys[slot] != 0) {
+          key = keys[slot];
+          value = values[slot];
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public long getKey() {
+      return key;
+    }
+
+    public long getValue() {
+      return value;
+    }
+  }
+}
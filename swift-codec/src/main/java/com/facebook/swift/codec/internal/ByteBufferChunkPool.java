@@ -0,0 +1,75 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of fixed size direct ByteBuffer chunks.  Allocating direct memory is expensive,
+ * so released chunks are kept for reuse up to the configured limit.
+ */
+@ThreadSafe
+public class ByteBufferChunkPool {
+  private final int chunkSize;
+  private final int maxPooledChunks;
+  private final Queue<ByteBuffer> chunks = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pooledChunks = new AtomicInteger();
+
+  public ByteBufferChunkPool(int chunkSize, int maxPooledChunks) {
+    Preconditions.checkArgument(chunkSize > 0, "chunkSize must be positive");
+    Preconditions.checkArgument(maxPooledChunks >= 0, "maxPooledChunks is negative");
+
+    this.chunkSize = chunkSize;
+    this.maxPooledChunks = maxPooledChunks;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Gets the number of chunks currently available for reuse.
+   */
+  public int getPooledChunks() {
+    return pooledChunks.get();
+  }
+
+  /**
+   * Gets a cleared chunk from the pool, or allocates a new chunk if the pool is empty.
+   */
+  public ByteBuffer acquire() {
+    ByteBuffer chunk = chunks.poll();
+    if (chunk == null) {
+      return ByteBuffer.allocateDirect(chunkSize);
+    }
+    pooledChunks.decrementAndGet();
+    chunk.clear();
+    return chunk;
+  }
+
+  /**
+   * Returns a chunk to the pool.  The chunk must not be used by the caller after this call.
+   */
+  public void release(ByteBuffer chunk) {
+    Preconditions.checkNotNull(chunk, "chunk is null");
+    Preconditions.checkArgument(
+        chunk.capacity() == chunkSize,
+        "Chunk capacity %s does not match pool chunk size %s",
+        chunk.capacity(),
+        chunkSize
+    );
+
+    if (pooledChunks.incrementAndGet() <= maxPooledChunks) {
+      chunks.offer(chunk);
+    } else {
+      pooledChunks.decrementAndGet();
+    }
+  }
+}
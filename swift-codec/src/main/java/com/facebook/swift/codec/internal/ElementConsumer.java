@@ -0,0 +1,12 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal;
+
+/**
+ * Receives the elements of a Thrift container one at a time as they are decoded, so the caller
+ * can process and drop each element without materializing the whole collection.
+ */
+public interface ElementConsumer<E> {
+  void consume(E element) throws Exception;
+}
@@ -32,18 +32,9 @@ public class EnumThriftCodec<T extends Enum<T>> implements ThriftCodec<T> {
   @Override
   public T read(TProtocolReader protocol) throws Exception {
     int enumValue = protocol.readI32();
-    if (enumValue >= 0) {
-      if (enumMetadata.hasExplicitThriftValue()) {
-        T enumConstant = enumMetadata.getByEnumValue().get(enumValue);
-        if (enumConstant != null) {
-          return enumConstant;
-        }
-      } else {
-        T[] enumConstants = enumMetadata.getEnumClass().getEnumConstants();
-        if (enumValue < enumConstants.length) {
-          return enumConstants[enumValue];
-        }
-      }
+    T enumConstant = enumMetadata.getEnumConstant(enumValue);
+    if (enumConstant != null) {
+      return enumConstant;
     }
     throw new IllegalArgumentException(
         String.format(
@@ -58,12 +49,6 @@ public class EnumThriftCodec<T extends Enum<T>> implements ThriftCodec<T> {
   public void write(T enumConstant, TProtocolWriter protocol) throws Exception {
     Preconditions.checkNotNull(enumConstant, "enumConstant is null");
 
-    int enumValue;
-    if (enumMetadata.hasExplicitThriftValue()) {
-      enumValue = enumMetadata.getByEnumConstant().get(enumConstant);
-    } else {
-      enumValue = enumConstant.ordinal();
-    }
-    protocol.writeI32(enumValue);
+    protocol.writeI32(enumMetadata.getEnumValue(enumConstant));
   }
 }
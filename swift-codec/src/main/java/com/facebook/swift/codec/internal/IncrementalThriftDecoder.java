@@ -0,0 +1,185 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal;
+
+import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftPacking;
+import com.facebook.swift.codec.ThriftProtocolKind;
+import com.facebook.swift.codec.metadata.ThriftFieldMetadata;
+import com.facebook.swift.codec.metadata.ThriftType;
+import com.google.common.base.Preconditions;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.transport.TMemoryInputTransport;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes a stream of values that arrives in arbitrary chunks, such as the reads from a non
+ * blocking socket.  Each chunk is scanned as it is fed to the decoder, so a value is decoded as
+ * soon as its last byte arrives, and a caller never blocks waiting for more data.
+ * <p/>
+ * Values are decoded from the buffered bytes, and binary values may share the internal buffer.
+ * For this reason, once a value that may contain binary data has been decoded, the buffer is
+ * never overwritten in place, and the remaining bytes are moved to a new buffer when more data
+ * arrives.  Other values never share the buffer, so the undecoded bytes are simply moved to the
+ * front of the buffer.
+ */
+@NotThreadSafe
+public class IncrementalThriftDecoder<T> {
+  private static final int INITIAL_BUFFER_SIZE = 1024;
+
+  private final ThriftCodec<T> codec;
+  private final TValueScanner scanner;
+  private final int maxValueSize;
+
+  private final TMemoryInputTransport transport = new TMemoryInputTransport();
+  private final TProtocol protocol;
+  private final TProtocolReader reader;
+  private final boolean valuesShareBuffer;
+
+  private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+  // start of the current value
+  private int start;
+  // end of the bytes already scanned
+  private int scanned;
+  // end of the buffered bytes
+  private int limit;
+  // has a value that may share the buffer been decoded from it?
+  private boolean bufferShared;
+
+  public IncrementalThriftDecoder(ThriftCodec<T> codec, ThriftProtocolKind protocolKind) {
+    this(codec, protocolKind, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param maxValueSize the maximum encoded size of a single value; larger values cause a
+   * TProtocolException before they are fully buffered
+   */
+  public IncrementalThriftDecoder(
+      ThriftCodec<T> codec,
+      ThriftProtocolKind protocolKind,
+      int maxValueSize
+  ) {
+    Preconditions.checkNotNull(codec, "codec is null");
+    Preconditions.checkNotNull(protocolKind, "protocolKind is null");
+    Preconditions.checkArgument(maxValueSize > 0, "maxValueSize must be positive");
+
+    this.codec = codec;
+    this.scanner = new TValueScanner(protocolKind, codec.getType().getProtocolType().getType());
+    this.maxValueSize = maxValueSize;
+    this.protocol = protocolKind.createProtocol(transport);
+    this.reader = new TProtocolReader(protocol);
+    this.valuesShareBuffer = mayShareBuffer(codec.getType());
+  }
+
+  /**
+   * Gets the number of bytes buffered that have not been decoded yet.
+   */
+  public int getBufferedBytes() {
+    return limit - start;
+  }
+
+  /**
+   * Consumes all remaining bytes in the chunk.
+   */
+  public void feed(ByteBuffer chunk) {
+    Preconditions.checkNotNull(chunk, "chunk is null");
+
+    int length = chunk.remaining();
+    int buffered = limit - start;
+    if (bufferShared) {
+      // move the undecoded bytes to a new buffer, since decoded values may share the old one
+      moveTo(new byte[Math.max(buffered + length, INITIAL_BUFFER_SIZE)]);
+      bufferShared = false;
+    } else if (limit + length > buffer.length) {
+      if (buffered + length <= buffer.length) {
+        moveTo(buffer);
+      } else {
+        moveTo(new byte[Math.max(buffered + length, buffer.length * 2)]);
+      }
+    }
+    chunk.get(buffer, limit, length);
+    limit += length;
+  }
+
+  /**
+   * Gets the size of the internal buffer.
+   */
+  int getBufferCapacity() {
+    return buffer.length;
+  }
+
+  private void moveTo(byte[] newBuffer) {
+    int buffered = limit - start;
+    System.arraycopy(buffer, start, newBuffer, 0, buffered);
+    buffer = newBuffer;
+    scanned -= start;
+    limit = buffered;
+    start = 0;
+  }
+
+  /**
+   * Decodes the next value if all of its bytes have been received.
+   *
+   * @return the value or null if more data is needed
+   */
+  public T poll() throws Exception {
+    scanned += scanner.scan(buffer, scanned, limit - scanned);
+    if (!scanner.isComplete()) {
+      if (scanned - start > maxValueSize) {
+        throw new TProtocolException(
+            TProtocolException.SIZE_LIMIT,
+            String.format("Value exceeds the maximum size of %s bytes", maxValueSize)
+        );
+      }
+      return null;
+    }
+
+    try {
+      transport.reset(buffer, start, scanned - start);
+      protocol.reset();
+      T value = codec.read(reader);
+      start = scanned;
+      scanner.reset();
+      bufferShared |= valuesShareBuffer;
+      return value;
+    } finally {
+      transport.clear();
+    }
+  }
+
+  /**
+   * Can a decoded value of the type refer to the buffer it was decoded from?  Only binary values
+   * are read without copying, but they can be nested anywhere in structs and containers.
+   */
+  private static boolean mayShareBuffer(ThriftType type) {
+    switch (type.getProtocolType()) {
+      case STRING:
+        if (type.getPacking() == ThriftPacking.COLUMNAR) {
+          return mayShareBuffer(type.getValueType());
+        }
+        // packed lists and strings are decoded into new objects
+        return !type.isPacked() && type.getJavaType() != String.class;
+      case STRUCT:
+        if (type.getJavaType() == void.class) {
+          return false;
+        }
+        for (ThriftFieldMetadata field : type.getStructMetadata().getFields()) {
+          if (mayShareBuffer(field.getType())) {
+            return true;
+          }
+        }
+        return false;
+      case MAP:
+        return mayShareBuffer(type.getKeyType()) || mayShareBuffer(type.getValueType());
+      case SET:
+      case LIST:
+        return mayShareBuffer(type.getValueType());
+      default:
+        return false;
+    }
+  }
+}
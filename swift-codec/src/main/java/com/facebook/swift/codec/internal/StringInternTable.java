@@ -0,0 +1,205 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Charsets.UTF_8;
+
+/**
+ * A bounded table of strings keyed on their UTF-8 bytes, used to share String instances for
+ * values that are decoded over and over again.  A lookup of a value that is already in the table
+ * does not allocate.
+ * <p/>
+ * The table is a fixed size array of immutable entries, so lookups and updates never lock.  Each
+ * value can be stored in one of two slots, and a new value replaces the older entry when both
+ * slots are taken, so the table never holds more than its capacity regardless of how many
+ * distinct values are decoded.  Values longer than the maximum length are never stored.
+ */
+@ThreadSafe
+public class StringInternTable {
+  public static final int DEFAULT_CAPACITY = 4096;
+  public static final int DEFAULT_MAX_LENGTH = 128;
+
+  private final AtomicReferenceArray<Entry> entries;
+  private final int mask;
+  private final int maxLength;
+
+  public StringInternTable() {
+    this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+  }
+
+  public StringInternTable(int capacity, int maxLength) {
+    Preconditions.checkArgument(
+        capacity >= 2 && Integer.bitCount(capacity) == 1,
+        "capacity must be a power of two greater than one"
+    );
+    Preconditions.checkArgument(maxLength >= 0, "maxLength is negative");
+
+    this.entries = new AtomicReferenceArray<>(capacity);
+    this.mask = capacity - 1;
+    this.maxLength = maxLength;
+  }
+
+  public int getCapacity() {
+    return entries.length();
+  }
+
+  public int getMaxLength() {
+    return maxLength;
+  }
+
+  /**
+   * Gets the string for the UTF-8 bytes between the position and limit of the buffer.  The
+   * buffer position is not changed.
+   */
+  public String intern(ByteBuffer utf8) {
+    Preconditions.checkNotNull(utf8, "utf8 is null");
+    return intern(utf8, utf8.position(), utf8.remaining());
+  }
+
+  /**
+   * Gets the string for the length UTF-8 bytes of the buffer starting at the absolute offset.
+   * The buffer position is not changed.
+   */
+  public String intern(ByteBuffer buffer, int offset, int length) {
+    Preconditions.checkNotNull(buffer, "buffer is null");
+    Preconditions.checkPositionIndexes(offset, offset + length, buffer.limit());
+
+    if (buffer.hasArray()) {
+      return intern(buffer.array(), buffer.arrayOffset() + offset, length);
+    }
+
+    byte[] bytes;
+    if (length > maxLength) {
+      bytes = new byte[length];
+      getBytes(buffer, offset, bytes);
+      return new String(bytes, UTF_8);
+    }
+
+    int hash = hash(buffer, offset, length);
+    int index = hash & mask;
+    Entry entry = entries.get(index);
+    if (entry != null && entry.matches(hash, buffer, offset, length)) {
+      return entry.value;
+    }
+    Entry alternate = entries.get(index ^ 1);
+    if (alternate != null && alternate.matches(hash, buffer, offset, length)) {
+      return alternate.value;
+    }
+
+    bytes = new byte[length];
+    getBytes(buffer, offset, bytes);
+    return insert(index, entry, alternate, new Entry(hash, bytes));
+  }
+
+  /**
+   * Gets the string for the length UTF-8 bytes of the array starting at the offset.
+   */
+  public String intern(byte[] utf8, int offset, int length) {
+    Preconditions.checkNotNull(utf8, "utf8 is null");
+    Preconditions.checkPositionIndexes(offset, offset + length, utf8.length);
+
+    if (length > maxLength) {
+      return new String(utf8, offset, length, UTF_8);
+    }
+
+    int hash = hash(utf8, offset, length);
+    int index = hash & mask;
+    Entry entry = entries.get(index);
+    if (entry != null && entry.matches(hash, utf8, offset, length)) {
+      return entry.value;
+    }
+    Entry alternate = entries.get(index ^ 1);
+    if (alternate != null && alternate.matches(hash, utf8, offset, length)) {
+      return alternate.value;
+    }
+
+    byte[] bytes = Arrays.copyOfRange(utf8, offset, offset + length);
+    return insert(index, entry, alternate, new Entry(hash, bytes));
+  }
+
+  private String insert(int index, Entry entry, Entry alternate, Entry newEntry) {
+    // fill an empty slot if possible, otherwise evict the alternate entry and move the primary
+    // entry aside, so the most recent value is found on the first probe
+    if (entry == null) {
+      entries.lazySet(index, newEntry);
+    } else if (alternate == null) {
+      entries.lazySet(index ^ 1, newEntry);
+    } else {
+      entries.lazySet(index ^ 1, entry);
+      entries.lazySet(index, newEntry);
+    }
+    return newEntry.value;
+  }
+
+  private static void getBytes(ByteBuffer buffer, int offset, byte[] bytes) {
+    ByteBuffer view = buffer.duplicate();
+    view.position(offset);
+    view.get(bytes);
+  }
+
+  // both hashes must agree, since entries are found with either
+  private static int hash(ByteBuffer buffer, int offset, int length) {
+    int hash = 1;
+    for (int i = offset; i < offset + length; i++) {
+      hash = 31 * hash + buffer.get(i);
+    }
+    return spread(hash);
+  }
+
+  private static int hash(byte[] bytes, int offset, int length) {
+    int hash = 1;
+    for (int i = offset; i < offset + length; i++) {
+      hash = 31 * hash + bytes[i];
+    }
+    return spread(hash);
+  }
+
+  private static int spread(int hash) {
+    // spread the high bits, since only the low bits select the slot
+    return hash ^ (hash >>> 16);
+  }
+
+  private static class Entry {
+    private final int hash;
+    private final byte[] bytes;
+    private final String value;
+
+    private Entry(int hash, byte[] bytes) {
+      this.hash = hash;
+      this.bytes = bytes;
+      this.value = new String(bytes, UTF_8);
+    }
+
+    private boolean matches(int hash, ByteBuffer buffer, int offset, int length) {
+      if (this.hash != hash || bytes.length != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (bytes[i] != buffer.get(offset + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean matches(int hash, byte[] utf8, int offset, int length) {
+      if (this.hash != hash || bytes.length != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (bytes[i] != utf8[offset + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal;
+
+import com.google.common.base.Preconditions;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+
+/**
+ * A read only transport over a ByteBuffer, including direct and memory mapped buffers that do
+ * not have a backing array.  The transport reads from a private view of the buffer, so the
+ * position of the supplied buffer is not modified.
+ */
+@NotThreadSafe
+public class TByteBufferInputTransport extends TTransport {
+  private ByteBuffer buffer;
+
+  public TByteBufferInputTransport(ByteBuffer buffer) {
+    reset(buffer);
+  }
+
+  /**
+   * Reads from the remaining bytes of the buffer.
+   */
+  public void reset(ByteBuffer buffer) {
+    Preconditions.checkNotNull(buffer, "buffer is null");
+    this.buffer = buffer.slice();
+  }
+
+  /**
+   * Gets the number of bytes read since the last reset.
+   */
+  public int getPosition() {
+    return buffer.position();
+  }
+
+  public int getRemaining() {
+    return buffer.remaining();
+  }
+
+  /**
+   * Returns the next length bytes as a read-only slice of the buffer, without copying.
+   */
+  public ByteBuffer readSlice(int length) throws TTransportException {
+    if (length > buffer.remaining()) {
+      throw new TTransportException(TTransportException.END_OF_FILE, "No more data available");
+    }
+    ByteBuffer slice = buffer.slice();
+    slice.limit(length);
+    buffer.position(buffer.position() + length);
+    return slice.asReadOnlyBuffer();
+  }
+
+  /**
+   * Resolves the next length bytes through the intern table, without copying them.
+   */
+  public String readInternedString(StringInternTable table, int length)
+      throws TTransportException {
+    if (length > buffer.remaining()) {
+      throw new TTransportException(TTransportException.END_OF_FILE, "No more data available");
+    }
+    String value = table.intern(buffer, buffer.position(), length);
+    buffer.position(buffer.position() + length);
+    return value;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return true;
+  }
+
+  @Override
+  public void open() {
+  }
+
+  @Override
+  public void close() {
+  }
+
+  @Override
+  public int read(byte[] buf, int off, int len) throws TTransportException {
+    int length = Math.min(len, buffer.remaining());
+    if (length == 0 && len > 0) {
+      throw new TTransportException(TTransportException.END_OF_FILE, "No more data available");
+    }
+    buffer.get(buf, off, length);
+    return length;
+  }
+
+  @Override
+  public void write(byte[] buf, int off, int len) {
+    throw new UnsupportedOperationException("TByteBufferInputTransport is read only");
+  }
+}
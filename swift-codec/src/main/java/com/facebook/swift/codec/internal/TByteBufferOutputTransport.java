@@ -0,0 +1,58 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal;
+
+import com.google.common.base.Preconditions;
+import org.apache.thrift.transport.TTransport;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+
+/**
+ * A write only transport that writes directly into a caller supplied ByteBuffer.  If the buffer
+ * does not have enough space remaining, the write fails with a BufferOverflowException.
+ */
+@NotThreadSafe
+public class TByteBufferOutputTransport extends TTransport {
+  private ByteBuffer buffer;
+
+  /**
+   * Sets the buffer that will receive all subsequent writes.
+   */
+  public void reset(ByteBuffer buffer) {
+    Preconditions.checkNotNull(buffer, "buffer is null");
+    this.buffer = buffer;
+  }
+
+  /**
+   * Releases the current buffer.
+   */
+  public void clear() {
+    buffer = null;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return true;
+  }
+
+  @Override
+  public void open() {
+  }
+
+  @Override
+  public void close() {
+  }
+
+  @Override
+  public int read(byte[] buf, int off, int len) {
+    throw new UnsupportedOperationException("TByteBufferOutputTransport is write only");
+  }
+
+  @Override
+  public void write(byte[] buf, int off, int len) {
+    Preconditions.checkState(buffer != null, "buffer is not set");
+    buffer.put(buf, off, len);
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal;
+
+import com.google.common.base.Preconditions;
+import org.apache.thrift.transport.TTransport;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A write only transport that encodes into pooled direct ByteBuffer chunks.  The output grows by
+ * acquiring another chunk instead of copying into a larger array, and the chunks can be handed
+ * to a channel (or wrapped by a network buffer) without a heap to direct copy.
+ * <p/>
+ * The chunks must be returned to the pool with {@link #release()} once the output has been
+ * written.
+ */
+@NotThreadSafe
+public class TChunkedOutputTransport extends TTransport {
+  private final ByteBufferChunkPool pool;
+  private final List<ByteBuffer> chunks = new ArrayList<>();
+  private ByteBuffer currentChunk;
+  private long size;
+
+  public TChunkedOutputTransport(ByteBufferChunkPool pool) {
+    Preconditions.checkNotNull(pool, "pool is null");
+    this.pool = pool;
+  }
+
+  public ByteBufferChunkPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Gets the number of bytes written since the last release.
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Gets the written data as a sequence of buffers ready to be read.  The returned buffers share
+   * memory with the chunks, and are only valid until this transport is released.
+   */
+  public ByteBuffer[] getBuffers() {
+    ByteBuffer[] buffers = new ByteBuffer[chunks.size()];
+    for (int i = 0; i < buffers.length; i++) {
+      ByteBuffer buffer = chunks.get(i).duplicate();
+      buffer.flip();
+      buffers[i] = buffer;
+    }
+    return buffers;
+  }
+
+  /**
+   * Writes all of the data written to this transport to the channel.  The channel must be in
+   * blocking mode, since this loops until every byte is written, and a non-blocking channel that
+   * can not accept more data would make that loop spin.
+   */
+  public void writeTo(WritableByteChannel channel) throws IOException {
+    Preconditions.checkNotNull(channel, "channel is null");
+    Preconditions.checkArgument(
+        !(channel instanceof SelectableChannel) || ((SelectableChannel) channel).isBlocking(),
+        "channel is not in blocking mode"
+    );
+
+    ByteBuffer[] buffers = getBuffers();
+    if (channel instanceof GatheringByteChannel) {
+      GatheringByteChannel gatheringChannel = (GatheringByteChannel) channel;
+      long remaining = size;
+      while (remaining > 0) {
+        remaining -= gatheringChannel.write(buffers);
+      }
+    } else {
+      for (ByteBuffer buffer : buffers) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+    }
+  }
+
+  /**
+   * Moves the data written to the other transport to the end of this transport without copying.
+   * The other transport is left empty.  Both transports must use the same pool.
+   */
+  public void append(TChunkedOutputTransport other) {
+    Preconditions.checkNotNull(other, "other is null");
+    Preconditions.checkArgument(other.pool == pool, "transports do not share the same pool");
+
+    if (other.chunks.isEmpty()) {
+      return;
+    }
+    chunks.addAll(other.chunks);
+    currentChunk = other.currentChunk;
+    size += other.size;
+
+    other.chunks.clear();
+    other.currentChunk = null;
+    other.size = 0;
+  }
+
+  /**
+   * Returns all chunks to the pool and discards the written data.
+   */
+  public void release() {
+    for (ByteBuffer chunk : chunks) {
+      pool.release(chunk);
+    }
+    chunks.clear();
+    currentChunk = null;
+    size = 0;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return true;
+  }
+
+  @Override
+  public void open() {
+  }
+
+  @Override
+  public void close() {
+    release();
+  }
+
+  @Override
+  public int read(byte[] buf, int off, int len) {
+    throw new UnsupportedOperationException("TChunkedOutputTransport is write only");
+  }
+
+  @Override
+  public void write(byte[] buf, int off, int len) {
+    while (len > 0) {
+      if (currentChunk == null || !currentChunk.hasRemaining()) {
+        currentChunk = pool.acquire();
+        chunks.add(currentChunk);
+      }
+      int length = Math.min(len, currentChunk.remaining());
+      currentChunk.put(buf, off, length);
+      off += length;
+      len -= length;
+      size += length;
+    }
+  }
+}
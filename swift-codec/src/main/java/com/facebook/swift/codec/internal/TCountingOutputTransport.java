@@ -0,0 +1,51 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal;
+
+import org.apache.thrift.transport.TTransport;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A write only transport that discards all data and only counts the number of bytes written.  When
+ * combined with a protocol, this computes the exact encoded size of a value without buffering it.
+ */
+@NotThreadSafe
+public class TCountingOutputTransport extends TTransport {
+  private long count;
+
+  public void reset() {
+    count = 0;
+  }
+
+  /**
+   * Gets the number of bytes written since the last reset.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return true;
+  }
+
+  @Override
+  public void open() {
+  }
+
+  @Override
+  public void close() {
+  }
+
+  @Override
+  public int read(byte[] buf, int off, int len) {
+    throw new UnsupportedOperationException("TCountingOutputTransport is write only");
+  }
+
+  @Override
+  public void write(byte[] buf, int off, int len) {
+    count += len;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal;
+
+import com.google.common.base.Preconditions;
+import org.apache.thrift.transport.TTransport;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * A write only in memory transport backed by a growable byte array.  Unlike TMemoryBuffer, this
+ * transport can be reset and reused without releasing the underlying array.
+ */
+@NotThreadSafe
+public class TMemoryOutputTransport extends TTransport {
+  private static final int DEFAULT_INITIAL_CAPACITY = 256;
+
+  private final int initialCapacity;
+  private byte[] buffer;
+  private int size;
+
+  public TMemoryOutputTransport() {
+    this(DEFAULT_INITIAL_CAPACITY);
+  }
+
+  public TMemoryOutputTransport(int initialCapacity) {
+    Preconditions.checkArgument(initialCapacity > 0, "initialCapacity must be positive");
+    this.initialCapacity = initialCapacity;
+    buffer = new byte[initialCapacity];
+  }
+
+  /**
+   * Discards all written data, but keeps the allocated buffer.
+   */
+  public void reset() {
+    size = 0;
+  }
+
+  /**
+   * Discards all written data, and releases the allocated buffer if it has grown larger than
+   * maxRetainedCapacity, so a single large value is not retained by a long lived transport.
+   */
+  public void reset(int maxRetainedCapacity) {
+    size = 0;
+    if (buffer.length > maxRetainedCapacity) {
+      buffer = new byte[initialCapacity];
+    }
+  }
+
+  /**
+   * Gets the number of bytes written since the last reset.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets the underlying buffer.  Only the first {@link #size()} bytes contain valid data, and the
+   * returned array is only valid until the next write or reset.
+   */
+  public byte[] getArray() {
+    return buffer;
+  }
+
+  /**
+   * Gets a copy of the bytes written since the last reset.
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buffer, size);
+  }
+
+  @Override
+  public boolean isOpen() {
+    return true;
+  }
+
+  @Override
+  public void open() {
+  }
+
+  @Override
+  public void close() {
+  }
+
+  @Override
+  public int read(byte[] buf, int off, int len) {
+    throw new UnsupportedOperationException("TMemoryOutputTransport is write only");
+  }
+
+  @Override
+  public void write(byte[] buf, int off, int len) {
+    int newSize = size + len;
+    if (newSize > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(newSize, buffer.length * 2));
+    }
+    System.arraycopy(buf, off, buffer, size, len);
+    size = newSize;
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal;
+
+import com.facebook.swift.codec.ThriftCodec;
+import com.google.common.base.Throwables;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TProtocolUtil;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator that decodes the elements of a Thrift list directly from an open protocol, one
+ * element per call to next.  The list end is consumed after the last element is read, or when
+ * {@link #skipRemaining()} is called.  Until then, the underlying protocol must not be used for
+ * anything else.
+ */
+@NotThreadSafe
+public class TProtocolListIterator<E> implements Iterator<E> {
+  private final TProtocolReader reader;
+  private final ThriftCodec<E> elementCodec;
+  private final TList tList;
+  private int index;
+
+  TProtocolListIterator(TProtocolReader reader, ThriftCodec<E> elementCodec) throws TException {
+    this.reader = reader;
+    this.elementCodec = elementCodec;
+    this.tList = reader.getProtocol().readListBegin();
+    if (tList.size == 0) {
+      reader.getProtocol().readListEnd();
+    }
+  }
+
+  /**
+   * Gets the total number of elements in the list.
+   */
+  public int size() {
+    return tList.size;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return index < tList.size;
+  }
+
+  @Override
+  public E next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    try {
+      E element = elementCodec.read(reader);
+      index++;
+      if (index == tList.size) {
+        reader.getProtocol().readListEnd();
+      }
+      return element;
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Skips all remaining elements without decoding them, and consumes the list end.
+   */
+  public void skipRemaining() throws TException {
+    if (!hasNext()) {
+      return;
+    }
+    while (index < tList.size) {
+      TProtocolUtil.skip(reader.getProtocol(), tList.elemType);
+      index++;
+    }
+    reader.getProtocol().readListEnd();
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -4,20 +4,35 @@
 package com.facebook.swift.codec.internal;
 
 import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftReusableCodec;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
 import org.apache.thrift.protocol.TField;
 import org.apache.thrift.protocol.TList;
 import org.apache.thrift.protocol.TMap;
 import org.apache.thrift.protocol.TProtocol;
 import org.apache.thrift.protocol.TProtocolUtil;
 import org.apache.thrift.protocol.TSet;
+import org.apache.thrift.protocol.TProtocolException;
 import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TTransport;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import java.nio.ByteBuffer;
+import java.util.AbstractCollection;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -27,17 +42,40 @@ import static com.google.common.base.Preconditions.checkState;
 
 @NotThreadSafe
 public class TProtocolReader {
+  // upper bound for presizing containers when the remaining input size is unknown
+  private static final int MAX_PRESIZED_CAPACITY = 4096;
+
   private final TProtocol protocol;
+  private final boolean sliceBinaryValues;
   private TField currentField;
 
   public TProtocolReader(TProtocol protocol) {
+    this(protocol, false);
+  }
+
+  /**
+   * Creates a reader that optionally returns binary values as read-only slices of the transport
+   * buffer instead of copies.  Slicing is only possible for the binary and compact protocols when
+   * the transport exposes its buffer (e.g., TMemoryInputTransport) or is a
+   * TByteBufferInputTransport; otherwise the value is copied.
+   * <p/>
+   * A slice shares memory with the transport buffer, so it is only valid as long as the buffer is
+   * not reused or modified.  Callers that retain a binary value beyond the lifetime of the input
+   * buffer must copy it.
+   */
+  public TProtocolReader(TProtocol protocol, boolean sliceBinaryValues) {
     this.protocol = protocol;
+    this.sliceBinaryValues = sliceBinaryValues;
   }
 
   public TProtocol getProtocol() {
     return protocol;
   }
 
+  public boolean isSliceBinaryValues() {
+    return sliceBinaryValues;
+  }
+
   public void readStructBegin() throws TException {
     protocol.readStructBegin();
     currentField = null;
@@ -89,12 +127,25 @@ public class TProtocolReader {
     return codec.read(this);
   }
 
+  /**
+   * Reads a field, reading into the reuse instance when it is not null and the codec supports
+   * reuse.  The reuse instance must be a value of the codec type.
+   */
+  @SuppressWarnings("unchecked")
+  public Object readField(ThriftCodec<?> codec, Object reuse) throws Exception {
+    if (!checkReadState(codec.getType().getProtocolType().getType())) {
+      return null;
+    }
+    currentField = null;
+    return readReusable((ThriftCodec<Object>) codec, reuse);
+  }
+
   public ByteBuffer readBinaryField() throws TException {
     if (!checkReadState(TType.STRING)) {
       return null;
     }
 
-    ByteBuffer value = protocol.readBinary();
+    ByteBuffer value = readBinary();
     currentField = null;
     return value;
   }
@@ -163,6 +214,18 @@ public class TProtocolReader {
     return codec.read(this);
   }
 
+  /**
+   * Reads a struct field, reading into the reuse instance when it is not null and the codec
+   * supports reuse.
+   */
+  public <T> T readStructField(ThriftCodec<T> codec, T reuse) throws Exception {
+    if (!checkReadState(TType.STRUCT)) {
+      return null;
+    }
+    currentField = null;
+    return readReusable(codec, reuse);
+  }
+
   public <E> Set<E> readSetField(ThriftCodec<Set<E>> setCodec) throws Exception {
     if (!checkReadState(TType.SET)) {
       return null;
@@ -171,6 +234,14 @@ public class TProtocolReader {
     return setCodec.read(this);
   }
 
+  public <E> Set<E> readSetField(ThriftCodec<Set<E>> setCodec, Set<E> reuse) throws Exception {
+    if (!checkReadState(TType.SET)) {
+      return null;
+    }
+    currentField = null;
+    return readReusable(setCodec, reuse);
+  }
+
   public <E> List<E> readListField(ThriftCodec<List<E>> listCodec) throws Exception {
     if (!checkReadState(TType.LIST)) {
       return null;
@@ -179,6 +250,46 @@ public class TProtocolReader {
     return listCodec.read(this);
   }
 
+  public <E> List<E> readListField(ThriftCodec<List<E>> listCodec, List<E> reuse)
+      throws Exception {
+    if (!checkReadState(TType.LIST)) {
+      return null;
+    }
+    currentField = null;
+    return readReusable(listCodec, reuse);
+  }
+
+  /**
+   * Reads a list field, passing each element to the consumer as soon as it is decoded.
+   *
+   * @return false if the field is not a list, in which case the field is skipped
+   */
+  public <E> boolean readListField(
+      ThriftCodec<E> elementCodec,
+      ElementConsumer<? super E> consumer
+  ) throws Exception {
+    if (!checkReadState(TType.LIST)) {
+      return false;
+    }
+    currentField = null;
+    readList(elementCodec, consumer);
+    return true;
+  }
+
+  /**
+   * Begins reading a list field, and returns an iterator that decodes the elements lazily.
+   *
+   * @return the iterator or null if the field is not a list, in which case the field is skipped
+   */
+  public <E> TProtocolListIterator<E> readListFieldIterator(ThriftCodec<E> elementCodec)
+      throws Exception {
+    if (!checkReadState(TType.LIST)) {
+      return null;
+    }
+    currentField = null;
+    return readListIterator(elementCodec);
+  }
+
   public <K, V> Map<K, V> readMapField(ThriftCodec<Map<K, V>> mapCodec) throws Exception {
     if (!checkReadState(TType.MAP)) {
       return null;
@@ -187,6 +298,22 @@ public class TProtocolReader {
     return mapCodec.read(this);
   }
 
+  public <K, V> Map<K, V> readMapField(ThriftCodec<Map<K, V>> mapCodec, Map<K, V> reuse)
+      throws Exception {
+    if (!checkReadState(TType.MAP)) {
+      return null;
+    }
+    currentField = null;
+    return readReusable(mapCodec, reuse);
+  }
+
+  private <T> T readReusable(ThriftCodec<T> codec, T reuse) throws Exception {
+    if (reuse != null && codec instanceof ThriftReusableCodec) {
+      return ((ThriftReusableCodec<T>) codec).readInto(reuse, this);
+    }
+    return codec.read(this);
+  }
+
   public <T extends Enum<T>> T readEnumField(ThriftCodec<T> enumCodec) throws Exception {
     if (!checkReadState(TType.I32)) {
       return null;
@@ -196,9 +323,101 @@ public class TProtocolReader {
   }
 
   public ByteBuffer readBinary() throws TException {
+    if (sliceBinaryValues && isSliceableTransport(protocol.getTransport())) {
+      if (protocol instanceof TBinaryProtocol) {
+        return readBinarySlice(protocol.readI32());
+      }
+      if (protocol instanceof TCompactProtocol) {
+        return readBinarySlice(readVarint32());
+      }
+    }
     return protocol.readBinary();
   }
 
+  /**
+   * Reads a string through the intern table.  For the binary and compact protocols, the value
+   * is looked up directly in the transport buffer, so a value already in the table is read
+   * without allocating; values that span the end of the buffer are copied first.
+   */
+  public String readInternedString(StringInternTable table) throws TException {
+    TTransport transport = protocol.getTransport();
+    if (!isSliceableTransport(transport)) {
+      return table.intern(protocol.readBinary());
+    }
+
+    int length;
+    if (protocol instanceof TBinaryProtocol) {
+      length = protocol.readI32();
+    } else if (protocol instanceof TCompactProtocol) {
+      length = readVarint32();
+    } else {
+      return table.intern(protocol.readBinary());
+    }
+    if (length < 0) {
+      throw new TProtocolException(TProtocolException.NEGATIVE_SIZE, "Negative length: " + length);
+    }
+
+    if (transport instanceof TByteBufferInputTransport) {
+      return ((TByteBufferInputTransport) transport).readInternedString(table, length);
+    }
+    if (transport.getBytesRemainingInBuffer() >= length) {
+      String value = table.intern(transport.getBuffer(), transport.getBufferPosition(), length);
+      transport.consumeBuffer(length);
+      return value;
+    }
+
+    // the value spans the end of the buffer, so it must be copied
+    byte[] bytes = new byte[length];
+    transport.readAll(bytes, 0, length);
+    return table.intern(bytes, 0, length);
+  }
+
+  private static boolean isSliceableTransport(TTransport transport) {
+    return transport instanceof TByteBufferInputTransport || transport.getBuffer() != null;
+  }
+
+  private ByteBuffer readBinarySlice(int length) throws TException {
+    if (length < 0) {
+      throw new TProtocolException(TProtocolException.NEGATIVE_SIZE, "Negative length: " + length);
+    }
+
+    TTransport transport = protocol.getTransport();
+    if (transport instanceof TByteBufferInputTransport) {
+      return ((TByteBufferInputTransport) transport).readSlice(length);
+    }
+    if (transport.getBytesRemainingInBuffer() >= length) {
+      ByteBuffer slice = ByteBuffer.wrap(
+          transport.getBuffer(),
+          transport.getBufferPosition(),
+          length
+      ).slice().asReadOnlyBuffer();
+      transport.consumeBuffer(length);
+      return slice;
+    }
+
+    // the value spans the end of the buffer, so it must be copied
+    byte[] bytes = new byte[length];
+    transport.readAll(bytes, 0, length);
+    return ByteBuffer.wrap(bytes);
+  }
+
+  /**
+   * Reads an unsigned varint as used for lengths in the compact protocol.  The compact protocol
+   * reads single bytes directly from the transport, so the varint can be decoded byte by byte.
+   */
+  private int readVarint32() throws TException {
+    int result = 0;
+    int shift = 0;
+    while (true) {
+      byte b = protocol.readByte();
+      result |= (b & 0x7f) << shift;
+      if ((b & 0x80) != 0x80) {
+        return result;
+      }
+      shift += 7;
+    }
+  }
+
   public boolean readBool() throws TException {
     return protocol.readBool();
   }
@@ -227,9 +446,17 @@ public class TProtocolReader {
     return protocol.readString();
   }
 
+  public TMap readMapBegin() throws TException {
+    return protocol.readMapBegin();
+  }
+
+  public void readMapEnd() throws TException {
+    protocol.readMapEnd();
+  }
+
   public <E> Set<E> readSet(ThriftCodec<E> elementCodec) throws Exception {
     TSet tSet = protocol.readSetBegin();
-    Set<E> set = new HashSet<>();
+    Set<E> set = Sets.newHashSetWithExpectedSize(expectedSize(tSet.size));
     for (int i = 0; i < tSet.size; i++) {
       E element = elementCodec.read(this);
       set.add(element);
@@ -240,7 +467,7 @@ public class TProtocolReader {
 
   public <E> List<E> readList(ThriftCodec<E> elementCodec) throws Exception {
     TList tList = protocol.readListBegin();
-    List<E> list = new ArrayList<>();
+    List<E> list = new ArrayList<>(expectedSize(tList.size));
     for (int i = 0; i < tList.size; i++) {
       E element = elementCodec.read(this);
       list.add(element);
@@ -249,12 +476,115 @@ public class TProtocolReader {
     return list;
   }
 
+  /**
+   * Reads a list, passing each element to the consumer as soon as it is decoded instead of
+   * collecting the elements.
+   *
+   * @return the number of elements read
+   */
+  public <E> int readList(ThriftCodec<E> elementCodec, ElementConsumer<? super E> consumer)
+      throws Exception {
+    TList tList = protocol.readListBegin();
+    for (int i = 0; i < tList.size; i++) {
+      E element = elementCodec.read(this);
+      consumer.consume(element);
+    }
+    protocol.readListEnd();
+    return tList.size;
+  }
+
+  /**
+   * Begins reading a list, and returns an iterator that decodes the elements lazily from the
+   * protocol.  The iterator must be exhausted (or skipped) before this reader is used again.
+   */
+  public <E> TProtocolListIterator<E> readListIterator(ThriftCodec<E> elementCodec)
+      throws Exception {
+    return new TProtocolListIterator<>(this, elementCodec);
+  }
+
+  /**
+   * Reads a set into the target set, which is cleared first.  If the target can not be cleared,
+   * or is empty and therefore has nothing to offer for reuse, a new set is returned instead.
+   */
+  public <E> Set<E> readSetInto(ThriftCodec<E> elementCodec, Set<E> target) throws Exception {
+    if (!clearForReuse(target)) {
+      return readSet(elementCodec);
+    }
+    TSet tSet = protocol.readSetBegin();
+    for (int i = 0; i < tSet.size; i++) {
+      E element = elementCodec.read(this);
+      target.add(element);
+    }
+    protocol.readSetEnd();
+    return target;
+  }
+
+  /**
+   * Reads a list into the target list, which is cleared first.  If the target can not be
+   * cleared, or is empty and therefore has nothing to offer for reuse, a new list is returned
+   * instead.
+   */
+  public <E> List<E> readListInto(ThriftCodec<E> elementCodec, List<E> target) throws Exception {
+    if (!clearForReuse(target)) {
+      return readList(elementCodec);
+    }
+    TList tList = protocol.readListBegin();
+    if (target instanceof ArrayList) {
+      ((ArrayList<E>) target).ensureCapacity(expectedSize(tList.size));
+    }
+    for (int i = 0; i < tList.size; i++) {
+      E element = elementCodec.read(this);
+      target.add(element);
+    }
+    protocol.readListEnd();
+    return target;
+  }
+
+  /**
+   * Reads a map into the target map, which is cleared first.  If the target can not be cleared,
+   * or is empty and therefore has nothing to offer for reuse, a new map is returned instead.
+   */
+  public <K, V> Map<K, V> readMapInto(
+      ThriftCodec<K> keyCodec,
+      ThriftCodec<V> valueCodec,
+      Map<K, V> target
+  ) throws Exception {
+    if (target.isEmpty()) {
+      return readMap(keyCodec, valueCodec);
+    }
+    try {
+      target.clear();
+    } catch (UnsupportedOperationException e) {
+      return readMap(keyCodec, valueCodec);
+    }
+    TMap tMap = protocol.readMapBegin();
+    for (int i = 0; i < tMap.size; i++) {
+      K key = keyCodec.read(this);
+      V value = valueCodec.read(this);
+      target.put(key, value);
+    }
+    protocol.readMapEnd();
+    return target;
+  }
+
+  private static boolean clearForReuse(Collection<?> collection) {
+    // an empty collection may still be unmodifiable, and there is no way to tell before adding
+    if (collection.isEmpty()) {
+      return false;
+    }
+    try {
+      collection.clear();
+      return true;
+    } catch (UnsupportedOperationException e) {
+      return false;
+    }
+  }
 
   public <K, V> Map<K, V> readMap(ThriftCodec<K> keyCodec, ThriftCodec<V> valueCodec)
       throws Exception {
 
     TMap tMap = protocol.readMapBegin();
-    Map<K, V> map = new HashMap<>();
+    Map<K, V> map = Maps.newHashMapWithExpectedSize(expectedSize(tMap.size));
     for (int i = 0; i < tMap.size; i++) {
       K key = keyCodec.read(this);
       V value = valueCodec.read(this);
@@ -264,6 +594,141 @@ public class TProtocolReader {
     return map;
   }
 
+  /**
+   * Reads a list directly into an ImmutableList, so structs declaring an ImmutableList field do
+   * not need to copy the decoded value.
+   */
+  public <E> ImmutableList<E> readImmutableList(ThriftCodec<E> elementCodec) throws Exception {
+    TList tList = protocol.readListBegin();
+    Object[] elements = readElements(elementCodec, tList.size);
+    protocol.readListEnd();
+    return ImmutableList.copyOf(new ArrayCollection<E>(elements));
+  }
+
+  /**
+   * Reads a set directly into an ImmutableSet, so structs declaring an ImmutableSet field do not
+   * need to copy the decoded value.
+   */
+  public <E> ImmutableSet<E> readImmutableSet(ThriftCodec<E> elementCodec) throws Exception {
+    TSet tSet = protocol.readSetBegin();
+    // duplicates are dropped by copyOf, so there is no need to hash into an intermediate set
+    Object[] elements = readElements(elementCodec, tSet.size);
+    protocol.readSetEnd();
+    return ImmutableSet.copyOf(new ArrayCollection<E>(elements));
+  }
+
+  /**
+   * Reads the elements of a list or set into an array of exactly size elements.  The array is
+   * presized with {@link #expectedSize(int)}, so it is only grown or trimmed when that estimate
+   * is capped.
+   */
+  private Object[] readElements(ThriftCodec<?> elementCodec, int size) throws Exception {
+    Object[] elements = new Object[expectedSize(size)];
+    for (int i = 0; i < size; i++) {
+      if (i == elements.length) {
+        elements = Arrays.copyOf(elements, Math.min(size, Math.max(i * 2, 16)));
+      }
+      elements[i] = elementCodec.read(this);
+    }
+    if (elements.length != Math.max(size, 0)) {
+      elements = Arrays.copyOf(elements, Math.max(size, 0));
+    }
+    return elements;
+  }
+
+  /**
+   * A read-only collection over an array that returns the array itself from toArray().  The
+   * copyOf methods of ImmutableList and ImmutableSet take ownership of the toArray() result of a
+   * collection, so the decoded elements are not copied again.
+   */
+  private static final class ArrayCollection<E> extends AbstractCollection<E> {
+    private final Object[] elements;
+
+    private ArrayCollection(Object[] elements) {
+      this.elements = elements;
+    }
+
+    @Override
+    public int size() {
+      return elements.length;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+      return (Iterator<E>) Iterators.forArray(elements);
+    }
+
+    @Override
+    public Object[] toArray() {
+      return elements;
+    }
+  }
+
+  /**
+   * Reads a set of enum constants into an EnumSet.
+   */
+  public <E extends Enum<E>> EnumSet<E> readEnumSet(
+      ThriftCodec<E> elementCodec,
+      Class<E> enumClass
+  ) throws Exception {
+    TSet tSet = protocol.readSetBegin();
+    EnumSet<E> set = EnumSet.noneOf(enumClass);
+    for (int i = 0; i < tSet.size; i++) {
+      E element = elementCodec.read(this);
+      set.add(element);
+    }
+    protocol.readSetEnd();
+    return set;
+  }
+
+  /**
+   * Reads a map directly into an ImmutableMap, so structs declaring an ImmutableMap field do not
+   * need to copy the decoded value.
+   */
+  public <K, V> ImmutableMap<K, V> readImmutableMap(
+      ThriftCodec<K> keyCodec,
+      ThriftCodec<V> valueCodec
+  ) throws Exception {
+    TMap tMap = protocol.readMapBegin();
+    List<Map.Entry<K, V>> entries = new ArrayList<>(expectedSize(tMap.size));
+    for (int i = 0; i < tMap.size; i++) {
+      K key = keyCodec.read(this);
+      V value = valueCodec.read(this);
+      entries.add(Maps.immutableEntry(key, value));
+    }
+    protocol.readMapEnd();
+
+    ImmutableMap.Builder<K, V> map = ImmutableMap.builder();
+    for (Map.Entry<K, V> entry : entries) {
+      map.put(entry);
+    }
+    try {
+      return map.build();
+    } catch (IllegalArgumentException e) {
+      // the builder rejects duplicate keys, but like the other map readers the last value wins
+      Map<K, V> lastValues = new LinkedHashMap<>();
+      for (Map.Entry<K, V> entry : entries) {
+        lastValues.put(entry.getKey(), entry.getValue());
+      }
+      return ImmutableMap.copyOf(lastValues);
+    }
+  }
+
+  /**
+   * Returns the capacity to presize a container for the element count read from the wire.
+   * Every element occupies at least one byte, so when the transport exposes its buffer the count
+   * is bounded by the remaining bytes; otherwise it is capped so a corrupt count can not force a
+   * huge allocation.
+   */
+  public int expectedSize(int size) {
+    int remaining = protocol.getTransport().getBytesRemainingInBuffer();
+    if (remaining >= 0) {
+      return Math.max(0, Math.min(size, remaining));
+    }
+    return Math.max(0, Math.min(size, MAX_PRESIZED_CAPACITY));
+  }
+
   private boolean checkReadState(byte expectedType) throws TException {
     checkState(currentField != null, "No current field");
 
@@ -4,6 +4,7 @@
 package com.facebook.swift.codec.internal;
 
 import com.facebook.swift.codec.ThriftCodec;
+import com.google.common.collect.Lists;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TField;
 import org.apache.thrift.protocol.TList;
@@ -15,10 +16,13 @@ import org.apache.thrift.protocol.TType;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import java.nio.ByteBuffer;
-import java.util.List;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
+import static com.google.common.base.Preconditions.checkState;
+
 @NotThreadSafe
 public class TProtocolWriter {
   private final TProtocol protocol;
@@ -52,7 +56,7 @@ public class TProtocolWriter {
       return;
     }
     protocol.writeFieldBegin(new TField(name, TType.STRING, id));
-    protocol.writeBinary(buf);
+    writeBinary(buf);
     protocol.writeFieldEnd();
   }
 
@@ -124,8 +128,12 @@ public class TProtocolWriter {
     protocol.writeFieldEnd();
   }
 
-  public <E> void writeListField(String name, short id, ThriftCodec<List<E>> codec, List<E> list)
-      throws Exception {
+  public <E> void writeListField(
+      String name,
+      short id,
+      ThriftCodec<Iterable<E>> codec,
+      Iterable<E> list
+  ) throws Exception {
     if (list == null) {
       return;
     }
@@ -172,6 +180,14 @@ public class TProtocolWriter {
     if (buf == null) {
       return;
     }
+    // Thrift protocols write binary values directly from the backing array, which is not
+    // available for read-only (e.g., sliced) or direct buffers
+    if (!buf.hasArray()) {
+      ByteBuffer copy = ByteBuffer.allocate(buf.remaining());
+      copy.put(buf.duplicate());
+      copy.flip();
+      buf = copy;
+    }
     protocol.writeBinary(buf);
   }
 
@@ -206,6 +222,14 @@ public class TProtocolWriter {
     protocol.writeString(string);
   }
 
+  public void writeMapBegin(byte keyType, byte valueType, int size) throws TException {
+    protocol.writeMapBegin(new TMap(keyType, valueType, size));
+  }
+
+  public void writeMapEnd() throws TException {
+    protocol.writeMapEnd();
+  }
+
   public <T> void writeSet(ThriftCodec<T> elementCodec, Set<T> set) throws Exception {
     if (set == null) {
       return;
@@ -225,18 +249,44 @@ public class TProtocolWriter {
     protocol.writeSetEnd();
   }
 
-  public <T> void writeList(ThriftCodec<T> elementCodec, List<T> list) throws Exception {
+  /**
+   * Writes the elements as a list.  A Collection is encoded directly using its size, but any other
+   * Iterable must be copied first, since a Thrift list is prefixed with the element count.  To
+   * encode a lazily produced sequence without copying, supply the element count with
+   * {@link #writeList(ThriftCodec, int, Iterator)} or implement Collection.
+   */
+  public <T> void writeList(ThriftCodec<T> elementCodec, Iterable<T> list) throws Exception {
     if (list == null) {
       return;
     }
 
+    Collection<T> collection;
+    if (list instanceof Collection) {
+      collection = (Collection<T>) list;
+    } else {
+      collection = Lists.newArrayList(list);
+    }
+    writeList(elementCodec, collection.size(), collection.iterator());
+  }
+
+  /**
+   * Writes a list with a declared size, encoding each element as it is produced by the iterator.
+   *
+   * @throws IllegalStateException if the iterator does not produce exactly size elements
+   */
+  public <T> void writeList(ThriftCodec<T> elementCodec, int size, Iterator<? extends T> elements)
+      throws Exception {
     protocol.writeListBegin(
-        new TList(elementCodec.getType().getProtocolType().getType(), list.size())
+        new TList(elementCodec.getType().getProtocolType().getType(), size)
     );
 
-    for (T element : list) {
-      elementCodec.write(element, this);
+    int count = 0;
+    while (elements.hasNext()) {
+      checkState(count < size, "List contains more than the declared %s elements", size);
+      elementCodec.write(elements.next(), this);
+      count++;
     }
+    checkState(count == size, "List contains %s elements, but %s were declared", count, size);
 
     protocol.writeListEnd();
   }
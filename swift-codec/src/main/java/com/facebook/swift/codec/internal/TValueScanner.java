@@ -0,0 +1,373 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal;
+
+import com.facebook.swift.codec.ThriftProtocolKind;
+import com.google.common.base.Preconditions;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.protocol.TType;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A resumable scanner that finds the end of a single encoded Thrift value in a stream of bytes
+ * that arrives in arbitrary chunks.  The scanner does not decode the value; it only tracks the
+ * nesting of structs and containers, so scanning can stop at any byte and continue when more
+ * data arrives.  Both the binary and compact protocol encodings are supported.
+ */
+@NotThreadSafe
+public class TValueScanner {
+  private static final byte NONE = -1;
+
+  private final boolean compact;
+  private final byte valueType;
+  private final Deque<Frame> stack = new ArrayDeque<>();
+  private byte pendingType;
+  private long skipRemaining;
+
+  // value of the last varint decoded by readVarint
+  private long varintValue;
+
+  public TValueScanner(ThriftProtocolKind protocolKind, byte valueType) {
+    Preconditions.checkNotNull(protocolKind, "protocolKind is null");
+    this.compact = protocolKind == ThriftProtocolKind.COMPACT;
+    this.valueType = valueType;
+    reset();
+  }
+
+  /**
+   * Prepares the scanner for the next value.
+   */
+  public void reset() {
+    stack.clear();
+    pendingType = valueType;
+    skipRemaining = 0;
+  }
+
+  /**
+   * Has the end of the value been found?
+   */
+  public boolean isComplete() {
+    return pendingType == NONE && stack.isEmpty() && skipRemaining == 0;
+  }
+
+  /**
+   * Scans the available bytes.  Scanning stops at the end of the value, or when the next token is
+   * not fully contained in the available bytes.  Incomplete tokens are not consumed, so the next
+   * call must start at the first unconsumed byte.
+   *
+   * @return the number of bytes consumed
+   */
+  public int scan(byte[] buffer, int offset, int length) throws TProtocolException {
+    int position = offset;
+    int limit = offset + length;
+    while (!isComplete()) {
+      if (skipRemaining > 0) {
+        int skipped = (int) Math.min(skipRemaining, limit - position);
+        position += skipped;
+        skipRemaining -= skipped;
+        if (skipRemaining > 0) {
+          break;
+        }
+        continue;
+      }
+
+      int consumed;
+      if (pendingType == NONE) {
+        consumed = nextType(buffer, position, limit);
+      } else {
+        consumed = scanValue(buffer, position, limit);
+      }
+      if (consumed < 0) {
+        break;
+      }
+      position += consumed;
+    }
+    return position - offset;
+  }
+
+  private int nextType(byte[] buffer, int position, int limit) throws TProtocolException {
+    Frame frame = stack.peek();
+    if (frame.type == TType.STRUCT) {
+      return compact ? readCompactFieldHeader(buffer, position, limit)
+          : readBinaryFieldHeader(buffer, position, limit);
+    }
+
+    if (frame.remaining == 0) {
+      stack.pop();
+      return 0;
+    }
+    if (frame.type == TType.MAP) {
+      if (frame.nextIsKey) {
+        pendingType = frame.keyType;
+      } else {
+        pendingType = frame.valueType;
+        frame.remaining--;
+      }
+      frame.nextIsKey = !frame.nextIsKey;
+    } else {
+      pendingType = frame.valueType;
+      frame.remaining--;
+    }
+    return 0;
+  }
+
+  private int readBinaryFieldHeader(byte[] buffer, int position, int limit) {
+    if (position >= limit) {
+      return -1;
+    }
+    byte type = buffer[position];
+    if (type == TType.STOP) {
+      stack.pop();
+      return 1;
+    }
+    if (limit - position < 3) {
+      return -1;
+    }
+    pendingType = type;
+    return 3;
+  }
+
+  private int readCompactFieldHeader(byte[] buffer, int position, int limit)
+      throws TProtocolException {
+    if (position >= limit) {
+      return -1;
+    }
+    byte header = buffer[position];
+    if (header == TType.STOP) {
+      stack.pop();
+      return 1;
+    }
+
+    int consumed = 1;
+    // a zero delta means the field id follows as a varint
+    if ((header & 0xf0) == 0) {
+      int varintLength = readVarint(buffer, position + 1, limit);
+      if (varintLength < 0) {
+        return -1;
+      }
+      consumed += varintLength;
+    }
+
+    int compactType = header & 0x0f;
+    // boolean field values are encoded in the field header
+    if (compactType != 1 && compactType != 2) {
+      pendingType = toTType(compactType);
+    }
+    return consumed;
+  }
+
+  private int scanValue(byte[] buffer, int position, int limit) throws TProtocolException {
+    int available = limit - position;
+    int consumed;
+    switch (pendingType) {
+      case TType.BOOL:
+      case TType.BYTE:
+        consumed = available >= 1 ? 1 : -1;
+        break;
+      case TType.DOUBLE:
+        consumed = available >= 8 ? 8 : -1;
+        break;
+      case TType.I16:
+        consumed = compact ? readVarint(buffer, position, limit) : (available >= 2 ? 2 : -1);
+        break;
+      case TType.I32:
+        consumed = compact ? readVarint(buffer, position, limit) : (available >= 4 ? 4 : -1);
+        break;
+      case TType.I64:
+        consumed = compact ? readVarint(buffer, position, limit) : (available >= 8 ? 8 : -1);
+        break;
+      case TType.STRING: {
+        int length;
+        if (compact) {
+          consumed = readVarint(buffer, position, limit);
+          length = (int) varintValue;
+        } else {
+          consumed = available >= 4 ? 4 : -1;
+          length = consumed < 0 ? 0 : readInt(buffer, position);
+        }
+        if (consumed >= 0) {
+          checkSize(length);
+          skipRemaining = length;
+        }
+        break;
+      }
+      case TType.STRUCT:
+        stack.push(new Frame(TType.STRUCT, NONE, NONE, 0));
+        consumed = 0;
+        break;
+      case TType.LIST:
+      case TType.SET:
+        consumed = compact ? readCompactListHeader(buffer, position, limit)
+            : readBinaryListHeader(buffer, position, limit);
+        break;
+      case TType.MAP:
+        consumed = compact ? readCompactMapHeader(buffer, position, limit)
+            : readBinaryMapHeader(buffer, position, limit);
+        break;
+      default:
+        throw new TProtocolException(
+            TProtocolException.INVALID_DATA,
+            "Unknown type " + pendingType
+        );
+    }
+
+    if (consumed >= 0) {
+      pendingType = NONE;
+    }
+    return consumed;
+  }
+
+  private int readBinaryListHeader(byte[] buffer, int position, int limit)
+      throws TProtocolException {
+    if (limit - position < 5) {
+      return -1;
+    }
+    int size = readInt(buffer, position + 1);
+    checkSize(size);
+    stack.push(new Frame(TType.LIST, NONE, buffer[position], size));
+    return 5;
+  }
+
+  private int readCompactListHeader(byte[] buffer, int position, int limit)
+      throws TProtocolException {
+    if (position >= limit) {
+      return -1;
+    }
+    byte header = buffer[position];
+    int consumed = 1;
+    int size = (header >> 4) & 0x0f;
+    // a size of 15 means the actual size follows as a varint
+    if (size == 15) {
+      int varintLength = readVarint(buffer, position + 1, limit);
+      if (varintLength < 0) {
+        return -1;
+      }
+      consumed += varintLength;
+      size = (int) varintValue;
+      checkSize(size);
+    }
+    stack.push(new Frame(TType.LIST, NONE, toTType(header & 0x0f), size));
+    return consumed;
+  }
+
+  private int readBinaryMapHeader(byte[] buffer, int position, int limit)
+      throws TProtocolException {
+    if (limit - position < 6) {
+      return -1;
+    }
+    int size = readInt(buffer, position + 2);
+    checkSize(size);
+    stack.push(new Frame(TType.MAP, buffer[position], buffer[position + 1], size));
+    return 6;
+  }
+
+  private int readCompactMapHeader(byte[] buffer, int position, int limit)
+      throws TProtocolException {
+    int consumed = readVarint(buffer, position, limit);
+    if (consumed < 0) {
+      return -1;
+    }
+    int size = (int) varintValue;
+    checkSize(size);
+
+    // the key and value types are omitted for empty maps
+    if (size == 0) {
+      stack.push(new Frame(TType.MAP, NONE, NONE, 0));
+      return consumed;
+    }
+    if (position + consumed >= limit) {
+      return -1;
+    }
+    byte types = buffer[position + consumed];
+    stack.push(new Frame(TType.MAP, toTType((types >> 4) & 0x0f), toTType(types & 0x0f), size));
+    return consumed + 1;
+  }
+
+  /**
+   * Decodes an unsigned varint into varintValue.
+   *
+   * @return the length of the varint, or -1 if the varint is not complete
+   */
+  private int readVarint(byte[] buffer, int position, int limit) throws TProtocolException {
+    long value = 0;
+    int shift = 0;
+    for (int index = position; index < limit; index++) {
+      byte b = buffer[index];
+      value |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        varintValue = value;
+        return index - position + 1;
+      }
+      shift += 7;
+      if (shift > 63) {
+        throw new TProtocolException(TProtocolException.INVALID_DATA, "Varint is too long");
+      }
+    }
+    return -1;
+  }
+
+  private static int readInt(byte[] buffer, int position) {
+    return ((buffer[position] & 0xff) << 24) |
+        ((buffer[position + 1] & 0xff) << 16) |
+        ((buffer[position + 2] & 0xff) << 8) |
+        (buffer[position + 3] & 0xff);
+  }
+
+  private static void checkSize(int size) throws TProtocolException {
+    if (size < 0) {
+      throw new TProtocolException(TProtocolException.NEGATIVE_SIZE, "Negative size: " + size);
+    }
+  }
+
+  private static byte toTType(int compactType) throws TProtocolException {
+    switch (compactType) {
+      case 1:
+      case 2:
+        return TType.BOOL;
+      case 3:
+        return TType.BYTE;
+      case 4:
+        return TType.I16;
+      case 5:
+        return TType.I32;
+      case 6:
+        return TType.I64;
+      case 7:
+        return TType.DOUBLE;
+      case 8:
+        return TType.STRING;
+      case 9:
+        return TType.LIST;
+      case 10:
+        return TType.SET;
+      case 11:
+        return TType.MAP;
+      case 12:
+        return TType.STRUCT;
+      default:
+        throw new TProtocolException(
+            TProtocolException.INVALID_DATA,
+            "Unknown compact type " + compactType
+        );
+    }
+  }
+
+  private static class Frame {
+    private final byte type;
+    private final byte keyType;
+    private final byte valueType;
+    private int remaining;
+    private boolean nextIsKey = true;
+
+    private Frame(byte type, byte keyType, byte valueType, int remaining) {
+      this.type = type;
+      this.keyType = keyType;
+      this.valueType = valueType;
+      this.remaining = remaining;
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal.builtin;
+
+import com.facebook.swift.codec.ThriftReusableCodec;
+import com.facebook.swift.codec.collect.IntDoubleMap;
+import com.facebook.swift.codec.internal.TProtocolReader;
+import com.facebook.swift.codec.internal.TProtocolWriter;
+import com.facebook.swift.codec.metadata.ThriftType;
+import com.google.common.base.Preconditions;
+import org.apache.thrift.protocol.TMap;
+import org.apache.thrift.protocol.TType;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Codec for IntDoubleMap, which reads and writes the entries without boxing.  The wire format is
+ * the same as for a boxed map of the same key and value types.
+ */
+@Immutable
+public class IntDoubleMapThriftCodec implements ThriftReusableCodec<IntDoubleMap> {
+  private static final ThriftType TYPE =
+      ThriftType.map(ThriftType.I32, ThriftType.DOUBLE, IntDoubleMap.class);
+
+  @Override
+  public ThriftType getType() {
+    return TYPE;
+  }
+
+  @Override
+  public IntDoubleMap read(TProtocolReader protocol) throws Exception {
+    Preconditions.checkNotNull(protocol, "protocol is null");
+    TMap tMap = protocol.readMapBegin();
+    IntDoubleMap map = new IntDoubleMap(protocol.expectedSize(tMap.size));
+    readEntries(protocol, tMap, map);
+    return map;
+  }
+
+  @Override
+  public IntDoubleMap readInto(IntDoubleMap target, TProtocolReader protocol) throws Exception {
+    Preconditions.checkNotNull(target, "target is null");
+    Preconditions.checkNotNull(protocol, "protocol is null");
+    TMap tMap = protocol.readMapBegin();
+    target.clear();
+    readEntries(protocol, tMap, target);
+    return target;
+  }
+
+  @Override
+  public void write(IntDoubleMap value, TProtocolWriter protocol) throws Exception {
+    Preconditions.checkNotNull(value, "value is null");
+    Preconditions.checkNotNull(protocol, "protocol is null");
+    protocol.writeMapBegin(TType.I32, TType.DOUBLE, value.size());
+    IntDoubleMap.Cursor cursor = value.cursor();
+    while (cursor.next()) {
+      protocol.writeI32(cursor.getKey());
+      protocol.writeDouble(cursor.getValue());
+    }
+    protocol.writeMapEnd();
+  }
+
+  private static void readEntries(TProtocolReader protocol, TMap tMap, IntDoubleMap map)
+      throws Exception {
+    for (int i = 0; i < tMap.size; i++) {
+      int key = protocol.readI32();
+      double value = protocol.readDouble();
+      map.put(key, value);
+    }
+    protocol.readMapEnd();
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal.builtin;
+
+import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.internal.StringInternTable;
+import com.facebook.swift.codec.internal.TProtocolReader;
+import com.facebook.swift.codec.internal.TProtocolWriter;
+import com.facebook.swift.codec.metadata.ThriftType;
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Codec for String fields marked with intern.  Values are resolved through a
+ * {@link StringInternTable} directly from the transport buffer when possible, so repeated values
+ * do not allocate a new String.
+ */
+@ThreadSafe
+public class InternedStringThriftCodec implements ThriftCodec<String> {
+  private final ThriftType type;
+  private final StringInternTable table;
+
+  public InternedStringThriftCodec(ThriftType type) {
+    this(type, new StringInternTable());
+  }
+
+  public InternedStringThriftCodec(ThriftType type, StringInternTable table) {
+    Preconditions.checkNotNull(type, "type is null");
+    Preconditions.checkArgument(type.isInterned(), "%s is not interned", type);
+    Preconditions.checkNotNull(table, "table is null");
+
+    this.type = type;
+    this.table = table;
+  }
+
+  @Override
+  public ThriftType getType() {
+    return type;
+  }
+
+  @Override
+  public String read(TProtocolReader protocol) throws Exception {
+    Preconditions.checkNotNull(protocol, "protocol is null");
+    return protocol.readInternedString(table);
+  }
+
+  @Override
+  public void write(String value, TProtocolWriter protocol) throws Exception {
+    Preconditions.checkNotNull(value, "value is null");
+    Preconditions.checkNotNull(protocol, "protocol is null");
+    protocol.writeString(value);
+  }
+}
@@ -4,18 +4,27 @@
 package com.facebook.swift.codec.internal.builtin;
 
 import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftReusableCodec;
 import com.facebook.swift.codec.internal.TProtocolReader;
 import com.facebook.swift.codec.internal.TProtocolWriter;
 import com.facebook.swift.codec.metadata.ThriftType;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.reflect.TypeToken;
 
 import javax.annotation.concurrent.Immutable;
 import java.util.List;
 
+/**
+ * Codec for Thrift lists.  Values are always read as a List, but any Iterable can be written, and
+ * Collections are encoded without copying.  If the Java type is ImmutableList, values are read
+ * directly into an ImmutableList.
+ */
 @Immutable
-public class ListThriftCodec<T> implements ThriftCodec<List<T>> {
+public class ListThriftCodec<T> implements ThriftReusableCodec<Iterable<T>> {
   private final ThriftCodec<T> elementCodec;
   private final ThriftType type;
+  private final boolean immutable;
 
   public ListThriftCodec(ThriftType type, ThriftCodec<T> elementCodec) {
     Preconditions.checkNotNull(type, "type is null");
@@ -23,6 +32,7 @@ public class ListThriftCodec<T> implements ThriftCodec<List<T>> {
 
     this.type = type;
     this.elementCodec = elementCodec;
+    this.immutable = TypeToken.of(type.getJavaType()).getRawType() == ImmutableList.class;
   }
 
   @Override
@@ -33,11 +43,24 @@ public class ListThriftCodec<T> implements ThriftCodec<List<T>> {
   @Override
   public List<T> read(TProtocolReader protocol) throws Exception {
     Preconditions.checkNotNull(protocol, "protocol is null");
+    if (immutable) {
+      return protocol.readImmutableList(elementCodec);
+    }
     return protocol.readList(elementCodec);
   }
 
   @Override
-  public void write(List<T> value, TProtocolWriter protocol) throws Exception {
+  public Iterable<T> readInto(Iterable<T> target, TProtocolReader protocol) throws Exception {
+    Preconditions.checkNotNull(target, "target is null");
+    Preconditions.checkNotNull(protocol, "protocol is null");
+    if (!immutable && target instanceof List) {
+      return protocol.readListInto(elementCodec, (List<T>) target);
+    }
+    return read(protocol);
+  }
+
+  @Override
+  public void write(Iterable<T> value, TProtocolWriter protocol) throws Exception {
     Preconditions.checkNotNull(value, "value is null");
     Preconditions.checkNotNull(protocol, "protocol is null");
     protocol.writeList(elementCodec, value);
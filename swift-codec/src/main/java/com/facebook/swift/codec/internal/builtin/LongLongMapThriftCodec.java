@@ -0,0 +1,72 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal.builtin;
+
+import com.facebook.swift.codec.ThriftReusableCodec;
+import com.facebook.swift.codec.collect.LongLongMap;
+import com.facebook.swift.codec.internal.TProtocolReader;
+import com.facebook.swift.codec.internal.TProtocolWriter;
+import com.facebook.swift.codec.metadata.ThriftType;
+import com.google.common.base.Preconditions;
+import org.apache.thrift.protocol.TMap;
+import org.apache.thrift.protocol.TType;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Codec for LongLongMap, which reads and writes the entries without boxing.  The wire format is the
+ * same as for a boxed map of the same key and value types.
+ */
+@Immutable
+public class LongLongMapThriftCodec implements ThriftReusableCodec<LongLongMap> {
+  private static final ThriftType TYPE =
+      ThriftType.map(ThriftType.I64, ThriftType.I64, LongLongMap.class);
+
+  @Override
+  public ThriftType getType() {
+    return TYPE;
+  }
+
+  @Override
+  public LongLongMap read(TProtocolReader protocol) throws Exception {
+    Preconditions.checkNotNull(protocol, "protocol is null");
+    TMap tMap = protocol.readMapBegin();
+    LongLongMap map = new LongLongMap(protocol.expectedSize(tMap.size));
+    readEntries(protocol, tMap, map);
+    return map;
+  }
+
+  @Override
+  public LongLongMap readInto(LongLongMap target, TProtocolReader protocol) throws Exception {
+    Preconditions.checkNotNull(target, "target is null");
+    Preconditions.checkNotNull(protocol, "protocol is null");
+    TMap tMap = protocol.readMapBegin();
+    target.clear();
+    readEntries(protocol, tMap, target);
+    return target;
+  }
+
+  @Override
+  public void write(LongLongMap value, TProtocolWriter protocol) throws Exception {
+    Preconditions.checkNotNull(value, "value is null");
+    Preconditions.checkNotNull(protocol, "protocol is null");
+    protocol.writeMapBegin(TType.I64, TType.I64, value.size());
+    LongLongMap.Cursor cursor = value.cursor();
+    while (cursor.next()) {
+      protocol.writeI64(cursor.getKey());
+      protocol.writeI64(cursor.getValue());
+    }
+    protocol.writeMapEnd();
+  }
+
+  private static void readEntries(TProtocolReader protocol, TMap tMap, LongLongMap map)
+      throws Exception {
+    for (int i = 0; i < tMap.size; i++) {
+      long key = protocol.readI64();
+      long value = protocol.readI64();
+      map.put(key, value);
+    }
+    protocol.readMapEnd();
+  }
+}
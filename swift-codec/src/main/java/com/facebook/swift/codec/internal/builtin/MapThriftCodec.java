@@ -4,19 +4,23 @@
 package com.facebook.swift.codec.internal.builtin;
 
 import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftReusableCodec;
 import com.facebook.swift.codec.internal.TProtocolReader;
 import com.facebook.swift.codec.internal.TProtocolWriter;
 import com.facebook.swift.codec.metadata.ThriftType;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.reflect.TypeToken;
 
 import javax.annotation.concurrent.Immutable;
 import java.util.Map;
 
 @Immutable
-public class MapThriftCodec<K, V> implements ThriftCodec<Map<K, V>> {
+public class MapThriftCodec<K, V> implements ThriftReusableCodec<Map<K, V>> {
   private final ThriftType thriftType;
   private final ThriftCodec<K> keyCodec;
   private final ThriftCodec<V> valueCodec;
+  private final boolean immutable;
 
   public MapThriftCodec(ThriftType type, ThriftCodec<K> keyCodec, ThriftCodec<V> valueCodec) {
     Preconditions.checkNotNull(type, "type is null");
@@ -26,6 +30,7 @@ public class MapThriftCodec<K, V> implements ThriftCodec<Map<K, V>> {
     this.thriftType = type;
     this.keyCodec = keyCodec;
     this.valueCodec = valueCodec;
+    this.immutable = TypeToken.of(type.getJavaType()).getRawType() == ImmutableMap.class;
   }
 
   @Override
@@ -36,9 +41,22 @@ public class MapThriftCodec<K, V> implements ThriftCodec<Map<K, V>> {
   @Override
   public Map<K, V> read(TProtocolReader protocol) throws Exception {
     Preconditions.checkNotNull(protocol, "protocol is null");
+    if (immutable) {
+      return protocol.readImmutableMap(keyCodec, valueCodec);
+    }
     return protocol.readMap(keyCodec, valueCodec);
   }
 
+  @Override
+  public Map<K, V> readInto(Map<K, V> target, TProtocolReader protocol) throws Exception {
+    Preconditions.checkNotNull(target, "target is null");
+    Preconditions.checkNotNull(protocol, "protocol is null");
+    if (immutable) {
+      return read(protocol);
+    }
+    return protocol.readMapInto(keyCodec, valueCodec, target);
+  }
+
   @Override
   public void write(Map<K, V> value, TProtocolWriter protocol) throws Exception {
     Preconditions.checkNotNull(value, "value is null");
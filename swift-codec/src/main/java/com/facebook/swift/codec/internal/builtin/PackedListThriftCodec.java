@@ -0,0 +1,357 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal.builtin;
+
+import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftPacking;
+import com.facebook.swift.codec.internal.TProtocolReader;
+import com.facebook.swift.codec.internal.TProtocolWriter;
+import com.facebook.swift.codec.metadata.ThriftEnumMetadata;
+import com.facebook.swift.codec.metadata.ThriftType;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.reflect.TypeToken;
+import org.apache.thrift.protocol.TProtocolException;
+
+import javax.annotation.concurrent.Immutable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static com.facebook.swift.codec.ThriftProtocolType.ENUM;
+import static com.facebook.swift.codec.ThriftProtocolType.I64;
+
+/**
+ * Codec for lists of Integer, Long or enum values that are written as a single binary value using
+ * a {@link ThriftPacking}.  All values are converted to longs first, and the whole list is then
+ * encoded or decoded in one pass over a byte array.
+ */
+@Immutable
+public class PackedListThriftCodec<T> implements ThriftCodec<Iterable<T>> {
+  private final ThriftType type;
+  private final ThriftPacking packing;
+  private final ThriftType elementType;
+  private final ThriftEnumMetadata<?> enumMetadata;
+  private final boolean immutable;
+
+  public PackedListThriftCodec(ThriftType type) {
+    Preconditions.checkNotNull(type, "type is null");
+    Preconditions.checkArgument(type.isPacked(), "%s is not packed", type);
+
+    this.type = type;
+    this.packing = type.getPacking();
+    this.elementType = type.getValueType();
+    if (elementType.getProtocolType() == ENUM) {
+      enumMetadata = elementType.getEnumMetadata();
+    } else {
+      enumMetadata = null;
+    }
+    this.immutable = TypeToken.of(type.getJavaType()).getRawType() == ImmutableList.class;
+  }
+
+  @Override
+  public ThriftType getType() {
+    return type;
+  }
+
+  @Override
+  public List<T> read(TProtocolReader protocol) throws Exception {
+    Preconditions.checkNotNull(protocol, "protocol is null");
+    long[] values = decode(packing, protocol.readBinary());
+
+    List<T> list = new ArrayList<>(values.length);
+    for (long value : values) {
+      list.add(fromLong(value));
+    }
+    if (immutable) {
+      return ImmutableList.copyOf(list);
+    }
+    return list;
+  }
+
+  @Override
+  public void write(Iterable<T> value, TProtocolWriter protocol) throws Exception {
+    Preconditions.checkNotNull(value, "value is null");
+    Preconditions.checkNotNull(protocol, "protocol is null");
+
+    long[] values = new long[value instanceof Collection ? ((Collection<?>) value).size() : 16];
+    int count = 0;
+    for (T element : value) {
+      if (count == values.length) {
+        values = Arrays.copyOf(values, Math.max(16, count * 2));
+      }
+      values[count++] = toLong(element);
+    }
+    protocol.writeBinary(encode(packing, values, count));
+  }
+
+  /**
+   * Computes the number of bytes {@link #encode} produces for the values without encoding them.
+   */
+  public long encodedSize(Iterable<?> value) {
+    Preconditions.checkNotNull(value, "value is null");
+
+    long size = 0;
+    long count = 0;
+    long bits = 0;
+    long previous = 0;
+    for (Object element : value) {
+      long zigzag;
+      if (packing == ThriftPacking.DELTA) {
+        long current = toLong(element);
+        zigzag = zigzag(current - previous);
+        previous = current;
+      } else {
+        zigzag = zigzag(toLong(element));
+      }
+      size += varintSize(zigzag);
+      bits |= zigzag;
+      count++;
+    }
+
+    if (packing == ThriftPacking.BIT_PACKED) {
+      // width byte followed by the bits of all values
+      size = 1 + (count * bitWidth(bits) + 7) / 8;
+    }
+    return varintSize(count) + size;
+  }
+
+  private long toLong(Object element) {
+    Preconditions.checkNotNull(element, "packed lists can not contain null values");
+    if (enumMetadata != null) {
+      return getEnumValue(enumMetadata, element);
+    }
+    return ((Number) element).longValue();
+  }
+
+  private static <E extends Enum<E>> int getEnumValue(
+      ThriftEnumMetadata<E> enumMetadata,
+      Object element
+  ) {
+    return enumMetadata.getEnumValue(enumMetadata.getEnumClass().cast(element));
+  }
+
+  /**
+   * Converts a decoded value to an element.  The element type matches the type parameter of this
+   * codec, since both come from the ThriftType of the list.
+   */
+  @SuppressWarnings("unchecked")
+  private T fromLong(long value) throws TProtocolException {
+    return (T) toElement(value);
+  }
+
+  private Object toElement(long value) throws TProtocolException {
+    if (elementType.getProtocolType() == I64) {
+      return Long.valueOf(value);
+    }
+    if (value != (int) value) {
+      throw new TProtocolException(
+          TProtocolException.INVALID_DATA,
+          "Packed value is not an int: " + value
+      );
+    }
+    if (enumMetadata == null) {
+      return Integer.valueOf((int) value);
+    }
+    Object enumConstant = enumMetadata.getEnumConstant((int) value);
+    if (enumConstant == null) {
+      throw new TProtocolException(
+          TProtocolException.INVALID_DATA,
+          String.format("Enum %s does not have a value for %s", enumMetadata.getEnumClass(), value)
+      );
+    }
+    return enumConstant;
+  }
+
+  /**
+   * Encodes the first count values with the specified packing, which must not be NONE or
+   * COLUMNAR.
+   */
+  public static ByteBuffer encode(ThriftPacking packing, long[] values, int count) {
+    // the largest value is a count followed by ten byte varints
+    byte[] bytes = new byte[5 + 10 * count];
+    int position = writeVarint(bytes, 0, count);
+
+    switch (packing) {
+      case DELTA: {
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+          position = writeVarint(bytes, position, zigzag(values[i] - previous));
+          previous = values[i];
+        }
+        break;
+      }
+      case ZIGZAG: {
+        for (int i = 0; i < count; i++) {
+          position = writeVarint(bytes, position, zigzag(values[i]));
+        }
+        break;
+      }
+      case BIT_PACKED: {
+        long bits = 0;
+        for (int i = 0; i < count; i++) {
+          bits |= zigzag(values[i]);
+        }
+        int width = bitWidth(bits);
+        bytes[position++] = (byte) width;
+
+        int current = 0;
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+          long value = zigzag(values[i]);
+          int remaining = width;
+          while (remaining > 0) {
+            int length = Math.min(remaining, 8 - offset);
+            current |= (int) (value & ((1 << length) - 1)) << offset;
+            value >>>= length;
+            remaining -= length;
+            offset += length;
+            if (offset == 8) {
+              bytes[position++] = (byte) current;
+              current = 0;
+              offset = 0;
+            }
+          }
+        }
+        if (offset > 0) {
+          bytes[position++] = (byte) current;
+        }
+        break;
+      }
+      default:
+        throw new IllegalArgumentException("Unsupported packing " + packing);
+    }
+    return ByteBuffer.wrap(bytes, 0, position);
+  }
+
+  /**
+   * Decodes values written by {@link #encode}, leaving the buffer positioned after the values.
+   */
+  public static long[] decode(ThriftPacking packing, ByteBuffer buffer)
+      throws TProtocolException {
+    long count = readVarint(buffer);
+    if (count < 0 || count > Integer.MAX_VALUE) {
+      throw new TProtocolException(TProtocolException.SIZE_LIMIT, "Packed list is too large");
+    }
+
+    long[] values;
+    switch (packing) {
+      case DELTA: {
+        // every value takes at least one byte
+        values = new long[checkCount(count, buffer.remaining())];
+        long previous = 0;
+        for (int i = 0; i < values.length; i++) {
+          previous += unzigzag(readVarint(buffer));
+          values[i] = previous;
+        }
+        break;
+      }
+      case ZIGZAG: {
+        values = new long[checkCount(count, buffer.remaining())];
+        for (int i = 0; i < values.length; i++) {
+          values[i] = unzigzag(readVarint(buffer));
+        }
+        break;
+      }
+      case BIT_PACKED: {
+        // every value takes at least one bit, which bounds the count by the remaining bytes
+        int width = readByte(buffer);
+        if (width > Long.SIZE || (width == 0 && count > 0)) {
+          throw new TProtocolException(
+              TProtocolException.INVALID_DATA,
+              "Invalid bit width " + width
+          );
+        }
+        if ((count * width + 7) / 8 > buffer.remaining()) {
+          throw new TProtocolException(TProtocolException.INVALID_DATA, "Packed list is truncated");
+        }
+        values = new long[(int) count];
+
+        int current = 0;
+        int offset = 8;
+        for (int i = 0; i < values.length; i++) {
+          long value = 0;
+          int shift = 0;
+          while (shift < width) {
+            if (offset == 8) {
+              current = buffer.get() & 0xFF;
+              offset = 0;
+            }
+            int length = Math.min(width - shift, 8 - offset);
+            value |= (long) ((current >>> offset) & ((1 << length) - 1)) << shift;
+            shift += length;
+            offset += length;
+          }
+          values[i] = unzigzag(value);
+        }
+        break;
+      }
+      default:
+        throw new IllegalArgumentException("Unsupported packing " + packing);
+    }
+    return values;
+  }
+
+  /**
+   * Gets the number of bits needed for the zigzag encoded values.  This is at least one, even
+   * when all values are zero, so a list can not claim more values than it has bits.
+   */
+  private static int bitWidth(long bits) {
+    return Math.max(1, Long.SIZE - Long.numberOfLeadingZeros(bits));
+  }
+
+  private static int checkCount(long count, int remaining) throws TProtocolException {
+    if (count > remaining) {
+      throw new TProtocolException(TProtocolException.INVALID_DATA, "Packed list is truncated");
+    }
+    return (int) count;
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static int writeVarint(byte[] bytes, int position, long value) {
+    while ((value & ~0x7FL) != 0) {
+      bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    bytes[position++] = (byte) value;
+    return position;
+  }
+
+  private static int varintSize(long value) {
+    int size = 1;
+    while ((value & ~0x7FL) != 0) {
+      size++;
+      value >>>= 7;
+    }
+    return size;
+  }
+
+  private static long readVarint(ByteBuffer buffer) throws TProtocolException {
+    long result = 0;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      int b = readByte(buffer);
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new TProtocolException(TProtocolException.INVALID_DATA, "Varint is too long");
+  }
+
+  private static int readByte(ByteBuffer buffer) throws TProtocolException {
+    if (!buffer.hasRemaining()) {
+      throw new TProtocolException(TProtocolException.INVALID_DATA, "Packed list is truncated");
+    }
+    return buffer.get() & 0xFF;
+  }
+}
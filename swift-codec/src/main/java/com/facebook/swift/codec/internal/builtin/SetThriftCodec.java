@@ -4,18 +4,27 @@
 package com.facebook.swift.codec.internal.builtin;
 
 import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftReusableCodec;
 import com.facebook.swift.codec.internal.TProtocolReader;
 import com.facebook.swift.codec.internal.TProtocolWriter;
 import com.facebook.swift.codec.metadata.ThriftType;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.reflect.TypeToken;
 
 import javax.annotation.concurrent.Immutable;
+import java.util.EnumSet;
 import java.util.Set;
 
+/**
+ * Codec for Thrift sets.  Values are read as a HashSet, unless the Java type is ImmutableSet or
+ * EnumSet in which case values are read directly into that type.
+ */
 @Immutable
-public class SetThriftCodec<T> implements ThriftCodec<Set<T>> {
+public class SetThriftCodec<T> implements ThriftReusableCodec<Set<T>> {
   private final ThriftCodec<T> elementCodec;
   private final ThriftType type;
+  private final Class<?> setClass;
 
   public SetThriftCodec(ThriftType type, ThriftCodec<T> elementCodec) {
     Preconditions.checkNotNull(type, "type is null");
@@ -23,6 +32,7 @@ public class SetThriftCodec<T> implements ThriftCodec<Set<T>> {
 
     this.type = type;
     this.elementCodec = elementCodec;
+    this.setClass = TypeToken.of(type.getJavaType()).getRawType();
   }
 
   @Override
@@ -33,9 +43,37 @@ public class SetThriftCodec<T> implements ThriftCodec<Set<T>> {
   @Override
   public Set<T> read(TProtocolReader protocol) throws Exception {
     Preconditions.checkNotNull(protocol, "protocol is null");
+    if (setClass == ImmutableSet.class) {
+      return protocol.readImmutableSet(elementCodec);
+    }
+    if (setClass == EnumSet.class) {
+      return readEnumSet(protocol);
+    }
     return protocol.readSet(elementCodec);
   }
 
+  @Override
+  public Set<T> readInto(Set<T> target, TProtocolReader protocol) throws Exception {
+    Preconditions.checkNotNull(target, "target is null");
+    Preconditions.checkNotNull(protocol, "protocol is null");
+    if (setClass != ImmutableSet.class && setClass != EnumSet.class) {
+      return protocol.readSetInto(elementCodec, target);
+    }
+    // enum sets are a few words, so there is little to gain from reusing them
+    return read(protocol);
+  }
+
+  /**
+   * Reads an EnumSet.  The element type is only known to be an enum at runtime, so the element
+   * codec and class can not be expressed with the type parameter of this codec.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private Set<T> readEnumSet(TProtocolReader protocol) throws Exception {
+    ThriftCodec enumCodec = elementCodec;
+    Class enumClass = (Class) elementCodec.getType().getJavaType();
+    return protocol.readEnumSet(enumCodec, enumClass);
+  }
+
   @Override
   public void write(Set<T> value, TProtocolWriter protocol) throws Exception {
     Preconditions.checkNotNull(value, "value is null");
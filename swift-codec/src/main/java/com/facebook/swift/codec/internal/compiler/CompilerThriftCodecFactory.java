@@ -6,6 +6,7 @@ package com.facebook.swift.codec.internal.compiler;
 import com.facebook.swift.codec.ThriftCodec;
 import com.facebook.swift.codec.ThriftCodecManager;
 import com.facebook.swift.codec.ThriftProtocolType;
+import com.facebook.swift.codec.ThriftReusableCodec;
 import com.facebook.swift.codec.internal.TProtocolReader;
 import com.facebook.swift.codec.internal.TProtocolWriter;
 import com.facebook.swift.codec.internal.ThriftCodecFactory;
@@ -26,7 +27,15 @@ import com.facebook.swift.codec.metadata.ThriftMethodInjection;
 import com.facebook.swift.codec.metadata.ThriftParameterInjection;
 import com.facebook.swift.codec.metadata.ThriftStructMetadata;
 import com.facebook.swift.codec.metadata.ThriftType;
+import com.facebook.swift.codec.metadata.TypeCoercion;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
 import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.tree.ClassNode;
@@ -41,6 +50,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import static com.facebook.swift.codec.ThriftProtocolType.ENUM;
 import static com.facebook.swift.codec.ThriftProtocolType.LIST;
@@ -57,14 +68,33 @@ import static com.facebook.swift.codec.internal.compiler.byteCode.Access.a;
 import static com.facebook.swift.codec.internal.compiler.byteCode.CaseStatement.caseStatement;
 import static com.facebook.swift.codec.internal.compiler.byteCode.NamedParameterDefinition.arg;
 import static com.facebook.swift.codec.internal.compiler.byteCode.ParameterizedType.type;
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Creates Thrift codecs directly in byte code.
+ * <p/>
+ * Unless a class loader is supplied, generated classes are shared by all factories.  Each class
+ * is defined in its own class loader and is only weakly cached, so the class is unloaded once the
+ * codec managers using it are no longer reachable.
  */
 @Immutable
 public class CompilerThriftCodecFactory implements ThriftCodecFactory {
   private static final String PACKAGE = "$thrift";
 
+  // generated classes by struct class and by the inputs of the byte code generation; equal
+  // inputs generate identical byte code, so codec managers for the same structs share the
+  // classes without generating them again.  The struct class is only weakly referenced, so the
+  // cache does not keep the struct class loader alive.
+  private static final LoadingCache<Class<?>, Cache<GeneratedClassKey, Class<?>>> sharedClasses =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .build(new CacheLoader<Class<?>, Cache<GeneratedClassKey, Class<?>>>() {
+            @Override
+            public Cache<GeneratedClassKey, Class<?>> load(Class<?> structClass) {
+              return CacheBuilder.newBuilder().weakValues().build();
+            }
+          });
+
   private final boolean debug;
   private final DynamicClassLoader classLoader;
 
@@ -73,11 +103,16 @@ public class CompilerThriftCodecFactory implements ThriftCodecFactory {
   }
 
   public CompilerThriftCodecFactory(boolean debug) {
-    this(debug, new DynamicClassLoader());
+    this.debug = debug;
+    this.classLoader = null;
   }
 
+  /**
+   * Creates a factory that defines all generated classes in the specified class loader.  These
+   * classes are not shared with other factories, and live as long as the class loader.
+   */
   public CompilerThriftCodecFactory(boolean debug, DynamicClassLoader classLoader) {
-    this.classLoader = classLoader;
+    this.classLoader = checkNotNull(classLoader, "classLoader is null");
     this.debug = debug;
   }
 
@@ -106,7 +141,7 @@ public class CompilerThriftCodecFactory implements ThriftCodecFactory {
     }
 
     // generate the class
-    Class<?> codecClass = generateClass(metadata);
+    Class<?> codecClass = getCodecClass(metadata);
 
     try {
       Constructor<?> constructor = codecClass.getConstructor(
@@ -121,15 +156,44 @@ public class CompilerThriftCodecFactory implements ThriftCodecFactory {
     }
   }
 
-  private Class<?> generateClass(ThriftStructMetadata<?> metadata) {
+  private Class<?> getCodecClass(final ThriftStructMetadata<?> metadata) {
+    if (classLoader != null) {
+      return classLoader.defineClass(getClassName(metadata), generateByteCode(metadata));
+    }
+
+    try {
+      return sharedClasses.getUnchecked(metadata.getStructClass()).get(
+          new GeneratedClassKey(metadata), new Callable<Class<?>>() {
+        @Override
+        public Class<?> call() {
+          // a private class loader per class allows each class to be unloaded independently
+          DynamicClassLoader classLoader =
+              new DynamicClassLoader(getParentClassLoader(metadata.getStructClass()));
+          return classLoader.defineClass(getClassName(metadata), generateByteCode(metadata));
+        }
+      }
+      );
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private String getClassName(ThriftStructMetadata<?> metadata) {
+    return toCodecType(metadata).getClassName().replace('/', '.');
+  }
+
+  private byte[] generateByteCode(ThriftStructMetadata<?> metadata) {
     ParameterizedType structType = type(metadata.getStructClass());
     ParameterizedType codecType = toCodecType(metadata);
 
+    // mutable structs can be read into an existing instance
+    boolean reusable = metadata.isMutable();
+
     ClassDefinition classDefinition = new ClassDefinition(
         a(PUBLIC, SUPER),
         codecType.getClassName(),
         type(Object.class),
-        type(ThriftCodec.class, structType)
+        type(reusable ? ThriftReusableCodec.class : ThriftCodec.class, structType)
     );
 
     // private ThriftType type;
@@ -216,183 +280,8 @@ public class CompilerThriftCodecFactory implements ThriftCodecFactory {
         );
       }
 
-      // protocol.readStructBegin();
-      read.loadVariable("protocol").invokeVirtual(
-          TProtocolReader.class,
-          "readStructBegin",
-          void.class
-      );
-
-      // while (protocol.nextField())
-      read.visitLabel("while-begin");
-      read.loadVariable("protocol").invokeVirtual(
-          TProtocolReader.class,
-          "nextField",
-          boolean.class
-      );
-      read.ifZeroGoto("while-end");
+      readFields(read, metadata, codecType, codecFields, false);
 
-      // switch (protocol.getFieldId())
-      read.loadVariable("protocol").invokeVirtual(TProtocolReader.class, "getFieldId", short.class);
-      List<CaseStatement> cases = new ArrayList<>();
-      for (ThriftFieldMetadata field : metadata.getFields()) {
-        cases.add(caseStatement(field.getId(), field.getName() + "-field"));
-      }
-      read.switchStatement("default", cases);
-
-      for (ThriftFieldMetadata field : metadata.getFields()) {
-        // case field.id:
-        read.visitLabel(field.getName() + "-field");
-
-        // read value from protocol
-        switch (field.getType().getProtocolType()) {
-          case BOOL:
-            read.loadVariable("protocol").invokeVirtual(
-                TProtocolReader.class,
-                "readBoolField",
-                boolean.class
-            );
-            break;
-          case BYTE:
-            read.loadVariable("protocol").invokeVirtual(
-                TProtocolReader.class,
-                "readByteField",
-                byte.class
-            );
-            break;
-          case DOUBLE:
-            read.loadVariable("protocol").invokeVirtual(
-                TProtocolReader.class,
-                "readDoubleField",
-                double.class
-            );
-            break;
-          case I16:
-            read.loadVariable("protocol").invokeVirtual(
-                TProtocolReader.class,
-                "readI16Field",
-                short.class
-            );
-            break;
-          case I32:
-            read.loadVariable("protocol").invokeVirtual(
-                TProtocolReader.class,
-                "readI32Field",
-                int.class
-            );
-            break;
-          case I64:
-            read.loadVariable("protocol").invokeVirtual(
-                TProtocolReader.class,
-                "readI64Field",
-                long.class
-            );
-            break;
-          case STRING:
-            read.loadVariable("protocol").invokeVirtual(
-                TProtocolReader.class,
-                "readBinaryField",
-                ByteBuffer.class
-            );
-            break;
-          case STRUCT: {
-            FieldDefinition fieldDefinition = codecFields.get(field.getId());
-
-            read.loadVariable("protocol")
-                .loadThis().getField(codecType, fieldDefinition)
-                .invokeVirtual(
-                    type(TProtocolReader.class),
-                    "readStructField",
-                    type(Object.class),
-                    type(ThriftCodec.class)
-                )
-                .checkCast(toParameterizedType(field.getType()));
-            break;
-          }
-          case SET: {
-            FieldDefinition fieldDefinition = codecFields.get(field.getId());
-
-            read.loadVariable("protocol")
-                .loadThis().getField(codecType, fieldDefinition)
-                .invokeVirtual(
-                    type(TProtocolReader.class),
-                    "readSetField",
-                    type(Set.class),
-                    type(ThriftCodec.class)
-                );
-            break;
-          }
-          case LIST: {
-            FieldDefinition fieldDefinition = codecFields.get(field.getId());
-
-            read.loadVariable("protocol")
-                .loadThis().getField(codecType, fieldDefinition)
-                .invokeVirtual(
-                    type(TProtocolReader.class),
-                    "readListField",
-                    type(List.class),
-                    type(ThriftCodec.class)
-                );
-            break;
-          }
-          case MAP: {
-            FieldDefinition fieldDefinition = codecFields.get(field.getId());
-
-            read.loadVariable("protocol")
-                .loadThis().getField(codecType, fieldDefinition)
-                .invokeVirtual(
-                    type(TProtocolReader.class),
-                    "readMapField",
-                    type(Map.class),
-                    type(ThriftCodec.class)
-                );
-            break;
-          }
-          case ENUM: {
-            FieldDefinition fieldDefinition = codecFields.get(field.getId());
-
-            read.loadVariable("protocol")
-                .loadThis().getField(codecType, fieldDefinition)
-                .invokeVirtual(
-                    type(TProtocolReader.class),
-                    "readEnumField",
-                    type(Enum.class),
-                    type(ThriftCodec.class)
-                )
-                .checkCast(toParameterizedType(field.getType()));
-            break;
-          }
-          default:
-            throw new IllegalArgumentException(
-                "Unsupported field type " + field.getType()
-                    .getProtocolType()
-            );
-        }
-
-        // coerce the type
-        if (field.getCoercion() != null) {
-          read.invokeStatic(field.getCoercion().getFromThrift());
-        }
-
-        // store protocol value
-        read.storeVariable("f_" + field.getName());
-
-        // go back to top of loop
-        read.gotoLabel("while-begin");
-      }
-
-      // default:
-      read.visitLabel("default")
-          .loadVariable("protocol")
-          .invokeVirtual(TProtocolReader.class, "skipFieldData", void.class)
-          .gotoLabel("while-begin");
-
-      // end of while loop
-      read.visitLabel("while-end");
-
-      // protocol.readStructEnd();
-      read.loadVariable("protocol")
-          .invokeVirtual(TProtocolReader.class, "readStructEnd", void.class);
 
       // == BUILD ==
 
@@ -496,6 +385,78 @@ public class CompilerThriftCodecFactory implements ThriftCodecFactory {
       classDefinition.addMethod(read);
     }
 
+    // public Struct readInto(Struct target, TProtocolReader protocol) throws Exception
+    if (reusable) {
+      MethodDefinition readInto = new MethodDefinition(
+          a(PUBLIC),
+          "readInto",
+          structType,
+          arg("target", structType),
+          arg("protocol", TProtocolReader.class)
+      ).addException(Exception.class);
+
+      // declare and init local variables here
+      for (ThriftFieldMetadata field : metadata.getFields()) {
+        readInto.addInitializedLocalVariable(
+            toParameterizedType(field.getType()),
+            "f_" + field.getName()
+        );
+      }
+
+      // r_foo = target.foo; for each struct or collection that may be read in place
+      for (ThriftFieldMetadata field : metadata.getFields()) {
+        if (isReusableField(field)) {
+          readInto.addLocalVariable(toParameterizedType(field.getType()), "r_" + field.getName());
+          readInto.loadVariable("target");
+
+          ThriftExtraction extraction = field.getExtraction();
+          if (extraction instanceof ThriftFieldExtractor) {
+            readInto.getField(((ThriftFieldExtractor) extraction).getField());
+          } else if (extraction instanceof ThriftMethodExtractor) {
+            readInto.invokeVirtual(((ThriftMethodExtractor) extraction).getMethod());
+          }
+
+          readInto.storeVariable("r_" + field.getName());
+        }
+      }
+
+      readFields(readInto, metadata, codecType, codecFields, true);
+
+      // inject fields; fields that were not read are reset to the default value
+      for (ThriftFieldMetadata field : metadata.getFields()) {
+        for (ThriftInjection injection : field.getInjections()) {
+          if (injection instanceof ThriftFieldInjection) {
+            readInto.loadVariable("target")
+                .loadVariable("f_" + field.getName())
+                .putField(((ThriftFieldInjection) injection).getField());
+          }
+        }
+      }
+
+      // inject methods; parameters that were not read are reset to the default value
+      for (ThriftMethodInjection methodInjection : metadata.getMethodInjections()) {
+        readInto.loadVariable("target");
+
+        // push parameters on stack
+        for (ThriftParameterInjection parameter : methodInjection.getParameters()) {
+          readInto.loadVariable("f_" + parameter.getName());
+        }
+
+        // invoke the method
+        readInto.invokeVirtual(methodInjection.getMethod());
+
+        // if method has a return, we need to pop it off the stack
+        if (methodInjection.getMethod().getReturnType() != void.class) {
+          readInto.pop();
+        }
+      }
+
+      readInto.loadVariable("target")
+          .retObject();
+
+      classDefinition.addMethod(readInto);
+    }
+
     // public void write(Struct struct, TProtocolWriter protocol) throws Exception
     {
       MethodDefinition write = new MethodDefinition(
@@ -512,19 +473,41 @@ public class CompilerThriftCodecFactory implements ThriftCodecFactory {
 
       // field extraction
       for (ThriftFieldMetadata field : metadata.getFields()) {
+        // if field value is the default value, don't write the field
+        if (field.isOmitDefault()) {
+          // keep the value in a local, so the getter is only called once
+          write.addLocalVariable(toParameterizedType(field.getType()), "v_" + field.getName());
+          write.loadVariable("struct");
+          extractFieldValue(write, field);
+          write.storeVariable("v_" + field.getName())
+              .loadVariable("v_" + field.getName());
+          switch (field.getType().getProtocolType()) {
+            case DOUBLE:
+              // compare the bits, so -0.0 and NaN are written
+              write.invokeStatic(Double.class, "doubleToRawLongBits", long.class, double.class)
+                  .loadConstant(0L)
+                  .compareLong();
+              break;
+            case I64:
+              write.loadConstant(0L).compareLong();
+              break;
+            default:
+              // boolean, byte, short and int are all ints on the stack
+              break;
+          }
+          write.ifZeroGoto("field_is_default_" + field.getName());
+        }
+
         write.loadVariable("protocol")
             .loadConstant(field.getName())
-            .loadConstant(field.getId())
-            .loadVariable("struct");
-
-        // extract value
-        ThriftExtraction extraction = field.getExtraction();
-        if (extraction instanceof ThriftFieldExtractor) {
-          ThriftFieldExtractor fieldExtractor = (ThriftFieldExtractor) extraction;
-          write.getField(fieldExtractor.getField());
-        } else if (extraction instanceof ThriftMethodExtractor) {
-          ThriftMethodExtractor methodExtractor = (ThriftMethodExtractor) extraction;
-          write.invokeVirtual(methodExtractor.getMethod());
+            .loadConstant(field.getId());
+
+        // extract value, unless it was already extracted for the default value check
+        if (field.isOmitDefault()) {
+          write.loadVariable("v_" + field.getName());
+        } else {
+          write.loadVariable("struct");
+          extractFieldValue(write, field);
         }
 
         // if field value is null, don't write the field
@@ -607,6 +590,27 @@ public class CompilerThriftCodecFactory implements ThriftCodecFactory {
             );
             break;
           case STRING:
+            if (field.getType().isPacked() || field.getType().isInterned()) {
+              FieldDefinition codecField = codecFields.get(field.getId());
+
+              // push ThriftTypeCodec for this field
+              write.loadThis().getField(codecType, codecField);
+
+              // swap the codec and value on the stack
+              write.swap();
+
+              // protocol.writeField("aList", 42, this.aListCodec, aList);
+              write.invokeVirtual(
+                  type(TProtocolWriter.class),
+                  "writeField",
+                  type(void.class),
+                  type(String.class),
+                  type(short.class),
+                  type(ThriftCodec.class),
+                  type(Object.class)
+              );
+              break;
+            }
             write.invokeVirtual(
                 TProtocolWriter.class,
                 "writeBinaryField",
@@ -675,7 +679,7 @@ public class CompilerThriftCodecFactory implements ThriftCodecFactory {
                 type(String.class),
                 type(short.class),
                 type(ThriftCodec.class),
-                type(List.class)
+                type(Iterable.class)
             );
             break;
           }
@@ -748,6 +752,10 @@ public class CompilerThriftCodecFactory implements ThriftCodecFactory {
 
           write.visitLabel("field_end_" + field.getName());
         }
+
+        if (field.isOmitDefault()) {
+          write.visitLabel("field_is_default_" + field.getName());
+        }
       }
 
       write.loadVariable("protocol")
@@ -773,6 +781,31 @@ public class CompilerThriftCodecFactory implements ThriftCodecFactory {
       );
     }
 
+    // public synthetic bridge Object readInto(Object target, TProtocolReader protocol)
+    if (reusable) {
+      classDefinition.addMethod(
+          new MethodDefinition(
+              a(PUBLIC, BRIDGE, SYNTHETIC),
+              "readInto",
+              type(Object.class),
+              arg("target", Object.class),
+              arg("protocol", TProtocolReader.class)
+          )
+              .addException(Exception.class)
+              .loadThis()
+              .loadVariable("target", structType)
+              .loadVariable("protocol")
+              .invokeVirtual(
+                  codecType,
+                  "readInto",
+                  structType,
+                  structType,
+                  type(TProtocolReader.class)
+              )
+              .retObject()
+      );
+    }
+
     // public synthetic bridge void write(Object struct, TProtocolWriter protocol) throws Exception
     {
       classDefinition.addMethod(
@@ -805,20 +838,282 @@ public class CompilerThriftCodecFactory implements ThriftCodecFactory {
 
     if (debug) {
       ClassReader reader = new ClassReader(byteCode);
-      CheckClassAdapter.verify(reader, classLoader, true, new PrintWriter(System.out));
+      ClassLoader verifyClassLoader = classLoader;
+      if (verifyClassLoader == null) {
+        verifyClassLoader = getParentClassLoader(metadata.getStructClass());
+      }
+      CheckClassAdapter.verify(reader, verifyClassLoader, true, new PrintWriter(System.out));
+    }
+    return byteCode;
+  }
+
+  private static ClassLoader getParentClassLoader(Class<?> structClass) {
+    // generated code must see both the struct and the codec classes
+    ClassLoader classLoader = structClass.getClassLoader();
+    if (classLoader != null && canLoad(classLoader, ThriftCodec.class)) {
+      return classLoader;
+    }
+    return ThriftCodec.class.getClassLoader();
+  }
+
+  private static boolean canLoad(ClassLoader classLoader, Class<?> type) {
+    try {
+      return Class.forName(type.getName(), false, classLoader) == type;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Generates the loop that reads each field from the protocol into the f_ local variables.  If
+   * reuse is set, nested structs and collections are read into the r_ local variables when
+   * possible.
+   */
+  private void readFields(
+      MethodDefinition read,
+      ThriftStructMetadata<?> metadata,
+      ParameterizedType codecType,
+      Map<Short, FieldDefinition> codecFields,
+      boolean reuse
+  ) {
+    // protocol.readStructBegin();
+    read.loadVariable("protocol").invokeVirtual(
+        TProtocolReader.class,
+        "readStructBegin",
+        void.class
+    );
+
+    // while (protocol.nextField())
+    read.visitLabel("while-begin");
+    read.loadVariable("protocol").invokeVirtual(
+        TProtocolReader.class,
+        "nextField",
+        boolean.class
+    );
+    read.ifZeroGoto("while-end");
+
+    // switch (protocol.getFieldId())
+    read.loadVariable("protocol").invokeVirtual(TProtocolReader.class, "getFieldId", short.class);
+    List<CaseStatement> cases = new ArrayList<>();
+    for (ThriftFieldMetadata field : metadata.getFields()) {
+      cases.add(caseStatement(field.getId(), field.getName() + "-field"));
+    }
+    read.switchStatement("default", cases);
+
+    for (ThriftFieldMetadata field : metadata.getFields()) {
+      // case field.id:
+      read.visitLabel(field.getName() + "-field");
+
+      // read value from protocol
+      switch (field.getType().getProtocolType()) {
+        case BOOL:
+          read.loadVariable("protocol").invokeVirtual(
+              TProtocolReader.class,
+              "readBoolField",
+              boolean.class
+          );
+          break;
+        case BYTE:
+          read.loadVariable("protocol").invokeVirtual(
+              TProtocolReader.class,
+              "readByteField",
+              byte.class
+          );
+          break;
+        case DOUBLE:
+          read.loadVariable("protocol").invokeVirtual(
+              TProtocolReader.class,
+              "readDoubleField",
+              double.class
+          );
+          break;
+        case I16:
+          read.loadVariable("protocol").invokeVirtual(
+              TProtocolReader.class,
+              "readI16Field",
+              short.class
+          );
+          break;
+        case I32:
+          read.loadVariable("protocol").invokeVirtual(
+              TProtocolReader.class,
+              "readI32Field",
+              int.class
+          );
+          break;
+        case I64:
+          read.loadVariable("protocol").invokeVirtual(
+              TProtocolReader.class,
+              "readI64Field",
+              long.class
+          );
+          break;
+        case STRING:
+          if (field.getType().isPacked() || field.getType().isInterned()) {
+            FieldDefinition fieldDefinition = codecFields.get(field.getId());
+
+            read.loadVariable("protocol")
+                .loadThis().getField(codecType, fieldDefinition)
+                .invokeVirtual(
+                    type(TProtocolReader.class),
+                    "readField",
+                    type(Object.class),
+                    type(ThriftCodec.class)
+                )
+                .checkCast(toParameterizedType(field.getType()));
+            break;
+          }
+          read.loadVariable("protocol").invokeVirtual(
+              TProtocolReader.class,
+              "readBinaryField",
+              ByteBuffer.class
+          );
+          break;
+        case STRUCT: {
+          FieldDefinition fieldDefinition = codecFields.get(field.getId());
+
+          read.loadVariable("protocol")
+              .loadThis().getField(codecType, fieldDefinition);
+          invokeReadField(read, field, "readStructField", Object.class, reuse)
+              .checkCast(toParameterizedType(field.getType()));
+          break;
+        }
+        case SET: {
+          FieldDefinition fieldDefinition = codecFields.get(field.getId());
+
+          read.loadVariable("protocol")
+              .loadThis().getField(codecType, fieldDefinition);
+          invokeReadField(read, field, "readSetField", Set.class, reuse)
+              .checkCast(toParameterizedType(field.getType()));
+          break;
+        }
+        case LIST: {
+          FieldDefinition fieldDefinition = codecFields.get(field.getId());
+
+          read.loadVariable("protocol")
+              .loadThis().getField(codecType, fieldDefinition);
+          invokeReadField(read, field, "readListField", List.class, reuse)
+              .checkCast(toParameterizedType(field.getType()));
+          break;
+        }
+        case MAP: {
+          FieldDefinition fieldDefinition = codecFields.get(field.getId());
+
+          read.loadVariable("protocol")
+              .loadThis().getField(codecType, fieldDefinition);
+          invokeReadField(read, field, "readMapField", Map.class, reuse)
+              .checkCast(toParameterizedType(field.getType()));
+          break;
+        }
+        case ENUM: {
+          FieldDefinition fieldDefinition = codecFields.get(field.getId());
+
+          read.loadVariable("protocol")
+              .loadThis().getField(codecType, fieldDefinition)
+              .invokeVirtual(
+                  type(TProtocolReader.class),
+                  "readEnumField",
+                  type(Enum.class),
+                  type(ThriftCodec.class)
+              )
+              .checkCast(toParameterizedType(field.getType()));
+          break;
+        }
+        default:
+          throw new IllegalArgumentException(
+              "Unsupported field type " + field.getType()
+                  .getProtocolType()
+          );
+      }
+
+      // coerce the type
+      if (field.getCoercion() != null) {
+        read.invokeStatic(field.getCoercion().getFromThrift());
+      }
+
+      // store protocol value
+      read.storeVariable("f_" + field.getName());
+
+      // go back to top of loop
+      read.gotoLabel("while-begin");
     }
-    Class<?> codecClass = classLoader.defineClass(
-        codecType.getClassName().replace('/', '.'),
-        byteCode
+
+    // default:
+    read.visitLabel("default")
+        .loadVariable("protocol")
+        .invokeVirtual(TProtocolReader.class, "skipFieldData", void.class)
+        .gotoLabel("while-begin");
+
+    // end of while loop
+    read.visitLabel("while-end");
+
+    // protocol.readStructEnd();
+    read.loadVariable("protocol")
+        .invokeVirtual(TProtocolReader.class, "readStructEnd", void.class);
+  }
+
+  /**
+   * Invokes the protocol read method for a field whose codec is already on the stack.  When
+   * reusing, the current value of the field is passed so it can be populated in place.
+   */
+  private MethodDefinition invokeReadField(
+      MethodDefinition read,
+      ThriftFieldMetadata field,
+      String methodName,
+      Class<?> valueType,
+      boolean reuse
+  ) {
+    if (reuse && isReusableField(field)) {
+      // protocol.readFooField(this.fooCodec, r_foo);
+      return read.loadVariable("r_" + field.getName())
+          .invokeVirtual(
+              type(TProtocolReader.class),
+              methodName,
+              type(valueType),
+              type(ThriftCodec.class),
+              type(valueType)
+          );
+    }
+
+    // protocol.readFooField(this.fooCodec);
+    return read.invokeVirtual(
+        type(TProtocolReader.class),
+        methodName,
+        type(valueType),
+        type(ThriftCodec.class)
     );
+  }
 
-    return codecClass;
+  /**
+   * Can the current value of this field be read in place?  Only uncoerced structs and
+   * collections with an extractor qualify.
+   */
+  private boolean isReusableField(ThriftFieldMetadata field) {
+    if (field.isWriteOnly() || field.getCoercion() != null) {
+      return false;
+    }
+    ThriftProtocolType protocolType = field.getType().getProtocolType();
+    return protocolType == STRUCT ||
+        protocolType == SET ||
+        protocolType == LIST ||
+        protocolType == MAP;
   }
 
   private boolean isParameterTypeJavaPrimitive(ThriftParameterInjection parameter) {
     return isJavaPrimitive(TypeToken.of(parameter.getJavaType()));
   }
 
+  private void extractFieldValue(MethodDefinition write, ThriftFieldMetadata field) {
+    ThriftExtraction extraction = field.getExtraction();
+    if (extraction instanceof ThriftFieldExtractor) {
+      ThriftFieldExtractor fieldExtractor = (ThriftFieldExtractor) extraction;
+      write.getField(fieldExtractor.getField());
+    } else if (extraction instanceof ThriftMethodExtractor) {
+      ThriftMethodExtractor methodExtractor = (ThriftMethodExtractor) extraction;
+      write.invokeVirtual(methodExtractor.getMethod());
+    }
+  }
+
   private boolean isFieldTypeJavaPrimitive(ThriftFieldMetadata field) {
     return isJavaPrimitive(TypeToken.of(field.getType().getJavaType()));
   }
@@ -839,7 +1134,9 @@ public class CompilerThriftCodecFactory implements ThriftCodecFactory {
 
   private boolean needsCodec(ThriftFieldMetadata fieldMetadata) {
     ThriftProtocolType protocolType = fieldMetadata.getType().getProtocolType();
-    return protocolType == ENUM ||
+    return fieldMetadata.getType().isPacked() ||
+        fieldMetadata.getType().isInterned() ||
+        protocolType == ENUM ||
         protocolType == STRUCT ||
         protocolType == SET ||
         protocolType == LIST ||
@@ -851,6 +1148,13 @@ public class CompilerThriftCodecFactory implements ThriftCodecFactory {
   }
 
   public static ParameterizedType toParameterizedType(ThriftType type) {
+    // packed lists are written as binary, but use the declared list class
+    if (type.isPacked()) {
+      return type(
+          TypeToken.of(type.getJavaType()).getRawType(),
+          toParameterizedType(type.getValueType())
+      );
+    }
     switch (type.getProtocolType()) {
       case BOOL:
       case BYTE:
@@ -862,19 +1166,129 @@ public class CompilerThriftCodecFactory implements ThriftCodecFactory {
       case STRUCT:
       case ENUM:
         return type((Class<?>) type.getJavaType());
-      case MAP:
+      // containers use the declared class, which may be an immutable implementation
+      case MAP: {
+        Class<?> mapClass = TypeToken.of(type.getJavaType()).getRawType();
+        if (mapClass.getTypeParameters().length == 0) {
+          // primitive maps have no type parameters
+          return type(mapClass);
+        }
         return type(
-            Map.class,
+            mapClass,
             toParameterizedType(type.getKeyType()),
             toParameterizedType(type.getValueType())
         );
+      }
       case SET:
-        return type(Set.class, toParameterizedType(type.getValueType()));
+        return type(
+            TypeToken.of(type.getJavaType()).getRawType(),
+            toParameterizedType(type.getValueType())
+        );
       case LIST:
-        return type(List.class, toParameterizedType(type.getValueType()));
+        return type(
+            TypeToken.of(type.getJavaType()).getRawType(),
+            toParameterizedType(type.getValueType())
+        );
       default:
         throw new IllegalArgumentException("Unsupported thrift field type " + type);
     }
   }
 
+  /**
+   * Everything the byte code of a codec is generated from.  Members and types are identified by
+   * their descriptions, so the key does not hold a strong reference to the struct class.
+   */
+  @Immutable
+  private static final class GeneratedClassKey {
+    private final List<Object> inputs = new ArrayList<>();
+
+    private GeneratedClassKey(ThriftStructMetadata<?> metadata) {
+      inputs.add(metadata.getStructName());
+      inputs.add(describe(metadata.getBuilderClass()));
+      inputs.add(metadata.isMutable());
+
+      ThriftConstructorInjection constructor = metadata.getConstructor();
+      if (constructor != null) {
+        inputs.add(describe(constructor.getConstructor()));
+        addParameters(constructor.getParameters());
+      }
+      ThriftMethodInjection builderMethod = metadata.getBuilderMethod();
+      if (builderMethod != null) {
+        inputs.add(describe(builderMethod.getMethod()));
+        addParameters(builderMethod.getParameters());
+      }
+      for (ThriftMethodInjection methodInjection : metadata.getMethodInjections()) {
+        inputs.add(describe(methodInjection.getMethod()));
+        addParameters(methodInjection.getParameters());
+      }
+
+      for (ThriftFieldMetadata field : metadata.getFields()) {
+        inputs.add(field.getId());
+        inputs.add(field.getName());
+        addType(field.getType());
+        inputs.add(field.isReadOnly());
+        inputs.add(field.isWriteOnly());
+        inputs.add(field.isOmitDefault());
+
+        TypeCoercion coercion = field.getCoercion();
+        if (coercion != null) {
+          inputs.add(describe(coercion.getToThrift()));
+          inputs.add(describe(coercion.getFromThrift()));
+        }
+
+        ThriftExtraction extraction = field.getExtraction();
+        if (extraction instanceof ThriftFieldExtractor) {
+          inputs.add(describe(((ThriftFieldExtractor) extraction).getField()));
+        } else if (extraction instanceof ThriftMethodExtractor) {
+          inputs.add(describe(((ThriftMethodExtractor) extraction).getMethod()));
+        }
+
+        for (ThriftInjection injection : field.getInjections()) {
+          if (injection instanceof ThriftFieldInjection) {
+            inputs.add(describe(((ThriftFieldInjection) injection).getField()));
+          } else {
+            addParameters(ImmutableList.of((ThriftParameterInjection) injection));
+          }
+        }
+      }
+    }
+
+    private void addParameters(List<ThriftParameterInjection> parameters) {
+      inputs.add(parameters.size());
+      for (ThriftParameterInjection parameter : parameters) {
+        inputs.add(parameter.getId());
+        inputs.add(parameter.getName());
+        inputs.add(parameter.getParameterIndex());
+        inputs.add(describe(parameter.getJavaType()));
+      }
+    }
+
+    private void addType(ThriftType type) {
+      inputs.add(type.getProtocolType());
+      inputs.add(describe(type.getJavaType()));
+      inputs.add(type.getPacking());
+      inputs.add(type.isInterned());
+      inputs.add(type.isCoerced());
+    }
+
+    private static String describe(Object member) {
+      return member == null ? null : member.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      return inputs.equals(((GeneratedClassKey) o).inputs);
+    }
+
+    @Override
+    public int hashCode() {
+      return inputs.hashCode();
+    }
+  }
 }
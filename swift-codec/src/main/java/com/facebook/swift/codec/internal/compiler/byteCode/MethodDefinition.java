@@ -66,7 +66,9 @@ import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
 import static org.objectweb.asm.Opcodes.INVOKESTATIC;
 import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
 import static org.objectweb.asm.Opcodes.ISTORE;
+import static org.objectweb.asm.Opcodes.LCMP;
 import static org.objectweb.asm.Opcodes.LCONST_0;
+import static org.objectweb.asm.Opcodes.LCONST_1;
 import static org.objectweb.asm.Opcodes.NEW;
 import static org.objectweb.asm.Opcodes.POP;
 import static org.objectweb.asm.Opcodes.PUTFIELD;
@@ -362,6 +364,23 @@ public class MethodDefinition {
     return this;
   }
 
+  public MethodDefinition invokeStatic(
+      Class<?> type,
+      String name,
+      Class<?> returnType,
+      Class<?>... parameterTypes
+  ) {
+    instructionList.add(
+        new MethodInsnNode(
+            INVOKESTATIC,
+            type(type).getClassName(),
+            name,
+            methodDescription(returnType, parameterTypes)
+        )
+    );
+    return this;
+  }
+
   public MethodDefinition invokeVirtual(Method method) {
     instructionList.add(
         new MethodInsnNode(
@@ -620,6 +639,25 @@ public class MethodDefinition {
     return this;
   }
 
+  public MethodDefinition loadConstant(long value) {
+    if (value == 0) {
+      instructionList.add(new InsnNode(LCONST_0));
+    } else if (value == 1) {
+      instructionList.add(new InsnNode(LCONST_1));
+    } else {
+      instructionList.add(new LdcInsnNode(value));
+    }
+    return this;
+  }
+
+  /**
+   * Compares the two longs on the top of the stack, and pushes -1, 0 or 1.
+   */
+  public MethodDefinition compareLong() {
+    instructionList.add(new InsnNode(LCMP));
+    return this;
+  }
+
   public MethodDefinition loadVariable(String name) {
     LocalVariableDefinition variable = localVariables.get(name);
     checkArgument(variable != null, "unknown variable %s" + name);
@@ -0,0 +1,519 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal.methodhandle;
+
+import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftCodecManager;
+import com.facebook.swift.codec.ThriftPacking;
+import com.facebook.swift.codec.ThriftProtocolType;
+import com.facebook.swift.codec.internal.TByteBufferInputTransport;
+import com.facebook.swift.codec.internal.TMemoryOutputTransport;
+import com.facebook.swift.codec.internal.TProtocolReader;
+import com.facebook.swift.codec.internal.TProtocolWriter;
+import com.facebook.swift.codec.internal.builtin.PackedListThriftCodec;
+import com.facebook.swift.codec.metadata.ThriftEnumMetadata;
+import com.facebook.swift.codec.metadata.ThriftStructMetadata;
+import com.facebook.swift.codec.metadata.ThriftType;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.reflect.TypeToken;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+
+import javax.annotation.concurrent.Immutable;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Charsets.UTF_8;
+
+/**
+ * Codec for lists of structs using {@link ThriftPacking#COLUMNAR}.  The list is written as a
+ * single binary value containing the number of structs followed by one column per field.  Each
+ * column starts with the field id, the encoding and the length of the column, so columns for
+ * unknown fields can be skipped.  The column contains a bitmap of the rows with a value if any
+ * row is null, followed by the values of the other rows:
+ * <ul>
+ * <li>integral and enum values are packed with delta, zigzag or bit packing</li>
+ * <li>strings with few distinct values are written as a dictionary followed by the bit packed
+ * index of each value, and other strings are written one after the other</li>
+ * <li>all other values are written one after the other with the compact protocol</li>
+ * </ul>
+ * Structs are accessed with the same method handles as {@link MethodHandleThriftCodec}.
+ */
+@Immutable
+public class ColumnarListThriftCodec<T> implements ThriftCodec<Iterable<T>> {
+  private static final byte COLUMN_DELTA = 1;
+  private static final byte COLUMN_ZIGZAG = 2;
+  private static final byte COLUMN_BIT_PACKED = 3;
+  private static final byte COLUMN_STRINGS = 4;
+  private static final byte COLUMN_DICTIONARY = 5;
+  private static final byte COLUMN_VALUES = 6;
+
+  // rows are only bounded by the size of the data when the list has a column
+  private static final int MAX_ROWS_WITHOUT_COLUMNS = 1 << 16;
+
+  private static final Set<Type> INTEGRAL_TYPES = ImmutableSet.<Type>of(
+      boolean.class,
+      Boolean.class,
+      byte.class,
+      Byte.class,
+      short.class,
+      Short.class,
+      int.class,
+      Integer.class,
+      long.class,
+      Long.class
+  );
+
+  private final ThriftType type;
+  private final MethodHandleThriftCodec<T> structCodec;
+  private final boolean immutable;
+
+  public ColumnarListThriftCodec(ThriftCodecManager manager, ThriftType type) {
+    Preconditions.checkNotNull(manager, "manager is null");
+    Preconditions.checkNotNull(type, "type is null");
+    Preconditions.checkArgument(
+        type.getPacking() == ThriftPacking.COLUMNAR,
+        "%s is not columnar",
+        type
+    );
+
+    this.type = type;
+    this.structCodec = new MethodHandleThriftCodec<>(
+        manager,
+        ColumnarListThriftCodec.<T>getStructMetadata(type)
+    );
+    this.immutable = TypeToken.of(type.getJavaType()).getRawType() == ImmutableList.class;
+  }
+
+  @Override
+  public ThriftType getType() {
+    return type;
+  }
+
+  @Override
+  public List<T> read(TProtocolReader protocol) throws Exception {
+    Preconditions.checkNotNull(protocol, "protocol is null");
+    ByteBuffer buffer = protocol.readBinary();
+
+    int rowCount = readCount(buffer);
+    int columnCount = readCount(buffer);
+    if (columnCount == 0 && rowCount > MAX_ROWS_WITHOUT_COLUMNS) {
+      throw new TProtocolException(
+          TProtocolException.SIZE_LIMIT,
+          String.format("List without columns has %s rows", rowCount)
+      );
+    }
+
+    // decode each column, ignoring columns for unknown fields
+    Object[][] columns = new Object[structCodec.getFieldCount()][];
+    for (int column = 0; column < columnCount; column++) {
+      if (buffer.remaining() < 3) {
+        throw new TProtocolException(TProtocolException.INVALID_DATA, "Column is truncated");
+      }
+      short fieldId = buffer.getShort();
+      byte encoding = buffer.get();
+      int length = readCount(buffer);
+      if (length > buffer.remaining()) {
+        throw new TProtocolException(TProtocolException.INVALID_DATA, "Column is truncated");
+      }
+      // every row takes at least one bit of a column, in the bitmap or in the values
+      if (length < 1 + (rowCount + 7L) / 8) {
+        throw new TProtocolException(
+            TProtocolException.INVALID_DATA,
+            String.format("Column of %s bytes can not contain %s rows", length, rowCount)
+        );
+      }
+      ByteBuffer body = buffer.slice();
+      body.limit(length);
+      buffer.position(buffer.position() + length);
+
+      int position = structCodec.getFieldPosition(fieldId);
+      if (position < 0 || structCodec.getField(position).metadata.isWriteOnly()) {
+        continue;
+      }
+      columns[position] = readColumn(structCodec.getField(position), encoding, rowCount, body);
+    }
+
+    // build the structs row by row
+    List<T> list = new ArrayList<>(rowCount);
+    for (int row = 0; row < rowCount; row++) {
+      Object[] values = new Object[columns.length];
+      for (int position = 0; position < columns.length; position++) {
+        if (columns[position] != null) {
+          values[position] = columns[position][row];
+        }
+      }
+      structCodec.restoreOmittedDefaults(values);
+      list.add(structCodec.constructStruct(values));
+    }
+    if (immutable) {
+      return ImmutableList.copyOf(list);
+    }
+    return list;
+  }
+
+  @Override
+  public void write(Iterable<T> value, TProtocolWriter protocol) throws Exception {
+    Preconditions.checkNotNull(value, "value is null");
+    Preconditions.checkNotNull(protocol, "protocol is null");
+
+    Object[] rows = Iterables.toArray(value, Object.class);
+    for (Object row : rows) {
+      Preconditions.checkNotNull(row, "columnar lists can not contain null structs");
+    }
+
+    // only fields that can be read from the struct have a column
+    List<MethodHandleThriftCodec.FieldBinding> fields = new ArrayList<>();
+    for (int position = 0; position < structCodec.getFieldCount(); position++) {
+      MethodHandleThriftCodec.FieldBinding field = structCodec.getField(position);
+      if (!field.metadata.isReadOnly() && field.getter != null) {
+        fields.add(field);
+      }
+    }
+
+    TMemoryOutputTransport output = new TMemoryOutputTransport();
+    writeVarint(output, rows.length);
+    writeVarint(output, fields.size());
+
+    TMemoryOutputTransport column = new TMemoryOutputTransport();
+    for (MethodHandleThriftCodec.FieldBinding field : fields) {
+      column.reset();
+      byte encoding = writeColumn(field, rows, column);
+
+      short fieldId = field.metadata.getId();
+      output.write(new byte[] {(byte) (fieldId >> 8), (byte) fieldId, encoding});
+      writeVarint(output, column.size());
+      output.write(column.getArray(), 0, column.size());
+    }
+
+    protocol.writeBinary(ByteBuffer.wrap(output.getArray(), 0, output.size()));
+  }
+
+  private static byte writeColumn(
+      MethodHandleThriftCodec.FieldBinding field,
+      Object[] rows,
+      TMemoryOutputTransport column
+  ) throws Exception {
+    // extract the values, and write a bitmap of the rows with a value if any value is null
+    Object[] values = new Object[rows.length];
+    int count = 0;
+    byte[] presence = new byte[(rows.length + 7) / 8];
+    for (int row = 0; row < rows.length; row++) {
+      Object value = field.getValue(rows[row]);
+      if (value != null) {
+        values[count++] = value;
+        presence[row / 8] |= 1 << (row % 8);
+      }
+    }
+    if (count == rows.length) {
+      column.write(new byte[] {0});
+    } else {
+      column.write(new byte[] {1});
+      column.write(presence);
+    }
+
+    ThriftType fieldType = field.metadata.getType();
+    if (isIntegral(fieldType)) {
+      long[] longValues = new long[count];
+      for (int i = 0; i < count; i++) {
+        longValues[i] = toLong(fieldType, values[i]);
+      }
+
+      ThriftPacking packing = getPacking(fieldType);
+      ByteBuffer packed = PackedListThriftCodec.encode(packing, longValues, count);
+      column.write(packed.array(), packed.position(), packed.remaining());
+      switch (packing) {
+        case DELTA:
+          return COLUMN_DELTA;
+        case ZIGZAG:
+          return COLUMN_ZIGZAG;
+        default:
+          return COLUMN_BIT_PACKED;
+      }
+    }
+
+    if (fieldType.getJavaType() == String.class) {
+      // use a dictionary when most values are repeated
+      Map<String, Integer> dictionary = new LinkedHashMap<>();
+      long[] indexes = new long[count];
+      for (int i = 0; i < count && dictionary.size() * 2 <= count; i++) {
+        Integer index = dictionary.get(values[i]);
+        if (index == null) {
+          index = dictionary.size();
+          dictionary.put((String) values[i], index);
+        }
+        indexes[i] = index;
+      }
+
+      if (dictionary.size() * 2 <= count) {
+        writeVarint(column, dictionary.size());
+        for (String entry : dictionary.keySet()) {
+          writeString(column, entry);
+        }
+        ByteBuffer packed = PackedListThriftCodec.encode(ThriftPacking.BIT_PACKED, indexes, count);
+        column.write(packed.array(), packed.position(), packed.remaining());
+        return COLUMN_DICTIONARY;
+      }
+
+      for (int i = 0; i < count; i++) {
+        writeString(column, (String) values[i]);
+      }
+      return COLUMN_STRINGS;
+    }
+
+    TProtocolWriter writer = new TProtocolWriter(new TCompactProtocol(column));
+    for (int i = 0; i < count; i++) {
+      field.codec.write(values[i], writer);
+    }
+    return COLUMN_VALUES;
+  }
+
+  private static Object[] readColumn(
+      MethodHandleThriftCodec.FieldBinding field,
+      byte encoding,
+      int rowCount,
+      ByteBuffer body
+  ) throws Exception {
+    // rows without a value
+    boolean[] missing = new boolean[rowCount];
+    int count = rowCount;
+    if (!body.hasRemaining()) {
+      throw new TProtocolException(TProtocolException.INVALID_DATA, "Column is truncated");
+    }
+    if (body.get() != 0) {
+      if (body.remaining() < (rowCount + 7) / 8) {
+        throw new TProtocolException(TProtocolException.INVALID_DATA, "Column is truncated");
+      }
+      for (int row = 0; row < rowCount; row++) {
+        if ((body.get(1 + row / 8) & (1 << (row % 8))) == 0) {
+          missing[row] = true;
+          count--;
+        }
+      }
+      body.position(1 + (rowCount + 7) / 8);
+    }
+
+    ThriftType fieldType = field.metadata.getType();
+    Object[] values = new Object[count];
+    switch (encoding) {
+      case COLUMN_DELTA:
+      case COLUMN_ZIGZAG:
+      case COLUMN_BIT_PACKED: {
+        if (!isIntegral(fieldType)) {
+          throw new TProtocolException(
+              TProtocolException.INVALID_DATA,
+              "Field " + field.metadata.getName() + " is not integral"
+          );
+        }
+        long[] longValues = PackedListThriftCodec.decode(getPacking(encoding), body);
+        checkValueCount(longValues.length, count);
+        for (int i = 0; i < count; i++) {
+          values[i] = fromLong(fieldType, longValues[i]);
+        }
+        break;
+      }
+      case COLUMN_STRINGS: {
+        for (int i = 0; i < count; i++) {
+          values[i] = readString(body);
+        }
+        break;
+      }
+      case COLUMN_DICTIONARY: {
+        int dictionarySize = readCount(body);
+        if (dictionarySize > body.remaining()) {
+          throw new TProtocolException(TProtocolException.INVALID_DATA, "Column is truncated");
+        }
+        String[] dictionary = new String[dictionarySize];
+        for (int i = 0; i < dictionary.length; i++) {
+          dictionary[i] = readString(body);
+        }
+        long[] indexes = PackedListThriftCodec.decode(ThriftPacking.BIT_PACKED, body);
+        checkValueCount(indexes.length, count);
+        for (int i = 0; i < count; i++) {
+          if (indexes[i] < 0 || indexes[i] >= dictionary.length) {
+            throw new TProtocolException(
+                TProtocolException.INVALID_DATA,
+                "Invalid dictionary index " + indexes[i]
+            );
+          }
+          values[i] = dictionary[(int) indexes[i]];
+        }
+        break;
+      }
+      case COLUMN_VALUES: {
+        TProtocolReader reader =
+            new TProtocolReader(new TCompactProtocol(new TByteBufferInputTransport(body)));
+        for (int i = 0; i < count; i++) {
+          values[i] = field.codec.read(reader);
+        }
+        break;
+      }
+      default:
+        throw new TProtocolException(
+            TProtocolException.INVALID_DATA,
+            "Invalid column encoding " + encoding
+        );
+    }
+
+    // spread the values over the rows
+    if (count == rowCount) {
+      return values;
+    }
+    Object[] column = new Object[rowCount];
+    int next = 0;
+    for (int row = 0; row < rowCount; row++) {
+      if (!missing[row]) {
+        column[row] = values[next++];
+      }
+    }
+    return column;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> ThriftStructMetadata<T> getStructMetadata(ThriftType type) {
+    return (ThriftStructMetadata<T>) type.getValueType().getStructMetadata();
+  }
+
+  private static boolean isIntegral(ThriftType type) {
+    if (type.getProtocolType() == ThriftProtocolType.ENUM) {
+      return !type.isCoerced();
+    }
+    return INTEGRAL_TYPES.contains(type.getJavaType());
+  }
+
+  private static ThriftPacking getPacking(ThriftType type) {
+    switch (type.getProtocolType()) {
+      case I64:
+        // longs are usually timestamps or ids, which are often sorted
+        return ThriftPacking.DELTA;
+      case I16:
+      case I32:
+        return ThriftPacking.ZIGZAG;
+      default:
+        // booleans, bytes and enums have a small range
+        return ThriftPacking.BIT_PACKED;
+    }
+  }
+
+  private static ThriftPacking getPacking(byte encoding) {
+    switch (encoding) {
+      case COLUMN_DELTA:
+        return ThriftPacking.DELTA;
+      case COLUMN_ZIGZAG:
+        return ThriftPacking.ZIGZAG;
+      default:
+        return ThriftPacking.BIT_PACKED;
+    }
+  }
+
+  private static long toLong(ThriftType type, Object value) {
+    if (value instanceof Boolean) {
+      return ((Boolean) value) ? 1 : 0;
+    }
+    if (value instanceof Enum) {
+      return getEnumValue(type.getEnumMetadata(), value);
+    }
+    return ((Number) value).longValue();
+  }
+
+  private static <E extends Enum<E>> int getEnumValue(
+      ThriftEnumMetadata<E> enumMetadata,
+      Object value
+  ) {
+    return enumMetadata.getEnumValue(enumMetadata.getEnumClass().cast(value));
+  }
+
+  private static Object fromLong(ThriftType type, long value) throws TProtocolException {
+    Object result;
+    switch (type.getProtocolType()) {
+      case BOOL:
+        result = value != 0;
+        break;
+      case BYTE:
+        result = (byte) value;
+        break;
+      case I16:
+        result = (short) value;
+        break;
+      case I32:
+        result = (int) value;
+        break;
+      case ENUM:
+        result = type.getEnumMetadata().getEnumConstant((int) value);
+        break;
+      default:
+        return value;
+    }
+    if (result == null || (!(result instanceof Boolean) && !(result instanceof Enum) &&
+        ((Number) result).longValue() != value)) {
+      throw new TProtocolException(
+          TProtocolException.INVALID_DATA,
+          String.format("Value %s is not a valid %s", value, type.getProtocolType())
+      );
+    }
+    return result;
+  }
+
+  private static void checkValueCount(int actual, int expected) throws TProtocolException {
+    if (actual != expected) {
+      throw new TProtocolException(
+          TProtocolException.INVALID_DATA,
+          String.format("Column has %s values, but %s rows have a value", actual, expected)
+      );
+    }
+  }
+
+  private static void writeString(TMemoryOutputTransport output, String value) {
+    byte[] bytes = value.getBytes(UTF_8);
+    writeVarint(output, bytes.length);
+    output.write(bytes, 0, bytes.length);
+  }
+
+  private static String readString(ByteBuffer buffer) throws TProtocolException {
+    int length = readCount(buffer);
+    if (length > buffer.remaining()) {
+      throw new TProtocolException(TProtocolException.INVALID_DATA, "String is truncated");
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  private static void writeVarint(TMemoryOutputTransport output, int value) {
+    byte[] bytes = new byte[5];
+    int position = 0;
+    while ((value & ~0x7F) != 0) {
+      bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    bytes[position++] = (byte) value;
+    output.write(bytes, 0, position);
+  }
+
+  private static int readCount(ByteBuffer buffer) throws TProtocolException {
+    int result = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      if (!buffer.hasRemaining()) {
+        throw new TProtocolException(TProtocolException.INVALID_DATA, "Column is truncated");
+      }
+      byte b = buffer.get();
+      result |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        if (result < 0) {
+          throw new TProtocolException(TProtocolException.NEGATIVE_SIZE, "Negative size");
+        }
+        return result;
+      }
+    }
+    throw new TProtocolException(TProtocolException.INVALID_DATA, "Varint is too long");
+  }
+}
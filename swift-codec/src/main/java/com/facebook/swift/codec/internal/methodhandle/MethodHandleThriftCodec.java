@@ -0,0 +1,427 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal.methodhandle;
+
+import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftCodecManager;
+import com.facebook.swift.codec.internal.TProtocolReader;
+import com.facebook.swift.codec.internal.TProtocolWriter;
+import com.facebook.swift.codec.metadata.ThriftExtraction;
+import com.facebook.swift.codec.metadata.ThriftFieldExtractor;
+import com.facebook.swift.codec.metadata.ThriftFieldInjection;
+import com.facebook.swift.codec.metadata.ThriftFieldMetadata;
+import com.facebook.swift.codec.metadata.ThriftInjection;
+import com.facebook.swift.codec.metadata.ThriftMethodExtractor;
+import com.facebook.swift.codec.metadata.ThriftMethodInjection;
+import com.facebook.swift.codec.metadata.ThriftParameterInjection;
+import com.facebook.swift.codec.metadata.ThriftStructMetadata;
+import com.facebook.swift.codec.metadata.ThriftType;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.concurrent.Immutable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Codec that accesses the struct through method handles bound once when the codec is created.
+ * Field values are collected in an array indexed by the position of the field, instead of a map,
+ * while reading.  This does not define any classes, so it can be used where byte code generation
+ * is not allowed.
+ */
+@Immutable
+public class MethodHandleThriftCodec<T> implements ThriftCodec<T> {
+  private static final Map<Class<?>, Object> PRIMITIVE_DEFAULTS =
+      ImmutableMap.<Class<?>, Object>builder()
+          .put(boolean.class, false)
+          .put(byte.class, (byte) 0)
+          .put(char.class, (char) 0)
+          .put(short.class, (short) 0)
+          .put(int.class, 0)
+          .put(long.class, 0L)
+          .put(float.class, 0.0f)
+          .put(double.class, 0.0d)
+          .build();
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final MethodType SETTER_TYPE =
+      MethodType.methodType(void.class, Object.class, Object.class);
+
+  private final ThriftStructMetadata<T> metadata;
+
+  // fields in id order, and the position of each field by field id (or -1)
+  private final FieldBinding[] fields;
+  private final int[] fieldPositions;
+
+  private final Invocation constructor;
+  private final List<FieldInjection> fieldInjections;
+  private final List<Invocation> methodInjections;
+  private final Invocation builderMethod;
+
+  public MethodHandleThriftCodec(
+      ThriftCodecManager manager,
+      ThriftStructMetadata<T> metadata
+  ) {
+    this.metadata = metadata;
+
+    List<FieldBinding> fields = new ArrayList<>();
+    int maxFieldId = -1;
+    for (ThriftFieldMetadata fieldMetadata : metadata.getFields()) {
+      fields.add(new FieldBinding(fieldMetadata, manager.getCodec(fieldMetadata.getType())));
+      maxFieldId = Math.max(maxFieldId, fieldMetadata.getId());
+    }
+    this.fields = fields.toArray(new FieldBinding[fields.size()]);
+
+    fieldPositions = new int[maxFieldId + 1];
+    Arrays.fill(fieldPositions, -1);
+    for (int position = 0; position < this.fields.length; position++) {
+      fieldPositions[this.fields[position].metadata.getId()] = position;
+    }
+
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+      constructor = new Invocation(
+          lookup.unreflectConstructor(metadata.getConstructor().getConstructor()),
+          metadata.getConstructor().getParameters(),
+          false
+      );
+
+      List<FieldInjection> fieldInjections = new ArrayList<>();
+      for (int position = 0; position < this.fields.length; position++) {
+        for (ThriftInjection injection : this.fields[position].metadata.getInjections()) {
+          if (injection instanceof ThriftFieldInjection) {
+            Field field = ((ThriftFieldInjection) injection).getField();
+            fieldInjections.add(
+                new FieldInjection(
+                    position,
+                    lookup.unreflectSetter(field).asType(SETTER_TYPE),
+                    defaultValue(field.getType())
+                )
+            );
+          }
+        }
+      }
+      this.fieldInjections = fieldInjections;
+
+      List<Invocation> methodInjections = new ArrayList<>();
+      for (ThriftMethodInjection methodInjection : metadata.getMethodInjections()) {
+        methodInjections.add(
+            new Invocation(
+                lookup.unreflect(methodInjection.getMethod()),
+                methodInjection.getParameters(),
+                true
+            )
+        );
+      }
+      this.methodInjections = methodInjections;
+
+      if (metadata.getBuilderMethod() != null) {
+        builderMethod = new Invocation(
+            lookup.unreflect(metadata.getBuilderMethod().getMethod()),
+            metadata.getBuilderMethod().getParameters(),
+            true
+        );
+      } else {
+        builderMethod = null;
+      }
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException(
+          String.format(
+              "ThriftStruct %s has a member that is not accessible",
+              metadata.getStructClass().getName()
+          ),
+          e
+      );
+    }
+  }
+
+  @Override
+  public ThriftType getType() {
+    return ThriftType.struct(metadata);
+  }
+
+  ThriftStructMetadata<T> getMetadata() {
+    return metadata;
+  }
+
+  @Override
+  public T read(TProtocolReader protocol) throws Exception {
+    protocol.readStructBegin();
+
+    Object[] values = new Object[fields.length];
+    while (protocol.nextField()) {
+      // do we have a codec for this field, and is the field readable
+      int position = getFieldPosition(protocol.getFieldId());
+      if (position < 0 || fields[position].metadata.isWriteOnly()) {
+        protocol.skipFieldData();
+        continue;
+      }
+
+      values[position] = protocol.readField(fields[position].codec);
+    }
+    protocol.readStructEnd();
+    restoreOmittedDefaults(values);
+
+    // build the struct
+    return constructStruct(values);
+  }
+
+  @Override
+  public void write(T instance, TProtocolWriter protocol) throws Exception {
+    protocol.writeStructBegin(metadata.getStructName());
+    for (FieldBinding field : fields) {
+      // is the field writable?
+      if (field.metadata.isReadOnly() || field.getter == null) {
+        continue;
+      }
+
+      // skip default values, which are restored when the field is read
+      Object fieldValue = field.getValue(instance);
+      if (field.omittedDefault != null && field.omittedDefault.equals(fieldValue)) {
+        continue;
+      }
+
+      // write the field
+      if (fieldValue != null) {
+        protocol.writeField(
+            field.metadata.getName(),
+            field.metadata.getId(),
+            field.codec,
+            fieldValue
+        );
+      }
+    }
+    protocol.writeStructEnd();
+  }
+
+  T constructStruct(Object[] values) throws Exception {
+    Object instance = constructor.invoke(null, values);
+
+    // inject fields
+    for (FieldInjection fieldInjection : fieldInjections) {
+      Object value = values[fieldInjection.position];
+      if (value != null) {
+        fieldInjection.set(instance, value);
+      }
+    }
+
+    // inject methods
+    for (Invocation methodInjection : methodInjections) {
+      if (methodInjection.hasValue(values)) {
+        methodInjection.invoke(instance, values);
+      }
+    }
+
+    // builder method
+    if (builderMethod != null) {
+      instance = builderMethod.invoke(instance, values);
+      if (instance == null) {
+        throw new IllegalArgumentException("Builder method returned a null instance");
+      }
+      if (!metadata.getStructClass().isInstance(instance)) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Builder method returned instance of type %s, but an instance of %s is required",
+                instance.getClass().getName(),
+                metadata.getStructClass().getName()
+            )
+        );
+      }
+    }
+
+    return metadata.getStructClass().cast(instance);
+  }
+
+  void restoreOmittedDefaults(Object[] values) {
+    for (int position = 0; position < fields.length; position++) {
+      if (values[position] == null) {
+        values[position] = fields[position].omittedDefault;
+      }
+    }
+  }
+
+  int getFieldPosition(short fieldId) {
+    if (fieldId < 0 || fieldId >= fieldPositions.length) {
+      return -1;
+    }
+    return fieldPositions[fieldId];
+  }
+
+  FieldBinding getField(int position) {
+    return fields[position];
+  }
+
+  int getFieldCount() {
+    return fields.length;
+  }
+
+  List<FieldInjection> getFieldInjections() {
+    return fieldInjections;
+  }
+
+  List<Invocation> getMethodInjections() {
+    return methodInjections;
+  }
+
+  static Object defaultValue(Class<?> type) {
+    // null for object types
+    return PRIMITIVE_DEFAULTS.get(type);
+  }
+
+  /**
+   * Field values are passed around as objects, so the field codecs are used as object codecs.
+   * Each codec is only given values of its field, so the cast is safe.
+   */
+  @SuppressWarnings("unchecked")
+  static ThriftCodec<Object> asObjectCodec(ThriftCodec<?> codec) {
+    return (ThriftCodec<Object>) codec;
+  }
+
+  static Exception propagate(Throwable e) throws Exception {
+    Throwables.propagateIfInstanceOf(e, Exception.class);
+    throw Throwables.propagate(e);
+  }
+
+  @Immutable
+  static class FieldBinding {
+    final ThriftFieldMetadata metadata;
+    final ThriftCodec<Object> codec;
+    final MethodHandle getter;
+    // value that is not written, or null if all values are written
+    final Object omittedDefault;
+
+    private FieldBinding(ThriftFieldMetadata metadata, ThriftCodec<?> codec) {
+      this.metadata = metadata;
+      this.codec = asObjectCodec(codec);
+      if (metadata.isOmitDefault()) {
+        omittedDefault = defaultValue((Class<?>) metadata.getType().getJavaType());
+      } else {
+        omittedDefault = null;
+      }
+      try {
+        this.getter = createGetter(metadata.getExtraction());
+      } catch (IllegalAccessException e) {
+        throw new IllegalArgumentException(
+            String.format("Field %s is not accessible", metadata.getName()),
+            e
+        );
+      }
+    }
+
+    private static MethodHandle createGetter(ThriftExtraction extraction)
+        throws IllegalAccessException {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      if (extraction instanceof ThriftFieldExtractor) {
+        Field field = ((ThriftFieldExtractor) extraction).getField();
+        return lookup.unreflectGetter(field).asType(GETTER_TYPE);
+      }
+      if (extraction instanceof ThriftMethodExtractor) {
+        return lookup.unreflect(((ThriftMethodExtractor) extraction).getMethod())
+            .asType(GETTER_TYPE);
+      }
+      return null;
+    }
+
+    Object getValue(Object instance) throws Exception {
+      try {
+        return (Object) getter.invokeExact(instance);
+      } catch (Throwable e) {
+        throw propagate(e);
+      }
+    }
+  }
+
+  @Immutable
+  static class FieldInjection {
+    final int position;
+    final MethodHandle setter;
+    final Object defaultValue;
+
+    private FieldInjection(int position, MethodHandle setter, Object defaultValue) {
+      this.position = position;
+      this.setter = setter;
+      this.defaultValue = defaultValue;
+    }
+
+    void set(Object instance, Object value) throws Exception {
+      try {
+        setter.invokeExact(instance, value);
+      } catch (Throwable e) {
+        throw propagate(e);
+      }
+    }
+  }
+
+  /**
+   * A constructor or method invoked with field values as arguments.  The handle takes the
+   * receiver (for methods) and an Object array with the arguments, and returns an Object.
+   */
+  @Immutable
+  class Invocation {
+    private final MethodHandle handle;
+    private final boolean hasReceiver;
+
+    // position of the field for each argument (or -1), and the value for missing arguments
+    private final int[] argumentFields;
+    private final Object[] argumentDefaults;
+
+    private Invocation(
+        MethodHandle handle,
+        List<ThriftParameterInjection> parameters,
+        boolean hasReceiver
+    ) {
+      MethodType type = handle.type();
+      int argumentCount = type.parameterCount() - (hasReceiver ? 1 : 0);
+
+      this.hasReceiver = hasReceiver;
+      this.handle = handle.asType(type.generic()).asSpreader(Object[].class, argumentCount);
+
+      argumentFields = new int[argumentCount];
+      Arrays.fill(argumentFields, -1);
+      for (ThriftParameterInjection parameter : parameters) {
+        argumentFields[parameter.getParameterIndex()] = getFieldPosition(parameter.getId());
+      }
+
+      argumentDefaults = new Object[argumentCount];
+      for (int index = 0; index < argumentCount; index++) {
+        Class<?> parameterType = type.parameterType(index + (hasReceiver ? 1 : 0));
+        argumentDefaults[index] = defaultValue(parameterType);
+      }
+    }
+
+    boolean hasValue(Object[] values) {
+      for (int field : argumentFields) {
+        if (field >= 0 && values[field] != null) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    Object invoke(Object receiver, Object[] values) throws Exception {
+      Object[] arguments = new Object[argumentFields.length];
+      for (int index = 0; index < arguments.length; index++) {
+        int field = argumentFields[index];
+        Object value = field >= 0 ? values[field] : null;
+        arguments[index] = value != null ? value : argumentDefaults[index];
+      }
+
+      try {
+        if (hasReceiver) {
+          return (Object) handle.invokeExact(receiver, arguments);
+        }
+        return (Object) handle.invokeExact(arguments);
+      } catch (Throwable e) {
+        throw propagate(e);
+      }
+    }
+  }
+}
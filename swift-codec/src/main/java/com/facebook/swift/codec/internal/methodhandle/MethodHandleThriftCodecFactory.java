@@ -0,0 +1,29 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal.methodhandle;
+
+import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftCodecManager;
+import com.facebook.swift.codec.internal.ThriftCodecFactory;
+import com.facebook.swift.codec.metadata.ThriftStructMetadata;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Creates method handle based thrift codecs.  These are much faster than reflection based codecs
+ * and are cheap to create, but unlike compiled codecs they do not define any classes.
+ */
+@Immutable
+public class MethodHandleThriftCodecFactory implements ThriftCodecFactory {
+  @Override
+  public <T> ThriftCodec<T> generateThriftTypeCodec(
+      ThriftCodecManager codecManager,
+      ThriftStructMetadata<T> metadata
+  ) {
+    if (metadata.isMutable()) {
+      return new ReusableMethodHandleThriftCodec<>(codecManager, metadata);
+    }
+    return new MethodHandleThriftCodec<>(codecManager, metadata);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal.methodhandle;
+
+import com.facebook.swift.codec.ThriftCodecManager;
+import com.facebook.swift.codec.ThriftReusableCodec;
+import com.facebook.swift.codec.internal.TProtocolReader;
+import com.facebook.swift.codec.metadata.ThriftStructMetadata;
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Method handle based codec for mutable structs, which can also read into an existing instance.
+ */
+@Immutable
+public class ReusableMethodHandleThriftCodec<T>
+    extends MethodHandleThriftCodec<T>
+    implements ThriftReusableCodec<T> {
+
+  public ReusableMethodHandleThriftCodec(
+      ThriftCodecManager manager,
+      ThriftStructMetadata<T> metadata
+  ) {
+    super(manager, metadata);
+    Preconditions.checkArgument(
+        metadata.isMutable(),
+        "%s is not a mutable struct",
+        metadata.getStructClass().getName()
+    );
+  }
+
+  @Override
+  public T readInto(T target, TProtocolReader protocol) throws Exception {
+    Preconditions.checkNotNull(target, "target is null");
+    Preconditions.checkNotNull(protocol, "protocol is null");
+
+    protocol.readStructBegin();
+
+    Object[] values = new Object[getFieldCount()];
+    while (protocol.nextField()) {
+      // do we have a codec for this field, and is the field readable
+      int position = getFieldPosition(protocol.getFieldId());
+      if (position < 0 || getField(position).metadata.isWriteOnly()) {
+        protocol.skipFieldData();
+        continue;
+      }
+
+      // read the value, reusing the current value of the field if possible
+      FieldBinding field = getField(position);
+      Object reuse = null;
+      if (field.codec instanceof ThriftReusableCodec) {
+        reuse = field.getValue(target);
+      }
+      values[position] = protocol.readField(field.codec, reuse);
+    }
+    protocol.readStructEnd();
+    restoreOmittedDefaults(values);
+
+    // inject fields, resetting fields that were not present
+    for (FieldInjection fieldInjection : getFieldInjections()) {
+      Object value = values[fieldInjection.position];
+      if (value == null) {
+        value = fieldInjection.defaultValue;
+      }
+      fieldInjection.set(target, value);
+    }
+
+    // inject methods, resetting parameters that were not present
+    for (Invocation methodInjection : getMethodInjections()) {
+      methodInjection.invoke(target, values);
+    }
+
+    return target;
+  }
+}
@@ -19,6 +19,7 @@ import com.facebook.swift.codec.metadata.ThriftParameterInjection;
 import com.facebook.swift.codec.metadata.ThriftStructMetadata;
 import com.facebook.swift.codec.metadata.ThriftType;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
 
 import javax.annotation.concurrent.Immutable;
@@ -29,6 +30,18 @@ import java.util.SortedMap;
 
 @Immutable
 public class ReflectionThriftCodec<T> implements ThriftCodec<T> {
+  private static final Map<Class<?>, Object> PRIMITIVE_DEFAULTS =
+      ImmutableMap.<Class<?>, Object>builder()
+          .put(boolean.class, false)
+          .put(byte.class, (byte) 0)
+          .put(char.class, (char) 0)
+          .put(short.class, (short) 0)
+          .put(int.class, 0)
+          .put(long.class, 0L)
+          .put(float.class, 0.0f)
+          .put(double.class, 0.0d)
+          .build();
+
   private final ThriftStructMetadata<T> metadata;
   private final SortedMap<Short, ThriftCodec<?>> fields;
 
@@ -49,6 +62,14 @@ public class ReflectionThriftCodec<T> implements ThriftCodec<T> {
     return ThriftType.struct(metadata);
   }
 
+  ThriftStructMetadata<T> getMetadata() {
+    return metadata;
+  }
+
+  ThriftCodec<?> getFieldCodec(short fieldId) {
+    return fields.get(fieldId);
+  }
+
   @Override
   public T read(TProtocolReader protocol) throws Exception {
     protocol.readStructBegin();
@@ -81,6 +102,13 @@ public class ReflectionThriftCodec<T> implements ThriftCodec<T> {
     }
     protocol.readStructEnd();
 
+    // restore the default value of omitted fields
+    for (ThriftFieldMetadata fieldMetadata : metadata.getFields()) {
+      if (fieldMetadata.isOmitDefault() && !data.containsKey(fieldMetadata.getId())) {
+        data.put(fieldMetadata.getId(), defaultValue(fieldMetadata));
+      }
+    }
+
     // build the struct
     return constructStruct(data);
   }
@@ -97,6 +125,11 @@ public class ReflectionThriftCodec<T> implements ThriftCodec<T> {
       // get the field value
       Object fieldValue = getFieldValue(instance, fieldMetadata);
 
+      // skip default values, which are restored when the field is read
+      if (fieldMetadata.isOmitDefault() && defaultValue(fieldMetadata).equals(fieldValue)) {
+        continue;
+      }
+
       // write the field
       if (fieldValue != null) {
         ThriftCodec<Object> codec = (ThriftCodec<Object>) fields.get(fieldMetadata.getId());
@@ -201,7 +234,7 @@ public class ReflectionThriftCodec<T> implements ThriftCodec<T> {
     return (T) instance;
   }
 
-  private Object getFieldValue(Object instance, ThriftFieldMetadata field)
+  Object getFieldValue(Object instance, ThriftFieldMetadata field)
       throws Exception {
     try {
       ThriftExtraction extraction = field.getExtraction();
@@ -227,4 +260,13 @@ public class ReflectionThriftCodec<T> implements ThriftCodec<T> {
       throw e;
     }
   }
+
+  static Object defaultValue(Class<?> type) {
+    // null for object types
+    return PRIMITIVE_DEFAULTS.get(type);
+  }
+
+  private static Object defaultValue(ThriftFieldMetadata fieldMetadata) {
+    return defaultValue((Class<?>) fieldMetadata.getType().getJavaType());
+  }
 }
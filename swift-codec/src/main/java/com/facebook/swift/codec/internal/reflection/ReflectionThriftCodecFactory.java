@@ -20,6 +20,9 @@ public class ReflectionThriftCodecFactory implements ThriftCodecFactory {
       ThriftCodecManager codecManager,
       ThriftStructMetadata<T> metadata
   ) {
+    if (metadata.isMutable()) {
+      return new ReusableReflectionThriftCodec<>(codecManager, metadata);
+    }
     return new ReflectionThriftCodec<>(codecManager, metadata);
   }
 }
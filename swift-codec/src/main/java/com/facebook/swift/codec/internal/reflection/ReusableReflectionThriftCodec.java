@@ -0,0 +1,124 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal.reflection;
+
+import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftCodecManager;
+import com.facebook.swift.codec.ThriftReusableCodec;
+import com.facebook.swift.codec.internal.TProtocolReader;
+import com.facebook.swift.codec.metadata.ThriftFieldInjection;
+import com.facebook.swift.codec.metadata.ThriftFieldMetadata;
+import com.facebook.swift.codec.metadata.ThriftInjection;
+import com.facebook.swift.codec.metadata.ThriftMethodInjection;
+import com.facebook.swift.codec.metadata.ThriftParameterInjection;
+import com.facebook.swift.codec.metadata.ThriftStructMetadata;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+import javax.annotation.concurrent.Immutable;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reflection based codec for mutable structs, which can also read into an existing instance.
+ */
+@Immutable
+public class ReusableReflectionThriftCodec<T>
+    extends ReflectionThriftCodec<T>
+    implements ThriftReusableCodec<T> {
+
+  public ReusableReflectionThriftCodec(
+      ThriftCodecManager manager,
+      ThriftStructMetadata<T> metadata
+  ) {
+    super(manager, metadata);
+    Preconditions.checkArgument(
+        metadata.isMutable(),
+        "%s is not a mutable struct",
+        metadata.getStructClass().getName()
+    );
+  }
+
+  @Override
+  public T readInto(T target, TProtocolReader protocol) throws Exception {
+    Preconditions.checkNotNull(target, "target is null");
+    Preconditions.checkNotNull(protocol, "protocol is null");
+
+    ThriftStructMetadata<T> metadata = getMetadata();
+
+    protocol.readStructBegin();
+
+    Map<Short, Object> data = new HashMap<>(metadata.getFields().size());
+    while (protocol.nextField()) {
+      short fieldId = protocol.getFieldId();
+
+      // do we have a codec for this field
+      ThriftCodec<?> codec = getFieldCodec(fieldId);
+      if (codec == null) {
+        protocol.skipFieldData();
+        continue;
+      }
+
+      // is this field readable
+      ThriftFieldMetadata field = metadata.getField(fieldId);
+      if (field.isWriteOnly()) {
+        protocol.skipFieldData();
+        continue;
+      }
+
+      // read the value, reusing the current value of the field if possible
+      Object reuse = null;
+      if (codec instanceof ThriftReusableCodec) {
+        reuse = getFieldValue(target, field);
+      }
+      Object value = protocol.readField(codec, reuse);
+      if (value == null) {
+        continue;
+      }
+
+      data.put(fieldId, value);
+    }
+    protocol.readStructEnd();
+
+    // inject fields, resetting fields that were not present
+    for (ThriftFieldMetadata fieldMetadata : metadata.getFields()) {
+      for (ThriftInjection injection : fieldMetadata.getInjections()) {
+        if (injection instanceof ThriftFieldInjection) {
+          ThriftFieldInjection fieldInjection = (ThriftFieldInjection) injection;
+          Object value = data.get(fieldInjection.getId());
+          if (value == null) {
+            value = defaultValue(fieldInjection.getField().getType());
+          }
+          fieldInjection.getField().set(target, value);
+        }
+      }
+    }
+
+    // inject methods, resetting parameters that were not present
+    for (ThriftMethodInjection methodInjection : metadata.getMethodInjections()) {
+      Class<?>[] parameterTypes = methodInjection.getMethod().getParameterTypes();
+      Object[] parametersValues = new Object[methodInjection.getParameters().size()];
+      for (ThriftParameterInjection parameter : methodInjection.getParameters()) {
+        int index = parameter.getParameterIndex();
+        Object value = data.get(parameter.getId());
+        if (value == null) {
+          value = defaultValue(parameterTypes[index]);
+        }
+        parametersValues[index] = value;
+      }
+
+      try {
+        methodInjection.getMethod().invoke(target, parametersValues);
+      } catch (InvocationTargetException e) {
+        if (e.getTargetException() != null) {
+          Throwables.propagateIfInstanceOf(e.getTargetException(), Exception.class);
+        }
+        throw e;
+      }
+    }
+
+    return target;
+  }
+}
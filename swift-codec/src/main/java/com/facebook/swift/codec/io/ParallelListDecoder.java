@@ -0,0 +1,182 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.io;
+
+import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftProtocolKind;
+import com.facebook.swift.codec.internal.ElementConsumer;
+import com.facebook.swift.codec.internal.TProtocolReader;
+import com.facebook.swift.codec.internal.TValueScanner;
+import com.google.common.base.Preconditions;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.transport.TMemoryInputTransport;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.facebook.swift.codec.io.ThriftRecordFileReader.join;
+
+/**
+ * Decodes a large encoded Thrift list on multiple threads.  The element boundaries are first
+ * found with a {@link TValueScanner}, which skips over the encoded elements without decoding
+ * them, and then each range of rangeSize elements is decoded on the pool with a private
+ * transport and protocol.
+ */
+@ThreadSafe
+public class ParallelListDecoder<E> {
+  private final ThriftCodec<E> elementCodec;
+  private final ThriftProtocolKind protocolKind;
+  private final ForkJoinPool pool;
+  private final int rangeSize;
+
+  public ParallelListDecoder(
+      ThriftCodec<E> elementCodec,
+      ThriftProtocolKind protocolKind,
+      ForkJoinPool pool,
+      int rangeSize
+  ) {
+    Preconditions.checkNotNull(elementCodec, "elementCodec is null");
+    Preconditions.checkNotNull(protocolKind, "protocolKind is null");
+    Preconditions.checkNotNull(pool, "pool is null");
+    Preconditions.checkArgument(rangeSize > 0, "rangeSize must be positive");
+
+    this.elementCodec = elementCodec;
+    this.protocolKind = protocolKind;
+    this.pool = pool;
+    this.rangeSize = rangeSize;
+  }
+
+  /**
+   * Decodes the list encoded in the specified range of the array, and returns the elements in
+   * list order.
+   */
+  public List<E> decode(byte[] bytes, int offset, int length) throws Exception {
+    final List<Range> ranges = split(bytes, offset, length);
+
+    List<ForkJoinTask<List<E>>> tasks = new ArrayList<>();
+    for (final Range range : ranges) {
+      tasks.add(pool.submit(new Callable<List<E>>() {
+        @Override
+        public List<E> call() throws Exception {
+          final List<E> elements = new ArrayList<>(range.count);
+          decodeRange(range, new ElementConsumer<E>() {
+            @Override
+            public void consume(E element) {
+              elements.add(element);
+            }
+          });
+          return elements;
+        }
+      }));
+    }
+
+    int size = 0;
+    for (Range range : ranges) {
+      size += range.count;
+    }
+    List<E> elements = new ArrayList<>(size);
+    for (ForkJoinTask<List<E>> task : tasks) {
+      elements.addAll(join(task));
+    }
+    return elements;
+  }
+
+  /**
+   * Decodes the list encoded in the specified range of the array, and passes each element to the
+   * consumer as soon as it is decoded.  The consumer is called concurrently from multiple threads
+   * and the elements are not delivered in list order.
+   *
+   * @return the number of elements in the list
+   */
+  public int decode(byte[] bytes, int offset, int length, final ElementConsumer<? super E> consumer)
+      throws Exception {
+    Preconditions.checkNotNull(consumer, "consumer is null");
+
+    List<Range> ranges = split(bytes, offset, length);
+
+    List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+    int size = 0;
+    for (final Range range : ranges) {
+      size += range.count;
+      tasks.add(pool.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          decodeRange(range, consumer);
+          return null;
+        }
+      }));
+    }
+    for (ForkJoinTask<Void> task : tasks) {
+      join(task);
+    }
+    return size;
+  }
+
+  private List<Range> split(byte[] bytes, int offset, int length) throws Exception {
+    Preconditions.checkNotNull(bytes, "bytes is null");
+    Preconditions.checkPositionIndexes(offset, offset + length, bytes.length);
+
+    // read the list header with a normal protocol
+    TMemoryInputTransport transport = new TMemoryInputTransport(bytes, offset, length);
+    TProtocol protocol = protocolKind.createProtocol(transport);
+    TList tList = protocol.readListBegin();
+    Preconditions.checkArgument(
+        tList.elemType == elementCodec.getType().getProtocolType().getType(),
+        "List element type %s does not match codec type %s",
+        tList.elemType,
+        elementCodec.getType()
+    );
+
+    // skip over the elements to find the range boundaries
+    TValueScanner scanner = new TValueScanner(protocolKind, tList.elemType);
+    int position = transport.getBufferPosition();
+    int limit = offset + length;
+    List<Range> ranges = new ArrayList<>();
+    for (int start = 0; start < tList.size; start += rangeSize) {
+      int rangeStart = position;
+      int count = Math.min(rangeSize, tList.size - start);
+      for (int i = 0; i < count; i++) {
+        scanner.reset();
+        position += scanner.scan(bytes, position, limit - position);
+        if (!scanner.isComplete()) {
+          throw new TProtocolException(TProtocolException.INVALID_DATA, "List is truncated");
+        }
+      }
+      ranges.add(new Range(bytes, rangeStart, position, count));
+    }
+    return ranges;
+  }
+
+  private void decodeRange(Range range, ElementConsumer<? super E> consumer) throws Exception {
+    TMemoryInputTransport transport = new TMemoryInputTransport(
+        range.bytes,
+        range.start,
+        range.end - range.start
+    );
+    TProtocolReader reader = new TProtocolReader(protocolKind.createProtocol(transport));
+    for (int i = 0; i < range.count; i++) {
+      consumer.consume(elementCodec.read(reader));
+    }
+  }
+
+  private static class Range {
+    private final byte[] bytes;
+    private final int start;
+    private final int end;
+    private final int count;
+
+    private Range(byte[] bytes, int start, int end, int count) {
+      this.bytes = bytes;
+      this.start = start;
+      this.end = end;
+      this.count = count;
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.io;
+
+import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftProtocolKind;
+import com.facebook.swift.codec.internal.ByteBufferChunkPool;
+import com.facebook.swift.codec.internal.TChunkedOutputTransport;
+import com.facebook.swift.codec.internal.TProtocolWriter;
+import com.google.common.base.Preconditions;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TTransport;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.facebook.swift.codec.io.ThriftRecordFileReader.join;
+
+/**
+ * Encodes a large list on multiple threads.  The list header is written first, since the
+ * element count is known up front, and then ranges of rangeSize elements are encoded
+ * concurrently into separate pooled chunked buffers.  The buffers are then written behind the
+ * header in list order.  If the destination transport is itself a TChunkedOutputTransport using
+ * the same pool, the buffers are appended without copying; otherwise they are copied.
+ */
+@ThreadSafe
+public class ParallelListEncoder<E> {
+  private final ThriftCodec<E> elementCodec;
+  private final ThriftProtocolKind protocolKind;
+  private final ForkJoinPool pool;
+  private final ByteBufferChunkPool chunkPool;
+  private final int rangeSize;
+
+  public ParallelListEncoder(
+      ThriftCodec<E> elementCodec,
+      ThriftProtocolKind protocolKind,
+      ForkJoinPool pool,
+      ByteBufferChunkPool chunkPool,
+      int rangeSize
+  ) {
+    Preconditions.checkNotNull(elementCodec, "elementCodec is null");
+    Preconditions.checkNotNull(protocolKind, "protocolKind is null");
+    Preconditions.checkNotNull(pool, "pool is null");
+    Preconditions.checkNotNull(chunkPool, "chunkPool is null");
+    Preconditions.checkArgument(rangeSize > 0, "rangeSize must be positive");
+
+    this.elementCodec = elementCodec;
+    this.protocolKind = protocolKind;
+    this.pool = pool;
+    this.chunkPool = chunkPool;
+    this.rangeSize = rangeSize;
+  }
+
+  /**
+   * Writes the list to the protocol, which must be of the kind this encoder was created for.
+   */
+  public void write(List<E> elements, TProtocol protocol) throws Exception {
+    Preconditions.checkNotNull(elements, "elements is null");
+    Preconditions.checkNotNull(protocol, "protocol is null");
+    Preconditions.checkArgument(
+        ThriftProtocolKind.fromProtocol(protocol) == protocolKind,
+        "Expected a %s protocol",
+        protocolKind
+    );
+
+    // small lists are not worth the overhead
+    if (elements.size() <= rangeSize) {
+      new TProtocolWriter(protocol).writeList(elementCodec, elements);
+      return;
+    }
+
+    protocol.writeListBegin(
+        new TList(elementCodec.getType().getProtocolType().getType(), elements.size())
+    );
+
+    List<ForkJoinTask<TChunkedOutputTransport>> tasks = new ArrayList<>();
+    for (int start = 0; start < elements.size(); start += rangeSize) {
+      final List<E> range = elements.subList(start, Math.min(start + rangeSize, elements.size()));
+      tasks.add(pool.submit(new Callable<TChunkedOutputTransport>() {
+        @Override
+        public TChunkedOutputTransport call() throws Exception {
+          return encodeRange(range);
+        }
+      }));
+    }
+
+    TTransport transport = protocol.getTransport();
+    byte[] scratch = null;
+    try {
+      for (ForkJoinTask<TChunkedOutputTransport> task : tasks) {
+        TChunkedOutputTransport rangeTransport = join(task);
+        try {
+          // chunks can only be moved between transports of the same pool
+          if (transport instanceof TChunkedOutputTransport &&
+              ((TChunkedOutputTransport) transport).getPool() == chunkPool) {
+            ((TChunkedOutputTransport) transport).append(rangeTransport);
+          } else {
+            for (ByteBuffer buffer : rangeTransport.getBuffers()) {
+              if (scratch == null) {
+                scratch = new byte[chunkPool.getChunkSize()];
+              }
+              int length = buffer.remaining();
+              buffer.get(scratch, 0, length);
+              transport.write(scratch, 0, length);
+            }
+          }
+        } finally {
+          rangeTransport.release();
+        }
+      }
+    } finally {
+      // release the buffers of any ranges not written due to a failure
+      for (ForkJoinTask<TChunkedOutputTransport> task : tasks) {
+        if (!task.isCompletedAbnormally()) {
+          task.join().release();
+        }
+      }
+    }
+
+    protocol.writeListEnd();
+  }
+
+  private TChunkedOutputTransport encodeRange(List<E> range) throws Exception {
+    TChunkedOutputTransport transport = new TChunkedOutputTransport(chunkPool);
+    try {
+      TProtocolWriter writer = new TProtocolWriter(protocolKind.createProtocol(transport));
+      for (E element : range) {
+        elementCodec.write(element, writer);
+      }
+      return transport;
+    } catch (Exception e) {
+      transport.release();
+      throw e;
+    }
+  }
+}
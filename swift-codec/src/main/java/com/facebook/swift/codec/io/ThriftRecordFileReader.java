@@ -0,0 +1,355 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.io;
+
+import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftProtocolKind;
+import com.facebook.swift.codec.internal.ElementConsumer;
+import com.facebook.swift.codec.internal.TByteBufferInputTransport;
+import com.facebook.swift.codec.internal.TProtocolReader;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import org.apache.thrift.protocol.TProtocol;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Reads a file of length prefixed Thrift values written by {@link ThriftRecordFileWriter}.  The
+ * file is memory mapped, and records are decoded directly from the mapped regions.  When binary
+ * values are sliced, they reference the mapped region and are only valid while the file is
+ * not modified.
+ * <p/>
+ * A single mapping is limited to 2 GB, so larger files are mapped as consecutive regions.  A
+ * record that spans two or more regions is copied to a heap buffer before it is decoded.
+ * <p/>
+ * When the file is opened, the record boundaries are scanned (without decoding) to build a sparse
+ * index of the offset of every indexInterval'th record, so {@link #seek(long)} only needs to
+ * skip at most indexInterval - 1 records.  An incomplete record at the end of the file, such as
+ * one being appended concurrently, is ignored.
+ * <p/>
+ * The records can also be decoded in parallel with {@link #readAll(ForkJoinPool)}, which splits
+ * the file at the sparse index entries and decodes each range with its own protocol.
+ */
+@NotThreadSafe
+public class ThriftRecordFileReader<T> implements Closeable {
+  public static final int DEFAULT_INDEX_INTERVAL = 1024;
+  private static final int DEFAULT_REGION_SIZE = Integer.MAX_VALUE;
+
+  private final ThriftCodec<T> codec;
+  private final ThriftProtocolKind protocolKind;
+  private final boolean sliceBinaryValues;
+  private final int regionSize;
+  private final MappedByteBuffer[] regions;
+  private final long fileSize;
+  private final TByteBufferInputTransport transport;
+  private final TProtocol protocol;
+  private final TProtocolReader reader;
+
+  private final int indexInterval;
+  private final long[] index;
+  private final long recordCount;
+
+  private long position;
+  private long recordNumber;
+
+  public ThriftRecordFileReader(File file, ThriftCodec<T> codec, ThriftProtocolKind protocolKind)
+      throws IOException {
+    this(file, codec, protocolKind, DEFAULT_INDEX_INTERVAL, false);
+  }
+
+  public ThriftRecordFileReader(
+      File file,
+      ThriftCodec<T> codec,
+      ThriftProtocolKind protocolKind,
+      int indexInterval,
+      boolean sliceBinaryValues
+  ) throws IOException {
+    this(file, codec, protocolKind, indexInterval, sliceBinaryValues, DEFAULT_REGION_SIZE);
+  }
+
+  ThriftRecordFileReader(
+      File file,
+      ThriftCodec<T> codec,
+      ThriftProtocolKind protocolKind,
+      int indexInterval,
+      boolean sliceBinaryValues,
+      int regionSize
+  ) throws IOException {
+    Preconditions.checkNotNull(file, "file is null");
+    Preconditions.checkNotNull(codec, "codec is null");
+    Preconditions.checkNotNull(protocolKind, "protocolKind is null");
+    Preconditions.checkArgument(indexInterval > 0, "indexInterval must be positive");
+    Preconditions.checkArgument(regionSize > 0, "regionSize must be positive");
+
+    this.codec = codec;
+    this.protocolKind = protocolKind;
+    this.sliceBinaryValues = sliceBinaryValues;
+    this.indexInterval = indexInterval;
+    this.regionSize = regionSize;
+
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+      FileChannel channel = randomAccessFile.getChannel();
+      fileSize = channel.size();
+      int regionCount = (int) ((fileSize + regionSize - 1) / regionSize);
+      regions = new MappedByteBuffer[Math.max(regionCount, 1)];
+      for (int region = 0; region < regions.length; region++) {
+        long regionStart = (long) region * regionSize;
+        // the mapping remains valid after the channel is closed
+        regions[region] = channel.map(
+            MapMode.READ_ONLY,
+            regionStart,
+            Math.min(regionSize, fileSize - regionStart)
+        );
+      }
+    }
+
+    // scan the record boundaries and build the sparse index
+    long[] index = new long[16];
+    long offset = 0;
+    long recordCount = 0;
+    while (fileSize - offset >= 4) {
+      int length = getInt(offset);
+      if (length < 0 || length > fileSize - offset - 4) {
+        break;
+      }
+      if (recordCount % indexInterval == 0) {
+        int entry = (int) (recordCount / indexInterval);
+        if (entry == index.length) {
+          long[] newIndex = new long[index.length * 2];
+          System.arraycopy(index, 0, newIndex, 0, index.length);
+          index = newIndex;
+        }
+        index[entry] = offset;
+      }
+      offset += 4 + length;
+      recordCount++;
+    }
+    this.index = index;
+    this.recordCount = recordCount;
+
+    transport = new TByteBufferInputTransport(regions[0]);
+    protocol = protocolKind.createProtocol(transport);
+    reader = new TProtocolReader(protocol, sliceBinaryValues);
+  }
+
+  /**
+   * Gets the number of complete records in the file.
+   */
+  public long getRecordCount() {
+    return recordCount;
+  }
+
+  /**
+   * Gets the number of the record that will be returned by the next call to {@link #next()}.
+   */
+  public long getRecordNumber() {
+    return recordNumber;
+  }
+
+  /**
+   * Positions the reader so the next call to {@link #next()} returns the specified record.
+   */
+  public void seek(long recordNumber) {
+    Preconditions.checkArgument(
+        recordNumber >= 0 && recordNumber <= recordCount,
+        "Invalid record number %s; file contains %s records",
+        recordNumber,
+        recordCount
+    );
+
+    long indexedRecord = recordNumber - (recordNumber % indexInterval);
+    if (indexedRecord == recordCount) {
+      // only possible when seeking to the end of a file with a full final index block
+      indexedRecord -= indexInterval;
+    }
+    if (indexedRecord < 0) {
+      position = 0;
+      this.recordNumber = 0;
+      return;
+    }
+
+    position = index[(int) (indexedRecord / indexInterval)];
+    for (long record = indexedRecord; record < recordNumber; record++) {
+      position += 4 + getInt(position);
+    }
+    this.recordNumber = recordNumber;
+  }
+
+  public boolean hasNext() {
+    return recordNumber < recordCount;
+  }
+
+  public T next() throws Exception {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    int length = getInt(position);
+    transport.reset(getRecord(position + 4, length));
+    protocol.reset();
+    T value = codec.read(reader);
+
+    position += 4 + length;
+    recordNumber++;
+    return value;
+  }
+
+  /**
+   * Decodes all records in parallel using the pool, and returns them in file order.  This does
+   * not change the position of this reader.
+   */
+  public List<T> readAll(ForkJoinPool pool) throws Exception {
+    Preconditions.checkNotNull(pool, "pool is null");
+
+    List<ForkJoinTask<List<T>>> tasks = new ArrayList<>();
+    for (int range = 0; range < getRangeCount(); range++) {
+      final int rangeNumber = range;
+      tasks.add(pool.submit(new Callable<List<T>>() {
+        @Override
+        public List<T> call() throws Exception {
+          final List<T> records = new ArrayList<>(getRangeRecordCount(rangeNumber));
+          readRange(rangeNumber, new ElementConsumer<T>() {
+            @Override
+            public void consume(T record) {
+              records.add(record);
+            }
+          });
+          return records;
+        }
+      }));
+    }
+
+    List<T> records = new ArrayList<>((int) Math.min(recordCount, Integer.MAX_VALUE));
+    for (ForkJoinTask<List<T>> task : tasks) {
+      records.addAll(join(task));
+    }
+    return records;
+  }
+
+  /**
+   * Decodes all records in parallel using the pool, and passes each record to the consumer as
+   * soon as it is decoded.  The consumer is called concurrently from multiple threads and the
+   * records are not delivered in file order.  This does not change the position of this reader.
+   */
+  public void readAll(ForkJoinPool pool, final ElementConsumer<? super T> consumer)
+      throws Exception {
+    Preconditions.checkNotNull(pool, "pool is null");
+    Preconditions.checkNotNull(consumer, "consumer is null");
+
+    List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+    for (int range = 0; range < getRangeCount(); range++) {
+      final int rangeNumber = range;
+      tasks.add(pool.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          readRange(rangeNumber, consumer);
+          return null;
+        }
+      }));
+    }
+    for (ForkJoinTask<Void> task : tasks) {
+      join(task);
+    }
+  }
+
+  private int getRangeCount() {
+    return (int) ((recordCount + indexInterval - 1) / indexInterval);
+  }
+
+  private int getRangeRecordCount(int range) {
+    return (int) Math.min(indexInterval, recordCount - (long) range * indexInterval);
+  }
+
+  /**
+   * Decodes the records of one index block with a private transport and protocol, so ranges can
+   * be decoded concurrently.
+   */
+  private void readRange(int range, ElementConsumer<? super T> consumer) throws Exception {
+    TByteBufferInputTransport transport = new TByteBufferInputTransport(regions[0]);
+    TProtocol protocol = protocolKind.createProtocol(transport);
+    TProtocolReader reader = new TProtocolReader(protocol, sliceBinaryValues);
+
+    long position = index[range];
+    for (int i = getRangeRecordCount(range); i > 0; i--) {
+      int length = getInt(position);
+      transport.reset(getRecord(position + 4, length));
+      protocol.reset();
+      consumer.consume(codec.read(reader));
+      position += 4 + length;
+    }
+  }
+
+  /**
+   * Reads the big endian int at the file offset, which may span two regions.
+   */
+  private int getInt(long offset) {
+    int region = (int) (offset / regionSize);
+    int regionOffset = (int) (offset % regionSize);
+    if (regionOffset <= regionSize - 4) {
+      return regions[region].getInt(regionOffset);
+    }
+    return getRecord(offset, 4).getInt();
+  }
+
+  /**
+   * Gets a buffer containing the bytes of the file starting at offset.  The buffer is a view of
+   * the mapped region when the bytes are contained in one region, and a copy otherwise.
+   */
+  private ByteBuffer getRecord(long offset, int length) {
+    int region = (int) (offset / regionSize);
+    int regionOffset = (int) (offset % regionSize);
+    if (length <= regionSize - regionOffset) {
+      ByteBuffer record = regions[region].duplicate();
+      record.position(regionOffset);
+      record.limit(regionOffset + length);
+      return record;
+    }
+
+    ByteBuffer record = ByteBuffer.allocate(length);
+    while (record.hasRemaining()) {
+      ByteBuffer part = regions[region].duplicate();
+      part.position(regionOffset);
+      part.limit(regionOffset + Math.min(record.remaining(), part.limit() - regionOffset));
+      record.put(part);
+      region++;
+      regionOffset = 0;
+    }
+    record.flip();
+    return record;
+  }
+
+  static <V> V join(ForkJoinTask<V> task) throws Exception {
+    try {
+      return task.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      Throwables.propagateIfInstanceOf(cause, Exception.class);
+      throw Throwables.propagate(cause);
+    }
+  }
+
+  /**
+   * Releases the reader.  The mappings themselves are released by the garbage collector, once the
+   * reader and all values sliced from it are no longer referenced.
+   */
+  @Override
+  public void close() {
+    recordNumber = recordCount;
+  }
+}
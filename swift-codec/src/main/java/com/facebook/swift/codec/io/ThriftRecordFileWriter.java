@@ -0,0 +1,70 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.io;
+
+import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftProtocolKind;
+import com.facebook.swift.codec.internal.TMemoryOutputTransport;
+import com.facebook.swift.codec.internal.TProtocolWriter;
+import com.google.common.base.Preconditions;
+import org.apache.thrift.protocol.TProtocol;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Appends records to a file of length prefixed Thrift values, which can be read with
+ * {@link ThriftRecordFileReader}.  Each record is a four byte big endian length followed by
+ * the encoded value.
+ */
+@NotThreadSafe
+public class ThriftRecordFileWriter<T> implements Closeable, Flushable {
+  private final ThriftCodec<T> codec;
+  private final DataOutputStream output;
+  private final TMemoryOutputTransport transport = new TMemoryOutputTransport();
+  private final TProtocol protocol;
+  private final TProtocolWriter writer;
+
+  /**
+   * Opens the file for appending, creating it if necessary.
+   */
+  public ThriftRecordFileWriter(File file, ThriftCodec<T> codec, ThriftProtocolKind protocolKind)
+      throws IOException {
+    Preconditions.checkNotNull(file, "file is null");
+    Preconditions.checkNotNull(codec, "codec is null");
+    Preconditions.checkNotNull(protocolKind, "protocolKind is null");
+
+    this.codec = codec;
+    this.protocol = protocolKind.createProtocol(transport);
+    this.writer = new TProtocolWriter(protocol);
+    this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+  }
+
+  public void write(T record) throws Exception {
+    Preconditions.checkNotNull(record, "record is null");
+
+    transport.reset();
+    protocol.reset();
+    codec.write(record, writer);
+
+    output.writeInt(transport.size());
+    output.write(transport.getArray(), 0, transport.size());
+  }
+
+  @Override
+  public void flush() throws IOException {
+    output.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    output.close();
+  }
+}
@@ -4,6 +4,8 @@
 package com.facebook.swift.codec.metadata;
 
 import com.facebook.swift.codec.ThriftStruct;
+import com.facebook.swift.codec.collect.IntDoubleMap;
+import com.facebook.swift.codec.collect.LongLongMap;
 import com.facebook.swift.codec.internal.coercion.DefaultJavaCoercions;
 import com.facebook.swift.codec.internal.coercion.FromThrift;
 import com.facebook.swift.codec.internal.coercion.ToThrift;
@@ -13,20 +15,29 @@ import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.common.reflect.TypeToken;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -62,6 +73,10 @@ public class ThriftCatalog {
       new ConcurrentHashMap<>();
   private final ConcurrentMap<Class<?>, ThriftEnumMetadata<?>> enums = new ConcurrentHashMap<>();
   private final ConcurrentMap<Type, TypeCoercion> coercions = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Type, ThriftType> thriftTypes = new ConcurrentHashMap<>();
+
+  // struct sections of imported snapshots by class name; these are bound when first used
+  private final ConcurrentMap<String, byte[]> snapshotStructs = new ConcurrentHashMap<>();
 
   private final ThreadLocal<Deque<Class<?>>> stack = new ThreadLocal<Deque<Class<?>>>() {
     @Override
@@ -186,6 +201,20 @@ public class ThriftCatalog {
    * @throws IllegalArgumentException if the Java Type can not be coerced to a ThriftType
    */
   public ThriftType getThriftType(Type javaType) throws IllegalArgumentException {
+    // Coercions are only consulted after all other options fail, so adding a coercion can never
+    // change a type that has already been resolved, and resolved types can be cached forever.
+    ThriftType thriftType = thriftTypes.get(javaType);
+    if (thriftType == null) {
+      thriftType = resolveThriftType(javaType);
+      ThriftType existing = thriftTypes.putIfAbsent(javaType, thriftType);
+      if (existing != null) {
+        thriftType = existing;
+      }
+    }
+    return thriftType;
+  }
+
+  private ThriftType resolveThriftType(Type javaType) throws IllegalArgumentException {
     Class<?> rawType = TypeToken.of(javaType).getRawType();
     if (boolean.class == rawType) {
       return BOOL;
@@ -213,17 +242,34 @@ public class ThriftCatalog {
       ThriftEnumMetadata<? extends Enum<?>> thriftEnumMetadata = getThriftEnumMetadata(enumClass);
       return enumType(thriftEnumMetadata);
     }
+    // primitive maps are encoded like the equivalent boxed maps
+    if (LongLongMap.class == rawType) {
+      return map(I64, I64, javaType);
+    }
+    if (IntDoubleMap.class == rawType) {
+      return map(I32, DOUBLE, javaType);
+    }
     if (Map.class.isAssignableFrom(rawType)) {
       Type mapKeyType = getMapKeyType(javaType);
       Type mapValueType = getMapValueType(javaType);
+      // immutable maps are decoded directly instead of being copied by the struct
+      if (rawType == ImmutableMap.class) {
+        return map(getThriftType(mapKeyType), getThriftType(mapValueType), javaType);
+      }
       return map(getThriftType(mapKeyType), getThriftType(mapValueType));
     }
     if (Set.class.isAssignableFrom(rawType)) {
       Type elementType = getIterableType(javaType);
+      if (rawType == ImmutableSet.class || rawType == EnumSet.class) {
+        return set(getThriftType(elementType), javaType);
+      }
       return set(getThriftType(elementType));
     }
     if (Iterable.class.isAssignableFrom(rawType)) {
       Type elementType = getIterableType(javaType);
+      if (rawType == ImmutableList.class) {
+        return list(getThriftType(elementType), javaType);
+      }
       return list(getThriftType(elementType));
     }
     // The void type is used by service methods and is encoded as an empty struct
@@ -269,6 +315,9 @@ public class ThriftCatalog {
     if (Enum.class.isAssignableFrom(rawType)) {
       return true;
     }
+    if (LongLongMap.class == rawType || IntDoubleMap.class == rawType) {
+      return true;
+    }
     if (Map.class.isAssignableFrom(rawType)) {
       Type mapKeyType = getMapKeyType(javaType);
       Type mapValueType = getMapValueType(javaType);
@@ -334,6 +383,38 @@ public class ThriftCatalog {
     return (ThriftStructMetadata<T>) structMetadata;
   }
 
+  /**
+   * Writes the metadata for all structs currently in this catalog to the stream.  The snapshot can
+   * be imported with {@link #readSnapshot} to skip the expensive struct metadata extraction and
+   * validation when the process starts.  Enum metadata and coercions are not included.
+   */
+  public void writeSnapshot(OutputStream out) throws IOException {
+    Preconditions.checkNotNull(out, "out is null");
+
+    // sort the structs so the snapshot is stable between builds
+    Map<String, ThriftStructMetadata<?>> sortedStructs = new TreeMap<>();
+    for (ThriftStructMetadata<?> struct : structs.values()) {
+      sortedStructs.put(struct.getStructClass().getName(), struct);
+    }
+
+    DataOutputStream dataOut = new DataOutputStream(out);
+    ThriftCatalogSnapshot.write(this, sortedStructs.values(), dataOut);
+    dataOut.flush();
+  }
+
+  /**
+   * Imports a snapshot written by {@link #writeSnapshot}.  The struct metadata in the snapshot is
+   * trusted, and is bound to the struct class members by name when the struct is first used,
+   * instead of being extracted and validated again.  Structs already in this catalog are not
+   * affected.  The snapshot must be created from the same version of the struct classes; a
+   * struct whose members or Thrift annotations changed results in an IllegalArgumentException
+   * when it is used.
+   */
+  public void readSnapshot(InputStream in) throws IOException {
+    Preconditions.checkNotNull(in, "in is null");
+    snapshotStructs.putAll(ThriftCatalogSnapshot.read(new DataInputStream(in)));
+  }
+
   private <T> ThriftStructMetadata<T> extractThriftStructMetadata(Class<T> structClass) {
     Preconditions.checkNotNull(structClass, "structClass is null");
 
@@ -354,6 +435,11 @@ public class ThriftCatalog {
 
     stack.push(structClass);
     try {
+      byte[] snapshot = snapshotStructs.get(structClass.getName());
+      if (snapshot != null) {
+        return ThriftCatalogSnapshot.bind(this, structClass, snapshot);
+      }
+
         ThriftStructMetadataBuilder<T> builder = new ThriftStructMetadataBuilder<>(
             this,
             structClass
@@ -0,0 +1,635 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.metadata;
+
+import com.facebook.swift.codec.ThriftConstructor;
+import com.facebook.swift.codec.ThriftField;
+import com.facebook.swift.codec.ThriftPacking;
+import com.facebook.swift.codec.ThriftStruct;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Binary form of validated struct metadata.  Members are recorded by name and are looked up
+ * again when a struct is bound, but none of the annotation processing or validation done by
+ * {@link ThriftStructMetadataBuilder} is repeated.
+ * <p/>
+ * A snapshot starts with a header followed by one length prefixed section per struct, so the
+ * sections can be indexed by class name when the snapshot is read and bound only when the struct
+ * is first used.  Each section starts with a fingerprint of the Thrift annotations of the struct,
+ * which is checked before the section is bound, so a struct whose annotations changed since the
+ * snapshot was written is rejected.
+ */
+final class ThriftCatalogSnapshot {
+  private static final int MAGIC = 0x53574354;
+  private static final int VERSION = 5;
+
+  private static final byte INJECTION_FIELD = 1;
+  private static final byte INJECTION_PARAMETER = 2;
+
+  private static final byte EXTRACTION_NONE = 0;
+  private static final byte EXTRACTION_FIELD = 1;
+  private static final byte EXTRACTION_METHOD = 2;
+
+  // owners of parameter injections; method injections are identified by their index
+  private static final int OWNER_CONSTRUCTOR = -1;
+  private static final int OWNER_BUILDER_METHOD = -2;
+
+  // the field type is taken from the extraction or from the injection at this index
+  private static final int TYPE_FROM_EXTRACTION = -1;
+
+  private static final Map<String, Class<?>> PRIMITIVE_CLASSES =
+      ImmutableMap.<String, Class<?>>builder()
+          .put("boolean", boolean.class)
+          .put("byte", byte.class)
+          .put("short", short.class)
+          .put("int", int.class)
+          .put("long", long.class)
+          .put("float", float.class)
+          .put("double", double.class)
+          .put("char", char.class)
+          .put("void", void.class)
+          .build();
+
+  private ThriftCatalogSnapshot() {
+  }
+
+  public static void write(
+      ThriftCatalog catalog,
+      Collection<ThriftStructMetadata<?>> structs,
+      DataOutput out
+  ) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(structs.size());
+    for (ThriftStructMetadata<?> struct : structs) {
+      ByteArrayOutputStream section = new ByteArrayOutputStream();
+      writeStruct(catalog, struct, new DataOutputStream(section));
+
+      out.writeUTF(struct.getStructClass().getName());
+      out.writeInt(section.size());
+      out.write(section.toByteArray());
+    }
+  }
+
+  /**
+   * Reads the struct sections of a snapshot indexed by struct class name.
+   */
+  public static Map<String, byte[]> read(DataInput in) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Data is not a Thrift catalog snapshot");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported Thrift catalog snapshot version " + version);
+    }
+
+    int structCount = in.readInt();
+    Map<String, byte[]> sections = new HashMap<>();
+    for (int i = 0; i < structCount; i++) {
+      String className = in.readUTF();
+      byte[] section = new byte[in.readInt()];
+      in.readFully(section);
+      sections.put(className, section);
+    }
+    return sections;
+  }
+
+  /**
+   * Binds a struct section to the members of the struct class.
+   *
+   * @throws IllegalArgumentException if the struct class does not match the snapshot
+   */
+  public static <T> ThriftStructMetadata<T> bind(
+      ThriftCatalog catalog,
+      Class<T> structClass,
+      byte[] section
+  ) {
+    try {
+      return readStruct(
+          catalog,
+          structClass,
+          new DataInputStream(new ByteArrayInputStream(section))
+      );
+    } catch (IOException | ReflectiveOperationException e) {
+      throw new IllegalArgumentException(
+          String.format("Snapshot for ThriftStruct %s is stale", structClass.getName()),
+          e
+      );
+    }
+  }
+
+  private static void writeStruct(
+      ThriftCatalog catalog,
+      ThriftStructMetadata<?> struct,
+      DataOutput out
+  ) throws IOException {
+    out.writeLong(fingerprint(struct.getStructClass()));
+    out.writeUTF(struct.getStructName());
+
+    ThriftMethodInjection builderMethod = struct.getBuilderMethod();
+    out.writeBoolean(builderMethod != null);
+    if (builderMethod != null) {
+      out.writeUTF(struct.getBuilderClass().getName());
+      writeMethod(builderMethod.getMethod(), out);
+      writeParameters(builderMethod.getParameters(), out);
+    }
+
+    ThriftConstructorInjection constructor = struct.getConstructor();
+    writeConstructor(constructor.getConstructor(), out);
+    writeParameters(constructor.getParameters(), out);
+
+    List<ThriftMethodInjection> methodInjections = struct.getMethodInjections();
+    out.writeInt(methodInjections.size());
+    for (ThriftMethodInjection methodInjection : methodInjections) {
+      writeMethod(methodInjection.getMethod(), out);
+      writeParameters(methodInjection.getParameters(), out);
+    }
+
+    out.writeInt(struct.getFields().size());
+    for (ThriftFieldMetadata field : struct.getFields()) {
+      out.writeShort(field.getId());
+      out.writeUTF(field.getName());
+
+      // packed fields are recorded with the type of the declared list
+      Type fieldJavaType = field.getType().getJavaType();
+
+      int typeSource = TYPE_FROM_EXTRACTION;
+      List<ThriftInjection> injections = field.getInjections();
+      out.writeInt(injections.size());
+      for (int index = 0; index < injections.size(); index++) {
+        ThriftInjection injection = injections.get(index);
+        Type javaType;
+        if (injection instanceof ThriftFieldInjection) {
+          Field javaField = ((ThriftFieldInjection) injection).getField();
+          out.writeByte(INJECTION_FIELD);
+          writeField(javaField, out);
+          javaType = javaField.getGenericType();
+        } else {
+          ThriftParameterInjection parameter = (ThriftParameterInjection) injection;
+          out.writeByte(INJECTION_PARAMETER);
+          out.writeInt(getParameterOwner(struct, parameter));
+          out.writeInt(parameter.getParameterIndex());
+          javaType = parameter.getJavaType();
+        }
+        if (typeSource == TYPE_FROM_EXTRACTION &&
+            catalog.getThriftType(javaType).getJavaType().equals(fieldJavaType)) {
+          typeSource = index;
+        }
+      }
+
+      ThriftExtraction extraction = field.getExtraction();
+      if (extraction == null) {
+        out.writeByte(EXTRACTION_NONE);
+      } else if (extraction instanceof ThriftFieldExtractor) {
+        out.writeByte(EXTRACTION_FIELD);
+        writeField(((ThriftFieldExtractor) extraction).getField(), out);
+      } else {
+        out.writeByte(EXTRACTION_METHOD);
+        writeMethod(((ThriftMethodExtractor) extraction).getMethod(), out);
+      }
+
+      // prefer the extraction when it has the field type
+      if (extraction != null &&
+          catalog.getThriftType(getExtractionType(extraction)).getJavaType()
+              .equals(fieldJavaType)) {
+        typeSource = TYPE_FROM_EXTRACTION;
+      }
+      out.writeInt(typeSource);
+      out.writeBoolean(field.isOmitDefault());
+      out.writeUTF(field.getType().getPacking().name());
+      out.writeBoolean(field.getType().isInterned());
+    }
+  }
+
+  private static <T> ThriftStructMetadata<T> readStruct(
+      ThriftCatalog catalog,
+      Class<T> structClass,
+      DataInput in
+  ) throws IOException, ReflectiveOperationException {
+    ClassLoader classLoader = structClass.getClassLoader();
+
+    if (in.readLong() != fingerprint(structClass)) {
+      throw new IOException("Thrift annotations changed after the snapshot was written");
+    }
+    String structName = in.readUTF();
+
+    Class<?> builderClass = null;
+    ThriftMethodInjection builderMethod = null;
+    if (in.readBoolean()) {
+      builderClass = loadClass(in.readUTF(), classLoader);
+      Method method = readMethod(in, classLoader);
+      builderMethod = new ThriftMethodInjection(
+          method,
+          readParameters(method.getGenericParameterTypes(), in)
+      );
+    }
+
+    Constructor<?> javaConstructor = readConstructor(in, classLoader);
+    ThriftConstructorInjection constructor = new ThriftConstructorInjection(
+        javaConstructor,
+        readParameters(javaConstructor.getGenericParameterTypes(), in)
+    );
+
+    int methodInjectionCount = in.readInt();
+    List<ThriftMethodInjection> methodInjections = new ArrayList<>(methodInjectionCount);
+    for (int i = 0; i < methodInjectionCount; i++) {
+      Method method = readMethod(in, classLoader);
+      methodInjections.add(
+          new ThriftMethodInjection(
+              method,
+              readParameters(method.getGenericParameterTypes(), in)
+          )
+      );
+    }
+
+    int fieldCount = in.readInt();
+    List<ThriftFieldMetadata> fields = new ArrayList<>(fieldCount);
+    for (int i = 0; i < fieldCount; i++) {
+      short id = in.readShort();
+      String name = in.readUTF();
+
+      int injectionCount = in.readInt();
+      ImmutableList.Builder<ThriftInjection> injections = ImmutableList.builder();
+      List<Type> injectionTypes = new ArrayList<>(injectionCount);
+      for (int index = 0; index < injectionCount; index++) {
+        byte kind = in.readByte();
+        if (kind == INJECTION_FIELD) {
+          Field javaField = readField(in, classLoader);
+          injections.add(new ThriftFieldInjection(id, name, javaField));
+          injectionTypes.add(javaField.getGenericType());
+        } else if (kind == INJECTION_PARAMETER) {
+          int owner = in.readInt();
+          int parameterIndex = in.readInt();
+          Type javaType = getOwnerParameterTypes(
+              owner,
+              builderMethod,
+              constructor,
+              methodInjections
+          )[parameterIndex];
+          injections.add(new ThriftParameterInjection(id, name, parameterIndex, javaType));
+          injectionTypes.add(javaType);
+        } else {
+          throw new IOException("Invalid injection kind " + kind);
+        }
+      }
+
+      ThriftExtraction extraction;
+      byte extractionKind = in.readByte();
+      if (extractionKind == EXTRACTION_NONE) {
+        extraction = null;
+      } else if (extractionKind == EXTRACTION_FIELD) {
+        extraction = new ThriftFieldExtractor(id, name, readField(in, classLoader));
+      } else if (extractionKind == EXTRACTION_METHOD) {
+        extraction = new ThriftMethodExtractor(id, name, readMethod(in, classLoader));
+      } else {
+        throw new IOException("Invalid extraction kind " + extractionKind);
+      }
+
+      int typeSource = in.readInt();
+      Type javaType;
+      if (typeSource == TYPE_FROM_EXTRACTION) {
+        if (extraction == null) {
+          throw new IOException("Field " + name + " does not have an extraction");
+        }
+        javaType = getExtractionType(extraction);
+      } else {
+        javaType = injectionTypes.get(typeSource);
+      }
+      ThriftType type = catalog.getThriftType(javaType);
+
+      TypeCoercion coercion = null;
+      if (type.isCoerced()) {
+        coercion = catalog.getDefaultCoercion(type.getJavaType());
+      }
+
+      boolean omitDefault = in.readBoolean();
+      if (omitDefault && !ThriftFieldMetadata.isPrimitiveType(type)) {
+        throw new IOException("Field " + name + " can not omit the default value");
+      }
+
+      ThriftPacking packing = readPacking(in);
+      if (packing != ThriftPacking.NONE) {
+        if (!ThriftFieldMetadata.isPackableType(type, packing)) {
+          throw new IOException("Field " + name + " can not be packed");
+        }
+        type = ThriftType.packed(type, packing);
+      }
+
+      if (in.readBoolean()) {
+        if (!ThriftFieldMetadata.isInternableType(type)) {
+          throw new IOException("Field " + name + " can not be interned");
+        }
+        type = ThriftType.interned(type);
+        coercion = null;
+      }
+
+      fields.add(
+          new ThriftFieldMetadata(
+              id,
+              type,
+              name,
+              injections.build(),
+              extraction,
+              coercion,
+              omitDefault
+          )
+      );
+    }
+
+    return new ThriftStructMetadata<>(
+        structName,
+        structClass,
+        builderClass,
+        builderMethod,
+        fields,
+        constructor,
+        methodInjections
+    );
+  }
+
+  /**
+   * Computes a fingerprint of the Thrift annotations on the struct class, its builder class and
+   * their superclasses, including the signature of each annotated member.  Binding does not look
+   * at the annotations, so this is the only way to detect a changed id, name or field option.
+   * Members are identified by their depth in the class hierarchy instead of the class name, since
+   * the snapshot section is already selected by the struct class name.
+   */
+  static long fingerprint(Class<?> structClass) {
+    SortedSet<String> members = new TreeSet<>();
+    ThriftStruct annotation = structClass.getAnnotation(ThriftStruct.class);
+    if (annotation != null) {
+      members.add(
+          "struct " +
+              annotation.value() + " " +
+              annotation.builder().getName() + " " +
+              annotation.omitDefaults()
+      );
+      addAnnotatedMembers("builder", annotation.builder(), members);
+    }
+    addAnnotatedMembers("struct", structClass, members);
+    return Hashing.md5().hashString(Joiner.on('\n').join(members), Charsets.UTF_8).asLong();
+  }
+
+  private static void addAnnotatedMembers(String owner, Class<?> type, Set<String> members) {
+    int depth = 0;
+    for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass(), depth++) {
+      String prefix = owner + depth + ".";
+      for (Field field : clazz.getDeclaredFields()) {
+        ThriftField annotation = field.getAnnotation(ThriftField.class);
+        if (annotation != null) {
+          members.add(
+              "field " + prefix + field.getName() + " " +
+                  field.getType().getName() + describe(annotation)
+          );
+        }
+      }
+      for (Method method : clazz.getDeclaredMethods()) {
+        addAnnotatedMember(
+            "method " + method.getReturnType().getName() + " " + prefix + method.getName(),
+            method.getParameterTypes(),
+            method.getAnnotations(),
+            method.getParameterAnnotations(),
+            members
+        );
+      }
+      for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+        addAnnotatedMember(
+            "constructor " + prefix,
+            constructor.getParameterTypes(),
+            constructor.getAnnotations(),
+            constructor.getParameterAnnotations(),
+            members
+        );
+      }
+    }
+  }
+
+  private static void addAnnotatedMember(
+      String name,
+      Class<?>[] parameterTypes,
+      Annotation[] annotations,
+      Annotation[][] parameterAnnotations,
+      Set<String> members
+  ) {
+    StringBuilder member = new StringBuilder(name).append('(');
+    for (Class<?> parameterType : parameterTypes) {
+      member.append(parameterType.getName()).append(',');
+    }
+    member.append(')');
+
+    boolean annotated = false;
+    for (Annotation annotation : annotations) {
+      if (annotation instanceof ThriftField) {
+        member.append(describe((ThriftField) annotation));
+        annotated = true;
+      } else if (annotation instanceof ThriftConstructor) {
+        member.append(" constructor");
+        annotated = true;
+      }
+    }
+    for (int index = 0; index < parameterAnnotations.length; index++) {
+      for (Annotation annotation : parameterAnnotations[index]) {
+        if (annotation instanceof ThriftField) {
+          member.append(" ").append(index).append(describe((ThriftField) annotation));
+          annotated = true;
+        }
+      }
+    }
+    if (annotated) {
+      members.add(member.toString());
+    }
+  }
+
+  private static String describe(ThriftField annotation) {
+    return " field(" +
+        annotation.value() + ", " +
+        annotation.name() + ", " +
+        annotation.required() + ", " +
+        annotation.omitDefault() + ", " +
+        annotation.packing().name() + ", " +
+        annotation.intern() + ")";
+  }
+
+  private static int getParameterOwner(
+      ThriftStructMetadata<?> struct,
+      ThriftParameterInjection parameter
+  ) {
+    if (containsParameter(struct.getConstructor().getParameters(), parameter)) {
+      return OWNER_CONSTRUCTOR;
+    }
+    if (struct.getBuilderMethod() != null &&
+        containsParameter(struct.getBuilderMethod().getParameters(), parameter)) {
+      return OWNER_BUILDER_METHOD;
+    }
+    List<ThriftMethodInjection> methodInjections = struct.getMethodInjections();
+    for (int index = 0; index < methodInjections.size(); index++) {
+      if (containsParameter(methodInjections.get(index).getParameters(), parameter)) {
+        return index;
+      }
+    }
+    throw new IllegalStateException("No method or constructor has parameter " + parameter);
+  }
+
+  private static boolean containsParameter(
+      List<ThriftParameterInjection> parameters,
+      ThriftParameterInjection parameter
+  ) {
+    for (ThriftParameterInjection candidate : parameters) {
+      if (candidate.getId() == parameter.getId() &&
+          candidate.getParameterIndex() == parameter.getParameterIndex() &&
+          candidate.getJavaType().equals(parameter.getJavaType())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Type[] getOwnerParameterTypes(
+      int owner,
+      ThriftMethodInjection builderMethod,
+      ThriftConstructorInjection constructor,
+      List<ThriftMethodInjection> methodInjections
+  ) throws IOException {
+    if (owner == OWNER_CONSTRUCTOR) {
+      return constructor.getConstructor().getGenericParameterTypes();
+    }
+    if (owner == OWNER_BUILDER_METHOD && builderMethod != null) {
+      return builderMethod.getMethod().getGenericParameterTypes();
+    }
+    if (owner >= 0 && owner < methodInjections.size()) {
+      return methodInjections.get(owner).getMethod().getGenericParameterTypes();
+    }
+    throw new IOException("Invalid parameter owner " + owner);
+  }
+
+  private static Type getExtractionType(ThriftExtraction extraction) {
+    if (extraction instanceof ThriftFieldExtractor) {
+      return ((ThriftFieldExtractor) extraction).getField().getGenericType();
+    }
+    return ((ThriftMethodExtractor) extraction).getMethod().getGenericReturnType();
+  }
+
+  private static ThriftPacking readPacking(DataInput in) throws IOException {
+    String name = in.readUTF();
+    try {
+      return ThriftPacking.valueOf(name);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid packing " + name, e);
+    }
+  }
+
+  private static void writeParameters(List<ThriftParameterInjection> parameters, DataOutput out)
+      throws IOException {
+    out.writeInt(parameters.size());
+    for (ThriftParameterInjection parameter : parameters) {
+      out.writeShort(parameter.getId());
+      out.writeUTF(parameter.getName());
+      out.writeInt(parameter.getParameterIndex());
+    }
+  }
+
+  private static List<ThriftParameterInjection> readParameters(Type[] parameterTypes, DataInput in)
+      throws IOException {
+    int count = in.readInt();
+    ImmutableList.Builder<ThriftParameterInjection> parameters = ImmutableList.builder();
+    for (int i = 0; i < count; i++) {
+      short id = in.readShort();
+      String name = in.readUTF();
+      int parameterIndex = in.readInt();
+      if (parameterIndex >= parameterTypes.length) {
+        throw new IOException("Invalid parameter index " + parameterIndex);
+      }
+      parameters.add(
+          new ThriftParameterInjection(id, name, parameterIndex, parameterTypes[parameterIndex])
+      );
+    }
+    return parameters.build();
+  }
+
+  private static void writeField(Field field, DataOutput out) throws IOException {
+    out.writeUTF(field.getDeclaringClass().getName());
+    out.writeUTF(field.getName());
+  }
+
+  private static Field readField(DataInput in, ClassLoader classLoader)
+      throws IOException, ReflectiveOperationException {
+    Class<?> declaringClass = loadClass(in.readUTF(), classLoader);
+    return declaringClass.getDeclaredField(in.readUTF());
+  }
+
+  private static void writeMethod(Method method, DataOutput out) throws IOException {
+    out.writeUTF(method.getDeclaringClass().getName());
+    out.writeUTF(method.getName());
+    writeClasses(method.getParameterTypes(), out);
+  }
+
+  private static Method readMethod(DataInput in, ClassLoader classLoader)
+      throws IOException, ReflectiveOperationException {
+    Class<?> declaringClass = loadClass(in.readUTF(), classLoader);
+    String name = in.readUTF();
+    return declaringClass.getDeclaredMethod(name, readClasses(in, classLoader));
+  }
+
+  private static void writeConstructor(Constructor<?> constructor, DataOutput out)
+      throws IOException {
+    out.writeUTF(constructor.getDeclaringClass().getName());
+    writeClasses(constructor.getParameterTypes(), out);
+  }
+
+  private static Constructor<?> readConstructor(DataInput in, ClassLoader classLoader)
+      throws IOException, ReflectiveOperationException {
+    Class<?> declaringClass = loadClass(in.readUTF(), classLoader);
+    return declaringClass.getDeclaredConstructor(readClasses(in, classLoader));
+  }
+
+  private static void writeClasses(Class<?>[] classes, DataOutput out) throws IOException {
+    out.writeInt(classes.length);
+    for (Class<?> type : classes) {
+      out.writeUTF(type.getName());
+    }
+  }
+
+  private static Class<?>[] readClasses(DataInput in, ClassLoader classLoader)
+      throws IOException, ClassNotFoundException {
+    Class<?>[] classes = new Class<?>[in.readInt()];
+    for (int i = 0; i < classes.length; i++) {
+      classes[i] = loadClass(in.readUTF(), classLoader);
+    }
+    return classes;
+  }
+
+  private static Class<?> loadClass(String name, ClassLoader classLoader)
+      throws ClassNotFoundException {
+    Class<?> primitiveClass = PRIMITIVE_CLASSES.get(name);
+    if (primitiveClass != null) {
+      return primitiveClass;
+    }
+    return Class.forName(name, false, classLoader);
+  }
+}
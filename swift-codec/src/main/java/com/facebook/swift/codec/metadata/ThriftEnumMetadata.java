@@ -8,18 +8,35 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 
 import javax.annotation.concurrent.Immutable;
+import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.Map;
 
 @Immutable
 public class ThriftEnumMetadata<T extends Enum<T>> {
+  /**
+   * Enums with explicit values no larger than this (or four times the number of constants,
+   * whichever is larger) are decoded with a direct array lookup instead of a binary search.
+   */
+  private static final int MAX_DENSE_TABLE_SIZE = 128;
+
   private final Class<T> enumClass;
   private final Map<Integer, T> byEnumValue;
   private final Map<T, Integer> byEnumConstant;
 
+  // Thrift value of each enum constant indexed by ordinal
+  private final int[] enumValues;
+  // enum constants indexed by thrift value; null if the values are too sparse
+  private final T[] byDenseEnumValue;
+  // sorted thrift values and the matching constants for sparse enums
+  private final int[] sortedEnumValues;
+  private final T[] bySortedEnumValue;
+
   public ThriftEnumMetadata(Class<T> enumClass) {
     this.enumClass = enumClass;
+    T[] enumConstants = enumClass.getEnumConstants();
 
     Method enumValueMethod = null;
     for (Method method : enumClass.getMethods()) {
@@ -53,10 +70,11 @@ public class ThriftEnumMetadata<T extends Enum<T>> {
       }
     }
 
+    enumValues = new int[enumConstants.length];
     if (enumValueMethod != null) {
       ImmutableMap.Builder<Integer, T> byEnumValue = ImmutableMap.builder();
       ImmutableMap.Builder<T, Integer> byEnumConstant = ImmutableMap.builder();
-      for (T enumConstant : enumClass.getEnumConstants()) {
+      for (T enumConstant : enumConstants) {
         Integer value;
         try {
           value = (Integer) enumValueMethod.invoke(enumConstant);
@@ -78,15 +96,49 @@ public class ThriftEnumMetadata<T extends Enum<T>> {
         );
         byEnumValue.put(value, enumConstant);
         byEnumConstant.put(enumConstant, value);
+        enumValues[enumConstant.ordinal()] = value;
       }
       this.byEnumValue = byEnumValue.build();
       this.byEnumConstant = byEnumConstant.build();
     } else {
       byEnumValue = null;
       byEnumConstant = null;
+      for (int ordinal = 0; ordinal < enumConstants.length; ordinal++) {
+        enumValues[ordinal] = ordinal;
+      }
+    }
+
+    // build the decode tables
+    int minValue = 0;
+    int maxValue = -1;
+    for (int value : enumValues) {
+      minValue = Math.min(minValue, value);
+      maxValue = Math.max(maxValue, value);
+    }
+    if (minValue >= 0 && maxValue < Math.max(MAX_DENSE_TABLE_SIZE, enumConstants.length * 4)) {
+      byDenseEnumValue = newArray(maxValue + 1);
+      for (T enumConstant : enumConstants) {
+        byDenseEnumValue[enumValues[enumConstant.ordinal()]] = enumConstant;
+      }
+      sortedEnumValues = null;
+      bySortedEnumValue = null;
+    } else {
+      byDenseEnumValue = null;
+      sortedEnumValues = enumValues.clone();
+      Arrays.sort(sortedEnumValues);
+      bySortedEnumValue = newArray(enumConstants.length);
+      for (T enumConstant : enumConstants) {
+        int index = Arrays.binarySearch(sortedEnumValues, enumValues[enumConstant.ordinal()]);
+        bySortedEnumValue[index] = enumConstant;
+      }
     }
   }
 
+  @SuppressWarnings("unchecked")
+  private T[] newArray(int length) {
+    return (T[]) Array.newInstance(enumClass, length);
+  }
+
   public Class<T> getEnumClass() {
     return enumClass;
   }
@@ -103,6 +155,32 @@ public class ThriftEnumMetadata<T extends Enum<T>> {
     return byEnumConstant;
   }
 
+  /**
+   * Gets the enum constant for the specified Thrift value without boxing or allocation.
+   *
+   * @return the enum constant or null if the enum does not have a constant for the value
+   */
+  public T getEnumConstant(int enumValue) {
+    if (byDenseEnumValue != null) {
+      if (enumValue >= 0 && enumValue < byDenseEnumValue.length) {
+        return byDenseEnumValue[enumValue];
+      }
+      return null;
+    }
+    int index = Arrays.binarySearch(sortedEnumValues, enumValue);
+    if (index >= 0) {
+      return bySortedEnumValue[index];
+    }
+    return null;
+  }
+
+  /**
+   * Gets the Thrift value for the specified enum constant without boxing or allocation.
+   */
+  public int getEnumValue(T enumConstant) {
+    return enumValues[enumConstant.ordinal()];
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -3,6 +3,8 @@
  */
 package com.facebook.swift.codec.metadata;
 
+import com.facebook.swift.codec.ThriftPacking;
+import com.facebook.swift.codec.ThriftProtocolType;
 import com.google.common.collect.ImmutableList;
 import com.google.common.reflect.TypeToken;
 
@@ -24,6 +26,7 @@ public class ThriftFieldMetadata {
   private final List<ThriftInjection> injections;
   private final ThriftExtraction extraction;
   private final TypeCoercion coercion;
+  private final boolean omitDefault;
 
   public ThriftFieldMetadata(
       short id,
@@ -32,6 +35,18 @@ public class ThriftFieldMetadata {
       List<ThriftInjection> injections,
       ThriftExtraction extraction,
       TypeCoercion coercion
+  ) {
+    this(id, type, name, injections, extraction, coercion, false);
+  }
+
+  public ThriftFieldMetadata(
+      short id,
+      ThriftType type,
+      String name,
+      List<ThriftInjection> injections,
+      ThriftExtraction extraction,
+      TypeCoercion coercion,
+      boolean omitDefault
   ) {
     checkArgument(id >= 0, "id is negative");
     checkNotNull(type, "type is null");
@@ -41,6 +56,10 @@ public class ThriftFieldMetadata {
         !injections.isEmpty() || extraction != null,
         "A thrift field must have an injection or extraction point"
     );
+    checkArgument(
+        !omitDefault || isPrimitiveType(type),
+        "Only fields with a primitive Java type can omit the default value"
+    );
 
     this.id = id;
     this.type = type;
@@ -48,6 +67,7 @@ public class ThriftFieldMetadata {
     this.injections = ImmutableList.copyOf(injections);
     this.extraction = extraction;
     this.coercion = coercion;
+    this.omitDefault = omitDefault;
   }
 
   public short getId() {
@@ -90,6 +110,58 @@ public class ThriftFieldMetadata {
     return coercion;
   }
 
+  /**
+   * Is this field omitted when writing a value equal to the Java default (zero or false)?  When
+   * set, the field type is always an uncoerced primitive type, and a missing field is read as the
+   * Java default.
+   */
+  public boolean isOmitDefault() {
+    return omitDefault;
+  }
+
+  /**
+   * Is the Java type of the field a primitive that is written without coercion?
+   */
+  public static boolean isPrimitiveType(ThriftType type) {
+    return !type.isCoerced() &&
+        type.getJavaType() instanceof Class &&
+        ((Class<?>) type.getJavaType()).isPrimitive();
+  }
+
+  /**
+   * Can values of this type be written with the specified packing?  This requires a list of
+   * structs for {@link ThriftPacking#COLUMNAR}, and a list of Integer, Long or enum values for
+   * the other packings.
+   */
+  public static boolean isPackableType(ThriftType type, ThriftPacking packing) {
+    if (type.getProtocolType() != ThriftProtocolType.LIST || packing == ThriftPacking.NONE) {
+      return false;
+    }
+    ThriftType elementType = type.getValueType();
+    if (packing == ThriftPacking.COLUMNAR) {
+      return elementType.getProtocolType() == ThriftProtocolType.STRUCT;
+    }
+    switch (elementType.getProtocolType()) {
+      case ENUM:
+        return true;
+      case I32:
+        return elementType.getJavaType() == Integer.class;
+      case I64:
+        return elementType.getJavaType() == Long.class;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Can decoded values of this type be interned?  This requires an unpacked String type.
+   */
+  public static boolean isInternableType(ThriftType type) {
+    return type.getProtocolType() == ThriftProtocolType.STRING &&
+        !type.isPacked() &&
+        type.getJavaType() == String.class;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder();
@@ -100,6 +172,7 @@ public class ThriftFieldMetadata {
     sb.append(", injections=").append(injections);
     sb.append(", extraction=").append(extraction);
     sb.append(", coercion=").append(coercion);
+    sb.append(", omitDefault=").append(omitDefault);
     sb.append('}');
     return sb.toString();
   }
@@ -93,6 +93,25 @@ public class ThriftStructMetadata<T> {
     return methodInjections;
   }
 
+  /**
+   * Is this struct a mutable bean that can be reset and populated in place?  This requires a no
+   * argument constructor, no builder, and a field or method injection for every field.
+   */
+  public boolean isMutable() {
+    if (builderClass != null || builderMethod != null) {
+      return false;
+    }
+    if (!constructor.getParameters().isEmpty()) {
+      return false;
+    }
+    for (ThriftFieldMetadata field : fields.values()) {
+      if (field.isReadOnly()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder();
@@ -5,6 +5,7 @@ package com.facebook.swift.codec.metadata;
 
 import com.facebook.swift.codec.ThriftConstructor;
 import com.facebook.swift.codec.ThriftField;
+import com.facebook.swift.codec.ThriftPacking;
 import com.facebook.swift.codec.ThriftStruct;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
@@ -53,6 +54,7 @@ public class ThriftStructMetadataBuilder<T> {
   private final String structName;
   private final Class<T> structClass;
   private final Class<?> builderClass;
+  private final boolean omitDefaults;
 
   private final List<FieldMetadata> fields = newArrayList();
 
@@ -80,6 +82,8 @@ public class ThriftStructMetadataBuilder<T> {
     structName = extractStructName();
     // get the builder class from the annotation or from the Java class
     builderClass = extractBuilderClass();
+    // should primitive fields with default values be omitted
+    omitDefaults = extractOmitDefaults();
     // extract all of the annotated constructor and report an error if
     // there is more than one or none
     // also extract thrift fields from the annotated parameters and verify
@@ -134,6 +138,11 @@ public class ThriftStructMetadataBuilder<T> {
     }
   }
 
+  private boolean extractOmitDefaults() {
+    ThriftStruct annotation = structClass.getAnnotation(ThriftStruct.class);
+    return annotation != null && annotation.omitDefaults();
+  }
+
   private void extractFromConstructors() {
     if (builderClass == null) {
       // struct class must have a valid constructor
@@ -653,6 +662,68 @@ public class ThriftStructMetadataBuilder<T> {
             types
         );
       }
+
+      // only primitive values have a default that can be restored when the field is missing
+      for (FieldMetadata field : fields) {
+        ThriftType type = catalog.getThriftType(field.getJavaType());
+        if (field.isOmitDefault() && !ThriftFieldMetadata.isPrimitiveType(type)) {
+          metadataErrors.addError(
+              "ThriftStruct %s field %s(%s) omits the default value, but type %s is not primitive",
+              structName,
+              name,
+              id,
+              TypeToken.of(field.getJavaType())
+          );
+          break;
+        }
+      }
+
+      // packing is only supported for lists of structs or integral values
+      Set<ThriftPacking> packings = new HashSet<>();
+      for (FieldMetadata field : fields) {
+        if (field.getPacking() != ThriftPacking.NONE) {
+          packings.add(field.getPacking());
+        }
+      }
+      if (packings.size() > 1) {
+        metadataErrors.addError(
+            "ThriftStruct %s field %s(%s) has multiple packings %s",
+            structName,
+            name,
+            id,
+            packings
+        );
+      }
+      for (FieldMetadata field : fields) {
+        ThriftType type = catalog.getThriftType(field.getJavaType());
+        ThriftPacking packing = field.getPacking();
+        if (packing != ThriftPacking.NONE && !ThriftFieldMetadata.isPackableType(type, packing)) {
+          metadataErrors.addError(
+              "ThriftStruct %s field %s(%s) is packed, but type %s can not be packed with %s",
+              structName,
+              name,
+              id,
+              TypeToken.of(field.getJavaType()),
+              packing
+          );
+          break;
+        }
+      }
+
+      // interning is only supported for String fields
+      for (FieldMetadata field : fields) {
+        if (field.isIntern() &&
+            !ThriftFieldMetadata.isInternableType(catalog.getThriftType(field.getJavaType()))) {
+          metadataErrors.addError(
+              "ThriftStruct %s field %s(%s) is interned, but type %s is not String",
+              structName,
+              name,
+              id,
+              TypeToken.of(field.getJavaType())
+          );
+          break;
+        }
+      }
     }
   }
 
@@ -728,6 +799,9 @@ public class ThriftStructMetadataBuilder<T> {
     short id = -1;
     String name = null;
     ThriftType type = null;
+    boolean omitDefault = omitDefaults;
+    ThriftPacking packing = ThriftPacking.NONE;
+    boolean intern = false;
 
     // process field injections and extractions
     ImmutableList.Builder<ThriftInjection> injections = ImmutableList.builder();
@@ -736,6 +810,11 @@ public class ThriftStructMetadataBuilder<T> {
       id = fieldMetadata.getId();
       name = fieldMetadata.getName();
       type = catalog.getThriftType(fieldMetadata.getJavaType());
+      omitDefault |= fieldMetadata.isOmitDefault();
+      if (fieldMetadata.getPacking() != ThriftPacking.NONE) {
+        packing = fieldMetadata.getPacking();
+      }
+      intern |= fieldMetadata.isIntern();
 
       if (fieldMetadata instanceof FieldInjection) {
         FieldInjection fieldInjection = (FieldInjection) fieldMetadata;
@@ -779,13 +858,28 @@ public class ThriftStructMetadataBuilder<T> {
       coercion = catalog.getDefaultCoercion(type.getJavaType());
     }
 
+    // packed lists are written as a single binary value
+    if (packing != ThriftPacking.NONE) {
+      type = ThriftType.packed(type, packing);
+    }
+
+    // interned strings are decoded directly, so the coercion is not used
+    if (intern) {
+      type = ThriftType.interned(type);
+      coercion = null;
+    }
+
+    // the struct level setting only applies to primitive fields
+    omitDefault &= ThriftFieldMetadata.isPrimitiveType(type);
+
     ThriftFieldMetadata thriftFieldMetadata = new ThriftFieldMetadata(
         id,
         type,
         name,
         injections.build(),
         extraction,
-        coercion
+        coercion,
+        omitDefault
     );
     return thriftFieldMetadata;
   }
@@ -829,6 +923,9 @@ public class ThriftStructMetadataBuilder<T> {
   static abstract class FieldMetadata {
     private Short id;
     private String name;
+    private final boolean omitDefault;
+    private final ThriftPacking packing;
+    private final boolean intern;
 
     private FieldMetadata(ThriftField annotation) {
       checkNotNull(annotation, "annotation is null");
@@ -838,6 +935,9 @@ public class ThriftStructMetadataBuilder<T> {
       if (!annotation.name().isEmpty()) {
         name = annotation.name();
       }
+      omitDefault = annotation.omitDefault();
+      packing = annotation.packing();
+      intern = annotation.intern();
     }
 
     public Short getId() {
@@ -856,6 +956,18 @@ public class ThriftStructMetadataBuilder<T> {
       this.name = name;
     }
 
+    public boolean isOmitDefault() {
+      return omitDefault;
+    }
+
+    public ThriftPacking getPacking() {
+      return packing;
+    }
+
+    public boolean isIntern() {
+      return intern;
+    }
+
     public abstract Type getJavaType();
 
     public abstract String extractName();
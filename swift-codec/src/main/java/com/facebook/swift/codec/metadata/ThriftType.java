@@ -3,6 +3,7 @@
  */
 package com.facebook.swift.codec.metadata;
 
+import com.facebook.swift.codec.ThriftPacking;
 import com.facebook.swift.codec.ThriftProtocolType;
 import com.google.common.base.Preconditions;
 import com.google.common.reflect.TypeParameter;
@@ -11,6 +12,7 @@ import com.google.common.reflect.TypeToken;
 import javax.annotation.concurrent.Immutable;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -51,6 +53,16 @@ public class ThriftType {
     return new ThriftType(ThriftProtocolType.MAP, javaType, keyType, valueType);
   }
 
+  /**
+   * Creates a map type that is decoded as the specified Map subtype, such as ImmutableMap.
+   */
+  public static ThriftType map(ThriftType keyType, ThriftType valueType, Type javaType) {
+    checkNotNull(keyType, "keyType is null");
+    checkNotNull(valueType, "valueType is null");
+    checkContainerType(javaType, Map.class);
+    return new ThriftType(ThriftProtocolType.MAP, javaType, keyType, valueType);
+  }
+
   public static <E> ThriftType set(ThriftType valueType) {
     Preconditions.checkNotNull(valueType, "valueType is null");
 
@@ -60,15 +72,74 @@ public class ThriftType {
     return new ThriftType(ThriftProtocolType.SET, javaType, null, valueType);
   }
 
+  /**
+   * Creates a set type that is decoded as the specified Set subtype, such as ImmutableSet or
+   * EnumSet.
+   */
+  public static ThriftType set(ThriftType valueType, Type javaType) {
+    checkNotNull(valueType, "valueType is null");
+    checkContainerType(javaType, Set.class);
+    return new ThriftType(ThriftProtocolType.SET, javaType, null, valueType);
+  }
+
   public static <E> ThriftType list(ThriftType valueType) {
     checkNotNull(valueType, "valueType is null");
 
-    Type javaType = new TypeToken<Set<E>>() {}
+    Type javaType = new TypeToken<List<E>>() {}
         .where(new TypeParameter<E>() {}, (TypeToken<E>) TypeToken.of(valueType.getJavaType()))
         .getType();
     return new ThriftType(ThriftProtocolType.LIST, javaType, null, valueType);
   }
 
+  /**
+   * Creates a list type that is decoded as the specified List subtype, such as ImmutableList.
+   */
+  public static ThriftType list(ThriftType valueType, Type javaType) {
+    checkNotNull(valueType, "valueType is null");
+    checkContainerType(javaType, List.class);
+    return new ThriftType(ThriftProtocolType.LIST, javaType, null, valueType);
+  }
+
+  /**
+   * Creates a type for the specified list type that is written as a single binary value using
+   * the specified packing.
+   */
+  public static ThriftType packed(ThriftType listType, ThriftPacking packing) {
+    checkNotNull(listType, "listType is null");
+    checkNotNull(packing, "packing is null");
+    Preconditions.checkArgument(
+        ThriftFieldMetadata.isPackableType(listType, packing),
+        "%s can not be packed with %s",
+        listType,
+        packing
+    );
+    return new ThriftType(listType, packing);
+  }
+
+  /**
+   * Creates a type for the specified String type whose decoded values are interned.
+   */
+  public static ThriftType interned(ThriftType stringType) {
+    checkNotNull(stringType, "stringType is null");
+    Preconditions.checkArgument(
+        ThriftFieldMetadata.isInternableType(stringType),
+        "%s can not be interned",
+        stringType
+    );
+    return new ThriftType(stringType);
+  }
+
+  private static void checkContainerType(Type javaType, Class<?> containerClass) {
+    checkNotNull(javaType, "javaType is null");
+    Class<?> rawType = TypeToken.of(javaType).getRawType();
+    Preconditions.checkArgument(
+        containerClass.isAssignableFrom(rawType),
+        "%s is not a %s",
+        javaType,
+        containerClass.getSimpleName()
+    );
+  }
+
   public static ThriftType enumType(ThriftEnumMetadata<?> enumMetadata) {
     checkNotNull(enumMetadata, "enumMetadata is null");
     return new ThriftType(enumMetadata);
@@ -81,6 +152,8 @@ public class ThriftType {
   private final ThriftStructMetadata<?> structMetadata;
   private final ThriftEnumMetadata<?> enumMetadata;
   private final ThriftType uncoercedType;
+  private final ThriftPacking packing;
+  private final boolean interned;
 
   private ThriftType(ThriftProtocolType protocolType, Type javaType) {
     Preconditions.checkNotNull(protocolType, "protocolType is null");
@@ -93,6 +166,8 @@ public class ThriftType {
     structMetadata = null;
     enumMetadata = null;
     uncoercedType = null;
+    packing = ThriftPacking.NONE;
+    interned = false;
   }
 
   private ThriftType(
@@ -112,6 +187,8 @@ public class ThriftType {
     this.structMetadata = null;
     this.enumMetadata = null;
     this.uncoercedType = null;
+    this.packing = ThriftPacking.NONE;
+    this.interned = false;
   }
 
   private ThriftType(ThriftStructMetadata<?> structMetadata) {
@@ -124,6 +201,8 @@ public class ThriftType {
     this.structMetadata = structMetadata;
     this.enumMetadata = null;
     this.uncoercedType = null;
+    this.packing = ThriftPacking.NONE;
+    this.interned = false;
   }
 
   private ThriftType(ThriftEnumMetadata<?> enumMetadata) {
@@ -136,6 +215,8 @@ public class ThriftType {
     this.structMetadata = null;
     this.enumMetadata = enumMetadata;
     this.uncoercedType = null;
+    this.packing = ThriftPacking.NONE;
+    this.interned = false;
   }
 
   public ThriftType(ThriftType uncoercedType, Type javaType) {
@@ -148,6 +229,32 @@ public class ThriftType {
     valueType = null;
     structMetadata = null;
     enumMetadata = null;
+    packing = ThriftPacking.NONE;
+    interned = false;
+  }
+
+  private ThriftType(ThriftType listType, ThriftPacking packing) {
+    this.protocolType = ThriftProtocolType.STRING;
+    this.javaType = listType.getJavaType();
+    this.keyType = null;
+    this.valueType = listType.getValueType();
+    this.structMetadata = null;
+    this.enumMetadata = null;
+    this.uncoercedType = null;
+    this.packing = packing;
+    this.interned = false;
+  }
+
+  private ThriftType(ThriftType stringType) {
+    this.protocolType = ThriftProtocolType.STRING;
+    this.javaType = stringType.getJavaType();
+    this.keyType = null;
+    this.valueType = null;
+    this.structMetadata = null;
+    this.enumMetadata = null;
+    this.uncoercedType = null;
+    this.packing = ThriftPacking.NONE;
+    this.interned = true;
   }
 
   public Type getJavaType() {
@@ -201,6 +308,24 @@ public class ThriftType {
     return uncoercedType;
   }
 
+  /**
+   * Is this a list that is written as a single binary value?
+   */
+  public boolean isPacked() {
+    return packing != ThriftPacking.NONE;
+  }
+
+  public ThriftPacking getPacking() {
+    return packing;
+  }
+
+  /**
+   * Is this a String type whose decoded values are interned?
+   */
+  public boolean isInterned() {
+    return interned;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -218,6 +343,12 @@ public class ThriftType {
     if (protocolType != that.protocolType) {
       return false;
     }
+    if (packing != that.packing) {
+      return false;
+    }
+    if (interned != that.interned) {
+      return false;
+    }
 
     return true;
   }
@@ -226,6 +357,8 @@ public class ThriftType {
   public int hashCode() {
     int result = protocolType != null ? protocolType.hashCode() : 0;
     result = 31 * result + (javaType != null ? javaType.hashCode() : 0);
+    result = 31 * result + packing.ordinal();
+    result = 31 * result + (interned ? 1 : 0);
     return result;
   }
 
@@ -243,6 +376,12 @@ public class ThriftType {
     } else if (valueType != null) {
       sb.append(" valueType=").append(valueType);
     }
+    if (isPacked()) {
+      sb.append(" packing=").append(packing);
+    }
+    if (interned) {
+      sb.append(" interned");
+    }
     sb.append('}');
     return sb.toString();
   }
@@ -3,6 +3,8 @@
  */
 package com.facebook.swift.codec;
 
+import com.facebook.swift.codec.collect.IntDoubleMap;
+import com.facebook.swift.codec.collect.LongLongMap;
 import com.facebook.swift.codec.internal.TProtocolReader;
 import com.facebook.swift.codec.internal.TProtocolWriter;
 import com.facebook.swift.codec.internal.builtin.BooleanThriftCodec;
@@ -16,18 +18,29 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TMap;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
 import org.apache.thrift.transport.TMemoryBuffer;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.google.common.base.Charsets.UTF_8;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 
 public abstract class AbstractThriftCodecManagerTest {
   private ThriftCodecManager codecManager;
@@ -153,6 +166,282 @@ public abstract class AbstractThriftCodecManagerTest {
     assertAllFieldsSet(empty, false);
   }
 
+  @Test
+  public void testImmutableCollections() throws Exception {
+    ImmutableCollectionsBean bean = new ImmutableCollectionsBean();
+    bean.aStringList = ImmutableList.of("a", "string", "list");
+    bean.aStringSet = ImmutableSet.of("a", "string", "set");
+    bean.aFruitSet = EnumSet.of(Fruit.APPLE, Fruit.CHERRY);
+    bean.aStructValueMap = ImmutableMap.of(
+        "main", new BonkField("message", 42),
+        "other", new BonkField("other", 11)
+    );
+
+    // the declared collection types are built directly by the codecs and injected as is
+    testRoundTripSerialize(bean);
+    testRoundTripSerialize(new ImmutableCollectionsBean());
+
+    // more elements than the reader presizes for when the input size is unknown
+    ImmutableList.Builder<String> strings = ImmutableList.builder();
+    for (int i = 0; i < 5000; i++) {
+      strings.add(String.valueOf(i));
+    }
+    bean.aStringList = strings.build();
+    bean.aStringSet = ImmutableSet.copyOf(bean.aStringList);
+    testRoundTripSerialize(bean);
+
+    // like the other maps, the last value of a duplicate key wins
+    TMemoryBuffer transport = new TMemoryBuffer(1024);
+    TCompactProtocol protocol = new TCompactProtocol(transport);
+    protocol.writeStructBegin(new TStruct("ImmutableCollections"));
+    protocol.writeFieldBegin(new TField("aStructValueMap", TType.MAP, (short) 4));
+    protocol.writeMapBegin(new TMap(TType.STRING, TType.STRUCT, 2));
+    protocol.writeString("key");
+    codecManager.write(BonkField.class, new BonkField("first", 1), protocol);
+    protocol.writeString("key");
+    codecManager.write(BonkField.class, new BonkField("last", 2), protocol);
+    protocol.writeMapEnd();
+    protocol.writeFieldEnd();
+    protocol.writeFieldStop();
+    protocol.writeStructEnd();
+    assertEquals(
+        codecManager.read(ImmutableCollectionsBean.class, protocol).aStructValueMap,
+        ImmutableMap.of("key", new BonkField("last", 2))
+    );
+  }
+
+  @Test
+  public void testPrimitiveMaps() throws Exception {
+    PrimitiveMapsBean bean = new PrimitiveMapsBean();
+    bean.counters = new LongLongMap();
+    bean.counters.put(0, 1);
+    bean.counters.put(-42, 42);
+    bean.weights = new IntDoubleMap();
+    bean.weights.put(7, 0.5);
+
+    PrimitiveMapsBean copy = testRoundTripSerialize(bean);
+
+    // primitive maps are refilled in place
+    LongLongMap counters = copy.counters;
+    bean.counters.put(99, 100);
+    ThriftReusableCodec<PrimitiveMapsBean> codec =
+        (ThriftReusableCodec<PrimitiveMapsBean>) codecManager.getCodec(PrimitiveMapsBean.class);
+    assertSame(testRoundTripReadInto(codec, bean, copy), copy);
+    assertSame(copy.counters, counters);
+    assertEquals(copy, bean);
+  }
+
+  @Test
+  public void testReadInto() throws Exception {
+    ThriftCodec<ReusableBean> codec = codecManager.getCodec(ReusableBean.class);
+    assertTrue(codec instanceof ThriftReusableCodec);
+    ThriftReusableCodec<ReusableBean> reusableCodec = (ThriftReusableCodec<ReusableBean>) codec;
+
+    ReusableBean full = new ReusableBean();
+    full.message = "message";
+    full.type = 42;
+    full.bonk = new BonkBean("bonk", 7);
+    full.setTags(ImmutableList.of("a", "b", "c"));
+    full.setFruits(ImmutableSet.of(Fruit.APPLE, Fruit.CHERRY));
+
+    // nested values are reused and their stale contents replaced
+    BonkBean bonk = new BonkBean("stale", 1);
+    List<String> tags = new ArrayList<>(ImmutableList.of("stale"));
+    Set<Fruit> fruits = EnumSet.of(Fruit.BANANA);
+    ReusableBean target = new ReusableBean();
+    target.bonk = bonk;
+    target.setTags(tags);
+    target.setFruits(fruits);
+
+    assertSame(testRoundTripReadInto(reusableCodec, full, target), target);
+    assertEquals(target, full);
+    assertSame(target.bonk, bonk);
+    assertSame(target.getTags(), tags);
+    assertSame(target.getFruits(), fruits);
+
+    // unmodifiable collections are replaced
+    List<String> immutableTags = ImmutableList.of("stale");
+    target.setTags(immutableTags);
+    assertSame(testRoundTripReadInto(reusableCodec, full, target), target);
+    assertEquals(target, full);
+    assertNotSame(target.getTags(), immutableTags);
+
+    // fields missing from the input are reset
+    assertSame(testRoundTripReadInto(reusableCodec, new ReusableBean(), target), target);
+    assertEquals(target, new ReusableBean());
+
+    // read into through the codec manager
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      byte[] bytes = codecManager.serialize(ReusableBean.class, full, protocolKind);
+      ReusableBean copy = codecManager.deserializeInto(
+          ReusableBean.class,
+          target,
+          bytes,
+          0,
+          bytes.length,
+          protocolKind
+      );
+      assertSame(copy, target);
+      assertEquals(target, full);
+    }
+
+    // structs that are not mutable can not be read into
+    assertFalse(codecManager.getCodec(BonkConstructor.class) instanceof ThriftReusableCodec);
+    assertFalse(codecManager.getCodec(BonkBuilder.class) instanceof ThriftReusableCodec);
+  }
+
+  @Test
+  public void testPrecompile() throws Exception {
+    ThriftType bonkBeanType = codecManager.getCatalog().getThriftType(BonkBean.class);
+    assertFalse(codecManager.isCodecCreated(bonkBeanType));
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      codecManager.precompile(
+          ImmutableList.of(ReusableBean.class, BonkConstructor.class, BonkBuilder.class),
+          pool,
+          100
+      );
+    } finally {
+      pool.shutdown();
+    }
+
+    // nested types are compiled as well
+    assertTrue(codecManager.isCodecCreated(bonkBeanType));
+
+    testRoundTripSerialize(new BonkConstructor("message", 42));
+    testRoundTripSerialize(new BonkBuilder("message", 42));
+    testRoundTripSerialize(new BonkBean("message", 42));
+  }
+
+  @Test
+  public void testOmitDefaults() throws Exception {
+    SparseBean full = new SparseBean();
+    full.aBoolean = true;
+    full.aByte = 1;
+    full.aShort = 2;
+    full.aInt = 3;
+    full.aDouble = -0.0;
+    full.aString = "";
+    full.priority = 7;
+    full.setLong(4);
+    testRoundTripSerialize(full);
+
+    // fields with default values are not written, and are restored when read
+    SparseBean empty = new SparseBean();
+    empty.priority = 0;
+    testRoundTripSerialize(empty);
+
+    byte[] bytes = codecManager.serialize(SparseBean.class, empty, ThriftProtocolKind.COMPACT);
+    assertEquals(bytes.length, 1);
+
+    // the getter of a written field is called once for the default check and the write
+    full.getLongCalls = 0;
+    codecManager.serialize(SparseBean.class, full, ThriftProtocolKind.COMPACT);
+    assertEquals(full.getLongCalls, 1);
+  }
+
+  @Test
+  public void testPackedLists() throws Exception {
+    List<Long> timestamps = new ArrayList<>();
+    for (long timestamp = 1_350_000_000_000L; timestamps.size() < 1000; timestamp += 1000) {
+      timestamps.add(timestamp);
+    }
+
+    PackedListsBean bean = new PackedListsBean();
+    bean.timestamps = timestamps;
+    bean.offsets = ImmutableList.of(0, -1, 1, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    bean.fruits = ImmutableList.of(Fruit.CHERRY, Fruit.APPLE, Fruit.BANANA, Fruit.APPLE);
+    bean.codes = ImmutableList.of(3, 1, 4, 1, 5, 9, 2, 6);
+    PackedListsBean copy = testRoundTripSerialize(bean);
+    assertTrue(copy.codes instanceof ImmutableList);
+
+    testRoundTripSerialize(new PackedListsBean());
+
+    // empty lists are still written
+    PackedListsBean empty = new PackedListsBean();
+    empty.timestamps = ImmutableList.of();
+    empty.fruits = ImmutableList.of();
+    testRoundTripSerialize(empty);
+
+    // sorted timestamps shrink to about two bytes each
+    PackedListsBean packed = new PackedListsBean();
+    packed.timestamps = timestamps;
+    PackedListsBean unpacked = new PackedListsBean();
+    unpacked.unpacked = timestamps;
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      int packedSize = codecManager.serialize(PackedListsBean.class, packed, protocolKind).length;
+      int unpackedSize =
+          codecManager.serialize(PackedListsBean.class, unpacked, protocolKind).length;
+      assertTrue(packedSize * 2 < unpackedSize, protocolKind + " " + packedSize);
+    }
+  }
+
+  @Test
+  public void testInternedStrings() throws Exception {
+    PackedListsBean bean = new PackedListsBean();
+    bean.unpackedEntries = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      LogEntry entry = new LogEntry();
+      entry.level = (i % 2 == 0) ? "INFO" : "WARN";
+      entry.message = "message";
+      bean.unpackedEntries.add(entry);
+    }
+    testRoundTripSerialize(bean);
+
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      byte[] bytes = codecManager.serialize(PackedListsBean.class, bean, protocolKind);
+      List<LogEntry> first = codecManager.deserialize(PackedListsBean.class, bytes, protocolKind)
+          .unpackedEntries;
+      List<LogEntry> second = codecManager.deserialize(PackedListsBean.class, bytes, protocolKind)
+          .unpackedEntries;
+      assertEquals(second, bean.unpackedEntries);
+
+      // interned values are shared within and across messages
+      assertSame(first.get(0).level, first.get(2).level);
+      assertSame(first.get(1).level, second.get(1).level);
+      assertNotSame(first.get(0).message, second.get(0).message);
+    }
+  }
+
+  @Test
+  public void testColumnarLists() throws Exception {
+    String[] levels = {"INFO", "WARN", "ERROR"};
+    List<LogEntry> entries = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      LogEntry entry = new LogEntry();
+      entry.timestamp = 1_350_000_000_000L + i * 10;
+      entry.level = levels[i % levels.length];
+      entry.message = "message " + i;
+      entry.code = i % 7 - 3;
+      entry.fruit = Fruit.values()[i % 3];
+      entry.sampled = i % 5 == 0 ? null : i % 2 == 0;
+      entry.bonk = i % 100 == 0 ? new BonkField("bonk", i) : null;
+      entry.latency = i / 8.0;
+      entries.add(entry);
+    }
+
+    PackedListsBean bean = new PackedListsBean();
+    bean.entries = entries;
+    testRoundTripSerialize(bean);
+
+    // empty lists and structs without any values are supported
+    bean.entries = ImmutableList.of();
+    testRoundTripSerialize(bean);
+    bean.entries = ImmutableList.of(new LogEntry(), new LogEntry());
+    testRoundTripSerialize(bean);
+
+    PackedListsBean columnar = new PackedListsBean();
+    columnar.entries = entries;
+    PackedListsBean rows = new PackedListsBean();
+    rows.unpackedEntries = entries;
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      byte[] columnarBytes = codecManager.serialize(PackedListsBean.class, columnar, protocolKind);
+      byte[] rowBytes = codecManager.serialize(PackedListsBean.class, rows, protocolKind);
+      assertTrue(columnarBytes.length < rowBytes.length, protocolKind.toString());
+    }
+  }
+
   private void assertAllFieldsSet(IsSetBean isSetBean, boolean expected) {
     assertEquals(isSetBean.isBooleanSet(), expected);
     assertEquals(isSetBean.isByteSet(), expected);
@@ -193,6 +482,15 @@ public abstract class AbstractThriftCodecManagerTest {
     return copy;
   }
 
+  private <T> T testRoundTripReadInto(ThriftReusableCodec<T> codec, T value, T target)
+      throws Exception {
+    TMemoryBuffer transport = new TMemoryBuffer(10 * 1024);
+    TCompactProtocol protocol = new TCompactProtocol(transport);
+    codec.write(value, new TProtocolWriter(protocol));
+
+    return codec.readInto(target, new TProtocolReader(protocol));
+  }
+
   private OneOfEverything createOneOfEverything() {
     OneOfEverything one = new OneOfEverything();
     one.aBoolean = true;
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.EnumSet;
+
+@ThriftStruct("ImmutableCollections")
+public class ImmutableCollectionsBean {
+  @ThriftField(1)
+  public ImmutableList<String> aStringList;
+
+  @ThriftField(2)
+  public ImmutableSet<String> aStringSet;
+
+  @ThriftField(3)
+  public EnumSet<Fruit> aFruitSet;
+
+  @ThriftField(4)
+  public ImmutableMap<String, BonkField> aStructValueMap;
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    ImmutableCollectionsBean that = (ImmutableCollectionsBean) o;
+
+    if (aStringList != null ? !aStringList.equals(that.aStringList) : that.aStringList != null) {
+      return false;
+    }
+    if (aStringSet != null ? !aStringSet.equals(that.aStringSet) : that.aStringSet != null) {
+      return false;
+    }
+    if (aFruitSet != null ? !aFruitSet.equals(that.aFruitSet) : that.aFruitSet != null) {
+      return false;
+    }
+    if (aStructValueMap != null ?
+        !aStructValueMap.equals(that.aStructValueMap) :
+        that.aStructValueMap != null) {
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = aStringList != null ? aStringList.hashCode() : 0;
+    result = 31 * result + (aStringSet != null ? aStringSet.hashCode() : 0);
+    result = 31 * result + (aFruitSet != null ? aFruitSet.hashCode() : 0);
+    result = 31 * result + (aStructValueMap != null ? aStructValueMap.hashCode() : 0);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("ImmutableCollectionsBean");
+    sb.append("{aStringList=").append(aStringList);
+    sb.append(", aStringSet=").append(aStringSet);
+    sb.append(", aFruitSet=").append(aFruitSet);
+    sb.append(", aStructValueMap=").append(aStructValueMap);
+    sb.append('}');
+    return sb.toString();
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec;
+
+@ThriftStruct("LogEntry")
+public class LogEntry {
+  @ThriftField(1)
+  public long timestamp;
+
+  @ThriftField(value = 2, intern = true)
+  public String level;
+
+  @ThriftField(3)
+  public String message;
+
+  @ThriftField(4)
+  public int code;
+
+  @ThriftField(5)
+  public Fruit fruit;
+
+  @ThriftField(6)
+  public Boolean sampled;
+
+  @ThriftField(7)
+  public BonkField bonk;
+
+  @ThriftField(8)
+  public double latency;
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    LogEntry logEntry = (LogEntry) o;
+
+    if (timestamp != logEntry.timestamp) {
+      return false;
+    }
+    if (level != null ? !level.equals(logEntry.level) : logEntry.level != null) {
+      return false;
+    }
+    if (message != null ? !message.equals(logEntry.message) : logEntry.message != null) {
+      return false;
+    }
+    if (code != logEntry.code) {
+      return false;
+    }
+    if (fruit != logEntry.fruit) {
+      return false;
+    }
+    if (sampled != null ? !sampled.equals(logEntry.sampled) : logEntry.sampled != null) {
+      return false;
+    }
+    if (bonk != null ? !bonk.equals(logEntry.bonk) : logEntry.bonk != null) {
+      return false;
+    }
+    if (Double.compare(logEntry.latency, latency) != 0) {
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = (int) (timestamp ^ (timestamp >>> 32));
+    result = 31 * result + (level != null ? level.hashCode() : 0);
+    result = 31 * result + (message != null ? message.hashCode() : 0);
+    result = 31 * result + code;
+    result = 31 * result + (fruit != null ? fruit.hashCode() : 0);
+    result = 31 * result + (sampled != null ? sampled.hashCode() : 0);
+    result = 31 * result + (bonk != null ? bonk.hashCode() : 0);
+    long temp = Double.doubleToLongBits(latency);
+    result = 31 * result + (int) (temp ^ (temp >>> 32));
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("LogEntry");
+    sb.append("{timestamp=").append(timestamp);
+    sb.append(", level='").append(level).append('\'');
+    sb.append(", message='").append(message).append('\'');
+    sb.append(", code=").append(code);
+    sb.append(", fruit=").append(fruit);
+    sb.append(", sampled=").append(sampled);
+    sb.append(", bonk=").append(bonk);
+    sb.append(", latency=").append(latency);
+    sb.append('}');
+    return sb.toString();
+  }
+}
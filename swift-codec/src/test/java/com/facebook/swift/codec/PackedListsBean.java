@@ -0,0 +1,98 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+@ThriftStruct("PackedLists")
+public class PackedListsBean {
+  @ThriftField(value = 1, packing = ThriftPacking.DELTA)
+  public List<Long> timestamps;
+
+  @ThriftField(value = 2, packing = ThriftPacking.ZIGZAG)
+  public List<Integer> offsets;
+
+  @ThriftField(value = 3, packing = ThriftPacking.BIT_PACKED)
+  public List<Fruit> fruits;
+
+  @ThriftField(value = 4, packing = ThriftPacking.BIT_PACKED)
+  public ImmutableList<Integer> codes;
+
+  // the same values without packing
+  @ThriftField(5)
+  public List<Long> unpacked;
+
+  @ThriftField(value = 6, packing = ThriftPacking.COLUMNAR)
+  public List<LogEntry> entries;
+
+  @ThriftField(7)
+  public List<LogEntry> unpackedEntries;
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    PackedListsBean that = (PackedListsBean) o;
+
+    if (timestamps != null ? !timestamps.equals(that.timestamps) : that.timestamps != null) {
+      return false;
+    }
+    if (offsets != null ? !offsets.equals(that.offsets) : that.offsets != null) {
+      return false;
+    }
+    if (fruits != null ? !fruits.equals(that.fruits) : that.fruits != null) {
+      return false;
+    }
+    if (codes != null ? !codes.equals(that.codes) : that.codes != null) {
+      return false;
+    }
+    if (unpacked != null ? !unpacked.equals(that.unpacked) : that.unpacked != null) {
+      return false;
+    }
+    if (entries != null ? !entries.equals(that.entries) : that.entries != null) {
+      return false;
+    }
+    if (unpackedEntries != null ?
+        !unpackedEntries.equals(that.unpackedEntries) :
+        that.unpackedEntries != null) {
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = timestamps != null ? timestamps.hashCode() : 0;
+    result = 31 * result + (offsets != null ? offsets.hashCode() : 0);
+    result = 31 * result + (fruits != null ? fruits.hashCode() : 0);
+    result = 31 * result + (codes != null ? codes.hashCode() : 0);
+    result = 31 * result + (unpacked != null ? unpacked.hashCode() : 0);
+    result = 31 * result + (entries != null ? entries.hashCode() : 0);
+    result = 31 * result + (unpackedEntries != null ? unpackedEntries.hashCode() : 0);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("PackedListsBean");
+    sb.append("{timestamps=").append(timestamps);
+    sb.append(", offsets=").append(offsets);
+    sb.append(", fruits=").append(fruits);
+    sb.append(", codes=").append(codes);
+    sb.append(", unpacked=").append(unpacked);
+    sb.append(", entries=").append(entries);
+    sb.append(", unpackedEntries=").append(unpackedEntries);
+    sb.append('}');
+    return sb.toString();
+  }
+}
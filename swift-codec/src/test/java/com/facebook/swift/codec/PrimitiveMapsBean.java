@@ -0,0 +1,54 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec;
+
+import com.facebook.swift.codec.collect.IntDoubleMap;
+import com.facebook.swift.codec.collect.LongLongMap;
+
+@ThriftStruct("PrimitiveMaps")
+public class PrimitiveMapsBean {
+  @ThriftField(1)
+  public LongLongMap counters;
+
+  @ThriftField(2)
+  public IntDoubleMap weights;
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    PrimitiveMapsBean that = (PrimitiveMapsBean) o;
+
+    if (counters != null ? !counters.equals(that.counters) : that.counters != null) {
+      return false;
+    }
+    if (weights != null ? !weights.equals(that.weights) : that.weights != null) {
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = counters != null ? counters.hashCode() : 0;
+    result = 31 * result + (weights != null ? weights.hashCode() : 0);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("PrimitiveMapsBean");
+    sb.append("{counters=").append(counters);
+    sb.append(", weights=").append(weights);
+    sb.append('}');
+    return sb.toString();
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec;
+
+import java.util.List;
+import java.util.Set;
+
+@ThriftStruct("Reusable")
+public class ReusableBean {
+  @ThriftField(1)
+  public String message;
+
+  @ThriftField(2)
+  public int type;
+
+  @ThriftField(3)
+  public BonkBean bonk;
+
+  private List<String> tags;
+  private Set<Fruit> fruits;
+
+  @ThriftField(4)
+  public List<String> getTags() {
+    return tags;
+  }
+
+  @ThriftField
+  public void setTags(List<String> tags) {
+    this.tags = tags;
+  }
+
+  @ThriftField(5)
+  public Set<Fruit> getFruits() {
+    return fruits;
+  }
+
+  @ThriftField
+  public void setFruits(Set<Fruit> fruits) {
+    this.fruits = fruits;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    ReusableBean that = (ReusableBean) o;
+
+    if (type != that.type) {
+      return false;
+    }
+    if (message != null ? !message.equals(that.message) : that.message != null) {
+      return false;
+    }
+    if (bonk != null ? !bonk.equals(that.bonk) : that.bonk != null) {
+      return false;
+    }
+    if (tags != null ? !tags.equals(that.tags) : that.tags != null) {
+      return false;
+    }
+    if (fruits != null ? !fruits.equals(that.fruits) : that.fruits != null) {
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = message != null ? message.hashCode() : 0;
+    result = 31 * result + type;
+    result = 31 * result + (bonk != null ? bonk.hashCode() : 0);
+    result = 31 * result + (tags != null ? tags.hashCode() : 0);
+    result = 31 * result + (fruits != null ? fruits.hashCode() : 0);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("ReusableBean");
+    sb.append("{message='").append(message).append('\'');
+    sb.append(", type=").append(type);
+    sb.append(", bonk=").append(bonk);
+    sb.append(", tags=").append(tags);
+    sb.append(", fruits=").append(fruits);
+    sb.append('}');
+    return sb.toString();
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec;
+
+@ThriftStruct(value = "Sparse", omitDefaults = true)
+public class SparseBean {
+  @ThriftField(1)
+  public boolean aBoolean;
+
+  @ThriftField(2)
+  public byte aByte;
+
+  @ThriftField(3)
+  public short aShort;
+
+  @ThriftField(4)
+  public int aInt;
+
+  @ThriftField(5)
+  public double aDouble;
+
+  @ThriftField(6)
+  public String aString;
+
+  // a missing field is read as zero, not as this initial value
+  @ThriftField(7)
+  public int priority = 5;
+
+  private long aLong;
+
+  // number of calls to the getter, which is not part of the value
+  public int getLongCalls;
+
+  @ThriftField(8)
+  public long getLong() {
+    getLongCalls++;
+    return aLong;
+  }
+
+  @ThriftField
+  public void setLong(long aLong) {
+    this.aLong = aLong;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    SparseBean that = (SparseBean) o;
+
+    if (aBoolean != that.aBoolean) {
+      return false;
+    }
+    if (aByte != that.aByte) {
+      return false;
+    }
+    if (aShort != that.aShort) {
+      return false;
+    }
+    if (aInt != that.aInt) {
+      return false;
+    }
+    if (Double.compare(that.aDouble, aDouble) != 0) {
+      return false;
+    }
+    if (aString != null ? !aString.equals(that.aString) : that.aString != null) {
+      return false;
+    }
+    if (priority != that.priority) {
+      return false;
+    }
+    if (aLong != that.aLong) {
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = aBoolean ? 1 : 0;
+    result = 31 * result + (int) aByte;
+    result = 31 * result + (int) aShort;
+    result = 31 * result + aInt;
+    long temp = Double.doubleToLongBits(aDouble);
+    result = 31 * result + (int) (temp ^ (temp >>> 32));
+    result = 31 * result + (aString != null ? aString.hashCode() : 0);
+    result = 31 * result + priority;
+    result = 31 * result + (int) (aLong ^ (aLong >>> 32));
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("SparseBean");
+    sb.append("{aBoolean=").append(aBoolean);
+    sb.append(", aByte=").append(aByte);
+    sb.append(", aShort=").append(aShort);
+    sb.append(", aInt=").append(aInt);
+    sb.append(", aDouble=").append(aDouble);
+    sb.append(", aString='").append(aString).append('\'');
+    sb.append(", priority=").append(priority);
+    sb.append(", aLong=").append(aLong);
+    sb.append('}');
+    return sb.toString();
+  }
+}
@@ -0,0 +1,19 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec;
+
+public enum StatusCode {
+  UNKNOWN(-1), OK(200), NOT_FOUND(404), UNAVAILABLE(503), TIMEOUT(100000);
+
+  private final int code;
+
+  StatusCode(int code) {
+    this.code = code;
+  }
+
+  @ThriftEnumValue
+  public int getCode() {
+    return code;
+  }
+}
@@ -3,20 +3,47 @@
  */
 package com.facebook.swift.codec;
 
+import com.facebook.swift.codec.collect.IntDoubleMap;
+import com.facebook.swift.codec.collect.LongLongMap;
+import com.facebook.swift.codec.internal.ElementConsumer;
+import com.facebook.swift.codec.internal.TProtocolListIterator;
+import com.facebook.swift.codec.internal.TProtocolReader;
+import com.facebook.swift.codec.internal.TProtocolWriter;
 import com.facebook.swift.codec.internal.ThriftCodecFactory;
 import com.facebook.swift.codec.internal.coercion.DefaultJavaCoercions;
+import com.facebook.swift.codec.internal.compiler.CompilerThriftCodecFactory;
 import com.facebook.swift.codec.metadata.ThriftEnumMetadata;
 import com.facebook.swift.codec.metadata.ThriftStructMetadata;
 import com.facebook.swift.codec.metadata.ThriftType;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TMap;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TType;
 import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TMemoryInputTransport;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.facebook.swift.codec.metadata.ThriftType.BOOL;
 import static com.facebook.swift.codec.metadata.ThriftType.BYTE;
@@ -32,6 +59,9 @@ import static com.facebook.swift.codec.metadata.ThriftType.set;
 import static com.google.common.base.Charsets.UTF_8;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 public class TestThriftCodecManager {
@@ -92,6 +122,24 @@ public class TestThriftCodecManager {
     );
   }
 
+  @Test
+  public void testSparseEnum() throws Exception {
+    ThriftEnumMetadata<StatusCode> statusCodeEnumMetadata = new ThriftEnumMetadata<>(StatusCode.class);
+    for (StatusCode statusCode : StatusCode.values()) {
+      assertEquals(statusCodeEnumMetadata.getEnumConstant(statusCode.getCode()), statusCode);
+      assertEquals(statusCodeEnumMetadata.getEnumValue(statusCode), statusCode.getCode());
+    }
+    assertNull(statusCodeEnumMetadata.getEnumConstant(0));
+    assertNull(statusCodeEnumMetadata.getEnumConstant(Integer.MAX_VALUE));
+
+    testRoundTripSerialize(StatusCode.UNKNOWN);
+    testRoundTripSerialize(StatusCode.TIMEOUT);
+    testRoundTripSerialize(
+        list(enumType(statusCodeEnumMetadata)),
+        ImmutableList.copyOf(StatusCode.values())
+    );
+  }
+
   @Test
   public void testCollectionThriftTypes() throws Exception {
     testRoundTripSerialize(
@@ -149,6 +197,283 @@ public class TestThriftCodecManager {
     testRoundTripSerialize(bonk);
   }
 
+  @Test
+  public void testConcurrentCodecCreation() throws Exception {
+    final ConcurrentMap<Class<?>, AtomicInteger> generated = new ConcurrentHashMap<>();
+    final ThriftCodecFactory compiler = new CompilerThriftCodecFactory();
+    final ThriftCodecManager manager = new ThriftCodecManager(
+        new ThriftCodecFactory() {
+          @Override
+          public <T> ThriftCodec<T> generateThriftTypeCodec(
+              ThriftCodecManager codecManager, ThriftStructMetadata<T> metadata
+          ) {
+            generated.putIfAbsent(metadata.getStructClass(), new AtomicInteger());
+            generated.get(metadata.getStructClass()).incrementAndGet();
+            return compiler.generateThriftTypeCodec(codecManager, metadata);
+          }
+        }
+    );
+
+    final List<Class<?>> types = ImmutableList.<Class<?>>of(
+        ReusableBean.class,
+        BonkBean.class,
+        ImmutableCollectionsBean.class,
+        BonkConstructor.class
+    );
+    int threads = 8;
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<List<ThriftCodec<?>>>> futures = new ArrayList<>();
+      for (int thread = 0; thread < threads; thread++) {
+        final int offset = thread;
+        futures.add(
+            executor.submit(
+                new Callable<List<ThriftCodec<?>>>() {
+                  @Override
+                  public List<ThriftCodec<?>> call() throws Exception {
+                    start.await();
+                    // each thread requests the types in a different order
+                    ThriftCodec<?>[] codecs = new ThriftCodec<?>[types.size()];
+                    for (int i = 0; i < types.size(); i++) {
+                      int index = (i + offset) % types.size();
+                      codecs[index] = manager.getCodec(types.get(index));
+                    }
+                    return ImmutableList.copyOf(codecs);
+                  }
+                }
+            )
+        );
+      }
+      start.countDown();
+
+      List<ThriftCodec<?>> expected = futures.get(0).get();
+      for (Future<List<ThriftCodec<?>>> future : futures) {
+        List<ThriftCodec<?>> codecs = future.get();
+        for (int i = 0; i < expected.size(); i++) {
+          assertSame(codecs.get(i), expected.get(i));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    for (Map.Entry<Class<?>, AtomicInteger> entry : generated.entrySet()) {
+      assertEquals(entry.getValue().get(), 1, "codecs generated for " + entry.getKey());
+    }
+  }
+
+  @Test
+  public void testPrecompile() throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      codecManager.precompileThriftTypes(
+          ImmutableList.of(
+              list(STRING),
+              map(STRING, set(enumType(new ThriftEnumMetadata<>(Fruit.class)))),
+              codecManager.getCatalog().getThriftType(Integer.class)
+          ),
+          pool,
+          10
+      );
+    } finally {
+      pool.shutdown();
+    }
+
+    // codec creation failures are reported to the caller
+    try {
+      codecManager.precompile(ImmutableList.of(BonkField.class));
+      fail("Expected exception");
+    } catch (Exception ignored) {
+    }
+  }
+
+  @Test
+  public void testSerialize() throws Exception {
+    ThriftType type = codecManager.getCatalog().getThriftType(BonkField.class);
+    codecManager.addCodec(new BonkFieldThriftCodec(type));
+    BonkField bonk = new BonkField("message", 42);
+
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      // byte array round trip, repeated to exercise the reused per-thread state
+      for (int i = 0; i < 3; i++) {
+        byte[] bytes = codecManager.serialize(BonkField.class, bonk, protocolKind);
+        assertEquals(codecManager.deserialize(BonkField.class, bytes, protocolKind), bonk);
+        assertEquals(codecManager.serializedSize(BonkField.class, bonk, protocolKind), bytes.length);
+
+        bytes = codecManager.serialize(Letter.class, Letter.D, protocolKind);
+        assertEquals(codecManager.deserialize(Letter.class, bytes, protocolKind), Letter.D);
+      }
+
+      // serialize into the middle of a buffer and read back from the same range
+      ByteBuffer buffer = ByteBuffer.allocate(1024);
+      buffer.position(10);
+      codecManager.serializeTo(BonkField.class, bonk, protocolKind, buffer);
+      int length = buffer.position() - 10;
+      BonkField copy = codecManager.deserialize(
+          BonkField.class,
+          buffer.array(),
+          10,
+          length,
+          protocolKind
+      );
+      assertEquals(copy, bonk);
+
+      // a buffer that is too small is left unchanged
+      ByteBuffer smallBuffer = ByteBuffer.allocate(length - 1);
+      try {
+        codecManager.serializeTo(BonkField.class, bonk, protocolKind, smallBuffer);
+        fail("Expected BufferOverflowException");
+      } catch (BufferOverflowException expected) {
+      }
+      assertEquals(smallBuffer.position(), 0);
+    }
+  }
+
+  @Test
+  public void testPrimitiveMaps() throws Exception {
+    LongLongMap counters = new LongLongMap();
+    counters.put(0, 1);
+    counters.put(Long.MAX_VALUE, -1);
+    counters.put(-42, 42);
+
+    IntDoubleMap weights = new IntDoubleMap();
+    weights.put(0, 0.5);
+    weights.put(-7, 1e300);
+
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      byte[] bytes = codecManager.serialize(LongLongMap.class, counters, protocolKind);
+      assertEquals(codecManager.deserialize(LongLongMap.class, bytes, protocolKind), counters);
+
+      // the wire format is a plain map<i64, i64>
+      TProtocol protocol = protocolKind.createProtocol(new TMemoryInputTransport(bytes));
+      TMap tMap = protocol.readMapBegin();
+      assertEquals(tMap.keyType, TType.I64);
+      assertEquals(tMap.valueType, TType.I64);
+      Map<Long, Long> boxed = new HashMap<>();
+      for (int i = 0; i < tMap.size; i++) {
+        boxed.put(protocol.readI64(), protocol.readI64());
+      }
+      assertEquals(boxed, counters);
+
+      bytes = codecManager.serialize(IntDoubleMap.class, weights, protocolKind);
+      assertEquals(codecManager.deserialize(IntDoubleMap.class, bytes, protocolKind), weights);
+
+      // and a plain map<i32, double>
+      protocol = protocolKind.createProtocol(new TMemoryInputTransport(bytes));
+      tMap = protocol.readMapBegin();
+      assertEquals(tMap.keyType, TType.I32);
+      assertEquals(tMap.valueType, TType.DOUBLE);
+      Map<Integer, Double> boxedWeights = new HashMap<>();
+      for (int i = 0; i < tMap.size; i++) {
+        boxedWeights.put(protocol.readI32(), protocol.readDouble());
+      }
+      assertEquals(boxedWeights, weights);
+    }
+  }
+
+  @Test
+  public void testSliceBinaryValues() throws Exception {
+    byte[] data = new byte[1000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    ByteBuffer value = ByteBuffer.wrap(data);
+
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      byte[] bytes = codecManager.serialize(ByteBuffer.class, value, protocolKind);
+      ByteBuffer slice = codecManager.deserialize(
+          ByteBuffer.class,
+          bytes,
+          0,
+          bytes.length,
+          protocolKind,
+          true
+      );
+      assertEquals(slice, value);
+      assertTrue(slice.isReadOnly());
+
+      // the slice shares memory with the input
+      bytes[bytes.length - 1]++;
+      assertEquals(slice.get(slice.limit() - 1), (byte) (data[data.length - 1] + 1));
+      bytes[bytes.length - 1]--;
+
+      // read-only values can be written
+      assertEquals(codecManager.serialize(ByteBuffer.class, slice, protocolKind), bytes);
+    }
+  }
+
+  @Test
+  public void testStreamingListRead() throws Exception {
+    ThriftType listType = list(enumType(new ThriftEnumMetadata<>(Letter.class)));
+    List<Letter> values = ImmutableList.of(Letter.A, Letter.B, Letter.C, Letter.D, Letter.A);
+    ThriftCodec<Letter> elementCodec = codecManager.getCodec(Letter.class);
+
+    // read with a consumer
+    TMemoryBuffer transport = new TMemoryBuffer(1024);
+    TCompactProtocol protocol = new TCompactProtocol(transport);
+    codecManager.write(listType, values, protocol);
+    final List<Letter> consumed = new ArrayList<>();
+    int count = new TProtocolReader(protocol).readList(
+        elementCodec,
+        new ElementConsumer<Letter>() {
+          @Override
+          public void consume(Letter element) {
+            consumed.add(element);
+          }
+        }
+    );
+    assertEquals(count, values.size());
+    assertEquals(consumed, values);
+
+    // read with an iterator
+    codecManager.write(listType, values, protocol);
+    TProtocolListIterator<Letter> iterator = new TProtocolReader(protocol).readListIterator(
+        elementCodec
+    );
+    assertEquals(iterator.size(), values.size());
+    assertEquals(ImmutableList.copyOf(iterator), values);
+
+    // skip part of the list and verify the protocol is positioned after the list
+    codecManager.write(listType, values, protocol);
+    codecManager.write(Integer.class, 42, protocol);
+    iterator = new TProtocolReader(protocol).readListIterator(elementCodec);
+    assertEquals(iterator.next(), values.get(0));
+    iterator.skipRemaining();
+    assertEquals(codecManager.read(Integer.class, protocol), (Integer) 42);
+  }
+
+  @Test
+  public void testStreamingListWrite() throws Exception {
+    ThriftType listType = list(enumType(new ThriftEnumMetadata<>(Letter.class)));
+    ThriftCodec<Letter> elementCodec = codecManager.getCodec(Letter.class);
+    TMemoryBuffer transport = new TMemoryBuffer(1024);
+    TCompactProtocol protocol = new TCompactProtocol(transport);
+
+    // a lazy iterable that is not a collection
+    Iterable<Letter> lazy = Iterables.limit(Iterables.cycle(Letter.A, Letter.B), 5);
+    codecManager.write(listType, lazy, protocol);
+    assertEquals(
+        codecManager.read(listType, protocol),
+        ImmutableList.of(Letter.A, Letter.B, Letter.A, Letter.B, Letter.A)
+    );
+
+    // an iterator with a declared size
+    TProtocolWriter writer = new TProtocolWriter(protocol);
+    writer.writeList(elementCodec, 3, Iterators.forArray(Letter.B, Letter.C, Letter.D));
+    assertEquals(
+        codecManager.read(listType, protocol),
+        ImmutableList.of(Letter.B, Letter.C, Letter.D)
+    );
+
+    // an iterator that does not match the declared size
+    try {
+      writer.writeList(elementCodec, 3, Iterators.forArray(Letter.B, Letter.C));
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
   private <T> void testRoundTripSerialize(T value) throws Exception {
     // write value
     TMemoryBuffer transport = new TMemoryBuffer(10 * 1024);
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec;
+
+import com.facebook.swift.codec.collect.IntDoubleMap;
+import com.facebook.swift.codec.collect.LongLongMap;
+import com.facebook.swift.codec.internal.reflection.ReflectionThriftCodecFactory;
+import com.facebook.swift.codec.metadata.ThriftType;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+
+public class TestThriftSizeCalculator {
+  private final ThriftCodecManager codecManager = new ThriftCodecManager();
+
+  @Test
+  public void testNestedContainers() throws Exception {
+    List<Double> doubles = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      doubles.add(i * 1.5);
+    }
+
+    NestedContainersBean bean = new NestedContainersBean();
+    bean.aBoolean = true;
+    bean.aByte = -7;
+    bean.aShort = Short.MIN_VALUE;
+    bean.aInt = 1 << 20;
+    bean.aLong = Long.MIN_VALUE;
+    bean.aDouble = -0.0;
+    bean.aString = "café 日本 😀";
+    bean.aBinary = ByteBuffer.wrap(new byte[300]);
+    bean.aEnum = Fruit.CHERRY;
+    bean.aBoxedInteger = -300;
+    bean.aStruct = new BonkField("bonk", 42);
+    bean.listOfMapsOfSets = ImmutableList.<Map<String, Set<Integer>>>of(
+        ImmutableMap.<String, Set<Integer>>of(
+            "a", ImmutableSet.of(1, -1, Integer.MAX_VALUE),
+            "b", ImmutableSet.<Integer>of()
+        ),
+        ImmutableMap.<String, Set<Integer>>of()
+    );
+    bean.mapOfListsOfStructs = ImmutableMap.<Long, List<BonkField>>of(
+        1L, ImmutableList.of(new BonkField("one", 1), new BonkField(null, -1)),
+        1L << 40, ImmutableList.<BonkField>of()
+    );
+    bean.booleans = ImmutableSet.of(true, false);
+    bean.doubles = doubles;
+    bean.fixedSizeMap = ImmutableMap.of((byte) 1, 1.0, (byte) -1, 2.0);
+    bean.iterable = ImmutableSet.of("x", "y", "z");
+
+    assertSerializedSize(NestedContainersBean.class, bean);
+    assertSerializedSize(NestedContainersBean.class, new NestedContainersBean());
+  }
+
+  @Test
+  public void testStructs() throws Exception {
+    assertSerializedSize(BonkField.class, new BonkField("message", 100));
+    assertSerializedSize(
+        CoercionBean.class,
+        new CoercionBean(true, (byte) 1, (short) 2, 3, 4L, 5.5f, 6.6d, 7.7f, ImmutableList.of(1.1f))
+    );
+
+    ImmutableCollectionsBean collections = new ImmutableCollectionsBean();
+    collections.aStringList = ImmutableList.of("a", "b");
+    collections.aStringSet = ImmutableSet.of("c");
+    collections.aFruitSet = EnumSet.of(Fruit.APPLE, Fruit.BANANA);
+    collections.aStructValueMap = ImmutableMap.of("d", new BonkField("e", 5));
+    assertSerializedSize(ImmutableCollectionsBean.class, collections);
+
+    PrimitiveMapsBean maps = new PrimitiveMapsBean();
+    maps.counters = new LongLongMap();
+    maps.counters.put(-1L, 1L << 50);
+    maps.weights = new IntDoubleMap();
+    maps.weights.put(1000, 0.5);
+    assertSerializedSize(PrimitiveMapsBean.class, maps);
+
+    // omitted defaults are not counted
+    SparseBean sparse = new SparseBean();
+    assertSerializedSize(SparseBean.class, sparse);
+    sparse.aDouble = -0.0;
+    sparse.setLong(-5);
+    assertSerializedSize(SparseBean.class, sparse);
+  }
+
+  @Test
+  public void testPackedLists() throws Exception {
+    PackedListsBean bean = new PackedListsBean();
+    bean.timestamps = ImmutableList.of(1_350_000_000_000L, 1_350_000_000_010L, 0L);
+    bean.offsets = ImmutableList.of(-1, 0, 1 << 30);
+    bean.fruits = ImmutableList.of(Fruit.APPLE, Fruit.CHERRY, Fruit.BANANA);
+    bean.codes = ImmutableList.of(300, 301);
+    bean.unpacked = ImmutableList.of(Long.MAX_VALUE);
+
+    LogEntry entry = new LogEntry();
+    entry.level = "INFO";
+    entry.message = "message";
+    entry.sampled = true;
+    bean.entries = ImmutableList.of(entry, new LogEntry());
+    bean.unpackedEntries = bean.entries;
+
+    assertSerializedSize(PackedListsBean.class, bean);
+  }
+
+  @Test
+  public void testAddedCodec() throws Exception {
+    ThriftCodecManager codecManager = new ThriftCodecManager(new ReflectionThriftCodecFactory());
+    ThriftType bonkFieldType = codecManager.getCatalog().getThriftType(BonkField.class);
+    codecManager.addCodec(new BonkFieldThriftCodec(bonkFieldType));
+
+    // added codecs are measured, since their encoding is not described by the metadata
+    ImmutableCollectionsBean bean = new ImmutableCollectionsBean();
+    bean.aStructValueMap = ImmutableMap.of("d", new BonkField("e", 5));
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      byte[] bytes = codecManager.serialize(ImmutableCollectionsBean.class, bean, protocolKind);
+      assertEquals(
+          codecManager.serializedSize(ImmutableCollectionsBean.class, bean, protocolKind),
+          bytes.length
+      );
+    }
+  }
+
+  @Test
+  public void testUtf8Length() {
+    String[] values = {
+        "",
+        "ascii",
+        "é߿",
+        "ࠀ￿",
+        "😀",
+        // unpaired surrogates are replaced by the encoder
+        "\ud83d",
+        "\ude00x",
+        "x\ud83d"
+    };
+    for (String value : values) {
+      assertEquals(ThriftSizeCalculator.utf8Length(value), value.getBytes(UTF_8).length, value);
+    }
+  }
+
+  private <T> void assertSerializedSize(Class<T> type, T value) throws Exception {
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      byte[] bytes = codecManager.serialize(type, value, protocolKind);
+      assertEquals(
+          codecManager.serializedSize(type, value, protocolKind),
+          bytes.length,
+          protocolKind.toString()
+      );
+    }
+  }
+
+  @ThriftStruct("NestedContainers")
+  public static class NestedContainersBean {
+    @ThriftField(1)
+    public boolean aBoolean;
+
+    @ThriftField(2)
+    public byte aByte;
+
+    @ThriftField(3)
+    public short aShort;
+
+    @ThriftField(4)
+    public int aInt;
+
+    @ThriftField(5)
+    public long aLong;
+
+    @ThriftField(6)
+    public double aDouble;
+
+    @ThriftField(7)
+    public String aString;
+
+    // ids more than 15 apart use the long compact field header
+    @ThriftField(30)
+    public ByteBuffer aBinary;
+
+    @ThriftField(31)
+    public Fruit aEnum;
+
+    @ThriftField(32)
+    public Integer aBoxedInteger;
+
+    @ThriftField(33)
+    public BonkField aStruct;
+
+    @ThriftField(34)
+    public List<Map<String, Set<Integer>>> listOfMapsOfSets;
+
+    @ThriftField(35)
+    public Map<Long, List<BonkField>> mapOfListsOfStructs;
+
+    @ThriftField(36)
+    public Set<Boolean> booleans;
+
+    @ThriftField(37)
+    public List<Double> doubles;
+
+    @ThriftField(38)
+    public Map<Byte, Double> fixedSizeMap;
+
+    @ThriftField(39)
+    public Iterable<String> iterable;
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.collect;
+
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class TestIntDoubleMap {
+  @Test
+  public void testRandomOperations() throws Exception {
+    Random random = new Random(42);
+    IntDoubleMap map = new IntDoubleMap(0);
+    Map<Integer, Double> expected = new HashMap<>();
+
+    for (int i = 0; i < 100_000; i++) {
+      // small key range so puts, updates and removes all collide frequently
+      int key = random.nextInt(2000) - 1000;
+      double value = random.nextDouble();
+      switch (random.nextInt(4)) {
+        case 0:
+        case 1: {
+          Double previous = expected.put(key, value);
+          assertEquals(map.put(key, value), previous == null ? 0.0 : previous.doubleValue());
+          break;
+        }
+        case 2: {
+          Double previous = expected.remove(key);
+          assertEquals(map.remove(key), previous == null ? 0.0 : previous.doubleValue());
+          break;
+        }
+        default: {
+          assertEquals(map.containsKey(key), expected.containsKey(key));
+          Double current = expected.get(key);
+          assertEquals(map.get(key, -1.0), current == null ? -1.0 : current.doubleValue());
+        }
+      }
+      assertEquals(map.size(), expected.size());
+    }
+    assertEquals(map, expected);
+
+    Map<Integer, Double> visited = new HashMap<>();
+    IntDoubleMap.Cursor cursor = map.cursor();
+    while (cursor.next()) {
+      assertNull(visited.put(cursor.getKey(), cursor.getValue()));
+    }
+    assertEquals(visited, expected);
+  }
+}
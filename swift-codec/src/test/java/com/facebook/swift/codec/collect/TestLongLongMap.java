@@ -0,0 +1,85 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.collect;
+
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestLongLongMap {
+  @Test
+  public void testRandomOperations() throws Exception {
+    Random random = new Random(42);
+    LongLongMap map = new LongLongMap(0);
+    Map<Long, Long> expected = new HashMap<>();
+
+    for (int i = 0; i < 100_000; i++) {
+      // small key range so puts, updates and removes all collide frequently
+      long key = random.nextInt(2000) - 1000;
+      long value = random.nextLong();
+      switch (random.nextInt(4)) {
+        case 0:
+        case 1: {
+          Long previous = expected.put(key, value);
+          assertEquals(map.put(key, value), previous == null ? 0 : previous.longValue());
+          break;
+        }
+        case 2: {
+          Long previous = expected.remove(key);
+          assertEquals(map.remove(key), previous == null ? 0 : previous.longValue());
+          break;
+        }
+        default: {
+          assertEquals(map.containsKey(key), expected.containsKey(key));
+          Long current = expected.get(key);
+          assertEquals(map.get(key, -1), current == null ? -1 : current.longValue());
+        }
+      }
+      assertEquals(map.size(), expected.size());
+    }
+    assertEquals(map, expected);
+    assertEquals(expected, map);
+    assertEquals(map.hashCode(), expected.hashCode());
+
+    // the cursor visits every entry exactly once
+    Map<Long, Long> visited = new HashMap<>();
+    LongLongMap.Cursor cursor = map.cursor();
+    while (cursor.next()) {
+      assertNull(visited.put(cursor.getKey(), cursor.getValue()));
+    }
+    assertEquals(visited, expected);
+
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertFalse(map.cursor().next());
+  }
+
+  @Test
+  public void testMapMethods() throws Exception {
+    LongLongMap map = new LongLongMap();
+    assertNull(map.put((Long) 0L, (Long) 10L));
+    assertNull(map.put((Long) Long.MIN_VALUE, (Long) 20L));
+    assertEquals(map.put((Long) 0L, (Long) 11L), (Long) 10L);
+    assertEquals(map.addTo(5, 3), 3);
+    assertEquals(map.addTo(5, 4), 7);
+
+    assertEquals(map, ImmutableMap.of(0L, 11L, Long.MIN_VALUE, 20L, 5L, 7L));
+    assertEquals(map.get(0L), (Long) 11L);
+    assertNull(map.get(1L));
+    assertNull(map.get("not a long"));
+    assertTrue(map.containsKey(Long.MIN_VALUE));
+
+    assertEquals(map.remove((Object) 0L), (Long) 11L);
+    assertNull(map.remove((Object) 0L));
+    assertEquals(map.size(), 2);
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal;
+
+import com.facebook.swift.codec.BonkField;
+import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftCodecManager;
+import com.facebook.swift.codec.ThriftProtocolKind;
+import com.facebook.swift.codec.metadata.ThriftType;
+import com.google.common.collect.ImmutableList;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TMap;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TSet;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.facebook.swift.codec.metadata.ThriftType.list;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestIncrementalThriftDecoder {
+  @Test
+  public void testByteAtATime() throws Exception {
+    ThriftCodecManager codecManager = new ThriftCodecManager();
+    ThriftType type = list(codecManager.getCatalog().getThriftType(BonkField.class));
+    ThriftCodec<List<BonkField>> codec = (ThriftCodec<List<BonkField>>) codecManager.getCodec(type);
+
+    List<List<BonkField>> values = ImmutableList.<List<BonkField>>of(
+        ImmutableList.of(new BonkField("message", 42), new BonkField("another message", -1)),
+        ImmutableList.<BonkField>of(),
+        ImmutableList.of(new BonkField(createLongString(), Integer.MAX_VALUE))
+    );
+
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      // concatenate the encoded values
+      TMemoryOutputTransport transport = new TMemoryOutputTransport();
+      for (List<BonkField> value : values) {
+        codecManager.write(type, value, protocolKind.createProtocol(transport));
+      }
+      byte[] bytes = transport.toByteArray();
+
+      // feed the data one byte at a time
+      IncrementalThriftDecoder<List<BonkField>> decoder =
+          new IncrementalThriftDecoder<>(codec, protocolKind);
+      List<List<BonkField>> decoded = new ArrayList<>();
+      for (byte b : bytes) {
+        decoder.feed(ByteBuffer.wrap(new byte[] {b}));
+        List<BonkField> value = decoder.poll();
+        if (value != null) {
+          decoded.add(value);
+        }
+      }
+      assertNull(decoder.poll());
+      assertEquals(decoder.getBufferedBytes(), 0);
+      assertEquals(decoded, values);
+
+      // feed all of the data at once
+      decoder.feed(ByteBuffer.wrap(bytes));
+      for (List<BonkField> value : values) {
+        assertEquals(decoder.poll(), value);
+      }
+      assertNull(decoder.poll());
+    }
+  }
+
+  @Test
+  public void testBufferReuse() throws Exception {
+    ThriftCodecManager codecManager = new ThriftCodecManager();
+    ThriftType type = list(codecManager.getCatalog().getThriftType(BonkField.class));
+    ThriftCodec<List<BonkField>> codec = (ThriftCodec<List<BonkField>>) codecManager.getCodec(type);
+
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      List<BonkField> large = ImmutableList.of(new BonkField(createLongString(), 1));
+      List<BonkField> small = ImmutableList.of(new BonkField("small", 2));
+      byte[] largeBytes = encode(codecManager, type, large, protocolKind);
+      byte[] smallBytes = encode(codecManager, type, small, protocolKind);
+
+      // decoded strings do not share the buffer, so it is compacted in place
+      IncrementalThriftDecoder<List<BonkField>> decoder =
+          new IncrementalThriftDecoder<>(codec, protocolKind);
+      decoder.feed(ByteBuffer.wrap(largeBytes));
+      assertEquals(decoder.poll(), large);
+      int capacity = decoder.getBufferCapacity();
+      for (int i = 0; i < 100; i++) {
+        decoder.feed(ByteBuffer.wrap(smallBytes));
+        assertEquals(decoder.poll(), small);
+        assertEquals(decoder.getBufferCapacity(), capacity);
+      }
+    }
+  }
+
+  @Test
+  public void testSharedBuffer() throws Exception {
+    ThriftCodecManager codecManager = new ThriftCodecManager();
+    ThriftType type = list(codecManager.getCatalog().getThriftType(ByteBuffer.class));
+    ThriftCodec<List<ByteBuffer>> codec =
+        (ThriftCodec<List<ByteBuffer>>) codecManager.getCodec(type);
+
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      List<ByteBuffer> large = ImmutableList.of(ByteBuffer.wrap(new byte[10_000]));
+      byte[] largeBytes = encode(codecManager, type, large, protocolKind);
+
+      IncrementalThriftDecoder<List<ByteBuffer>> decoder =
+          new IncrementalThriftDecoder<>(codec, protocolKind);
+      decoder.feed(ByteBuffer.wrap(largeBytes));
+      assertEquals(decoder.poll(), large);
+
+      // decoded binary values may share the buffer, so later data is copied to a new buffer
+      // sized for the buffered bytes, rather than for the largest value seen
+      List<List<ByteBuffer>> decoded = new ArrayList<>();
+      List<List<ByteBuffer>> expected = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        List<ByteBuffer> small = ImmutableList.of(ByteBuffer.wrap(new byte[] {(byte) i}));
+        decoder.feed(ByteBuffer.wrap(encode(codecManager, type, small, protocolKind)));
+        assertTrue(decoder.getBufferCapacity() < largeBytes.length);
+        decoded.add(decoder.poll());
+        expected.add(small);
+      }
+      assertEquals(decoded, expected);
+    }
+  }
+
+  @Test
+  public void testScanAllTypes() throws Exception {
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      TMemoryOutputTransport transport = new TMemoryOutputTransport();
+      TProtocol protocol = protocolKind.createProtocol(transport);
+      protocol.writeStructBegin(new TStruct("all"));
+      protocol.writeFieldBegin(new TField("bool", TType.BOOL, (short) 1));
+      protocol.writeBool(true);
+      protocol.writeFieldEnd();
+      protocol.writeFieldBegin(new TField("byte", TType.BYTE, (short) 2));
+      protocol.writeByte((byte) 7);
+      protocol.writeFieldEnd();
+      protocol.writeFieldBegin(new TField("i16", TType.I16, (short) 3));
+      protocol.writeI16((short) -300);
+      protocol.writeFieldEnd();
+      protocol.writeFieldBegin(new TField("i64", TType.I64, (short) 100));
+      protocol.writeI64(Long.MIN_VALUE);
+      protocol.writeFieldEnd();
+      protocol.writeFieldBegin(new TField("double", TType.DOUBLE, (short) 101));
+      protocol.writeDouble(1.5);
+      protocol.writeFieldEnd();
+      protocol.writeFieldBegin(new TField("struct", TType.STRUCT, (short) 102));
+      protocol.writeStructBegin(new TStruct("nested"));
+      protocol.writeFieldBegin(new TField("string", TType.STRING, (short) 1));
+      protocol.writeString("nested");
+      protocol.writeFieldEnd();
+      protocol.writeFieldStop();
+      protocol.writeStructEnd();
+      protocol.writeFieldEnd();
+      protocol.writeFieldBegin(new TField("list", TType.LIST, (short) 103));
+      protocol.writeListBegin(new TList(TType.BOOL, 20));
+      for (int i = 0; i < 20; i++) {
+        protocol.writeBool(i % 3 == 0);
+      }
+      protocol.writeListEnd();
+      protocol.writeFieldEnd();
+      protocol.writeFieldBegin(new TField("set", TType.SET, (short) 104));
+      protocol.writeSetBegin(new TSet(TType.I64, 2));
+      protocol.writeI64(1);
+      protocol.writeI64(Long.MAX_VALUE);
+      protocol.writeSetEnd();
+      protocol.writeFieldEnd();
+      protocol.writeFieldBegin(new TField("map", TType.MAP, (short) 105));
+      protocol.writeMapBegin(new TMap(TType.STRING, TType.DOUBLE, 2));
+      protocol.writeString("a");
+      protocol.writeDouble(1);
+      protocol.writeString("b");
+      protocol.writeDouble(2);
+      protocol.writeMapEnd();
+      protocol.writeFieldEnd();
+      protocol.writeFieldBegin(new TField("empty", TType.MAP, (short) 106));
+      protocol.writeMapBegin(new TMap(TType.I32, TType.I32, 0));
+      protocol.writeMapEnd();
+      protocol.writeFieldEnd();
+      protocol.writeFieldStop();
+      protocol.writeStructEnd();
+      byte[] bytes = transport.toByteArray();
+
+      // the scanner must only complete after the last byte
+      TValueScanner scanner = new TValueScanner(protocolKind, TType.STRUCT);
+      int position = 0;
+      for (int available = 1; available <= bytes.length; available++) {
+        assertFalse(scanner.isComplete());
+        position += scanner.scan(bytes, position, available - position);
+      }
+      assertTrue(scanner.isComplete());
+      assertEquals(position, bytes.length);
+    }
+  }
+
+  private static <T> byte[] encode(
+      ThriftCodecManager codecManager,
+      ThriftType type,
+      T value,
+      ThriftProtocolKind protocolKind
+  ) throws Exception {
+    TMemoryOutputTransport transport = new TMemoryOutputTransport();
+    codecManager.write(type, value, protocolKind.createProtocol(transport));
+    return transport.toByteArray();
+  }
+
+  private String createLongString() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append(i);
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal;
+
+import com.facebook.swift.codec.ThriftProtocolKind;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TTransport;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+public class TestStringInternTable {
+  @Test
+  public void testIntern() {
+    StringInternTable table = new StringInternTable();
+
+    String value = table.intern(toByteBuffer("category"));
+    assertEquals(value, "category");
+    assertSame(table.intern(toByteBuffer("category")), value);
+    assertEquals(table.intern(toByteBuffer("")), "");
+    assertEquals(table.intern(toByteBuffer("café 日本")), "café 日本");
+
+    // the buffer position is not changed
+    ByteBuffer buffer = toByteBuffer("category");
+    assertSame(table.intern(buffer), value);
+    assertEquals(buffer.position(), 0);
+  }
+
+  @Test
+  public void testSlice() {
+    StringInternTable table = new StringInternTable();
+
+    ByteBuffer buffer = ByteBuffer.wrap("xxcategoryxx".getBytes(UTF_8), 2, 8);
+    String value = table.intern(buffer);
+    assertEquals(value, "category");
+    assertSame(table.intern(toByteBuffer("category")), value);
+
+    ByteBuffer direct = ByteBuffer.allocateDirect(8);
+    direct.put("category".getBytes(UTF_8)).flip();
+    assertSame(table.intern(direct), value);
+  }
+
+  @Test
+  public void testRange() {
+    StringInternTable table = new StringInternTable();
+
+    byte[] bytes = "xxcategoryxx".getBytes(UTF_8);
+    String value = table.intern(bytes, 2, 8);
+    assertEquals(value, "category");
+    assertSame(table.intern(toByteBuffer("category")), value);
+    assertSame(table.intern(ByteBuffer.wrap(bytes), 2, 8), value);
+
+    ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes).flip();
+    assertSame(table.intern(direct, 2, 8), value);
+    assertEquals(direct.position(), 0);
+  }
+
+  @Test
+  public void testReadInternedString() throws Exception {
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      TMemoryOutputTransport output = new TMemoryOutputTransport();
+      TProtocol protocol = protocolKind.createProtocol(output);
+      protocol.writeString("category");
+      protocol.writeString("category");
+      protocol.writeI32(42);
+      byte[] bytes = output.toByteArray();
+
+      ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+      direct.put(bytes).flip();
+
+      // frames of a few bytes, so the values span the end of the buffer
+      TMemoryOutputTransport frames = new TMemoryOutputTransport();
+      TFramedTransport framedOutput = new TFramedTransport(frames);
+      for (int offset = 0; offset < bytes.length; offset += 3) {
+        framedOutput.write(bytes, offset, Math.min(3, bytes.length - offset));
+        framedOutput.flush();
+      }
+
+      TTransport[] transports = {
+          new TMemoryInputTransport(bytes),
+          new TByteBufferInputTransport(direct),
+          new TIOStreamTransport(new ByteArrayInputStream(bytes)),
+          new TFramedTransport(new TMemoryInputTransport(frames.toByteArray()))
+      };
+      for (TTransport transport : transports) {
+        StringInternTable table = new StringInternTable();
+        TProtocolReader reader = new TProtocolReader(protocolKind.createProtocol(transport));
+        String value = reader.readInternedString(table);
+        assertEquals(value, "category");
+        assertSame(reader.readInternedString(table), value);
+        assertEquals(reader.readI32(), 42);
+      }
+    }
+  }
+
+  @Test
+  public void testEviction() {
+    StringInternTable table = new StringInternTable(16, 16);
+
+    String value = table.intern(toByteBuffer("category"));
+    for (int i = 0; i < 10_000; i++) {
+      assertEquals(table.intern(toByteBuffer("value" + i)), "value" + i);
+    }
+
+    // the table stays bounded, so old values are eventually evicted
+    assertEquals(table.getCapacity(), 16);
+    String reinterned = table.intern(toByteBuffer("category"));
+    assertEquals(reinterned, value);
+    assertNotSame(reinterned, value);
+    assertSame(table.intern(toByteBuffer("category")), reinterned);
+  }
+
+  @Test
+  public void testMaxLength() {
+    StringInternTable table = new StringInternTable(16, 4);
+
+    assertSame(table.intern(toByteBuffer("abcd")), table.intern(toByteBuffer("abcd")));
+
+    String value = table.intern(toByteBuffer("abcde"));
+    assertEquals(value, "abcde");
+    assertNotSame(table.intern(toByteBuffer("abcde")), value);
+  }
+
+  private static ByteBuffer toByteBuffer(String value) {
+    return ByteBuffer.wrap(value.getBytes(UTF_8));
+  }
+}
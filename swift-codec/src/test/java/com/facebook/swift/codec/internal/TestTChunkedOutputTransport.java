@@ -0,0 +1,80 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal;
+
+import com.facebook.swift.codec.ThriftCodecManager;
+import com.facebook.swift.codec.ThriftProtocolKind;
+import com.facebook.swift.codec.metadata.ThriftType;
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.List;
+
+import static com.facebook.swift.codec.metadata.ThriftType.STRING;
+import static com.facebook.swift.codec.metadata.ThriftType.list;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestTChunkedOutputTransport {
+  @Test
+  public void testWrite() throws Exception {
+    ThriftCodecManager codecManager = new ThriftCodecManager();
+    ThriftType type = list(STRING);
+    List<ByteBuffer> value = ImmutableList.of(
+        toByteBuffer("some string"),
+        toByteBuffer("another string"),
+        toByteBuffer("a string long enough to span more than one chunk")
+    );
+
+    ByteBufferChunkPool pool = new ByteBufferChunkPool(16, 100);
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      // expected encoding
+      TMemoryOutputTransport expectedTransport = new TMemoryOutputTransport();
+      codecManager.write(type, value, protocolKind.createProtocol(expectedTransport));
+      byte[] expected = expectedTransport.toByteArray();
+
+      // encode twice to verify chunks are reused after release
+      for (int i = 0; i < 2; i++) {
+        TChunkedOutputTransport transport = new TChunkedOutputTransport(pool);
+        codecManager.write(type, value, protocolKind.createProtocol(transport));
+        assertEquals(transport.size(), expected.length);
+
+        ByteBuffer[] buffers = transport.getBuffers();
+        assertTrue(buffers.length > 1);
+        for (ByteBuffer buffer : buffers) {
+          assertTrue(buffer.isDirect());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transport.writeTo(Channels.newChannel(out));
+        assertEquals(out.toByteArray(), expected);
+
+        transport.release();
+        assertEquals(transport.size(), 0);
+        assertTrue(pool.getPooledChunks() >= buffers.length);
+      }
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNonBlockingChannel() throws Exception {
+    Pipe pipe = Pipe.open();
+    try {
+      pipe.sink().configureBlocking(false);
+      new TChunkedOutputTransport(new ByteBufferChunkPool(16, 100)).writeTo(pipe.sink());
+    } finally {
+      pipe.sink().close();
+      pipe.source().close();
+    }
+  }
+
+  private ByteBuffer toByteBuffer(String string) {
+    return ByteBuffer.wrap(string.getBytes(UTF_8));
+  }
+}
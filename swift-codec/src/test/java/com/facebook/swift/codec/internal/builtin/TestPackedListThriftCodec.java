@@ -0,0 +1,108 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal.builtin;
+
+import com.facebook.swift.codec.ThriftPacking;
+import org.apache.thrift.protocol.TProtocolException;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class TestPackedListThriftCodec {
+  private static final ThriftPacking[] PACKINGS = {
+      ThriftPacking.DELTA,
+      ThriftPacking.ZIGZAG,
+      ThriftPacking.BIT_PACKED
+  };
+
+  @Test
+  public void testExtremeValues() throws Exception {
+    long[] values = {0, 1, -1, Long.MAX_VALUE, Long.MIN_VALUE, 0, Long.MIN_VALUE, Long.MAX_VALUE};
+    for (ThriftPacking packing : PACKINGS) {
+      assertRoundTrip(packing, values);
+      assertRoundTrip(packing, new long[0]);
+      assertRoundTrip(packing, new long[] {0, 0, 0});
+    }
+  }
+
+  @Test
+  public void testRandomValues() throws Exception {
+    Random random = new Random(42);
+    for (int bits = 1; bits <= Long.SIZE; bits++) {
+      long[] values = new long[random.nextInt(100)];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = random.nextLong() >> (Long.SIZE - bits);
+      }
+      for (ThriftPacking packing : PACKINGS) {
+        assertRoundTrip(packing, values);
+      }
+    }
+  }
+
+  @Test
+  public void testSizes() throws Exception {
+    // sorted values are a varint count and one byte per small delta
+    long[] sorted = {1_000_000_000_000L, 1_000_000_000_001L, 1_000_000_000_003L};
+    assertEquals(PackedListThriftCodec.encode(ThriftPacking.DELTA, sorted, 3).remaining(), 9);
+
+    // eight values from 0 to 3 need three bits each after the zigzag encoding
+    long[] codes = {0, 1, 2, 3, 3, 2, 1, 0};
+    assertEquals(PackedListThriftCodec.encode(ThriftPacking.BIT_PACKED, codes, 8).remaining(), 5);
+  }
+
+  @Test
+  public void testTruncated() throws Exception {
+    long[] values = {1, 2, 3, 300, -70000};
+    for (ThriftPacking packing : PACKINGS) {
+      ByteBuffer encoded = PackedListThriftCodec.encode(packing, values, values.length);
+      for (int length = 0; length < encoded.remaining(); length++) {
+        ByteBuffer truncated = ByteBuffer.wrap(encoded.array(), 0, length);
+        try {
+          PackedListThriftCodec.decode(packing, truncated);
+          fail("expected TProtocolException for " + packing + " truncated to " + length);
+        } catch (TProtocolException expected) {
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testHostileCount() throws Exception {
+    // a count of Integer.MAX_VALUE as a varint
+    byte[] count = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+
+    // zero width values would need no data at all, so the count would have to be trusted
+    assertInvalid(ThriftPacking.BIT_PACKED, count, new byte[] {0});
+
+    // one bit values need far more data than is present
+    assertInvalid(ThriftPacking.BIT_PACKED, count, new byte[] {1, 0, 0});
+
+    // a list of zeros is written with a one bit width
+    assertEquals(
+        PackedListThriftCodec.encode(ThriftPacking.BIT_PACKED, new long[] {0, 0, 0}, 3).remaining(),
+        3
+    );
+  }
+
+  private static void assertInvalid(ThriftPacking packing, byte[] count, byte[] data) {
+    ByteBuffer encoded = ByteBuffer.allocate(count.length + data.length);
+    encoded.put(count).put(data).flip();
+    try {
+      PackedListThriftCodec.decode(packing, encoded);
+      fail("expected TProtocolException");
+    } catch (TProtocolException expected) {
+    }
+  }
+
+  private static void assertRoundTrip(ThriftPacking packing, long[] values) throws Exception {
+    ByteBuffer encoded = PackedListThriftCodec.encode(packing, values, values.length);
+    long[] decoded = PackedListThriftCodec.decode(packing, encoded);
+    assertEquals(Arrays.toString(decoded), Arrays.toString(values), packing.toString());
+  }
+}
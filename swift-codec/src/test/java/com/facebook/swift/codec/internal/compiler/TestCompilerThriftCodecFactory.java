@@ -4,11 +4,72 @@
 package com.facebook.swift.codec.internal.compiler;
 
 import com.facebook.swift.codec.AbstractThriftCodecManagerTest;
+import com.facebook.swift.codec.BonkField;
 import com.facebook.swift.codec.ThriftCodecManager;
+import com.facebook.swift.codec.ThriftField;
+import com.facebook.swift.codec.ThriftStruct;
+import org.testng.annotations.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 
 public class TestCompilerThriftCodecFactory extends AbstractThriftCodecManagerTest {
   @Override
   public ThriftCodecManager createCodecManager() {
     return new ThriftCodecManager(new CompilerThriftCodecFactory(true));
   }
+
+  @Test
+  public void testSharedGeneratedClasses() throws Exception {
+    ThriftCodecManager first = new ThriftCodecManager(new CompilerThriftCodecFactory(false));
+    ThriftCodecManager second = new ThriftCodecManager(new CompilerThriftCodecFactory(false));
+
+    assertNotSame(first.getCodec(BonkField.class), second.getCodec(BonkField.class));
+    assertSame(
+        first.getCodec(BonkField.class).getClass(),
+        second.getCodec(BonkField.class).getClass()
+    );
+  }
+
+  @Test
+  public void testUnloadGeneratedClasses() throws Exception {
+    WeakReference<Class<?>> codecClass = new WeakReference<Class<?>>(createUnloadedCodecClass());
+
+    // the class is only weakly cached, so it is unloaded once its codec managers are dropped
+    for (int i = 0; i < 100 && codecClass.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(codecClass.get());
+  }
+
+  private static Class<?> createUnloadedCodecClass() {
+    ThriftCodecManager first = new ThriftCodecManager(new CompilerThriftCodecFactory(false));
+    ThriftCodecManager second = new ThriftCodecManager(new CompilerThriftCodecFactory(false));
+    Class<?> codecClass = first.getCodec(UnloadedStruct.class).getClass();
+    assertSame(second.getCodec(UnloadedStruct.class).getClass(), codecClass);
+    return codecClass;
+  }
+
+  @Test
+  public void testPrivateClassLoader() throws Exception {
+    ThriftCodecManager shared = new ThriftCodecManager(new CompilerThriftCodecFactory(false));
+    ThriftCodecManager isolated = new ThriftCodecManager(
+        new CompilerThriftCodecFactory(false, new DynamicClassLoader())
+    );
+
+    Class<?> sharedClass = shared.getCodec(BonkField.class).getClass();
+    Class<?> isolatedClass = isolated.getCodec(BonkField.class).getClass();
+    assertNotSame(sharedClass, isolatedClass);
+  }
+
+  // only used by testUnloadGeneratedClasses, so no other codec manager holds its codec class
+  @ThriftStruct("UnloadedStruct")
+  public static class UnloadedStruct {
+    @ThriftField(1)
+    public String value;
+  }
 }
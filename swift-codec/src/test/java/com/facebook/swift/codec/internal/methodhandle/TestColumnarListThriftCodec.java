@@ -0,0 +1,85 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal.methodhandle;
+
+import com.facebook.swift.codec.LogEntry;
+import com.facebook.swift.codec.PackedListsBean;
+import com.facebook.swift.codec.ThriftCodecManager;
+import com.facebook.swift.codec.internal.TByteBufferInputTransport;
+import com.facebook.swift.codec.internal.TMemoryOutputTransport;
+import com.facebook.swift.codec.internal.TProtocolReader;
+import com.facebook.swift.codec.metadata.ThriftType;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class TestColumnarListThriftCodec {
+  // a count of Integer.MAX_VALUE as a varint
+  private static final byte[] MAX_COUNT = {
+      (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07
+  };
+
+  private final ThriftCodecManager codecManager = new ThriftCodecManager();
+
+  @Test
+  public void testRowsWithoutColumns() throws Exception {
+    List<LogEntry> entries = read(bytes(new byte[] {3}, new byte[] {0}));
+    assertEquals(entries.size(), 3);
+    assertEquals(entries.get(0), new LogEntry());
+
+    // nothing bounds the number of rows, so it is limited
+    assertInvalid(bytes(MAX_COUNT, new byte[] {0}));
+  }
+
+  @Test
+  public void testHostileRowCount() throws Exception {
+    // a timestamp column without a bitmap, and with far too few bytes for the rows
+    assertInvalid(bytes(MAX_COUNT, new byte[] {1, 0, 1, 1, 2, 0, 0}));
+
+    // columns of unknown fields bound the rows as well
+    assertInvalid(bytes(MAX_COUNT, new byte[] {1, 0, 99, 1, 2, 0, 0}));
+  }
+
+  @Test
+  public void testHostileDictionarySize() throws Exception {
+    // one row with a level dictionary of Integer.MAX_VALUE entries
+    assertInvalid(bytes(new byte[] {1, 1, 0, 2, 5, 6, 0}, MAX_COUNT));
+  }
+
+  private List<LogEntry> read(byte[] columns) throws Exception {
+    ThriftType type = codecManager.getCatalog()
+        .getThriftStructMetadata(PackedListsBean.class)
+        .getField(6)
+        .getType();
+    ColumnarListThriftCodec<LogEntry> codec = new ColumnarListThriftCodec<>(codecManager, type);
+
+    TMemoryOutputTransport transport = new TMemoryOutputTransport();
+    new TCompactProtocol(transport).writeBinary(ByteBuffer.wrap(columns));
+    ByteBuffer encoded = ByteBuffer.wrap(transport.getArray(), 0, transport.size());
+    return codec.read(
+        new TProtocolReader(new TCompactProtocol(new TByteBufferInputTransport(encoded)))
+    );
+  }
+
+  private void assertInvalid(byte[] columns) throws Exception {
+    try {
+      read(columns);
+      fail("expected TProtocolException");
+    } catch (TProtocolException expected) {
+    }
+  }
+
+  private static byte[] bytes(byte[] first, byte[] second) {
+    byte[] bytes = new byte[first.length + second.length];
+    System.arraycopy(first, 0, bytes, 0, first.length);
+    System.arraycopy(second, 0, bytes, first.length, second.length);
+    return bytes;
+  }
+}
@@ -0,0 +1,14 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.internal.methodhandle;
+
+import com.facebook.swift.codec.AbstractThriftCodecManagerTest;
+import com.facebook.swift.codec.ThriftCodecManager;
+
+public class TestMethodHandleThriftCodecFactory extends AbstractThriftCodecManagerTest {
+  @Override
+  public ThriftCodecManager createCodecManager() {
+    return new ThriftCodecManager(new MethodHandleThriftCodecFactory());
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.io;
+
+import com.facebook.swift.codec.BonkField;
+import com.facebook.swift.codec.ThriftCodecManager;
+import com.facebook.swift.codec.ThriftProtocolKind;
+import com.facebook.swift.codec.internal.ElementConsumer;
+import com.facebook.swift.codec.internal.TMemoryOutputTransport;
+import com.facebook.swift.codec.metadata.ThriftType;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.facebook.swift.codec.metadata.ThriftType.list;
+import static org.testng.Assert.assertEquals;
+
+public class TestParallelListDecoder {
+  @Test
+  public void testDecode() throws Exception {
+    ThriftCodecManager codecManager = new ThriftCodecManager();
+    ThriftType type = list(codecManager.getCatalog().getThriftType(BonkField.class));
+
+    ImmutableList.Builder<BonkField> builder = ImmutableList.builder();
+    for (int i = 0; i < 1000; i++) {
+      builder.add(new BonkField("message " + i, i));
+    }
+    List<BonkField> value = builder.build();
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+        TMemoryOutputTransport transport = new TMemoryOutputTransport();
+        codecManager.write(type, value, protocolKind.createProtocol(transport));
+        byte[] bytes = transport.toByteArray();
+        ParallelListDecoder<BonkField> decoder = new ParallelListDecoder<>(
+            codecManager.getCodec(BonkField.class),
+            protocolKind,
+            pool,
+            64
+        );
+
+        assertEquals(decoder.decode(bytes, 0, bytes.length), value);
+
+        final Set<BonkField> unordered = Collections.newSetFromMap(
+            new ConcurrentHashMap<BonkField, Boolean>()
+        );
+        int count = decoder.decode(bytes, 0, bytes.length, new ElementConsumer<BonkField>() {
+          @Override
+          public void consume(BonkField element) {
+            unordered.add(element);
+          }
+        });
+        assertEquals(count, value.size());
+        assertEquals(unordered, ImmutableSet.copyOf(value));
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.io;
+
+import com.facebook.swift.codec.BonkField;
+import com.facebook.swift.codec.ThriftCodecManager;
+import com.facebook.swift.codec.ThriftProtocolKind;
+import com.facebook.swift.codec.internal.ByteBufferChunkPool;
+import com.facebook.swift.codec.internal.TChunkedOutputTransport;
+import com.facebook.swift.codec.internal.TMemoryOutputTransport;
+import com.facebook.swift.codec.metadata.ThriftType;
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.facebook.swift.codec.metadata.ThriftType.list;
+import static org.testng.Assert.assertEquals;
+
+public class TestParallelListEncoder {
+  @Test
+  public void testWrite() throws Exception {
+    ThriftCodecManager codecManager = new ThriftCodecManager();
+    ThriftType type = list(codecManager.getCatalog().getThriftType(BonkField.class));
+
+    List<BonkField> value = createList(1000);
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    ByteBufferChunkPool chunkPool = new ByteBufferChunkPool(256, 1000);
+    try {
+      for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+        // expected encoding
+        TMemoryOutputTransport expectedTransport = new TMemoryOutputTransport();
+        codecManager.write(type, value, protocolKind.createProtocol(expectedTransport));
+        byte[] expected = expectedTransport.toByteArray();
+
+        ParallelListEncoder<BonkField> encoder = new ParallelListEncoder<>(
+            codecManager.getCodec(BonkField.class),
+            protocolKind,
+            pool,
+            chunkPool,
+            64
+        );
+
+        // encode to a heap transport
+        TMemoryOutputTransport transport = new TMemoryOutputTransport();
+        encoder.write(value, protocolKind.createProtocol(transport));
+        assertEquals(transport.toByteArray(), expected);
+
+        // encode to a chunked transport
+        TChunkedOutputTransport chunkedTransport = new TChunkedOutputTransport(chunkPool);
+        encoder.write(value, protocolKind.createProtocol(chunkedTransport));
+        assertEquals(toByteArray(chunkedTransport), expected);
+        chunkedTransport.release();
+
+        // encode with the codec manager
+        transport = new TMemoryOutputTransport();
+        codecManager.writeListParallel(
+            BonkField.class,
+            value,
+            protocolKind.createProtocol(transport),
+            pool
+        );
+        assertEquals(transport.toByteArray(), expected);
+
+        // the codec manager encodes with its own pool, so the chunks are copied into a chunked
+        // transport of another pool
+        List<BonkField> large = createList(5000);
+        expectedTransport = new TMemoryOutputTransport();
+        codecManager.write(type, large, protocolKind.createProtocol(expectedTransport));
+        chunkedTransport = new TChunkedOutputTransport(chunkPool);
+        codecManager.writeListParallel(
+            BonkField.class,
+            large,
+            protocolKind.createProtocol(chunkedTransport),
+            pool
+        );
+        assertEquals(toByteArray(chunkedTransport), expectedTransport.toByteArray());
+        chunkedTransport.release();
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static List<BonkField> createList(int size) {
+    ImmutableList.Builder<BonkField> builder = ImmutableList.builder();
+    for (int i = 0; i < size; i++) {
+      builder.add(new BonkField("message " + i, i));
+    }
+    return builder.build();
+  }
+
+  private static byte[] toByteArray(TChunkedOutputTransport transport) {
+    ByteBuffer result = ByteBuffer.allocate((int) transport.size());
+    for (ByteBuffer buffer : transport.getBuffers()) {
+      result.put(buffer);
+    }
+    return result.array();
+  }
+}
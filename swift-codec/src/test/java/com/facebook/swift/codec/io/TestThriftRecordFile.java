@@ -0,0 +1,198 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.io;
+
+import com.facebook.swift.codec.BonkField;
+import com.facebook.swift.codec.ThriftCodec;
+import com.facebook.swift.codec.ThriftCodecManager;
+import com.facebook.swift.codec.ThriftProtocolKind;
+import com.facebook.swift.codec.internal.ElementConsumer;
+import com.google.common.collect.ImmutableSet;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestThriftRecordFile {
+  private static final int RECORD_COUNT = 100;
+
+  private final ThriftCodecManager codecManager = new ThriftCodecManager();
+  private File file;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    file = File.createTempFile("records", ".thrift");
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    file.delete();
+  }
+
+  @Test
+  public void testReadWrite() throws Exception {
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      file.delete();
+      ThriftCodec<BonkField> codec = codecManager.getCodec(BonkField.class);
+
+      // write in two sessions to verify the writer appends
+      for (int session = 0; session < 2; session++) {
+        try (ThriftRecordFileWriter<BonkField> writer =
+            new ThriftRecordFileWriter<>(file, codec, protocolKind)) {
+          for (int i = session * RECORD_COUNT / 2; i < (session + 1) * RECORD_COUNT / 2; i++) {
+            writer.write(createRecord(i));
+          }
+        }
+      }
+
+      // partial record at the end of the file is ignored
+      try (FileOutputStream out = new FileOutputStream(file, true)) {
+        out.write(new byte[] {0, 0, 0, 100, 1, 2, 3});
+      }
+
+      try (ThriftRecordFileReader<BonkField> reader =
+          new ThriftRecordFileReader<>(file, codec, protocolKind, 7, false)) {
+        assertEquals(reader.getRecordCount(), RECORD_COUNT);
+
+        // sequential read
+        for (int i = 0; i < RECORD_COUNT; i++) {
+          assertTrue(reader.hasNext());
+          assertEquals(reader.next(), createRecord(i));
+        }
+        assertFalse(reader.hasNext());
+
+        // seek to every record, in reverse to make sure the index is used
+        for (int i = RECORD_COUNT - 1; i >= 0; i--) {
+          reader.seek(i);
+          assertEquals(reader.getRecordNumber(), i);
+          assertEquals(reader.next(), createRecord(i));
+        }
+
+        reader.seek(RECORD_COUNT);
+        assertFalse(reader.hasNext());
+      }
+    }
+  }
+
+  @Test
+  public void testParallelRead() throws Exception {
+    ThriftCodec<BonkField> codec = codecManager.getCodec(BonkField.class);
+    try (ThriftRecordFileWriter<BonkField> writer =
+        new ThriftRecordFileWriter<>(file, codec, ThriftProtocolKind.COMPACT)) {
+      for (int i = 0; i < RECORD_COUNT; i++) {
+        writer.write(createRecord(i));
+      }
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try (ThriftRecordFileReader<BonkField> reader =
+        new ThriftRecordFileReader<>(file, codec, ThriftProtocolKind.COMPACT, 7, false)) {
+      // ordered
+      List<BonkField> records = reader.readAll(pool);
+      assertEquals(records.size(), RECORD_COUNT);
+      for (int i = 0; i < RECORD_COUNT; i++) {
+        assertEquals(records.get(i), createRecord(i));
+      }
+
+      // unordered
+      final Set<BonkField> unordered = Collections.newSetFromMap(
+          new ConcurrentHashMap<BonkField, Boolean>()
+      );
+      reader.readAll(pool, new ElementConsumer<BonkField>() {
+        @Override
+        public void consume(BonkField record) {
+          unordered.add(record);
+        }
+      });
+      assertEquals(unordered, ImmutableSet.copyOf(records));
+
+      // parallel reads do not move the reader
+      assertEquals(reader.getRecordNumber(), 0);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testSplitRecords() throws Exception {
+    ThriftCodec<BonkField> codec = codecManager.getCodec(BonkField.class);
+    try (ThriftRecordFileWriter<BonkField> writer =
+        new ThriftRecordFileWriter<>(file, codec, ThriftProtocolKind.BINARY)) {
+      for (int i = 0; i < RECORD_COUNT; i++) {
+        writer.write(createRecord(i));
+      }
+    }
+
+    // tiny regions split both length prefixes and records across regions
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (int regionSize : new int[] {1, 3, 13, 64}) {
+        try (ThriftRecordFileReader<BonkField> reader = new ThriftRecordFileReader<>(
+            file,
+            codec,
+            ThriftProtocolKind.BINARY,
+            7,
+            true,
+            regionSize
+        )) {
+          assertEquals(reader.getRecordCount(), RECORD_COUNT);
+          for (int i = 0; i < RECORD_COUNT; i++) {
+            assertEquals(reader.next(), createRecord(i));
+          }
+          for (int i = RECORD_COUNT - 1; i >= 0; i -= 5) {
+            reader.seek(i);
+            assertEquals(reader.next(), createRecord(i));
+          }
+
+          List<BonkField> records = reader.readAll(pool);
+          for (int i = 0; i < RECORD_COUNT; i++) {
+            assertEquals(records.get(i), createRecord(i));
+          }
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testSliceBinaryValues() throws Exception {
+    ThriftCodec<ByteBuffer> codec = codecManager.getCodec(ByteBuffer.class);
+    ByteBuffer value = ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5});
+
+    try (ThriftRecordFileWriter<ByteBuffer> writer =
+        new ThriftRecordFileWriter<>(file, codec, ThriftProtocolKind.COMPACT)) {
+      writer.write(value);
+    }
+
+    try (ThriftRecordFileReader<ByteBuffer> reader = new ThriftRecordFileReader<>(
+        file,
+        codec,
+        ThriftProtocolKind.COMPACT,
+        ThriftRecordFileReader.DEFAULT_INDEX_INTERVAL,
+        true
+    )) {
+      ByteBuffer slice = reader.next();
+      assertEquals(slice, value);
+      assertTrue(slice.isDirect());
+      assertTrue(slice.isReadOnly());
+    }
+  }
+
+  private static BonkField createRecord(int i) {
+    return new BonkField("message " + i, i);
+  }
+}
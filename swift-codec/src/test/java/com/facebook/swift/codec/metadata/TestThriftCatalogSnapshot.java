@@ -0,0 +1,175 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.codec.metadata;
+
+import com.facebook.swift.codec.BonkBean;
+import com.facebook.swift.codec.BonkBuilder;
+import com.facebook.swift.codec.BonkConstructor;
+import com.facebook.swift.codec.BonkField;
+import com.facebook.swift.codec.BonkMethod;
+import com.facebook.swift.codec.OneOfEverything;
+import com.facebook.swift.codec.PackedListsBean;
+import com.facebook.swift.codec.ReusableBean;
+import com.facebook.swift.codec.SparseBean;
+import com.facebook.swift.codec.ThriftCodecManager;
+import com.facebook.swift.codec.ThriftField;
+import com.facebook.swift.codec.ThriftProtocolKind;
+import com.facebook.swift.codec.ThriftStruct;
+import com.facebook.swift.codec.internal.compiler.CompilerThriftCodecFactory;
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class TestThriftCatalogSnapshot {
+  private static final List<Class<?>> STRUCTS = ImmutableList.<Class<?>>of(
+      BonkField.class,
+      BonkBean.class,
+      BonkMethod.class,
+      BonkConstructor.class,
+      BonkBuilder.class,
+      OneOfEverything.class,
+      PackedListsBean.class,
+      ReusableBean.class,
+      SparseBean.class
+  );
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    ThriftCatalog catalog = new ThriftCatalog();
+    for (Class<?> struct : STRUCTS) {
+      catalog.getThriftStructMetadata(struct);
+    }
+    byte[] snapshot = writeSnapshot(catalog);
+
+    ThriftCatalog imported = new ThriftCatalog();
+    imported.readSnapshot(new ByteArrayInputStream(snapshot));
+    for (Class<?> struct : STRUCTS) {
+      assertEquals(
+          imported.getThriftStructMetadata(struct).toString(),
+          catalog.getThriftStructMetadata(struct).toString()
+      );
+    }
+
+    // the snapshot is stable
+    assertEquals(writeSnapshot(imported), snapshot);
+  }
+
+  @Test
+  public void testCodecsFromSnapshot() throws Exception {
+    ThriftCatalog catalog = new ThriftCatalog();
+    catalog.getThriftStructMetadata(BonkConstructor.class);
+    catalog.getThriftStructMetadata(BonkBuilder.class);
+
+    ThriftCatalog imported = new ThriftCatalog();
+    imported.readSnapshot(new ByteArrayInputStream(writeSnapshot(catalog)));
+    ThriftCodecManager codecManager = new ThriftCodecManager(
+        new CompilerThriftCodecFactory(),
+        imported
+    );
+
+    BonkConstructor bonkConstructor = new BonkConstructor("message", 42);
+    BonkBuilder bonkBuilder = new BonkBuilder("message", 42);
+    for (ThriftProtocolKind protocolKind : ThriftProtocolKind.values()) {
+      byte[] bytes = codecManager.serialize(BonkConstructor.class, bonkConstructor, protocolKind);
+      assertEquals(
+          codecManager.deserialize(BonkConstructor.class, bytes, protocolKind),
+          bonkConstructor
+      );
+
+      bytes = codecManager.serialize(BonkBuilder.class, bonkBuilder, protocolKind);
+      assertEquals(codecManager.deserialize(BonkBuilder.class, bytes, protocolKind), bonkBuilder);
+    }
+  }
+
+  @Test
+  public void testChangedAnnotations() throws Exception {
+    ThriftCatalog catalog = new ThriftCatalog();
+    catalog.getThriftStructMetadata(SnapshotV1.class);
+    byte[] snapshot = writeSnapshot(catalog);
+
+    // a class with the same members and annotations binds to the snapshot of the original class
+    ThriftCatalog imported = new ThriftCatalog();
+    imported.readSnapshot(new ByteArrayInputStream(renameClass(snapshot, "V1", "V3")));
+    assertEquals(
+        imported.getThriftStructMetadata(SnapshotV3.class).getField(2).getName(),
+        "count"
+    );
+
+    // the same members with a changed field id are rejected
+    imported = new ThriftCatalog();
+    imported.readSnapshot(new ByteArrayInputStream(renameClass(snapshot, "V1", "V2")));
+    try {
+      imported.getThriftStructMetadata(SnapshotV2.class);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void testInvalidSnapshot() throws Exception {
+    try {
+      new ThriftCatalog().readSnapshot(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5}));
+      fail("Expected IOException");
+    } catch (IOException expected) {
+    }
+  }
+
+  /**
+   * Replaces the suffix of the SnapshotV1 class name in the snapshot.  The suffixes have the same
+   * length, so the length prefixes in the snapshot remain valid.
+   */
+  private static byte[] renameClass(byte[] snapshot, String from, String to) {
+    byte[] fromName = ("$Snapshot" + from).getBytes(UTF_8);
+    byte[] toName = ("$Snapshot" + to).getBytes(UTF_8);
+    byte[] renamed = snapshot.clone();
+    for (int i = 0; i + fromName.length <= renamed.length; i++) {
+      if (Arrays.equals(Arrays.copyOfRange(renamed, i, i + fromName.length), fromName)) {
+        System.arraycopy(toName, 0, renamed, i, toName.length);
+      }
+    }
+    return renamed;
+  }
+
+  private static byte[] writeSnapshot(ThriftCatalog catalog) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    catalog.writeSnapshot(out);
+    return out.toByteArray();
+  }
+
+  @ThriftStruct
+  public static class SnapshotV1 {
+    @ThriftField(1)
+    public String message;
+
+    @ThriftField(2)
+    public int count;
+  }
+
+  @ThriftStruct
+  public static class SnapshotV2 {
+    @ThriftField(1)
+    public String message;
+
+    @ThriftField(3)
+    public int count;
+  }
+
+  @ThriftStruct
+  public static class SnapshotV3 {
+    @ThriftField(1)
+    public String message;
+
+    @ThriftField(2)
+    public int count;
+  }
+}
@@ -4,9 +4,12 @@
 package com.facebook.swift.codec.metadata;
 
 import com.facebook.swift.codec.ThriftField;
+import com.facebook.swift.codec.ThriftPacking;
 import com.facebook.swift.codec.ThriftStruct;
 import org.testng.annotations.Test;
 
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 
 import static com.facebook.swift.codec.ThriftProtocolType.STRING;
@@ -141,4 +144,82 @@ public class TestThriftStructMetadataBuilder {
     public void setFoo(short value) { }
   }
 
+  @Test
+  public void testOmitDefaultNotPrimitive() throws Exception {
+    ThriftStructMetadataBuilder<OmitDefaultNotPrimitive> builder =
+        new ThriftStructMetadataBuilder<>(new ThriftCatalog(), OmitDefaultNotPrimitive.class);
+
+    MetadataErrors metadataErrors = builder.getMetadataErrors();
+
+    assertThat(metadataErrors.getErrors())
+        .as("metadata errors")
+        .hasSize(1);
+
+    assertThat(metadataErrors.getWarnings())
+        .as("metadata warnings")
+        .isEmpty();
+
+    assertThat(metadataErrors.getErrors().get(0).getMessage())
+        .as("error message")
+        .containsIgnoringCase("is not primitive");
+  }
+
+  @ThriftStruct
+  public static class OmitDefaultNotPrimitive {
+    @ThriftField(value = 1, omitDefault = true)
+    public Integer foo;
+  }
+
+  @Test
+  public void testPackedNotList() throws Exception {
+    ThriftStructMetadataBuilder<PackedNotList> builder =
+        new ThriftStructMetadataBuilder<>(new ThriftCatalog(), PackedNotList.class);
+
+    MetadataErrors metadataErrors = builder.getMetadataErrors();
+
+    assertThat(metadataErrors.getErrors())
+        .as("metadata errors")
+        .hasSize(1);
+
+    assertThat(metadataErrors.getWarnings())
+        .as("metadata warnings")
+        .isEmpty();
+
+    assertThat(metadataErrors.getErrors().get(0).getMessage())
+        .as("error message")
+        .containsIgnoringCase("is packed");
+  }
+
+  @ThriftStruct
+  public static class PackedNotList {
+    @ThriftField(value = 1, packing = ThriftPacking.DELTA)
+    public List<String> foo;
+  }
+
+  @Test
+  public void testInternNotString() throws Exception {
+    ThriftStructMetadataBuilder<InternNotString> builder =
+        new ThriftStructMetadataBuilder<>(new ThriftCatalog(), InternNotString.class);
+
+    MetadataErrors metadataErrors = builder.getMetadataErrors();
+
+    assertThat(metadataErrors.getErrors())
+        .as("metadata errors")
+        .hasSize(1);
+
+    assertThat(metadataErrors.getWarnings())
+        .as("metadata warnings")
+        .isEmpty();
+
+    assertThat(metadataErrors.getErrors().get(0).getMessage())
+        .as("error message")
+        .containsIgnoringCase("is interned");
+  }
+
+  @ThriftStruct
+  public static class InternNotString {
+    @ThriftField(value = 1, intern = true)
+    public ByteBuffer foo;
+  }
+
 }
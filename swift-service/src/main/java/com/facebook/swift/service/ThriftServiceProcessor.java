@@ -5,12 +5,15 @@ package com.facebook.swift.service;
 
 import com.facebook.swift.codec.ThriftCodec;
 import com.facebook.swift.codec.ThriftCodecManager;
+import com.facebook.swift.codec.internal.TProtocolListIterator;
 import com.facebook.swift.codec.internal.TProtocolReader;
 import com.facebook.swift.codec.internal.TProtocolWriter;
+import com.facebook.swift.codec.metadata.ThriftType;
 import com.facebook.swift.service.metadata.ThriftMethodMetadata;
 import com.facebook.swift.service.metadata.ThriftServiceMetadata;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Iterators;
 import org.apache.thrift.TApplicationException;
 import org.apache.thrift.TException;
 import org.apache.thrift.TProcessor;
@@ -25,6 +28,9 @@ import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.ThreadSafe;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.apache.thrift.TApplicationException.INTERNAL_ERROR;
 import static org.apache.thrift.TApplicationException.PROTOCOL_ERROR;
@@ -71,6 +77,22 @@ public class ThriftServiceProcessor implements TProcessor {
     this.codecManager = codecManager;
   }
 
+  /**
+   * Eagerly builds the codecs for every parameter and return type of the service methods, and
+   * every type reachable from them, so the first request for each method does not pay for the
+   * codec generation.  This should be called before the processor starts receiving requests.
+   *
+   * @see ThriftCodecManager#precompileThriftTypes
+   */
+  public void precompileCodecs(ForkJoinPool pool, int warmUpRounds) {
+    List<ThriftType> types = new ArrayList<>();
+    for (ThriftMethodMetadata methodMetadata : serviceMetadata.getMethods()) {
+      types.addAll(methodMetadata.getParameterTypes());
+      types.add(methodMetadata.getReturnType());
+    }
+    codecManager.precompileThriftTypes(types, pool, warmUpRounds);
+  }
+
   @Override
   public boolean process(TProtocol in, TProtocol out) throws TException {
     TMessage message = in.readMessageBegin();
@@ -93,16 +115,9 @@ public class ThriftServiceProcessor implements TProcessor {
       // read args
       Object[] args = new Object[method.getParameterTypes().length];
       TProtocolReader reader = new TProtocolReader(in);
+      TProtocolListIterator<?> streamingArgument = null;
       try {
-        reader.readStructBegin();
-        while (reader.nextField()) {
-          short fieldId = reader.getFieldId();
-          ThriftCodec<?> codec = codecManager.getCodec(
-              method.getGenericParameterTypes()[fieldId - 1]
-          );
-          args[fieldId - 1] = reader.readField(codec);
-        }
-        reader.readStructEnd();
+        streamingArgument = readArguments(reader, methodMetadata, args);
       } catch (Exception e) {
         throw new TApplicationException(PROTOCOL_ERROR, e.getMessage());
       }
@@ -118,9 +133,23 @@ public class ThriftServiceProcessor implements TProcessor {
             e = invocationTargetException.getTargetException();
           }
         }
+
+        // the input must still be consumed, but a failure doing so must not hide the exception
+        // thrown by the method
+        if (streamingArgument != null) {
+          try {
+            finishStreamingArguments(reader, streamingArgument);
+          } catch (TApplicationException cleanupException) {
+            e.addSuppressed(cleanupException);
+          }
+        }
         Throwables.propagateIfInstanceOf(e, Exception.class);
         throw Throwables.propagate(e);
       }
+      // an argument sent after the streaming list is only rejected here, after the method ran
+      if (streamingArgument != null) {
+        finishStreamingArguments(reader, streamingArgument);
+      }
 
       // write the response
       ThriftCodec<Object> resultCodec =
@@ -158,4 +187,80 @@ public class ThriftServiceProcessor implements TProcessor {
       }
     }
   }
+
+  /**
+   * Reads the method arguments into the args array.  If the method has a streaming parameter, the
+   * reading stops at the beginning of the streaming list argument, and an iterator over the
+   * remaining list elements is returned.  In this case, the caller must call
+   * {@link #finishStreamingArguments} after the method has been invoked.
+   * <p/>
+   * The iterator reads directly from the input protocol, so it is only valid until the method
+   * returns; any elements the method did not consume are then skipped, and the iterator must not
+   * be used again.
+   * <p/>
+   * Since the method is invoked as soon as the streaming list begins, all other arguments must
+   * be sent before it.  Thrift clients write arguments in field id order, and the streaming
+   * parameter is always the last parameter, so this holds for any conforming client.  An
+   * argument sent after the list is only found once the method has already run, so the request
+   * is rejected with a PROTOCOL_ERROR even though the method had its side effects.
+   */
+  private TProtocolListIterator<?> readArguments(
+      TProtocolReader reader,
+      ThriftMethodMetadata methodMetadata,
+      Object[] args
+  ) throws Exception {
+    int streamingParameterIndex = methodMetadata.getStreamingParameterIndex();
+
+    reader.readStructBegin();
+    while (reader.nextField()) {
+      int index = reader.getFieldId() - 1;
+      ThriftType type = methodMetadata.getParameterTypes().get(index);
+      if (index == streamingParameterIndex) {
+        TProtocolListIterator<?> iterator = reader.readListFieldIterator(
+            codecManager.getCodec(type.getValueType())
+        );
+        if (iterator != null) {
+          args[index] = iterator;
+          return iterator;
+        }
+      } else {
+        args[index] = reader.readField(codecManager.getCodec(type));
+      }
+    }
+    reader.readStructEnd();
+
+    // the streaming argument was not sent, so the method receives an empty iterator
+    if (streamingParameterIndex >= 0) {
+      args[streamingParameterIndex] = Iterators.emptyIterator();
+    }
+    return null;
+  }
+
+  /**
+   * Skips any list elements not consumed by the method and finishes reading the arguments.  An
+   * argument sent after the streaming list can not be delivered to a method that has already
+   * been invoked, so the request is rejected after the argument is skipped.
+   */
+  private void finishStreamingArguments(
+      TProtocolReader reader,
+      TProtocolListIterator<?> streamingArgument
+  ) throws TApplicationException {
+    List<Short> lateArguments = new ArrayList<>();
+    try {
+      streamingArgument.skipRemaining();
+      while (reader.nextField()) {
+        lateArguments.add(reader.getFieldId());
+        reader.skipFieldData();
+      }
+      reader.readStructEnd();
+    } catch (Exception e) {
+      throw new TApplicationException(PROTOCOL_ERROR, e.getMessage());
+    }
+    if (!lateArguments.isEmpty()) {
+      throw new TApplicationException(
+          PROTOCOL_ERROR,
+          "Arguments " + lateArguments + " were sent after the streaming argument"
+      );
+    }
+  }
 }
@@ -7,18 +7,23 @@ import com.facebook.swift.codec.metadata.ThriftCatalog;
 import com.facebook.swift.codec.metadata.ThriftType;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.reflect.TypeToken;
 
 import javax.annotation.concurrent.Immutable;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.Iterator;
 import java.util.List;
 
+import static com.facebook.swift.codec.metadata.ThriftType.list;
+
 @Immutable
 public class ThriftMethodMetadata {
   private final String name;
   private final ThriftType returnType;
   private final List<ThriftType> parameterTypes;
   private final Method method;
+  private final int streamingParameterIndex;
 
   public ThriftMethodMetadata(String name, Method method, ThriftCatalog catalog) {
     Preconditions.checkNotNull(name, "name is null");
@@ -30,11 +35,30 @@ public class ThriftMethodMetadata {
 
     returnType = catalog.getThriftType(method.getGenericReturnType());
 
+    // An Iterator parameter receives the elements of a list argument as they are decoded.  Since
+    // the method is invoked as soon as the list begins, this must be the last parameter.
+    int streamingParameterIndex = -1;
     ImmutableList.Builder<ThriftType> builder = ImmutableList.builder();
-    for (Type type : method.getGenericParameterTypes()) {
-      builder.add(catalog.getThriftType(type));
+    Type[] genericParameterTypes = method.getGenericParameterTypes();
+    for (int index = 0; index < genericParameterTypes.length; index++) {
+      Type type = genericParameterTypes[index];
+      if (TypeToken.of(type).getRawType() == Iterator.class) {
+        Preconditions.checkArgument(
+            index == genericParameterTypes.length - 1,
+            "Iterator parameter must be the last parameter of method %s",
+            method.toGenericString()
+        );
+        Type elementType = TypeToken.of(type)
+            .resolveType(Iterator.class.getTypeParameters()[0])
+            .getType();
+        builder.add(list(catalog.getThriftType(elementType)));
+        streamingParameterIndex = index;
+      } else {
+        builder.add(catalog.getThriftType(type));
+      }
     }
     parameterTypes = builder.build();
+    this.streamingParameterIndex = streamingParameterIndex;
   }
 
   public String getName() {
@@ -52,4 +76,12 @@ public class ThriftMethodMetadata {
   public Method getMethod() {
     return method;
   }
+
+  /**
+   * Gets the index of the Iterator parameter that receives a list argument while it is being
+   * decoded, or -1 if the method does not have a streaming parameter.
+   */
+  public int getStreamingParameterIndex() {
+    return streamingParameterIndex;
+  }
 }
@@ -12,6 +12,7 @@ import com.google.common.collect.ImmutableMap;
 import javax.annotation.concurrent.Immutable;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Collection;
 import java.util.Map;
 
 @Immutable
@@ -77,4 +78,8 @@ public class ThriftServiceMetadata {
   public ThriftMethodMetadata getMethod(String name) {
     return methods.get(name);
   }
+
+  public Collection<ThriftMethodMetadata> getMethods() {
+    return methods.values();
+  }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2004-present Facebook. All Rights Reserved.
+ */
+package com.facebook.swift.service;
+
+import com.facebook.swift.codec.ThriftCodecManager;
+import com.google.common.collect.ImmutableList;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Drives the processor directly over memory buffers to verify the handling of streaming
+ * arguments.
+ */
+public class TestThriftServiceProcessor {
+  @Test(groups = "fast")
+  public void testPartiallyConsumed() throws Exception {
+    StreamingService service = new StreamingService();
+    ThriftServiceProcessor processor = createProcessor(service);
+
+    // the elements the method does not consume are skipped, so the next request can be read
+    TMemoryBuffer in = new TMemoryBuffer(1024);
+    TProtocol request = new TBinaryProtocol(in);
+    writeTake(request, 2, ImmutableList.of(1, 2, 3, 4, 5), false);
+    writeTake(request, 10, ImmutableList.of(6, 7), false);
+
+    TMemoryBuffer out = new TMemoryBuffer(1024);
+    processor.process(request, new TBinaryProtocol(out));
+    assertEquals(service.received, ImmutableList.of(1, 2));
+    processor.process(request, new TBinaryProtocol(out));
+    assertEquals(service.received, ImmutableList.of(6, 7));
+
+    TProtocol response = new TBinaryProtocol(out);
+    assertEquals(readResult(response), 2);
+    assertEquals(readResult(response), 2);
+  }
+
+  @Test(groups = "fast")
+  public void testStreamingArgumentNotSent() throws Exception {
+    StreamingService service = new StreamingService();
+    ThriftServiceProcessor processor = createProcessor(service);
+
+    TMemoryBuffer in = new TMemoryBuffer(1024);
+    TProtocol request = new TBinaryProtocol(in);
+    writeTake(request, 10, null, false);
+
+    TMemoryBuffer out = new TMemoryBuffer(1024);
+    processor.process(request, new TBinaryProtocol(out));
+    assertTrue(service.received.isEmpty());
+    assertEquals(readResult(new TBinaryProtocol(out)), 0);
+  }
+
+  @Test(groups = "fast")
+  public void testLateArgument() throws Exception {
+    StreamingService service = new StreamingService();
+    ThriftServiceProcessor processor = createProcessor(service);
+
+    TMemoryBuffer in = new TMemoryBuffer(1024);
+    TProtocol request = new TBinaryProtocol(in);
+    writeTake(request, 10, ImmutableList.of(1, 2), true);
+
+    // the method has already been invoked when the late argument is read
+    TMemoryBuffer out = new TMemoryBuffer(1024);
+    processor.process(request, new TBinaryProtocol(out));
+    assertEquals(service.received, ImmutableList.of(1, 2));
+    assertEquals(readException(new TBinaryProtocol(out)), TApplicationException.PROTOCOL_ERROR);
+  }
+
+  @Test(groups = "fast")
+  public void testMethodFailure() throws Exception {
+    StreamingService service = new StreamingService();
+    ThriftServiceProcessor processor = createProcessor(service);
+
+    // the list claims more elements than are sent, so finishing the arguments fails as well
+    TMemoryBuffer in = new TMemoryBuffer(1024);
+    TProtocol request = new TBinaryProtocol(in);
+    request.writeMessageBegin(new TMessage("fail", TMessageType.CALL, 1));
+    request.writeStructBegin(new TStruct("fail_args"));
+    request.writeFieldBegin(new TField("values", TType.LIST, (short) 1));
+    request.writeListBegin(new TList(TType.I32, 5));
+    request.writeI32(1);
+
+    TMemoryBuffer out = new TMemoryBuffer(1024);
+    processor.process(request, new TBinaryProtocol(out));
+
+    // the exception of the method wins, and the cleanup failure is attached to it
+    assertEquals(readException(new TBinaryProtocol(out)), TApplicationException.INTERNAL_ERROR);
+    assertEquals(service.failure.getSuppressed().length, 1);
+    assertTrue(service.failure.getSuppressed()[0] instanceof TApplicationException);
+  }
+
+  private static ThriftServiceProcessor createProcessor(StreamingService service) {
+    return new ThriftServiceProcessor(service, new ThriftCodecManager());
+  }
+
+  private static void writeTake(
+      TProtocol protocol,
+      int count,
+      List<Integer> values,
+      boolean lateArgument
+  ) throws Exception {
+    protocol.writeMessageBegin(new TMessage("take", TMessageType.CALL, 1));
+    protocol.writeStructBegin(new TStruct("take_args"));
+    protocol.writeFieldBegin(new TField("count", TType.I32, (short) 1));
+    protocol.writeI32(count);
+    protocol.writeFieldEnd();
+    if (values != null) {
+      protocol.writeFieldBegin(new TField("values", TType.LIST, (short) 2));
+      protocol.writeListBegin(new TList(TType.I32, values.size()));
+      for (int value : values) {
+        protocol.writeI32(value);
+      }
+      protocol.writeListEnd();
+      protocol.writeFieldEnd();
+    }
+    if (lateArgument) {
+      protocol.writeFieldBegin(new TField("late", TType.I32, (short) 3));
+      protocol.writeI32(42);
+      protocol.writeFieldEnd();
+    }
+    protocol.writeFieldStop();
+    protocol.writeStructEnd();
+    protocol.writeMessageEnd();
+  }
+
+  private static int readResult(TProtocol protocol) throws Exception {
+    TMessage message = protocol.readMessageBegin();
+    assertEquals(message.type, TMessageType.REPLY);
+    protocol.readStructBegin();
+    TField field = protocol.readFieldBegin();
+    assertEquals(field.id, 0);
+    int result = protocol.readI32();
+    protocol.readFieldEnd();
+    assertEquals(protocol.readFieldBegin().type, TType.STOP);
+    protocol.readStructEnd();
+    protocol.readMessageEnd();
+    return result;
+  }
+
+  private static int readException(TProtocol protocol) throws Exception {
+    TMessage message = protocol.readMessageBegin();
+    assertEquals(message.type, TMessageType.EXCEPTION);
+    TApplicationException exception = TApplicationException.read(protocol);
+    protocol.readMessageEnd();
+    return exception.getType();
+  }
+
+  @ThriftService("streaming")
+  public static class StreamingService {
+    private final List<Integer> received = new ArrayList<>();
+    private RuntimeException failure;
+
+    @ThriftMethod("take")
+    public int take(int count, Iterator<Integer> values) {
+      received.clear();
+      while (received.size() < count && values.hasNext()) {
+        received.add(values.next());
+      }
+      return received.size();
+    }
+
+    @ThriftMethod("fail")
+    public int fail(Iterator<Integer> values) {
+      values.next();
+      failure = new IllegalStateException("method failed");
+      throw failure;
+    }
+  }
+}